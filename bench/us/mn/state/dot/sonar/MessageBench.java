@@ -0,0 +1,119 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark for SONAR message encoder / decoder round trips.  Each
+ * invocation encodes a batch of attribute messages, moves the encoded bytes
+ * to a decoder buffer (as a conduit would), and decodes them all.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageBench {
+
+	/** Size of encoder / decoder buffers */
+	static private final int BUFFER_SIZE = 1 << 16;
+
+	/** Number of messages in each batch */
+	@Param({ "1", "100" })
+	public int n_msgs;
+
+	/** Attribute names for each message */
+	private String[] names;
+
+	/** Attribute parameters for each message */
+	private String[][] params;
+
+	/** Message encoder */
+	private MessageEncoder enc;
+
+	/** Decoder input buffer */
+	private ByteBuffer in;
+
+	/** Message decoder */
+	private MessageDecoder dec;
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() throws IOException {
+		names = new String[n_msgs];
+		params = new String[n_msgs][];
+		for (int i = 0; i < n_msgs; i++) {
+			names[i] = "detector/D" + i + "/notes";
+			params[i] = new String[] { "Station " + i + " \u00e9" };
+		}
+		enc = new MessageEncoder(BUFFER_SIZE);
+		in = ByteBuffer.allocate(BUFFER_SIZE);
+		dec = new MessageDecoder(in);
+	}
+
+	/** Encode one batch of messages */
+	private void encodeBatch() throws IOException {
+		for (int i = 0; i < n_msgs; i++)
+			enc.encode(Message.ATTRIBUTE, names[i], params[i]);
+		enc.flush();
+	}
+
+	/** Encode one batch of messages and clear the encoder */
+	@Benchmark
+	public int encode() throws IOException {
+		encodeBatch();
+		int n = enc.getBuffer().position();
+		enc.clear();
+		return n;
+	}
+
+	/** Encode a batch of messages as shared frames */
+	@Benchmark
+	public void encodeFrame(Blackhole bh) {
+		for (int i = 0; i < n_msgs; i++) {
+			bh.consume(MessageEncoder.encodeFrame(Message.ATTRIBUTE,
+				names[i], params[i]));
+		}
+	}
+
+	/** Encode and decode one batch of messages */
+	@Benchmark
+	public void roundTrip(Blackhole bh) throws IOException {
+		encodeBatch();
+		ByteBuffer out = enc.getBuffer();
+		out.flip();
+		in.put(out);
+		enc.compact();
+		for (int i = 0; i < n_msgs; i++) {
+			List<String> p = dec.decode();
+			if (null == p)
+				throw new IOException("Missing message: " + i);
+			bh.consume(p);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import us.mn.state.dot.sonar.SonarException;
+import us.mn.state.dot.sonar.SonarObject;
+
+/**
+ * Benchmark for attribute dispatcher get / set.  A simple SONAR type is
+ * used, so that setters do not need a database.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AttributeDispatcherBench {
+
+	/** SONAR interface for benchmarking */
+	static public interface Thing extends SonarObject {
+
+		/** SONAR type name */
+		String SONAR_TYPE = "thing";
+
+		/** Set the notes */
+		void setNotes(String n);
+
+		/** Get the notes */
+		String getNotes();
+
+		/** Set the count */
+		void setCount(int c);
+
+		/** Get the count */
+		int getCount();
+
+		/** Set the enabled flag */
+		void setEnabled(boolean e);
+
+		/** Get the enabled flag */
+		boolean getEnabled();
+	}
+
+	/** SONAR implementation for benchmarking */
+	static public class ThingImpl implements Thing {
+		private final String name;
+		public ThingImpl(String n) {
+			name = n;
+		}
+		public String getTypeName() {
+			return SONAR_TYPE;
+		}
+		public String getName() {
+			return name;
+		}
+		public void destroy() { }
+		private String notes = "";
+		public void setNotes(String n) {
+			notes = n;
+		}
+		public String getNotes() {
+			return notes;
+		}
+		private int count;
+		public void setCount(int c) {
+			count = c;
+		}
+		public int getCount() {
+			return count;
+		}
+		private boolean enabled;
+		public void setEnabled(boolean e) {
+			enabled = e;
+		}
+		public boolean getEnabled() {
+			return enabled;
+		}
+	}
+
+	/** Notes value to set */
+	static private final String[] NOTES = { "Some notes" };
+
+	/** Count value to set */
+	static private final String[] COUNT = { "42" };
+
+	/** Dispatcher being benchmarked */
+	private AttributeDispatcher dispatcher;
+
+	/** Object to get / set */
+	private ThingImpl thing;
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() {
+		ServerNamespace ns = new ServerNamespace();
+		dispatcher = new AttributeDispatcher(ThingImpl.class, ns);
+		thing = new ThingImpl("T1");
+	}
+
+	/** Get one attribute by name */
+	@Benchmark
+	public String[] getByName() throws SonarException {
+		return dispatcher.getValue(thing, "count");
+	}
+
+	/** Get all gettable attributes by index (as enumeration does) */
+	@Benchmark
+	public void getAll(Blackhole bh) throws SonarException {
+		int n = dispatcher.getGettableCount();
+		for (int i = 0; i < n; i++)
+			bh.consume(dispatcher.getValue(thing, i));
+	}
+
+	/** Set a string attribute */
+	@Benchmark
+	public void setString() throws SonarException {
+		dispatcher.setValue(thing, "notes", NOTES);
+	}
+
+	/** Set an integer attribute (with unmarshalling) */
+	@Benchmark
+	public void setInt() throws SonarException {
+		dispatcher.setValue(thing, "count", COUNT);
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageEncoder;
+import us.mn.state.dot.sonar.Name;
+import us.mn.state.dot.sonar.SonarObject;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.sonar.server.TypeNode;
+import us.mn.state.dot.tms.Detector;
+
+/**
+ * Benchmark for full-type enumeration of detectors.  This compares
+ * reflective getter dispatch (Method.invoke, as AttributeDispatcher used to
+ * do) with the generated accessors used by AttributeDispatcher now.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetectorEnumerationBench {
+
+	/** Empty parameter array for Method.invoke */
+	static private final Object[] NO_PARAMS = new Object[0];
+
+	/** Number of detectors */
+	@Param({ "10000" })
+	public int n_objects;
+
+	/** Namespace to enumerate */
+	private ServerNamespace namespace;
+
+	/** Detector type node */
+	private TypeNode node;
+
+	/** Gettable attributes */
+	private String[] attrs;
+
+	/** Mapping of attribute names to getter methods (reflective) */
+	private final HashMap<String, Method> getters =
+		new HashMap<String, Method>();
+
+	/** Message encoder */
+	private MessageEncoder enc;
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() throws Exception {
+		namespace = new ServerNamespace();
+		node = namespace.registerType(Detector.SONAR_TYPE,
+			DetectorImpl.class);
+		for (int i = 0; i < n_objects; i++)
+			namespace.addObject(new DetectorImpl("D" + i));
+		attrs = node.getGettableAttributes();
+		for (String a: attrs)
+			getters.put(a, lookupGetter(a));
+		enc = new MessageEncoder(1 << 16);
+	}
+
+	/** Lookup a getter method, using the "do" prefix rule */
+	static private Method lookupGetter(String a) throws Exception {
+		String g = "get" + a.substring(0, 1).toUpperCase() +
+			a.substring(1);
+		String dg = "do" + g.substring(0, 1).toUpperCase() +
+			g.substring(1);
+		for (Method m: DetectorImpl.class.getMethods()) {
+			if (m.getName().equals(dg) &&
+			    m.getParameterTypes().length == 0)
+				return m;
+		}
+		return DetectorImpl.class.getMethod(g);
+	}
+
+	/** Enumerate all objects with reflective dispatch */
+	@Benchmark
+	public int enumerateReflect() throws Exception {
+		enc.encode(Message.TYPE, node.name);
+		ArrayList<SonarObject> objs = new ArrayList<SonarObject>();
+		Iterator<SonarObject> it = node.iterator();
+		while (it.hasNext())
+			objs.add(it.next());
+		for (SonarObject o: objs) {
+			for (int i = 0; i < attrs.length; i++) {
+				Object r = getters.get(attrs[i]).invoke(o,
+					NO_PARAMS);
+				String a = (i == 0)
+				       ? new Name(o, attrs[i]).toString()
+				       : attrs[i];
+				enc.encode(Message.ATTRIBUTE, a, marshall(r));
+			}
+			enc.encode(Message.OBJECT, o.getName());
+		}
+		enc.encode(Message.TYPE);
+		return drain();
+	}
+
+	/** Marshall a getter result */
+	private String[] marshall(Object r) {
+		if (r instanceof Object[]) {
+			Object[] ra = (Object []) r;
+			String[] res = new String[ra.length];
+			for (int i = 0; i < ra.length; i++)
+				res[i] = namespace.marshall(ra[i]);
+			return res;
+		} else
+			return new String[] { namespace.marshall(r) };
+	}
+
+	/** Enumerate all objects with accessor dispatch.  This bypasses the
+	 * enumeration snapshot, so getters are called every time. */
+	@Benchmark
+	public int enumerateAccessor() throws Exception {
+		enc.encode(Message.TYPE, node.name);
+		Iterator<SonarObject> it = node.iterator();
+		while (it.hasNext())
+			node.enumerateObject(enc, it.next());
+		enc.encode(Message.TYPE);
+		return drain();
+	}
+
+	/** Get all attribute values with reflective dispatch */
+	@Benchmark
+	public int getReflect() throws Exception {
+		int n = 0;
+		Iterator<SonarObject> it = node.iterator();
+		while (it.hasNext()) {
+			SonarObject o = it.next();
+			for (int i = 0; i < attrs.length; i++)
+				n += marshall(getters.get(attrs[i]).invoke(o,
+					NO_PARAMS)).length;
+		}
+		return n;
+	}
+
+	/** Get all attribute values with accessor dispatch */
+	@Benchmark
+	public int getAccessor() throws Exception {
+		int n = 0;
+		Iterator<SonarObject> it = node.iterator();
+		while (it.hasNext()) {
+			SonarObject o = it.next();
+			for (int i = 0; i < attrs.length; i++)
+				n += node.getValue(o, attrs[i]).length;
+		}
+		return n;
+	}
+
+	/** Drain the encoder buffer */
+	private int drain() throws Exception {
+		enc.flush();
+		int n = enc.getBuffer().position();
+		enc.clear();
+		return n;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import static us.mn.state.dot.tms.server.XmlWriter.createAttribute;
+
+/**
+ * Benchmark for formatting the det_sample feed.  This compares writing each
+ * attribute with XmlWriter.createAttribute through a gzip writer (the way
+ * det_sample.xml.gz used to be written) with formatting into a FeedWriter
+ * (gzip is then done on the feed thread).  Allocation per feed can be
+ * measured with the JMH gc profiler (-prof gc).
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FeedWriterBench {
+
+	/** Number of detectors */
+	@Param({ "15000" })
+	public int n_dets;
+
+	/** Detector names */
+	private String[] names;
+
+	/** Feed writer */
+	private FeedWriter writer;
+
+	/** Feed number, to vary sample values */
+	private int n_feed;
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() {
+		names = new String[n_dets];
+		for (int i = 0; i < n_dets; i++)
+			names[i] = Integer.toString(100 + i);
+		writer = new FeedWriter();
+	}
+
+	/** Write one feed the old way */
+	@Benchmark
+	public int writeLegacy() throws IOException {
+		int f = n_feed++;
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Writer w = new BufferedWriter(new OutputStreamWriter(
+			new GZIPOutputStream(bos)));
+		for (int i = 0; i < names.length; i++) {
+			w.write("\t<sample");
+			w.write(createAttribute("sensor", names[i]));
+			w.write(createAttribute("flow", (i + f) % 2000));
+			w.write(createAttribute("speed", (i + f) % 70));
+			w.write(createAttribute("occ", BaseObjectImpl
+				.formatFloat(((i + f) % 10000) / 100f, 2)));
+			w.write("/>\n");
+		}
+		w.close();
+		return bos.size();
+	}
+
+	/** Format one feed with a feed writer */
+	@Benchmark
+	public int writeFeed() {
+		FeedWriter w = writer;
+		int f = n_feed++;
+		w.reset();
+		for (int i = 0; i < names.length; i++) {
+			w.write("\t<sample");
+			w.writeAttr("sensor", names[i]);
+			w.writeAttr("flow", (i + f) % 2000);
+			w.writeAttr("speed", (i + f) % 70);
+			w.writeAttr("occ", ((i + f) % 10000) / 100f, 2);
+			w.write("/>\n");
+		}
+		return w.size();
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark for the sample histories used by KAdaptiveAlgorithm.  Each
+ * cycle pushes and averages histories the same way processAllStates does,
+ * for a synthetic network of corridors with stations and meters.  The boxed
+ * Double history which BoundedSampleHistory used to be is compared with the
+ * primitive history.  Allocation per cycle can be measured with the JMH gc
+ * profiler (-prof gc).
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KAdaptiveHistoryBench {
+
+	/** Stations on each corridor */
+	static private final int N_STATIONS = 40;
+
+	/** Meters on each corridor */
+	static private final int N_METERS = 15;
+
+	/** Stations in each meter segment */
+	static private final int SEGMENT = 4;
+
+	/** Steps for 60 seconds */
+	static private final int STEPS_60 = 2;
+
+	/** Maximum steps (600 seconds) */
+	static private final int MAX_STEPS = 20;
+
+	/** History interface for benchmarking */
+	static private interface History {
+		void push(double v);
+		double get(int t);
+		double average(int t, int n);
+		double average();
+	}
+
+	/** Boxed history, the way BoundedSampleHistory used to be */
+	static private class BoxedHistory implements History {
+		private final Double[] samples;
+		private int cursor = -1;
+		private int n_samples = 0;
+		BoxedHistory(int n) {
+			samples = new Double[n];
+		}
+		public void push(double v) {
+			push((v >= 0) ? Double.valueOf(v) : null);
+		}
+		private void push(Double sam) {
+			cursor = (cursor + 1 < samples.length) ? cursor + 1 : 0;
+			samples[cursor] = sam;
+			if (n_samples < samples.length)
+				n_samples++;
+		}
+		private Double getBoxed(int t) {
+			if (t < n_samples) {
+				int idx = cursor - t;
+				if (idx < 0)
+					idx += samples.length;
+				return samples[idx];
+			} else
+				return null;
+		}
+		public double get(int t) {
+			Double d = getBoxed(t);
+			return (d != null) ? d : Double.NaN;
+		}
+		private Double averageBoxed(int t, int n_sam) {
+			double sum = 0;
+			int count = 0;
+			for (int i = t; i < t + n_sam; i++) {
+				Double d = getBoxed(i);
+				if (d != null) {
+					sum += d;
+					count++;
+				}
+			}
+			return (count > 0) ? sum / count : null;
+		}
+		public double average(int t, int n) {
+			Double d = averageBoxed(t, n);
+			return (d != null) ? d : Double.NaN;
+		}
+		public double average() {
+			return average(0, n_samples);
+		}
+	}
+
+	/** Primitive history (BoundedSampleHistory) */
+	static private class PrimitiveHistory implements History {
+		private final BoundedSampleHistory hist;
+		PrimitiveHistory(int n) {
+			hist = new BoundedSampleHistory(n);
+		}
+		public void push(double v) {
+			hist.push(v);
+		}
+		public double get(int t) {
+			return hist.get(t);
+		}
+		public double average(int t, int n) {
+			return hist.average(t, n);
+		}
+		public double average() {
+			return hist.average();
+		}
+	}
+
+	/** History type: "boxed" or "primitive" */
+	@Param({ "boxed", "primitive" })
+	public String history;
+
+	/** Number of corridors */
+	@Param({ "40" })
+	public int corridors;
+
+	/** Station density and speed histories */
+	private History[] density;
+	private History[] speed;
+
+	/** Meter passage, demand, demand accumulator and segment density
+	 * histories */
+	private History[] passage;
+	private History[] demand;
+	private History[] demand_accum;
+	private History[] segment_k;
+
+	/** Random number generator for samples */
+	private final Random rnd = new Random(42);
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() {
+		boolean prim = "primitive".equals(history);
+		int n_stations = corridors * N_STATIONS;
+		int n_meters = corridors * N_METERS;
+		density = new History[n_stations];
+		speed = new History[n_stations];
+		for (int i = 0; i < n_stations; i++) {
+			density[i] = create(prim, STEPS_60);
+			speed[i] = create(prim, STEPS_60);
+		}
+		passage = new History[n_meters];
+		demand = new History[n_meters];
+		demand_accum = new History[n_meters];
+		segment_k = new History[n_meters];
+		for (int i = 0; i < n_meters; i++) {
+			passage[i] = create(prim, MAX_STEPS);
+			demand[i] = create(prim, 10);
+			demand_accum[i] = create(prim, 20);
+			segment_k[i] = create(prim, MAX_STEPS);
+		}
+		// Fill all histories
+		for (int i = 0; i < MAX_STEPS; i++)
+			cycle();
+	}
+
+	/** Create a history */
+	static private History create(boolean prim, int n) {
+		return prim ? new PrimitiveHistory(n) : new BoxedHistory(n);
+	}
+
+	/** Get a random sample, missing 1 in 10 */
+	private double sample(int max) {
+		return (rnd.nextInt(10) == 0) ? -1 : rnd.nextInt(max);
+	}
+
+	/** Run one 30-second cycle */
+	@Benchmark
+	public double cycle() {
+		double check = 0;
+		for (int i = 0; i < density.length; i++) {
+			density[i].push(sample(100));
+			speed[i].push(sample(70));
+		}
+		for (int m = 0; m < passage.length; m++) {
+			int c = m / N_METERS;
+			int st = c * N_STATIONS + (m % N_METERS) * 2;
+			double k = 0;
+			for (int s = st; s < st + SEGMENT; s++) {
+				double a = density[s].average(0, STEPS_60);
+				k += Double.isNaN(a) ? 0 : a;
+				double v = speed[s].average(0, STEPS_60);
+				check += Double.isNaN(v) ? 0 : v;
+			}
+			segment_k[m].push(k / SEGMENT);
+			passage[m].push(sample(1800));
+			demand[m].push(sample(1800));
+			demand_accum[m].push(sample(500));
+			check += nz(segment_k[m].average(0, 4));
+			check += nz(segment_k[m].average(0, 20));
+			check += nz(segment_k[m].average(0, 10));
+			check += nz(demand[m].average());
+			check += nz(passage[m].average(0, 3));
+			check += nz(demand_accum[m].get(19));
+			check += nz(segment_k[m].get(0));
+		}
+		return check;
+	}
+
+	/** Replace NaN with zero */
+	static private double nz(double v) {
+		return Double.isNaN(v) ? 0 : v;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageEncoder;
+import us.mn.state.dot.sonar.SonarObject;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.sonar.server.TypeNode;
+import us.mn.state.dot.tms.Detector;
+
+/**
+ * Benchmark for a storm of simultaneous client logins, each enumerating a
+ * large type on its own thread (like task processor lanes).  This compares
+ * enumeration which calls every getter for every client with enumeration
+ * using the cached per-type snapshot.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(Threads.MAX)
+public class LoginStormBench {
+
+	/** Enumeration mode: "uncached" or "snapshot" */
+	@Param({ "uncached", "snapshot" })
+	public String mode;
+
+	/** Number of detectors */
+	@Param({ "60000" })
+	public int n_objects;
+
+	/** Detector type node */
+	private TypeNode node;
+
+	/** Flag to enumerate from the snapshot */
+	private boolean cached;
+
+	/** Message encoder for each thread */
+	@State(Scope.Thread)
+	static public class Encoder {
+		private final MessageEncoder enc;
+		public Encoder() {
+			try {
+				enc = new MessageEncoder(1 << 16);
+			}
+			catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() throws Exception {
+		ServerNamespace namespace = new ServerNamespace();
+		node = namespace.registerType(Detector.SONAR_TYPE,
+			DetectorImpl.class);
+		for (int i = 0; i < n_objects; i++)
+			namespace.addObject(new DetectorImpl("D" + i));
+		cached = "snapshot".equals(mode);
+	}
+
+	/** Enumerate the type for one login */
+	@Benchmark
+	public int login(Encoder e) throws Exception {
+		MessageEncoder enc = e.enc;
+		enc.encode(Message.TYPE, node.name);
+		if (cached)
+			node.enumerateObjects(enc);
+		else {
+			Iterator<SonarObject> it = node.iterator();
+			while (it.hasNext())
+				node.enumerateObject(enc, it.next());
+		}
+		enc.encode(Message.TYPE);
+		enc.flush();
+		int n = enc.getBuffer().position();
+		enc.clear();
+		return n;
+	}
+}
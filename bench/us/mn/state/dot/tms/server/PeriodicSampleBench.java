@@ -0,0 +1,191 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark for periodic sample caches and writers.  Samples are 30-second
+ * vehicle counts for one detector, added and flushed the same way as the
+ * server does every 2 minutes.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PeriodicSampleBench {
+
+	/** Sample period (seconds) */
+	static private final int PERIOD = 30;
+
+	/** Sample period (ms) */
+	static private final long PERIOD_MS = PERIOD * 1000L;
+
+	/** Samples between flush / purge (2 minutes) */
+	static private final int FLUSH_SAMPLES = 4;
+
+	/** Time to keep samples after purge (10 minutes) */
+	static private final long CACHE_MS = 10 * 60 * 1000;
+
+	/** Archive mode: "files" for one file per sensor, "column" for
+	 * column files */
+	@Param({ "files", "column" })
+	public String mode;
+
+	/** Temporary archive directory */
+	private File dir;
+
+	/** Column file (or null) */
+	private SampleColumnFile column;
+
+	/** Cache for add benchmark */
+	private PeriodicSampleCache cache;
+
+	/** Cache for flush benchmark */
+	private PeriodicSampleCache flush_cache;
+
+	/** Sample writer */
+	private PeriodicSampleWriter writer;
+
+	/** Time stamp of first sample */
+	private long start;
+
+	/** Number of samples added to add cache */
+	private int n_added;
+
+	/** Number of samples added to flush cache */
+	private int n_flushed;
+
+	/** Get the start of yesterday.  Samples must be recent to pass the
+	 * cache time stamp check. */
+	static private long startOfYesterday() {
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.add(Calendar.DATE, -1);
+		return cal.getTimeInMillis();
+	}
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() throws IOException {
+		dir = File.createTempFile("bench", "");
+		dir.delete();
+		dir.mkdir();
+		start = startOfYesterday();
+		if ("column".equals(mode)) {
+			column = new SampleColumnFile(new File(dir, "20200101"),
+				start, true);
+		}
+		cache = new PeriodicSampleCache(PeriodicSampleType.VEH_COUNT);
+		flush_cache = new PeriodicSampleCache(
+			PeriodicSampleType.VEH_COUNT);
+		writer = new PeriodicSampleWriter(createFactory());
+	}
+
+	/** Create a sample archive factory in the temporary directory */
+	private SampleArchiveFactory createFactory() {
+		return new SampleArchiveFactory() {
+			public File createFile(String sensor_id, String ext,
+				long stamp)
+			{
+				return new File(dir, sensor_id + "." + ext);
+			}
+			public File createFile(String sensor_id,
+				PeriodicSampleType s_type, PeriodicSample ps)
+			{
+				return new File(dir, sensor_id + "." +
+					s_type.extension + ps.period);
+			}
+			public boolean hasKnownExtension(String name) {
+				return true;
+			}
+			public SampleColumnFile columnFile(long stamp) {
+				boolean c = (column != null) &&
+					column.contains(stamp);
+				return c ? column : null;
+			}
+			public void closeColumnFiles() { }
+			public void closeColumnFile(File base) { }
+		};
+	}
+
+	/** Delete the temporary directory */
+	@TearDown
+	public void tearDown() throws IOException {
+		if (column != null)
+			column.close();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f: files)
+				f.delete();
+		}
+		dir.delete();
+	}
+
+	/** Get the time stamp of the n'th sample, wrapping within one day */
+	private long stamp(int n) {
+		return start + (n % 2880) * PERIOD_MS;
+	}
+
+	/** Add one sample to a cache, purging after each flush interval */
+	@Benchmark
+	public int add() {
+		long st = stamp(n_added);
+		cache.add(new PeriodicSample(st, PERIOD, n_added % 20),
+			"bench");
+		n_added++;
+		if (n_added % FLUSH_SAMPLES == 0) {
+			if (n_added % 2880 == 0)
+				cache.purge(Long.MAX_VALUE);
+			else
+				cache.purge(st - CACHE_MS);
+		}
+		return n_added;
+	}
+
+	/** Add one flush interval of samples, then flush and purge */
+	@Benchmark
+	public int flush() {
+		long st = 0;
+		for (int i = 0; i < FLUSH_SAMPLES; i++) {
+			st = stamp(n_flushed);
+			flush_cache.add(new PeriodicSample(st, PERIOD,
+				n_flushed % 20), "bench");
+			n_flushed++;
+		}
+		writer.flush(flush_cache, "D1");
+		if (n_flushed % 2880 == 0)
+			flush_cache.purge(Long.MAX_VALUE);
+		else
+			flush_cache.purge(st - CACHE_MS);
+		return n_flushed;
+	}
+}
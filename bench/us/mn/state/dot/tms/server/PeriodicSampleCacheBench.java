@@ -0,0 +1,179 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark for periodic sample caches.  This compares the ring buffer used
+ * by PeriodicSampleCache with the skip list of sample objects it used to
+ * have.  Each detector has seven caches, which are fed 30-second samples,
+ * read and purged the same way as the server does.  Allocation and GC can be
+ * measured with the JMH gc profiler (-prof gc).
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PeriodicSampleCacheBench {
+
+	/** Number of caches for each detector */
+	static private final int N_CACHES = 7;
+
+	/** Sample period (seconds) */
+	static private final int PERIOD = 30;
+
+	/** Sample period (ms) */
+	static private final long PERIOD_MS = PERIOD * 1000L;
+
+	/** Number of sample periods in a day */
+	static private final int DAY_PERIODS = 2880;
+
+	/** Samples between flush / purge (2 minutes) */
+	static private final int FLUSH_SAMPLES = 4;
+
+	/** Time to keep samples after purge (10 minutes) */
+	static private final long CACHE_MS = 10 * 60 * 1000;
+
+	/** Sample cache interface for benchmarking */
+	static private interface Cache {
+		void add(PeriodicSample ps);
+		int getValue(long start, long end);
+		void purge(long before);
+	}
+
+	/** Skip list cache, the way PeriodicSampleCache used to be */
+	static private class SkipListCache implements Cache {
+		private final ConcurrentSkipListSet<PeriodicSample> samples =
+			new ConcurrentSkipListSet<PeriodicSample>();
+		public void add(PeriodicSample ps) {
+			samples.add(ps);
+		}
+		public int getValue(long start, long end) {
+			int total = 0;
+			for (PeriodicSample ps: samples) {
+				long stamp = ps.start();
+				if (stamp >= start && stamp < end)
+					total += ps.value;
+			}
+			return total;
+		}
+		public void purge(long before) {
+			Iterator<PeriodicSample> it = samples.iterator();
+			while (it.hasNext()) {
+				PeriodicSample ps = it.next();
+				if (ps.end() < before)
+					it.remove();
+				else
+					break;
+			}
+		}
+	}
+
+	/** Ring buffer cache (PeriodicSampleCache) */
+	static private class RingCache implements Cache {
+		private final PeriodicSampleCache cache =
+			new PeriodicSampleCache(PeriodicSampleType.VEH_COUNT);
+		public void add(PeriodicSample ps) {
+			cache.add(ps, "bench");
+		}
+		public int getValue(long start, long end) {
+			return cache.getValue(start, end);
+		}
+		public void purge(long before) {
+			cache.purge(before);
+		}
+	}
+
+	/** Get the start of yesterday.  Samples must be recent to pass the
+	 * cache time stamp check. */
+	static private long startOfYesterday() {
+		Calendar cal = Calendar.getInstance();
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		cal.add(Calendar.DATE, -1);
+		return cal.getTimeInMillis();
+	}
+
+	/** Cache type: "skiplist" or "ring" */
+	@Param({ "skiplist", "ring" })
+	public String cache_type;
+
+	/** Number of detectors */
+	@Param({ "15000" })
+	public int n_dets;
+
+	/** Caches being benchmarked */
+	private Cache[] caches;
+
+	/** Time stamp of first sample */
+	private long start;
+
+	/** Number of sample periods run */
+	private int n_periods;
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() {
+		boolean ring = "ring".equals(cache_type);
+		caches = new Cache[n_dets * N_CACHES];
+		for (int i = 0; i < caches.length; i++) {
+			caches[i] = ring
+			          ? new RingCache()
+			          : new SkipListCache();
+		}
+		start = startOfYesterday();
+		// Fill caches up to the purge time
+		for (int p = 0; p < CACHE_MS / PERIOD_MS; p++)
+			period();
+	}
+
+	/** Run one sample period, wrapping within one day */
+	@Benchmark
+	public int period() {
+		int p = n_periods % DAY_PERIODS;
+		if (0 == p) {
+			for (Cache c: caches)
+				c.purge(Long.MAX_VALUE);
+		}
+		n_periods++;
+		int check = 0;
+		long stamp = start + p * PERIOD_MS;
+		for (int i = 0; i < caches.length; i++) {
+			int v = (i + p) % 20;
+			caches[i].add(new PeriodicSample(stamp, PERIOD, v));
+			check += caches[i].getValue(stamp - PERIOD_MS, stamp);
+		}
+		if (p % FLUSH_SAMPLES == 0) {
+			for (Cache c: caches)
+				c.purge(stamp - CACHE_MS);
+		}
+		return check;
+	}
+}
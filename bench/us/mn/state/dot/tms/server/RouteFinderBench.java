@@ -0,0 +1,217 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.BaseHelper;
+import us.mn.state.dot.tms.Direction;
+import us.mn.state.dot.tms.GeoLoc;
+import us.mn.state.dot.tms.R_Node;
+import us.mn.state.dot.tms.R_NodeTransition;
+import us.mn.state.dot.tms.R_NodeType;
+import us.mn.state.dot.tms.Road;
+
+/**
+ * Benchmark for route finding on a synthetic corridor network.  The network
+ * is a grid of east-west and north-south freeways, with both directions of
+ * each freeway connected at every interchange.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RouteFinderBench {
+
+	/** Latitude of first east-west freeway */
+	static private final double LAT_0 = 44.90;
+
+	/** Longitude of first north-south freeway */
+	static private final double LON_0 = -93.40;
+
+	/** Spacing between freeways (degrees) */
+	static private final double SPACING = 0.02;
+
+	/** Offset between directions of one freeway (degrees) */
+	static private final double DIR_OFFSET = 0.0005;
+
+	/** Offset of station upstream of an interchange (degrees) */
+	static private final double STATION_OFFSET = 0.012;
+
+	/** Offsets of ramps from an interchange (degrees) */
+	static private final double[] RAMP_OFFSETS = { 0.004, 0.003 };
+
+	/** Number of freeways in each direction */
+	@Param({ "3", "4" })
+	public int n_roads;
+
+	/** Namespace for network objects */
+	private ServerNamespace namespace;
+
+	/** Count of created objects, for naming */
+	private int n_objects;
+
+	/** East-west roads */
+	private Road[] ew_roads;
+
+	/** North-south roads */
+	private Road[] ns_roads;
+
+	/** Route finder */
+	private RouteFinder finder;
+
+	/** Route origin */
+	private GeoLoc orig;
+
+	/** Route destination */
+	private GeoLoc dest;
+
+	/** Create a road */
+	private Road createRoad(String n) throws Exception {
+		Road r = new RoadImpl(n);
+		namespace.addObject(r);
+		return r;
+	}
+
+	/** Create a location */
+	private GeoLocImpl createLoc(Road r, Direction rd, Road x,
+		Direction xd, double lat, double lon) throws Exception
+	{
+		Constructor<GeoLocImpl> c = GeoLocImpl.class
+			.getDeclaredConstructor(String.class, String.class,
+			Road.class, short.class, Road.class, short.class,
+			short.class, String.class, Double.class, Double.class);
+		c.setAccessible(true);
+		GeoLocImpl loc = c.newInstance("loc_" + n_objects++,
+			R_Node.SONAR_TYPE, r, (short) rd.ordinal(), x,
+			(short) xd.ordinal(), (short) 0, "", lat, lon);
+		namespace.addObject(loc);
+		return loc;
+	}
+
+	/** Create an r_node */
+	private void createNode(GeoLocImpl loc, R_NodeType nt)
+		throws Exception
+	{
+		Constructor<R_NodeImpl> c = R_NodeImpl.class
+			.getDeclaredConstructor(String.class, GeoLocImpl.class,
+			int.class, boolean.class, boolean.class, int.class,
+			int.class, boolean.class, int.class, boolean.class,
+			String.class, int.class, String.class);
+		c.setAccessible(true);
+		namespace.addObject(c.newInstance("rnd_" + n_objects++, loc,
+			nt.ordinal(), true, false,
+			R_NodeTransition.NONE.ordinal(), 3, true, 0, true, null,
+			55, ""));
+	}
+
+	/** Create the nodes for one direction of a freeway.
+	 * @param r Freeway road.
+	 * @param rd Direction of travel.
+	 * @param xr Crossing roads.
+	 * @param xd Directions of crossing roads.
+	 * @param ew Flag for east-west freeway.
+	 * @param fixed Fixed coordinate of freeway.
+	 * @param sign Sign of travel along varying coordinate. */
+	private void createCorridor(Road r, Direction rd, Road[] xr,
+		Direction[] xd, boolean ew, double fixed, double sign)
+		throws Exception
+	{
+		for (int j = 0; j < xr.length; j++) {
+			double v = (ew ? LON_0 : LAT_0) + j * SPACING;
+			double p = v - sign * STATION_OFFSET;
+			createNode(loc(r, rd, null, rd, ew, fixed, p),
+				R_NodeType.STATION);
+			for (int k = 0; k < xd.length; k++) {
+				p = v - sign * RAMP_OFFSETS[k];
+				createNode(loc(r, rd, xr[j], xd[k], ew, fixed,
+					p), R_NodeType.EXIT);
+				p = v + sign * RAMP_OFFSETS[k];
+				createNode(loc(r, rd, xr[j], xd[k], ew, fixed,
+					p), R_NodeType.ENTRANCE);
+			}
+		}
+	}
+
+	/** Create a location on an east-west or north-south freeway */
+	private GeoLocImpl loc(Road r, Direction rd, Road x, Direction xd,
+		boolean ew, double fixed, double p) throws Exception
+	{
+		return ew
+		      ? createLoc(r, rd, x, xd, fixed, p)
+		      : createLoc(r, rd, x, xd, p, fixed);
+	}
+
+	/** Create the freeway network */
+	private void createNetwork() throws Exception {
+		ew_roads = new Road[n_roads];
+		ns_roads = new Road[n_roads];
+		for (int i = 0; i < n_roads; i++) {
+			ew_roads[i] = createRoad("E" + (i + 1));
+			ns_roads[i] = createRoad("N" + (i + 1));
+		}
+		Direction[] ew_dirs = { Direction.EAST, Direction.WEST };
+		Direction[] ns_dirs = { Direction.NORTH, Direction.SOUTH };
+		for (int i = 0; i < n_roads; i++) {
+			double lat = LAT_0 + i * SPACING;
+			double lon = LON_0 + i * SPACING;
+			createCorridor(ew_roads[i], Direction.EAST, ns_roads,
+				ns_dirs, true, lat, 1);
+			createCorridor(ew_roads[i], Direction.WEST, ns_roads,
+				ns_dirs, true, lat + DIR_OFFSET, -1);
+			createCorridor(ns_roads[i], Direction.NORTH, ew_roads,
+				ew_dirs, false, lon, 1);
+			createCorridor(ns_roads[i], Direction.SOUTH, ew_roads,
+				ew_dirs, false, lon + DIR_OFFSET, -1);
+		}
+	}
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() throws Exception {
+		namespace = new ServerNamespace();
+		BaseHelper.namespace = namespace;
+		createNetwork();
+		CorridorManager cm = new CorridorManager();
+		cm.createCorridors();
+		finder = new RouteFinder(cm);
+		// Origin: west end of first eastbound freeway
+		orig = createLoc(ew_roads[0], Direction.EAST, null,
+			Direction.EAST, LAT_0, LON_0 - SPACING / 2);
+		// Destination: northbound freeway in middle of network
+		int m = n_roads / 2;
+		dest = createLoc(ns_roads[m], Direction.NORTH, null,
+			Direction.NORTH, LAT_0 + m * SPACING + SPACING / 2,
+			LON_0 + m * SPACING);
+		if (findRoute() == null)
+			throw new IllegalStateException("No route found");
+	}
+
+	/** Find a route from origin to destination */
+	@Benchmark
+	public Route findRoute() {
+		return finder.findRoute(orig, dest);
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Throughput benchmark for building sample archive files.  This compares
+ * the single-threaded zip copy that ArchiveSamplesJob used to do with
+ * SampleArchiveBuilder, for several days of synthetic detector files.  Each
+ * invocation archives all days, which are created again before it.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SampleArchiveBench {
+
+	/** Sample file extensions for each detector */
+	static private final String[] EXTS = {
+		".v30", ".c30", ".s30", ".vlog"
+	};
+
+	/** Factory which knows the benchmark extensions */
+	static private final SampleArchiveFactory FACTORY =
+		new SampleArchiveFactory()
+	{
+		public File createFile(String sensor_id, String ext,
+			long stamp)
+		{
+			throw new UnsupportedOperationException();
+		}
+		public File createFile(String sensor_id,
+			PeriodicSampleType s_type, PeriodicSample ps)
+		{
+			throw new UnsupportedOperationException();
+		}
+		public boolean hasKnownExtension(String name) {
+			for (String ext: EXTS) {
+				if (name.endsWith(ext))
+					return true;
+			}
+			return false;
+		}
+		public SampleColumnFile columnFile(long stamp) {
+			return null;
+		}
+		public void closeColumnFiles() { }
+		public void closeColumnFile(File base) { }
+	};
+
+	/** Create synthetic sample files for one day */
+	static private void createDay(File day, int n_dets, Random rnd)
+		throws IOException
+	{
+		day.mkdir();
+		byte[] buf = new byte[2880 * 2];
+		for (int d = 0; d < n_dets; d++) {
+			for (String ext: EXTS) {
+				int len = ext.equals(".c30") ? 5760 : 2880;
+				for (int i = 0; i < len; i++) {
+					buf[i] = (rnd.nextInt(8) == 0)
+					       ? (byte) -1
+					       : (byte) rnd.nextInt(24);
+				}
+				FileOutputStream fos = new FileOutputStream(
+					new File(day, d + ext));
+				try {
+					fos.write(buf, 0, len);
+				}
+				finally {
+					fos.close();
+				}
+			}
+		}
+	}
+
+	/** Create synthetic days */
+	static private void createDays(File year, int n_dets, int n_days)
+		throws IOException
+	{
+		Random rnd = new Random(n_dets);
+		for (int d = 0; d < n_days; d++)
+			createDay(new File(year, date(d)), n_dets, rnd);
+	}
+
+	/** Get a date string */
+	static private String date(int d) {
+		return "201201" + (d < 9 ? "0" : "") + (d + 1);
+	}
+
+	/** Archive one day the way ArchiveSamplesJob used to */
+	static private SampleArchiveBuilder.Stats legacy(File year,
+		String date) throws IOException
+	{
+		SampleArchiveBuilder.Stats s = new SampleArchiveBuilder.Stats();
+		File day = new File(year, date);
+		File traf = new File(year, date + ".legacy");
+		byte[] buffer = new byte[8192];
+		ZipOutputStream zos = new ZipOutputStream(
+			new BufferedOutputStream(new FileOutputStream(traf)));
+		try {
+			String[] entries = day.list();
+			Arrays.sort(entries);
+			for (String name: entries) {
+				zos.putNextEntry(new ZipEntry(name));
+				FileInputStream fis = new FileInputStream(
+					new File(day, name));
+				try {
+					while (true) {
+						int n = fis.read(buffer);
+						if (n < 0)
+							break;
+						zos.write(buffer, 0, n);
+						s.n_bytes += n;
+					}
+				}
+				finally {
+					fis.close();
+				}
+				s.n_files++;
+			}
+		}
+		finally {
+			zos.close();
+		}
+		s.n_days = 1;
+		return s;
+	}
+
+	/** Delete a directory tree */
+	static private void delete(File f) {
+		File[] files = f.listFiles();
+		if (files != null) {
+			for (File c: files)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	/** Archiver: "legacy" or "builder" */
+	@Param({ "legacy", "builder" })
+	public String archiver;
+
+	/** Number of detectors */
+	@Param({ "2000" })
+	public int n_dets;
+
+	/** Number of days */
+	@Param({ "4" })
+	public int n_days;
+
+	/** Number of archive threads (builder) */
+	@Param({ "4" })
+	public int n_threads;
+
+	/** Compression level (builder) */
+	@Param({ "-1" })
+	public int level;
+
+	/** Temporary year directory */
+	private File year;
+
+	/** Create the year directory and sample files */
+	@Setup(Level.Invocation)
+	public void setup() throws IOException {
+		year = File.createTempFile("arc", "");
+		year.delete();
+		year.mkdir();
+		createDays(year, n_dets, n_days);
+	}
+
+	/** Delete the year directory */
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		delete(year);
+	}
+
+	/** Archive all days */
+	@Benchmark
+	public int archive() throws Exception {
+		SampleArchiveBuilder.Stats s;
+		if ("builder".equals(archiver)) {
+			SampleArchiveBuilder b = new SampleArchiveBuilder(
+				FACTORY, n_threads, level);
+			ArrayList<String> dates = new ArrayList<String>();
+			for (int d = 0; d < n_days; d++)
+				dates.add(date(d));
+			b.submit(year, dates);
+			s = b.waitIdle(3600000);
+		} else {
+			s = new SampleArchiveBuilder.Stats();
+			for (int d = 0; d < n_days; d++)
+				s.add(legacy(year, date(d)));
+		}
+		return (s != null) ? s.n_files : 0;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.snmp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark for SNMP BER encoding and decoding.  Each set invocation sends a
+ * set-request for a number of objects.  The response is the request echoed
+ * back with a get-response PDU tag, so that every varbind is decoded too.
+ * The encode invocations only encode a variable binding list, without I/O.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BERBench {
+
+	/** Root node for benchmark objects */
+	static private final MIBNode ROOT = MIBNode.root(
+		new int[] { 1, 3, 6, 1, 4, 1, 1206, 4, 2, 3 }, "bench");
+
+	/** Node for integer objects */
+	static private final MIBNode INT_NODE = ROOT.child(new int[] { 5, 8,
+		1, 3 }, "intNode");
+
+	/** Node for string objects */
+	static private final MIBNode STRING_NODE = ROOT.child(new int[] { 5,
+		8, 1, 9 }, "stringNode");
+
+	/** MULTI string for string objects */
+	static private final String MULTI = "[jp3]LEFT LANE CLOSED[nl]" +
+		"AT 46TH ST[nl]USE CAUTION";
+
+	/** Get-response PDU tag (context-specific, constructed, 2) */
+	static private final int GET_RESPONSE = 0xA2;
+
+	/** Get the end of a BER header.
+	 * @param buf Encoded data.
+	 * @param pos Position of identifier octet.
+	 * @return Position of contents. */
+	static private int headerEnd(byte[] buf, int pos) {
+		int len = buf[pos + 1] & 0xFF;
+		return ((len & 0x80) != 0)
+		      ? pos + 2 + (len & 0x7F)
+		      : pos + 2;
+	}
+
+	/** Get the end of a BER TLV.
+	 * @param buf Encoded data.
+	 * @param pos Position of identifier octet.
+	 * @return Position following the contents. */
+	static private int tlvEnd(byte[] buf, int pos) {
+		int len = buf[pos + 1] & 0xFF;
+		if ((len & 0x80) != 0) {
+			int n = len & 0x7F;
+			len = 0;
+			for (int i = 0; i < n; i++)
+				len = (len << 8) | (buf[pos + 2 + i] & 0xFF);
+			return pos + 2 + n + len;
+		} else
+			return pos + 2 + len;
+	}
+
+	/** Input stream which echoes requests as responses */
+	static private class EchoStream extends InputStream {
+		private final ByteArrayOutputStream req;
+		private byte[] buf = new byte[0];
+		private int pos = 0;
+		private EchoStream(ByteArrayOutputStream r) {
+			req = r;
+		}
+		/** Move a request to the input buffer as a response */
+		private void echo() {
+			if (pos >= buf.length && req.size() > 0) {
+				buf = req.toByteArray();
+				req.reset();
+				pos = 0;
+				// Skip message header, version and community
+				int p = headerEnd(buf, 0);
+				p = tlvEnd(buf, p);
+				p = tlvEnd(buf, p);
+				buf[p] = (byte) GET_RESPONSE;
+			}
+		}
+		@Override
+		public int available() {
+			echo();
+			return buf.length - pos;
+		}
+		@Override
+		public int read() {
+			echo();
+			return (pos < buf.length) ? (buf[pos++] & 0xFF) : -1;
+		}
+	}
+
+	/** Number of objects in each request */
+	@Param({ "1", "16" })
+	public int n_objects;
+
+	/** SNMP encoder / decoder */
+	private final SNMP snmp = new SNMP();
+
+	/** Request output stream */
+	private final ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+	/** Response input stream */
+	private final EchoStream is = new EchoStream(os);
+
+	/** Integer objects */
+	private ASN1Integer[] ints;
+
+	/** String objects */
+	private ASN1String[] strings;
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() {
+		ints = new ASN1Integer[n_objects];
+		strings = new ASN1String[n_objects];
+		for (int i = 0; i < n_objects; i++) {
+			ints[i] = new ASN1Integer(INT_NODE, i + 1);
+			ints[i].setInteger(1000 * i);
+			strings[i] = new ASN1String(STRING_NODE, i + 1);
+			strings[i].setString(MULTI);
+		}
+	}
+
+	/** Set integer objects */
+	@Benchmark
+	public int setIntegers() throws IOException {
+		SNMP.Message mess = snmp.new Message(os, is, SNMP.PUBLIC);
+		for (ASN1Integer o: ints)
+			mess.add(o);
+		mess.storeProps();
+		return mess.request_id;
+	}
+
+	/** Set string objects */
+	@Benchmark
+	public int setStrings() throws IOException {
+		SNMP.Message mess = snmp.new Message(os, is, SNMP.PUBLIC);
+		for (ASN1String o: strings)
+			mess.add(o);
+		mess.storeProps();
+		return mess.request_id;
+	}
+
+	/** Encode a variable binding list of objects (back-to-front) */
+	private int encodeVarBinds(ASN1Object[] objs) throws IOException {
+		snmp.encoder.reset();
+		int mark = snmp.encoder.length();
+		for (int i = objs.length - 1; i >= 0; i--) {
+			int m = snmp.encoder.length();
+			objs[i].encode(snmp);
+			objs[i].encodeOID(snmp);
+			snmp.encodeSequence(m);
+		}
+		snmp.encodeSequence(mark);
+		return snmp.encoder.length();
+	}
+
+	/** Encode integer objects */
+	@Benchmark
+	public int encodeIntegers() throws IOException {
+		return encodeVarBinds(ints);
+	}
+
+	/** Encode string objects */
+	@Benchmark
+	public int encodeStrings() throws IOException {
+		return encodeVarBinds(strings);
+	}
+}
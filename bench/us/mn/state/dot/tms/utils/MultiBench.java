@@ -0,0 +1,144 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.utils;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.BaseHelper;
+import us.mn.state.dot.tms.BitmapGraphic;
+import us.mn.state.dot.tms.DmsColor;
+import us.mn.state.dot.tms.InvalidMsgException;
+import us.mn.state.dot.tms.RasterGraphic;
+import us.mn.state.dot.tms.server.FontImpl;
+import us.mn.state.dot.tms.server.GlyphImpl;
+
+/**
+ * Benchmark for MULTI string parsing and rendering.  A synthetic 7-pixel
+ * font is added to the namespace, so that messages can be rasterized onto
+ * a full-matrix sign.
+ *
+ * @author Douglas Lau
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiBench {
+
+	/** Sign width (pixels) */
+	static private final int WIDTH = 125;
+
+	/** Sign height (pixels) */
+	static private final int HEIGHT = 27;
+
+	/** Font number */
+	static private final int FONT_NUM = 1;
+
+	/** Glyph width (pixels) */
+	static private final int GLYPH_WIDTH = 5;
+
+	/** Glyph height (pixels) */
+	static private final int GLYPH_HEIGHT = 7;
+
+	/** MULTI string (two pages, three lines each) */
+	static private final String MULTI =
+		"[jp3][jl2]I-35W NB[nl]CRASH AT 46TH ST[nl]" +
+		"[jl4]LEFT LANE CLOSED[np][pt25o0]" +
+		"TRAVEL TIME[nl]TO I-694[nl][jl3]12-15 MINS";
+
+	/** Set a field by reflection */
+	static private void setField(Object o, String f, Object v)
+		throws ReflectiveOperationException
+	{
+		Field fld = o.getClass().getDeclaredField(f);
+		fld.setAccessible(true);
+		fld.set(o, v);
+	}
+
+	/** Create the font and glyphs */
+	static private void createFont(ServerNamespace ns)
+		throws Exception
+	{
+		FontImpl font = new FontImpl("F" + FONT_NUM);
+		setField(font, "f_number", FONT_NUM);
+		setField(font, "height", GLYPH_HEIGHT);
+		setField(font, "width", GLYPH_WIDTH);
+		setField(font, "charSpacing", 1);
+		setField(font, "lineSpacing", 3);
+		ns.addObject(font);
+		BitmapGraphic bg = new BitmapGraphic(GLYPH_WIDTH,
+			GLYPH_HEIGHT);
+		for (int y = 0; y < GLYPH_HEIGHT; y++) {
+			for (int x = 0; x < GLYPH_WIDTH; x++) {
+				if ((x + y) % 2 == 0)
+					bg.setPixel(x, y, DmsColor.AMBER);
+			}
+		}
+		String pixels = Base64.encode(bg.getPixelData());
+		for (int cp = 32; cp < 127; cp++) {
+			GlyphImpl g = new GlyphImpl("F" + FONT_NUM + "_" + cp);
+			setField(g, "font", font);
+			setField(g, "code_point", cp);
+			setField(g, "width", GLYPH_WIDTH);
+			setField(g, "pixels", pixels);
+			ns.addObject(g);
+		}
+	}
+
+	/** MULTI string being benchmarked */
+	private MultiString multi;
+
+	/** Raster graphic factory */
+	private final RasterGraphic.Factory factory =
+		new RasterGraphic.Factory()
+	{
+		public RasterGraphic create() {
+			return new BitmapGraphic(WIDTH, HEIGHT);
+		}
+	};
+
+	/** Set up the benchmark */
+	@Setup
+	public void setup() throws Exception {
+		ServerNamespace ns = new ServerNamespace();
+		BaseHelper.namespace = ns;
+		createFont(ns);
+		multi = new MultiString(MULTI);
+		if (render() != MultiSyntaxError.none)
+			throw new InvalidMsgException("Render: " + MULTI);
+	}
+
+	/** Parse a MULTI string */
+	@Benchmark
+	public boolean parse() {
+		return new MultiString(MULTI).isValid();
+	}
+
+	/** Render a MULTI string onto bitmaps */
+	@Benchmark
+	public MultiSyntaxError render() {
+		MultiRenderer mr = new MultiRenderer(factory, 0, 0, FONT_NUM);
+		multi.parse(mr);
+		mr.complete();
+		return mr.getSyntaxError();
+	}
+}
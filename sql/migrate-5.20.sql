@@ -73,4 +73,18 @@ ALTER TABLE iris.ipaws_alert
 UPDATE iris.ipaws_alert SET urgency = 0;
 ALTER TABLE iris.ipaws_alert ALTER COLUMN urgency SET NOT NULL;
 
+-- Add pipeline_depth to comm_config
+ALTER TABLE iris.comm_config ADD COLUMN pipeline_depth INTEGER;
+UPDATE iris.comm_config SET pipeline_depth = 0;
+ALTER TABLE iris.comm_config ALTER COLUMN pipeline_depth SET NOT NULL;
+
+DROP VIEW comm_config_view;
+CREATE VIEW comm_config_view AS
+	SELECT cc.name, cc.description, cp.description AS protocol, modem,
+	       timeout_ms, poll_period_sec, long_poll_period_sec,
+	       idle_disconnect_sec, no_response_disconnect_sec, pipeline_depth
+	FROM iris.comm_config cc
+	JOIN iris.comm_protocol cp ON cc.protocol = cp.id;
+GRANT SELECT ON comm_config_view TO PUBLIC;
+
 COMMIT;
@@ -1292,7 +1292,8 @@ CREATE TABLE iris.comm_config (
 	poll_period_sec INTEGER NOT NULL,
 	long_poll_period_sec INTEGER NOT NULL,
 	idle_disconnect_sec INTEGER NOT NULL,
-	no_response_disconnect_sec INTEGER NOT NULL
+	no_response_disconnect_sec INTEGER NOT NULL,
+	pipeline_depth INTEGER NOT NULL
 );
 
 ALTER TABLE iris.comm_config
@@ -1303,7 +1304,7 @@ ALTER TABLE iris.comm_config
 CREATE VIEW comm_config_view AS
 	SELECT cc.name, cc.description, cp.description AS protocol, modem,
 	       timeout_ms, poll_period_sec, long_poll_period_sec,
-	       idle_disconnect_sec, no_response_disconnect_sec
+	       idle_disconnect_sec, no_response_disconnect_sec, pipeline_depth
 	FROM iris.comm_config cc
 	JOIN iris.comm_protocol cp ON cc.protocol = cp.id;
 GRANT SELECT ON comm_config_view TO PUBLIC;
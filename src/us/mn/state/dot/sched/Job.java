@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2017  Minnesota Department of Transportation
+ * Copyright (C) 2000-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -53,6 +53,21 @@ abstract public class Job implements Comparable<Job> {
 	/** Next time this job must be performed */
 	private long next_time;
 
+	/** Scheduler list containing this job (null if not scheduled) */
+	JobList list;
+
+	/** Previous job in scheduler list */
+	Job prev;
+
+	/** Next job in scheduler list */
+	Job next;
+
+	/** Flag indicating job is being performed by a scheduler */
+	boolean running;
+
+	/** Flag indicating job was removed while being performed */
+	boolean cancelled;
+
 	/**
 	 * Create a new scheduler job.
 	 * @param iField java.util.Calendar field for time interval
@@ -112,6 +127,11 @@ abstract public class Job implements Comparable<Job> {
 		return next_time - TimeSteward.currentTimeMillis();
 	}
 
+	/** Get the next time this job must be performed */
+	long getNextTime() {
+		return next_time;
+	}
+
 	/** Compute the next time this job will be scheduled.  Warning: the
 	 * sort order for the Comparable interface will change. */
 	void computeNextTime() {
@@ -0,0 +1,85 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+/**
+ * A job list is a doubly-linked list of jobs, used for scheduler timer wheel
+ * slots.  The links are stored in the jobs themselves, so adding and
+ * removing are constant-time and allocation-free.  A job can only be in one
+ * list at a time.
+ *
+ * @author Douglas Lau
+ */
+final class JobList {
+
+	/** First job in list */
+	private Job head;
+
+	/** Last job in list */
+	private Job tail;
+
+	/** Number of jobs in list */
+	private int size;
+
+	/** Check if the list is empty */
+	boolean isEmpty() {
+		return head == null;
+	}
+
+	/** Get the number of jobs in the list */
+	int size() {
+		return size;
+	}
+
+	/** Add a job to the end of the list */
+	void add(Job job) {
+		assert job.list == null;
+		job.list = this;
+		job.prev = tail;
+		job.next = null;
+		if (tail != null)
+			tail.next = job;
+		else
+			head = job;
+		tail = job;
+		size++;
+	}
+
+	/** Remove a job from the list */
+	void remove(Job job) {
+		assert job.list == this;
+		if (job.prev != null)
+			job.prev.next = job.next;
+		else
+			head = job.next;
+		if (job.next != null)
+			job.next.prev = job.prev;
+		else
+			tail = job.prev;
+		job.list = null;
+		job.prev = null;
+		job.next = null;
+		size--;
+	}
+
+	/** Remove the first job from the list.
+	 * @return First job, or null if list is empty. */
+	Job poll() {
+		Job job = head;
+		if (job != null)
+			remove(job);
+		return job;
+	}
+}
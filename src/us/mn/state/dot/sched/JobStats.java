@@ -0,0 +1,114 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Job statistics keep track of lateness and run time for each job name
+ * performed by a scheduler.
+ *
+ * @author Douglas Lau
+ */
+final class JobStats {
+
+	/** Interval to log statistics (ms) */
+	static private final long LOG_INTERVAL_MS = 60 * 1000;
+
+	/** Statistics for one job name */
+	static private class Stat {
+		private int count;
+		private long late;
+		private long elapsed;
+		private long max_late;
+		private long max_elapsed;
+		private void record(long l, long e) {
+			count++;
+			late += l;
+			elapsed += e;
+			max_late = Math.max(max_late, l);
+			max_elapsed = Math.max(max_elapsed, e);
+		}
+		@Override public String toString() {
+			return "n=" + count +
+			       ", avg_late=" + (late / count) +
+			       ", max_late=" + max_late +
+			       ", avg_elapsed=" + (elapsed / count) +
+			       ", max_elapsed=" + max_elapsed;
+		}
+	}
+
+	/** Debug log for statistics */
+	private final DebugLog slog;
+
+	/** Scheduler name */
+	private final String name;
+
+	/** Mapping of job names to statistics */
+	private final TreeMap<String, Stat> stats = new TreeMap<String, Stat>();
+
+	/** Time stats were last logged */
+	private long logged = TimeSteward.currentTimeMillis();
+
+	/** Flag indicating statistics are being collected.  This is only
+	 * checked once per interval, since checking the log file is slow. */
+	private boolean open;
+
+	/** Create job statistics */
+	JobStats(DebugLog l, String n) {
+		slog = l;
+		name = n;
+		open = l.isOpen();
+	}
+
+	/** Check if statistics are being collected */
+	synchronized boolean isOpen() {
+		return open;
+	}
+
+	/** Record statistics for one job.
+	 * @param job Job name.
+	 * @param l Lateness of job start (ms).
+	 * @param e Elapsed time performing job (ms). */
+	synchronized void record(String job, long l, long e) {
+		Stat s = stats.get(job);
+		if (null == s) {
+			s = new Stat();
+			stats.put(job, s);
+		}
+		s.record(l, e);
+	}
+
+	/** Log statistics if the interval has elapsed.
+	 * @param queued Number of jobs queued. */
+	synchronized void check(int queued) {
+		long now = TimeSteward.currentTimeMillis();
+		if (now - logged >= LOG_INTERVAL_MS) {
+			logged = now;
+			if (open)
+				log(queued);
+			open = slog.isOpen();
+		}
+	}
+
+	/** Log all statistics and clear them */
+	private void log(int queued) {
+		slog.log(name + " queued: " + queued);
+		for (Map.Entry<String, Stat> e: stats.entrySet())
+			slog.log(name + " " + e.getKey() + ": " + e.getValue());
+		stats.clear();
+	}
+}
@@ -14,11 +14,15 @@
  */
 package us.mn.state.dot.sched;
 
-import java.util.Date;
-import java.util.TreeSet;
-
 /**
- * Scheduler for performing jobs in a dedicated thread.
+ * Scheduler for performing jobs in dedicated threads.
+ *
+ * Jobs are kept in a hierarchical timer wheel, so adding and removing jobs
+ * are constant-time operations.  The first level has one slot for each
+ * millisecond; each slot of a higher level covers a full rotation of the
+ * level below it.  When time advances to a higher level slot, its jobs are
+ * cascaded down to lower levels.  A job can only be scheduled on one
+ * scheduler at a time.
  *
  * @author Douglas Lau
  */
@@ -27,6 +31,15 @@ public final class Scheduler {
 	/** Scheduler thread group */
 	static private final ThreadGroup GROUP = new ThreadGroup("SCHED");
 
+	/** Number of slot bits for each timer wheel level */
+	static private final int[] LEVEL_BITS = { 8, 6, 6, 6, 6 };
+
+	/** Number of jobs queued before logging an overload */
+	static private final int OVERLOAD_JOBS = 5000;
+
+	/** Debug log for job statistics */
+	static private final DebugLog STATS_LOG = new DebugLog("sched_stats");
+
 	/** Default exception handler */
 	static private ExceptionHandler HANDLER = new ExceptionHandler() {
 		public boolean handle(Exception e) {
@@ -53,17 +66,29 @@ public final class Scheduler {
 			HANDLER.handle(e);
 	}
 
-	/** Thread for running jobs */
-	private final Thread thread;
+	/** Threads for running jobs */
+	private final Thread[] threads;
 
 	/** Debug log for scheduled jobs */
 	private final DebugLog slog;
 
-	/** Set of scheduled jobs to do */
-	private final TreeSet<Job> todo = new TreeSet<Job>();
+	/** Job statistics */
+	private final JobStats stats;
 
-	/** Set of jobs to remove from scheduler */
-	private final TreeSet<Job> toremove = new TreeSet<Job>();
+	/** Timer wheel slots, indexed by level and slot */
+	private final JobList[][] wheel;
+
+	/** Bit shift of slot times for each timer wheel level */
+	private final int[] shift;
+
+	/** Jobs which are ready to perform */
+	private final JobList ready = new JobList();
+
+	/** Current time of timer wheel */
+	private long wheel_time = TimeSteward.currentTimeMillis();
+
+	/** Number of jobs scheduled (in timer wheel or ready list) */
+	private int n_jobs = 0;
 
 	/** Flag to indicate disposing */
 	private boolean disposing = false;
@@ -80,63 +105,155 @@ public final class Scheduler {
 
 	/** Create a new job scheduler */
 	public Scheduler(String name, ExceptionHandler h) {
+		this(name, h, 1);
+	}
+
+	/** Create a new job scheduler.
+	 * @param name Scheduler name.
+	 * @param h Exception handler.
+	 * @param n_threads Number of threads to perform jobs.  With more
+	 *                  than one thread, jobs may be performed
+	 *                  concurrently and out of order. */
+	public Scheduler(String name, ExceptionHandler h, int n_threads) {
 		slog = new DebugLog(name, h);
+		stats = new JobStats(STATS_LOG, name);
 		handler = h;
-		thread = new Thread(GROUP, name) {
-			public void run() {
-				try {
-					performJobs();
-				}
-				catch (InterruptedException e) {
-					if (!disposing)
-						handleException(e);
+		wheel = new JobList[LEVEL_BITS.length][];
+		shift = new int[LEVEL_BITS.length];
+		int s = 0;
+		for (int l = 0; l < LEVEL_BITS.length; l++) {
+			wheel[l] = new JobList[1 << LEVEL_BITS[l]];
+			for (int i = 0; i < wheel[l].length; i++)
+				wheel[l][i] = new JobList();
+			shift[l] = s;
+			s += LEVEL_BITS[l];
+		}
+		threads = new Thread[Math.max(n_threads, 1)];
+		for (int i = 0; i < threads.length; i++) {
+			String n = (i > 0) ? name + "_" + i : name;
+			threads[i] = new Thread(GROUP, n) {
+				public void run() {
+					try {
+						performJobs();
+					}
+					catch (InterruptedException e) {
+						if (!disposing)
+							handleException(e);
+					}
 				}
-			}
-		};
-		thread.setDaemon(true);
-		thread.start();
+			};
+			threads[i].setDaemon(true);
+		}
+		for (Thread t: threads)
+			t.start();
 	}
 
 	/** Perform jobs as they are scheduled */
 	private void performJobs() throws InterruptedException {
-		Job job = waitJob();
-		while (!thread.isInterrupted()) {
+		while (!Thread.currentThread().isInterrupted()) {
+			Job job = waitJob();
 			performJob(job);
-			if (job.isRepeating())
-				repeatJob(job);
-			removeJobs();
-			job = waitJob();
+			finishJob(job);
+			stats.check(getQueueSize());
 		}
 	}
 
 	/** Wait until the next job needs to be performed.
 	 * @return Job to be performed. */
 	private synchronized Job waitJob() throws InterruptedException {
-		Job job = nextJob();
-		long delay = job.delay();
-		while (delay > 0) {
-			TimeSteward.wait(this, delay);
-			// We need to check the next job here in case the job
-			// was removed or a new job was added while we were
-			// waiting
-			job = nextJob();
-			delay = job.delay();
+		while (true) {
+			advance(TimeSteward.currentTimeMillis());
+			Job job = ready.poll();
+			if (job != null) {
+				n_jobs--;
+				job.running = true;
+				// Wake up another thread for remaining jobs
+				if (!ready.isEmpty())
+					notify();
+				return job;
+			}
+			long delay = nextDelay();
+			if (delay > 0)
+				TimeSteward.wait(this, delay);
+			else
+				wait();
 		}
-		todo.remove(job);
-		return job;
 	}
 
-	/** Get the next job on the "todo" list */
-	private synchronized Job nextJob() throws InterruptedException {
-		while (todo.isEmpty()) {
-			wait();
+	/** Advance the timer wheel, moving expired jobs to the ready list.
+	 * @param now Current time. */
+	private void advance(long now) {
+		while (wheel_time < now && n_jobs > ready.size()) {
+			wheel_time++;
+			for (int l = LEVEL_BITS.length - 1; l > 0; l--) {
+				if ((wheel_time & ((1L << shift[l]) - 1)) == 0)
+					cascade(slot(l, wheel_time));
+			}
+			JobList slot = slot(0, wheel_time);
+			while (!slot.isEmpty())
+				ready.add(slot.poll());
 		}
-		return todo.first();
+		// Skip ahead if no jobs are in the timer wheel
+		if (wheel_time < now)
+			wheel_time = now;
+	}
+
+	/** Get the timer wheel slot for a level and time */
+	private JobList slot(int l, long t) {
+		int mask = (1 << LEVEL_BITS[l]) - 1;
+		return wheel[l][(int) ((t >> shift[l]) & mask)];
+	}
+
+	/** Cascade jobs from a slot to lower levels of the wheel */
+	private void cascade(JobList slot) {
+		while (!slot.isEmpty())
+			insert(slot.poll());
+	}
+
+	/** Insert a job into the timer wheel (or ready list) */
+	private void insert(Job job) {
+		long t = job.getNextTime();
+		if (t <= wheel_time) {
+			ready.add(job);
+			return;
+		}
+		int top = LEVEL_BITS.length - 1;
+		for (int l = 0; l < top; l++) {
+			long d = (t >> shift[l]) - (wheel_time >> shift[l]);
+			if (d < (1L << LEVEL_BITS[l])) {
+				slot(l, t).add(job);
+				return;
+			}
+		}
+		// Jobs beyond the top level range are put in the last
+		// slot, and cascaded again when it is reached
+		long d = (t >> shift[top]) - (wheel_time >> shift[top]);
+		long max = (1L << LEVEL_BITS[top]) - 1;
+		if (d > max)
+			t = wheel_time + (max << shift[top]);
+		slot(top, t).add(job);
+	}
+
+	/** Get the delay until the timer wheel must be advanced.
+	 * @return Delay (ms), or 0 to wait until notified. */
+	private long nextDelay() {
+		if (n_jobs == 0)
+			return 0;
+		int mask = (1 << LEVEL_BITS[0]) - 1;
+		for (long d = 1; d <= mask + 1; d++) {
+			long t = wheel_time + d;
+			// Stop at next first-level rotation (for cascading)
+			if ((t & mask) == 0 || !slot(0, t).isEmpty())
+				return d;
+		}
+		return mask + 1;
 	}
 
 	/** Perform a job */
 	private void performJob(Job job) {
 		boolean op = slog.isOpen();
+		long start = TimeSteward.currentTimeMillis();
+		long late = start - job.getNextTime();
 		try {
 			if (op)
 				slog.log("Starting " + job.getName());
@@ -154,48 +271,78 @@ public final class Scheduler {
 		finally {
 			if (op)
 				slog.log("Finished " + job.getName());
+			if (stats.isOpen()) {
+				long e = TimeSteward.currentTimeMillis();
+				stats.record(job.getName(), late, e - start);
+			}
+		}
+	}
+
+	/** Finish performing a job, repeating it if necessary */
+	private synchronized void finishJob(Job job) {
+		job.running = false;
+		if (job.cancelled) {
+			job.cancelled = false;
+			unlink(job);
+		} else if (job.isRepeating()) {
+			unlink(job);
+			job.computeNextTime();
+			link(job);
 		}
 	}
 
-	/** Add a job to be repeated */
-	private synchronized void repeatJob(Job job) {
-		job.computeNextTime();
-		todo.add(job);
+	/** Link a job into the timer wheel */
+	private void link(Job job) {
+		insert(job);
+		n_jobs++;
+	}
+
+	/** Unlink a job from the timer wheel (if scheduled) */
+	private void unlink(Job job) {
+		if (job.list != null) {
+			job.list.remove(job);
+			n_jobs--;
+		}
 	}
 
 	/** Add a job for this scheduler to perform */
 	public synchronized void addJob(Job job) {
-		todo.add(job);
-		if (slog.isOpen() && todo.size() > 5000)
-			slog.log("OVERLOADED: " + todo.size());
+		unlink(job);
+		link(job);
+		if (n_jobs > OVERLOAD_JOBS && slog.isOpen())
+			slog.log("OVERLOADED: " + n_jobs);
 		notify();
 	}
 
-	/** Remove a job from this scheduler */
+	/** Remove a job from this scheduler.  If the job is being performed,
+	 * it will not be repeated. */
 	public synchronized void removeJob(Job job) {
 		if (job != null) {
-			toremove.add(job);
-			notify();
+			unlink(job);
+			if (job.running)
+				job.cancelled = true;
 		}
 	}
 
-	/** Remove jobs which need to be removed.  This needs to be done on the
-	 * scheduler thread in case the job is being performed while removeJob
-	 * is called. */
-	private synchronized void removeJobs() {
-		for (Job job: toremove)
-			todo.remove(job);
-		toremove.clear();
+	/** Get the number of jobs queued */
+	public synchronized int getQueueSize() {
+		return n_jobs;
 	}
 
-	/** Test if the current thread is the scheduler thread */
+	/** Test if the current thread is a scheduler thread */
 	public boolean isCurrentThread() {
-		return Thread.currentThread() == thread;
+		Thread ct = Thread.currentThread();
+		for (Thread t: threads) {
+			if (ct == t)
+				return true;
+		}
+		return false;
 	}
 
 	/** Dispose of the scheduler */
 	public void dispose() {
 		disposing = true;
-		thread.interrupt();
+		for (Thread t: threads)
+			t.interrupt();
 	}
 }
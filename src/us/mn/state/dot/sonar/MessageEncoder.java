@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2013  Minnesota Department of Transportation
+ * Copyright (C) 2006-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -36,6 +36,32 @@ public class MessageEncoder {
 		return s.replace(Message.RECORD_SEP.code, ' ');
 	}
 
+	/** Encode one message into a frame.  A frame can be written to any
+	 * number of encoders, so a message sent to many clients only needs
+	 * to be encoded once.
+	 * @param m Message code.
+	 * @param name Name (may be null).
+	 * @param params Parameters (may be null).
+	 * @return Message encoded as UTF-8. */
+	static public byte[] encodeFrame(Message m, String name,
+		String[] params)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(m.code);
+		if (name != null) {
+			sb.append(Message.UNIT_SEP.code);
+			sb.append(name);
+			if (params != null) {
+				for (String p: params) {
+					sb.append(Message.UNIT_SEP.code);
+					sb.append(stripString(p));
+				}
+			}
+		}
+		sb.append(Message.RECORD_SEP.code);
+		return sb.toString().getBytes(UTF8);
+	}
+
 	/** Byte buffer output stream */
 	protected final ByteBufferOutputStream out_buf;
 
@@ -79,6 +105,41 @@ public class MessageEncoder {
 		writer.write(Message.RECORD_SEP.code);
 	}
 
+	/** Write a frame which has already been encoded.
+	 * This may only be called on the Task Processor thread. */
+	public void write(byte[] frame) throws IOException {
+		// Flush first, so characters buffered in the writer are
+		// kept in order with the frame
+		writer.flush();
+		out_buf.write(frame, 0, frame.length);
+	}
+
+	/** Take all encoded data as a frame.
+	 * @return Encoded data (UTF-8). */
+	public byte[] takeFrame() throws IOException {
+		writer.flush();
+		ByteBuffer buf = getBuffer();
+		buf.flip();
+		byte[] frame = new byte[buf.remaining()];
+		buf.get(frame);
+		compact();
+		return frame;
+	}
+
+	/** Clear all encoded data */
+	public void clear() {
+		try {
+			writer.flush();
+		}
+		catch (IOException e) {
+			// ByteBufferOutputStream does not throw
+		}
+		ByteBuffer buf = getBuffer();
+		buf.flip();
+		buf.position(buf.limit());
+		compact();
+	}
+
 	/** Flush the encoded data */
 	public void flush() throws IOException {
 		writer.flush();
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2019  Minnesota Department of Transportation
+ * Copyright (C) 2006-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,6 +14,11 @@
  */
 package us.mn.state.dot.sonar.server;
 
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -28,10 +33,106 @@ import us.mn.state.dot.sonar.SonarObject;
  * An attribute dispatcher is an adapter for SonarObjects. It provides
  * a pair of simple methods to set and get attributes of those objects.
  *
+ * Methods are looked up by reflection when the dispatcher is created, but
+ * they are invoked through accessors, which avoid the overhead of
+ * Method.invoke on every get and set.
+ *
  * @author Douglas Lau
  */
 public class AttributeDispatcher {
 
+	/** Accessor to get an attribute value */
+	interface Getter {
+		Object get(Object o) throws Throwable;
+	}
+
+	/** Method type for generic getter method handles */
+	static private final MethodType GETTER_TYPE =
+		MethodType.methodType(Object.class, Object.class);
+
+	/** Method type for generic invoker method handles */
+	static private final MethodType INVOKER_TYPE =
+		MethodType.methodType(Object.class, Object.class,
+		Object[].class);
+
+	/** Method type for Getter.get */
+	static private final MethodType GET_TYPE =
+		MethodType.methodType(Getter.class);
+
+	/** Lookup a method handle for a method */
+	static private MethodHandle unreflect(Method m)
+		throws IllegalAccessException
+	{
+		try {
+			return MethodHandles.publicLookup().unreflect(m);
+		}
+		catch (IllegalAccessException e) {
+			// Public method declared in a non-public class
+			m.setAccessible(true);
+			return MethodHandles.lookup().unreflect(m);
+		}
+	}
+
+	/** Create a generic method handle for invoking a method with an
+	 * array of parameters.
+	 * @param m Method to invoke.
+	 * @return Method handle of type (Object, Object[])Object. */
+	static private MethodHandle createInvoker(Method m) {
+		try {
+			int n_params = m.getParameterTypes().length;
+			return unreflect(m).asSpreader(Object[].class,
+				n_params).asType(INVOKER_TYPE);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/** Create a getter accessor for a method.  A class implementing
+	 * Getter is generated if possible, otherwise a method handle is
+	 * used. */
+	static private Getter createGetter(Method m) {
+		MethodHandle mh;
+		try {
+			mh = unreflect(m);
+		}
+		catch (IllegalAccessException e) {
+			throw new IllegalArgumentException(e);
+		}
+		try {
+			return generateGetter(m, mh);
+		}
+		catch (Throwable t) {
+			// Not accessible from generated class; fall back to
+			// invoking the method handle
+			final MethodHandle gh = mh.asType(GETTER_TYPE);
+			return new Getter() {
+				public Object get(Object o) throws Throwable {
+					return (Object) gh.invokeExact(o);
+				}
+			};
+		}
+	}
+
+	/** Generate a class implementing Getter for a method */
+	static private Getter generateGetter(Method m, MethodHandle mh)
+		throws Throwable
+	{
+		MethodType it = MethodType.methodType(
+			box(m.getReturnType()), m.getDeclaringClass());
+		CallSite cs = LambdaMetafactory.metafactory(
+			MethodHandles.lookup(), "get", GET_TYPE,
+			GETTER_TYPE, mh, it);
+		return (Getter) cs.getTarget().invoke();
+	}
+
+	/** Get the boxed class for a (possibly) primitive class */
+	static private Class box(Class c) {
+		return c.isPrimitive()
+		      ? MethodType.methodType(c).wrap().returnType()
+		      : c;
+	}
+
 	/** Method name to store an object */
 	static private final String DO_STORE_METHOD = "doStore";
 
@@ -117,23 +218,48 @@ public class AttributeDispatcher {
 	/** Constructor to create a new object */
 	private final Constructor constructor;
 
-	/** Method to store an object */
-	private final Method storer;
+	/** Method handle to store an object */
+	private final MethodHandle storer;
 
-	/** Method to destroy an object */
-	private final Method destroyer;
+	/** Method handle to destroy an object */
+	private final MethodHandle destroyer;
 
 	/** Mapping of attribute names to setter methods */
 	private final HashMap<String, Method> setters =
 		new HashMap<String, Method>();
 
+	/** Mapping of attribute names to setter method handles */
+	private final HashMap<String, MethodHandle> set_handles =
+		new HashMap<String, MethodHandle>();
+
 	/** Mapping of attribute names to getter methods */
 	private final HashMap<String, Method> getters =
 		new HashMap<String, Method>();
 
+	/** Mapping of attribute names to getter accessors */
+	private final HashMap<String, Getter> get_accessors =
+		new HashMap<String, Getter>();
+
+	/** Array of gettable attributes */
+	private final String[] gettable;
+
+	/** Array of getter accessors, matching gettable */
+	private final Getter[] gettable_accessors;
+
 	/** Get an array of gettable attributes */
 	public String[] getGettableAttributes() {
-		return getters.keySet().toArray(EMPTY_STRING);
+		return gettable.clone();
+	}
+
+	/** Get the number of gettable attributes */
+	public int getGettableCount() {
+		return gettable.length;
+	}
+
+	/** Get one gettable attribute.
+	 * @param i Attribute index (0 to getGettableCount() - 1). */
+	public String getGettable(int i) {
+		return gettable[i];
 	}
 
 	/** Test if an attribute is gettable */
@@ -149,8 +275,21 @@ public class AttributeDispatcher {
 		namespace = ns;
 		lookup_attributes(c);
 		constructor = lookup_constructor(c);
-		storer = lookup_storer(c);
-		destroyer = lookup_destroyer(c);
+		storer = create_invoker(lookup_storer(c));
+		destroyer = create_invoker(lookup_destroyer(c));
+		for (String a: setters.keySet())
+			set_handles.put(a, createInvoker(setters.get(a)));
+		for (String a: getters.keySet())
+			get_accessors.put(a, createGetter(getters.get(a)));
+		gettable = getters.keySet().toArray(EMPTY_STRING);
+		gettable_accessors = new Getter[gettable.length];
+		for (int i = 0; i < gettable.length; i++)
+			gettable_accessors[i] = get_accessors.get(gettable[i]);
+	}
+
+	/** Create an invoker method handle (or null) */
+	static private MethodHandle create_invoker(Method m) {
+		return (m != null) ? createInvoker(m) : null;
 	}
 
 	/** Lookup all the attributes of the specified class */
@@ -239,39 +378,36 @@ public class AttributeDispatcher {
 		}
 	}
 
-	/** Invoke a method on the given SONAR object */
-	private Object _invoke(SonarObject o, Method method, Object[] params)
+	/** Invoke a method handle on the given SONAR object */
+	private Object _invoke(SonarObject o, MethodHandle mh, Object[] params)
 		throws SonarException
 	{
 		try {
-			return method.invoke(o, params);
+			return (Object) mh.invokeExact((Object) o, params);
 		}
 		catch (Exception e) {
 			throw new SonarException(e);
 		}
-	}
-
-	/** Invoke a method on the given SONAR object */
-	private Object invoke(SonarObject o, Method method, String[] v)
-		throws SonarException
-	{
-		Class[] p_types = method.getParameterTypes();
-		Object[] params = namespace.unmarshall(p_types, v);
-		return _invoke(o, method, params);
+		catch (VirtualMachineError e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw new SonarException(new Exception(t));
+		}
 	}
 
 	/** Store the given object */
 	public void storeObject(SonarObject o) throws SonarException {
 		if (storer == null)
 			throw PermissionDenied.cannotAdd();
-		invoke(o, storer, EMPTY_STRING);
+		_invoke(o, storer, NO_PARAMS);
 	}
 
 	/** Destroy the given object */
 	public void destroyObject(SonarObject o) throws SonarException {
 		if (destroyer == null)
 			throw PermissionDenied.cannotRemove();
-		invoke(o, destroyer, EMPTY_STRING);
+		_invoke(o, destroyer, NO_PARAMS);
 	}
 
 	/** Set the value of the named attribute */
@@ -281,7 +417,9 @@ public class AttributeDispatcher {
 		Method m = setters.get(a);
 		if (m == null)
 			throw PermissionDenied.cannotWrite(a);
-		invoke(o, m, v);
+		Class[] p_types = m.getParameterTypes();
+		Object[] params = namespace.unmarshall(p_types, v);
+		_invoke(o, set_handles.get(a), params);
 	}
 
 	/** Lookup the named field from the given class */
@@ -319,14 +457,41 @@ public class AttributeDispatcher {
 		}
 	}
 
+	/** Get an attribute value with a getter accessor */
+	private Object get(SonarObject o, Getter g) throws SonarException {
+		try {
+			return g.get(o);
+		}
+		catch (Exception e) {
+			throw new SonarException(e);
+		}
+		catch (VirtualMachineError e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw new SonarException(new Exception(t));
+		}
+	}
+
 	/** Get the value of the named attribute */
 	public String[] getValue(SonarObject o, String a)
 		throws SonarException
 	{
-		Method m = getters.get(a);
-		if (m == null)
+		Getter g = get_accessors.get(a);
+		if (g == null)
 			throw PermissionDenied.cannotRead(a);
-		Object result = _invoke(o, m, NO_PARAMS);
+		return marshall(get(o, g));
+	}
+
+	/** Get the value of one gettable attribute.
+	 * @param o SONAR object.
+	 * @param i Attribute index (0 to getGettableCount() - 1). */
+	public String[] getValue(SonarObject o, int i) throws SonarException {
+		return marshall(get(o, gettable_accessors[i]));
+	}
+
+	/** Marshall a getter result */
+	private String[] marshall(Object result) {
 		if (result instanceof Object[]) {
 			Object[] r = (Object [])result;
 			String[] res = new String[r.length];
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2018  Minnesota Department of Transportation
+ * Copyright (C) 2006-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -24,6 +24,8 @@ import java.nio.channels.SocketChannel;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -66,6 +68,22 @@ public class ConnectionImpl extends Conduit implements Connection {
 		Message.ENUMERATE, Message.IGNORE, Message.OBJECT,
 		Message.REMOVE, Message.ATTRIBUTE);
 
+	/** Set of messages which change the namespace */
+	static private final EnumSet<Message> CHANGES = EnumSet.of(
+		Message.OBJECT, Message.REMOVE, Message.ATTRIBUTE);
+
+	/** Check if a message changes the namespace */
+	static private boolean isChange(List<String> params) {
+		if (params.size() > 0 && params.get(0).length() == 1) {
+			char c = params.get(0).charAt(0);
+			for (Message m: CHANGES) {
+				if (c == m.code)
+					return true;
+			}
+		}
+		return false;
+	}
+
 	/** Lookup a message from the specified message code */
 	static protected Message lookupMessage(char code) throws ProtocolError {
 		for (Message m: MESSAGES)
@@ -74,6 +92,14 @@ public class ConnectionImpl extends Conduit implements Connection {
 		throw ProtocolError.invalidMessageCode();
 	}
 
+	/** Number of encoded bytes waiting to be sent before a client is
+	 * considered backlogged.  Attribute notifications for backlogged
+	 * clients are queued (and coalesced) in the outbound queue. */
+	static private final int BACKLOG_BYTES = 1 << 16;
+
+	/** Number of queued notifications or objects to encode at once */
+	static private final int DRAIN_CHUNK = 64;
+
 	/** Random number generator for session IDs */
 	static protected final Random RAND = new Random();
 
@@ -144,16 +170,28 @@ public class ConnectionImpl extends Conduit implements Connection {
 	/** Inet address of client */
 	private final InetAddress address;
 
-	/** SSL state for encrypting network data */
+	/** SSL state for encrypting network data.  With more than one task
+	 * processor thread, notifications can be encoded on a different
+	 * thread than message processing, so all encoder access must be
+	 * synchronized on this object. */
 	protected final SSLState state;
 
 	/** Set of names the connection is watching */
 	protected final Set<String> watching = new HashSet<String>();
 
+	/** Outbound queue for attribute notifications (protected by state
+	 * lock) */
+	private final OutboundQueue outbound = new OutboundQueue();
+
 	/** Phantom object for setting attributes before storing a new object
 	 * in the database. */
 	protected SonarObject phantom;
 
+	/** Count of messages handed to the namespace lane, but not yet
+	 * processed (protected by state lock).  While this is non-zero, all
+	 * messages are handed off, to keep them in order. */
+	private int n_handoff;
+
 	/** Create a new connection */
 	public ConnectionImpl(TaskProcessor p, SelectionKey k, SocketChannel c)
 		throws SSLException, IOException
@@ -197,6 +235,20 @@ public class ConnectionImpl extends Conduit implements Connection {
 		}
 	}
 
+	/** Get the types which are being watched, including types of any
+	 * individually watched objects */
+	private Set<String> getWatchedTypes() {
+		LinkedHashSet<String> types = new LinkedHashSet<String>();
+		synchronized (watching) {
+			for (String w: watching) {
+				Name name = new Name(w);
+				if (isWatchPositive(name))
+					types.add(name.getTypePart());
+			}
+		}
+		return types;
+	}
+
 	/** Check if the connection is watching a name */
 	protected boolean isWatching(Name name) {
 		synchronized (watching) {
@@ -224,6 +276,9 @@ public class ConnectionImpl extends Conduit implements Connection {
 		synchronized (watching) {
 			watching.clear();
 		}
+		synchronized (state) {
+			outbound.clear();
+		}
 		processor.disconnect(skey);
 		try {
 			channel.close();
@@ -285,72 +340,201 @@ public class ConnectionImpl extends Conduit implements Connection {
 	}
 
 	/** Notify the client of a new object being added.
-	 * This may only be called on the Task Processor thread. */
-	protected void notifyObject(SonarObject o) {
-		try {
-			namespace.enumerateObject(state.encoder, o);
-			flush();
-		}
-		catch (SonarException e) {
-			disconnect("Notify error: " + e.getMessage());
-		}
-		catch (IOException e) {
-			disconnect("Notify error: " + e.getMessage());
+	 * This may only be called on the Task Processor thread.
+	 * @param frame Encoded object enumeration (shared by all clients). */
+	void notifyObject(byte[] frame) {
+		synchronized (state) {
+			try {
+				encodeFrame(frame);
+			}
+			catch (IOException e) {
+				disconnect("Notify error: " + e.getMessage());
+			}
 		}
 	}
 
-	/** Notify the client of a new object being added.
+	/** Check if the client should be notified of an attribute change.
 	 * This may only be called on the Task Processor thread. */
-	void notifyObject(Name name, SonarObject o) {
-		if (isWatching(name))
-			notifyObject(o);
+	boolean canNotifyAttribute(Name name) {
+		User u = user;
+		return u != null &&
+		       isWatching(name) &&
+		       namespace.canRead(name, u, address);
 	}
 
 	/** Notify the client of an attribute change.
-	 * This may only be called on the Task Processor thread. */
-	void notifyAttribute(Name name, String[] params) {
-		User u = user;
-		if (u != null &&
-		    isWatching(name) &&
-		    namespace.canRead(name, u, address))
-		{
-			notifyAttribute(name.toString(), params);
+	 * This may only be called on the Task Processor thread.
+	 * @param name Attribute name.
+	 * @param frame Encoded ATTRIBUTE message (shared by all clients). */
+	void notifyAttribute(String name, byte[] frame) {
+		synchronized (state) {
+			if (outbound.hasWork() || isBacklogged()) {
+				queueAttribute(name, frame);
+				return;
+			}
+			try {
+				state.encoder.write(frame);
+				flush();
+			}
+			catch (IOException e) {
+				disconnect("I/O error: notifyAttribute " +
+					name);
+			}
 		}
 	}
 
-	/** Notify the client of an attribute change.
-	 * This may only be called on the Task Processor thread. */
-	private void notifyAttribute(String name, String[] params) {
-		try {
-			state.encoder.encode(Message.ATTRIBUTE, name, params);
-			flush();
+	/** Get the number of encoded bytes waiting to be sent.
+	 * This may only be called while holding the state lock. */
+	private int encodedBytes() {
+		return state.encoder.getBuffer().position();
+	}
+
+	/** Check if the client is backlogged.
+	 * This may only be called while holding the state lock. */
+	private boolean isBacklogged() {
+		return encodedBytes() >= BACKLOG_BYTES;
+	}
+
+	/** Queue an attribute notification for a backlogged client.
+	 * This may only be called while holding the state lock. */
+	private void queueAttribute(String name, byte[] frame) {
+		if (!outbound.put(name, frame, encodedBytes())) {
+			int n_coalesced = outbound.takeCoalesced();
+			Set<String> types = getWatchedTypes();
+			int n_dropped = outbound.overflow(types);
+			TaskProcessor.DEBUG.log("Outbound overflow on " +
+				getName() + ", " + getUserName() +
+				": dropped " + n_dropped + ", coalesced " +
+				n_coalesced + ", resync " + types);
 		}
-		catch (IOException e) {
-			disconnect("I/O error: notifyAttribute " + name);
+		checkOutbound();
+	}
+
+	/** Encode all pending attribute notifications.  This is needed before
+	 * encoding any other message, to keep notifications in order.
+	 * This may only be called while holding the state lock. */
+	private void encodePending() throws IOException {
+		byte[] frame = outbound.poll();
+		while (frame != null) {
+			state.encoder.write(frame);
+			frame = outbound.poll();
 		}
 	}
 
-	/** Notify the client of a name being removed.
-	 * This may only be called on the Task Processor thread. */
-	void notifyRemove(Name name) {
-		if (isWatching(name)) {
-			notifyRemove(name.toString());
-			stopWatching(name);
+	/** Encode an OBJECT or REMOVE frame, after any pending attribute
+	 * notifications.  These frames can't be coalesced, so they count
+	 * against the same budget as the outbound queue.  A client too far
+	 * behind is disconnected, and enumerates again after reconnecting.
+	 * This may only be called while holding the state lock. */
+	private void encodeFrame(byte[] frame) throws IOException {
+		if (!isConnected())
+			return;
+		encodePending();
+		if (encodedBytes() + frame.length > OutboundQueue.MAX_BYTES) {
+			disconnect("Outbound overflow");
+			return;
 		}
+		state.encoder.write(frame);
+		flush();
 	}
 
-	/** Notify the client of a name being removed.
-	 * This may only be called on the Task Processor thread. */
-	protected void notifyRemove(String name) {
-		try {
-			state.encoder.encode(Message.REMOVE, name);
-			flush();
+	/** Check if the outbound queue should be drained.
+	 * This may only be called while holding the state lock. */
+	private void checkOutbound() {
+		if (outbound.hasWork() && !isBacklogged() &&
+		    outbound.scheduleDrain())
+			processor.drainOutbound(this);
+	}
+
+	/** Drain queued notifications until the client is backlogged.
+	 * This may only be called on the namespace lane. */
+	void drainOutbound() {
+		synchronized (state) {
+			outbound.clearDrain();
+			if (!isConnected())
+				return;
+			try {
+				while (outbound.hasWork() && !isBacklogged()) {
+					encodeOutbound();
+					state.encoder.flush();
+				}
+				startWrite();
+			}
+			catch (SonarException e) {
+				disconnect("Drain error: " + e.getMessage());
+			}
+			catch (IOException e) {
+				disconnect("I/O error: drainOutbound " +
+					e.getMessage());
+			}
 		}
-		catch (IOException e) {
-			disconnect("I/O error: notifyRemove " + name);
+	}
+
+	/** Encode one chunk of queued notifications.
+	 * This may only be called while holding the state lock. */
+	private void encodeOutbound() throws SonarException, IOException {
+		if (outbound.hasPending()) {
+			for (int i = 0; i < DRAIN_CHUNK; i++) {
+				byte[] frame = outbound.poll();
+				if (null == frame)
+					break;
+				state.encoder.write(frame);
+			}
+		} else
+			encodeResync();
+	}
+
+	/** Encode one chunk of objects being resynchronized.
+	 * This may only be called while holding the state lock. */
+	private void encodeResync() throws SonarException, IOException {
+		Iterator<SonarObject> it = outbound.resyncIterator(namespace);
+		if (null == it)
+			return;
+		String tname = outbound.getResyncType();
+		User u = user;
+		boolean readable = u != null &&
+			namespace.canRead(new Name(tname), u, address);
+		String[] attrs = namespace.getGettableAttributes(tname);
+		for (int i = 0; i < DRAIN_CHUNK && it.hasNext(); i++) {
+			SonarObject o = it.next();
+			// Skip objects removed since iteration started
+			if (readable &&
+			    namespace.lookupObject(tname, o.getName()) == o)
+				encodeResync(o, attrs);
+		}
+	}
+
+	/** Encode all watched attributes of one object.
+	 * This may only be called while holding the state lock. */
+	private void encodeResync(SonarObject o, String[] attrs)
+		throws SonarException, IOException
+	{
+		for (String a: attrs) {
+			Name name = new Name(o, a);
+			if (isWatching(name)) {
+				String[] v = namespace.getAttribute(o, a);
+				state.encoder.encode(Message.ATTRIBUTE,
+					name.toString(), v);
+			}
 		}
 	}
 
+	/** Notify the client of a name being removed.
+	 * This may only be called on the Task Processor thread.
+	 * @param name Name being removed.
+	 * @param frame Encoded REMOVE message (shared by all clients). */
+	void notifyRemove(Name name, byte[] frame) {
+		synchronized (state) {
+			try {
+				encodeFrame(frame);
+			}
+			catch (IOException e) {
+				disconnect("I/O error: notifyRemove " + name);
+			}
+		}
+		stopWatching(name);
+	}
+
 	/** Check that the client is logged in */
 	protected void checkLoggedIn() throws SonarException {
 		if (user == null)
@@ -362,14 +546,16 @@ public class ConnectionImpl extends Conduit implements Connection {
 	void processMessages() {
 		if (!isConnected())
 			return;
-		try {
-			_processMessages();
-		}
-		catch (SSLException e) {
-			disconnect("SSL error " + e.getMessage());
-		}
-		catch (IOException e) {
-			disconnect("I/O error: processMessages");
+		synchronized (state) {
+			try {
+				_processMessages();
+			}
+			catch (SSLException e) {
+				disconnect("SSL error " + e.getMessage());
+			}
+			catch (IOException e) {
+				disconnect("I/O error: processMessages");
+			}
 		}
 	}
 
@@ -379,13 +565,43 @@ public class ConnectionImpl extends Conduit implements Connection {
 		while (state.doRead()) {
 			List<String> params = state.decoder.decode();
 			while (params != null) {
-				processMessage(params);
+				if (shouldHandoff(params)) {
+					n_handoff++;
+					processor.handoffMessage(this, params);
+				} else
+					processMessage(params);
 				params = state.decoder.decode();
 			}
 		}
 		flush();
 	}
 
+	/** Check if a message should be handed off to the namespace lane.
+	 * Messages which change the namespace may only be processed there,
+	 * since object setters assume a single thread. */
+	private boolean shouldHandoff(List<String> params) {
+		return !processor.isNamespaceLane() &&
+		       (n_handoff > 0 || isChange(params));
+	}
+
+	/** Process a message which was handed off to the namespace lane.
+	 * This may only be called on the namespace lane. */
+	void processHandoff(List<String> params) {
+		synchronized (state) {
+			n_handoff--;
+			if (!isConnected())
+				return;
+			try {
+				processMessage(params);
+			}
+			catch (IOException e) {
+				disconnect("I/O error: processHandoff");
+				return;
+			}
+			flush();
+		}
+	}
+
 	/** Process one message from the client.
 	 * This may only be called on the Task Processor thread. */
 	protected void processMessage(List<String> params)
@@ -442,16 +658,20 @@ public class ConnectionImpl extends Conduit implements Connection {
 	 * This may only be called on the Task Processor thread. */
 	@Override
 	public void flush() {
-		try {
-			state.encoder.flush();
-			if (isConnected())
-				startWrite();
-		}
-		catch (BufferOverflowException e) {
-			disconnect("Buffer overflow error");
-		}
-		catch (IOException e) {
-			disconnect("I/O error: " + e.getMessage());
+		synchronized (state) {
+			try {
+				state.encoder.flush();
+				if (isConnected()) {
+					startWrite();
+					checkOutbound();
+				}
+			}
+			catch (BufferOverflowException e) {
+				disconnect("Buffer overflow error");
+			}
+			catch (IOException e) {
+				disconnect("I/O error: " + e.getMessage());
+			}
 		}
 	}
 
@@ -476,29 +696,37 @@ public class ConnectionImpl extends Conduit implements Connection {
 	/** Finish a LOGIN after user has been authenticated.
 	 * This may only be called on the Task Processor thread. */
 	public void finishLogin(UserImpl u) {
-		try {
-			user = u;
-			// The first TYPE message indicates a successful login
-			state.encoder.encode(Message.TYPE);
-			// Send the connection name to the client first
-			state.encoder.encode(Message.SHOW, hostport);
-			flush();
-		}
-		catch (IOException e) {
-			disconnect("I/O error: finishLogin " + e.getMessage());
+		synchronized (state) {
+			try {
+				user = u;
+				// The first TYPE message indicates a
+				// successful login
+				state.encoder.encode(Message.TYPE);
+				// Send the connection name to the client first
+				state.encoder.encode(Message.SHOW, hostport);
+				flush();
+			}
+			catch (IOException e) {
+				disconnect("I/O error: finishLogin " +
+					e.getMessage());
+			}
 		}
 	}
 
 	/** Fail a LOGIN attempt.
 	 * This may only be called on the Task Processor thread. */
 	public void failLogin() {
-		try {
-			state.encoder.encode(Message.SHOW, PermissionDenied.
-				authenticationFailed().getMessage());
-			flush();
-		}
-		catch (IOException e) {
-			disconnect("I/O error: failLogin " + e.getMessage());
+		synchronized (state) {
+			try {
+				state.encoder.encode(Message.SHOW,
+					PermissionDenied.authenticationFailed()
+					.getMessage());
+				flush();
+			}
+			catch (IOException e) {
+				disconnect("I/O error: failLogin " +
+					e.getMessage());
+			}
 		}
 	}
 
@@ -515,12 +743,15 @@ public class ConnectionImpl extends Conduit implements Connection {
 
 	/** Fail a PASSWORD change attempt */
 	public void failPassword(String msg) {
-		try {
-			state.encoder.encode(Message.SHOW, msg);
-			flush();
-		}
-		catch (IOException e) {
-			disconnect("I/O error: failPassword " + e.getMessage());
+		synchronized (state) {
+			try {
+				state.encoder.encode(Message.SHOW, msg);
+				flush();
+			}
+			catch (IOException e) {
+				disconnect("I/O error: failPassword " +
+					e.getMessage());
+			}
 		}
 	}
 
@@ -0,0 +1,164 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import us.mn.state.dot.sonar.SonarObject;
+
+/**
+ * An outbound queue holds attribute notifications for a client connection
+ * which is too far behind to encode them immediately.  Only the latest
+ * pending value for each attribute name is kept.  If the queue exceeds its
+ * memory budget, all pending values are dropped and the watched types are
+ * resynchronized instead.
+ *
+ * All methods must be called while holding the connection's state lock.
+ *
+ * @author Douglas Lau
+ */
+public class OutboundQueue {
+
+	/** Maximum number of bytes (pending and encoded) for one client */
+	static public final int MAX_BYTES = 4 << 20;
+
+	/** Pending attribute frames, mapped by attribute name */
+	private final LinkedHashMap<String, byte[]> pending =
+		new LinkedHashMap<String, byte[]>();
+
+	/** Total size of pending frames (bytes) */
+	private int pending_bytes = 0;
+
+	/** Count of notifications superseded by a newer value */
+	private int n_coalesced = 0;
+
+	/** Types waiting to be resynchronized */
+	private final LinkedList<String> resync_types =
+		new LinkedList<String>();
+
+	/** Type currently being resynchronized */
+	private String resync_type;
+
+	/** Iterator of objects of type being resynchronized */
+	private Iterator<SonarObject> resync_it;
+
+	/** Flag to indicate a drain task has been scheduled */
+	private boolean drain_scheduled = false;
+
+	/** Check if there is any queued work */
+	public boolean hasWork() {
+		return hasPending() || isResyncing();
+	}
+
+	/** Check if there are any pending attribute values */
+	public boolean hasPending() {
+		return !pending.isEmpty();
+	}
+
+	/** Check if a resync is in progress */
+	public boolean isResyncing() {
+		return resync_it != null || !resync_types.isEmpty();
+	}
+
+	/** Put a pending attribute value.
+	 * @param name Attribute name.
+	 * @param frame Encoded ATTRIBUTE message.
+	 * @param encoded Number of bytes already encoded for the client.
+	 * @return true if value was queued, false if over budget. */
+	public boolean put(String name, byte[] frame, int encoded) {
+		byte[] prev = pending.put(name, frame);
+		if (prev != null) {
+			pending_bytes -= prev.length;
+			n_coalesced++;
+		}
+		pending_bytes += frame.length;
+		return encoded + pending_bytes <= MAX_BYTES;
+	}
+
+	/** Remove the oldest pending attribute value.
+	 * @return Encoded ATTRIBUTE message, or null if none are pending. */
+	public byte[] poll() {
+		Iterator<byte[]> it = pending.values().iterator();
+		if (it.hasNext()) {
+			byte[] frame = it.next();
+			it.remove();
+			pending_bytes -= frame.length;
+			return frame;
+		} else
+			return null;
+	}
+
+	/** Get the count of superseded notifications, and reset it */
+	public int takeCoalesced() {
+		int n = n_coalesced;
+		n_coalesced = 0;
+		return n;
+	}
+
+	/** Drop all pending values and start a resync.
+	 * @param types Watched types to resynchronize.
+	 * @return Number of pending values dropped. */
+	public int overflow(Iterable<String> types) {
+		int n = pending.size();
+		pending.clear();
+		pending_bytes = 0;
+		resync_types.clear();
+		resync_type = null;
+		resync_it = null;
+		for (String t: types)
+			resync_types.add(t);
+		return n;
+	}
+
+	/** Get the type currently being resynchronized */
+	public String getResyncType() {
+		return resync_type;
+	}
+
+	/** Get an iterator of objects being resynchronized.
+	 * @param ns Namespace to iterate.
+	 * @return Object iterator, or null if resync is complete. */
+	public Iterator<SonarObject> resyncIterator(ServerNamespace ns) {
+		while (resync_it == null || !resync_it.hasNext()) {
+			if (resync_types.isEmpty()) {
+				resync_type = null;
+				resync_it = null;
+				return null;
+			}
+			resync_type = resync_types.removeFirst();
+			resync_it = ns.iterator(resync_type);
+		}
+		return resync_it;
+	}
+
+	/** Check whether a drain task needs to be scheduled.  This sets the
+	 * scheduled flag if it was not already set. */
+	public boolean scheduleDrain() {
+		boolean s = drain_scheduled;
+		drain_scheduled = true;
+		return !s;
+	}
+
+	/** Clear the drain scheduled flag */
+	public void clearDrain() {
+		drain_scheduled = false;
+	}
+
+	/** Clear everything */
+	public void clear() {
+		overflow(new LinkedList<String>());
+	}
+}
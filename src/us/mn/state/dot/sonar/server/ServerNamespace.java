@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2017  Minnesota Department of Transportation
+ * Copyright (C) 2006-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -120,6 +120,25 @@ public class ServerNamespace extends Namespace {
 			throw NamespaceError.nameInvalid(name);
 	}
 
+	/** Get the value of an attribute of an object */
+	String[] getAttribute(SonarObject o, String a) throws SonarException {
+		TypeNode t = getTypeNode(o);
+		return t.getValue(o, a);
+	}
+
+	/** Invalidate the cached enumeration of an object */
+	void invalidate(SonarObject o) {
+		TypeNode t = _getTypeNode(o.getTypeName());
+		if (t != null)
+			t.invalidate(o);
+	}
+
+	/** Get the gettable attributes of a type */
+	String[] getGettableAttributes(String tname) {
+		TypeNode t = _getTypeNode(tname);
+		return (t != null) ? t.getGettableAttributes() : new String[0];
+	}
+
 	/** Remove an object from the namespace */
 	void removeObject(SonarObject o) throws SonarException {
 		TypeNode n = getTypeNode(o);
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2019  Minnesota Department of Transportation
+ * Copyright (C) 2006-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -35,9 +35,12 @@ import us.mn.state.dot.sched.Work;
 import us.mn.state.dot.sched.Worker;
 import static us.mn.state.dot.sched.TimeSteward.currentTimeMillis;
 import us.mn.state.dot.sonar.ConfigurationError;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageEncoder;
 import us.mn.state.dot.sonar.Name;
 import us.mn.state.dot.sonar.Namespace;
 import us.mn.state.dot.sonar.NamespaceError;
+import us.mn.state.dot.sonar.Props;
 import us.mn.state.dot.sonar.Security;
 import us.mn.state.dot.sonar.SonarException;
 import us.mn.state.dot.sonar.SonarObject;
@@ -59,6 +62,23 @@ public class TaskProcessor {
 	/** SONAR time debug log */
 	static final DebugLog DEBUG_TIME = new DebugLog("sonar_time");
 
+	/** SONAR task statistics debug log */
+	static private final DebugLog DEBUG_STATS =
+		new DebugLog("sonar_stats");
+
+	/** Maximum number of task processor threads */
+	static private final int MAX_THREADS = 32;
+
+	/** Get the number of task processor threads */
+	static private int getThreads(Properties props)
+		throws ConfigurationError
+	{
+		if (props.getProperty("sonar.task.threads") == null)
+			return 1;
+		int n = Props.getIntProp(props, "sonar.task.threads");
+		return Math.max(1, Math.min(n, MAX_THREADS));
+	}
+
 	/** Debug a task */
 	static private void debugTask(String msg, ConnectionImpl c) {
 		if (DEBUG_TASK.isOpen()) {
@@ -85,9 +105,10 @@ public class TaskProcessor {
 	}
 
 	/** Task processor work */
-	static abstract private class TaskWork extends Work {
+	abstract private class TaskWork extends Work {
 		private final String name;
 		private final ConnectionImpl conn;
+		private long queued;
 		private TaskWork(String n, ConnectionImpl c) {
 			name = n;
 			conn = c;
@@ -96,7 +117,8 @@ public class TaskProcessor {
 			this(n, null);
 		}
 		@Override public final void perform() throws Exception {
-			final boolean op = DEBUG_TIME.isOpen();
+			final boolean so = stats.isOpen();
+			final boolean op = so || DEBUG_TIME.isOpen();
 			final long st = (op) ? currentTimeMillis() : 0;
 			try {
 				debugTask(name, conn);
@@ -106,6 +128,9 @@ public class TaskProcessor {
 				if (op) {
 					long el = currentTimeMillis() - st;
 					debugElapsed(name, el);
+					if (so)
+						recordStats(name, st - queued,
+							el);
 				}
 			}
 		}
@@ -131,10 +156,8 @@ public class TaskProcessor {
 	/** SSL context */
 	private final SSLContext context;
 
-	/** Task processor worker */
-	private final Worker processor = new Worker("sonar_proc",
- 		new ExceptionHandler()
-	{
+	/** Task processor exception handler */
+	private final ExceptionHandler handler = new ExceptionHandler() {
 		public boolean handle(Exception e) {
 			if (e instanceof CancelledKeyException)
 				DEBUG.log("Key already cancelled");
@@ -146,7 +169,21 @@ public class TaskProcessor {
 			}
 			return true;
 		}
-	});
+	};
+
+	/** Task processor workers.  The first one is the namespace lane,
+	 * which performs all namespace changes and client notifications.
+	 * With more than one worker, the others are connection lanes --
+	 * all I/O and message decoding for one connection is performed (in
+	 * order) on the same connection lane.  Messages which change the
+	 * namespace are handed off to the namespace lane. */
+	private final Worker[] lanes;
+
+	/** Encoder for object enumeration frames (namespace lane only) */
+	private final MessageEncoder frame_enc;
+
+	/** Task statistics */
+	private final TaskStats stats = new TaskStats(DEBUG_STATS);
 
 	/** Authenticator for user credentials */
 	private final Authenticator authenticator;
@@ -165,8 +202,8 @@ public class TaskProcessor {
 	/** Regex to match cipher suites */
 	private final String cipher_suites;
 
-	/** User for current message processing */
-	private String proc_user = null;
+	/** User for current message processing (on each lane) */
+	private final ThreadLocal<String> proc_user = new ThreadLocal<String>();
 
 	/** Create a task processor */
 	public TaskProcessor(ServerNamespace n, Properties props,
@@ -174,6 +211,8 @@ public class TaskProcessor {
 	{
 		namespace = n;
 		access_monitor = am;
+		lanes = createLanes(getThreads(props));
+		frame_enc = new MessageEncoder(0);
 		authenticator = new Authenticator(this);
 		context = Security.createContext(props);
 		LDAPSocketFactory.FACTORY = context.getSocketFactory();
@@ -186,6 +225,84 @@ public class TaskProcessor {
 		cipher_suites = props.getProperty("sonar.cipher.suites");
 	}
 
+	/** Create task processor workers */
+	private Worker[] createLanes(int n_threads) {
+		Worker[] w = new Worker[n_threads];
+		w[0] = new Worker("sonar_proc", handler);
+		for (int i = 1; i < n_threads; i++)
+			w[i] = new Worker("sonar_proc_" + i, handler);
+		return w;
+	}
+
+	/** Get the namespace lane */
+	private Worker namespaceLane() {
+		return lanes[0];
+	}
+
+	/** Get the connection lane for a selection key */
+	private Worker connectionLane(SelectionKey skey) {
+		int n_conn = lanes.length - 1;
+		return (n_conn > 0)
+		      ? lanes[1 + Math.floorMod(skey.hashCode(), n_conn)]
+		      : lanes[0];
+	}
+
+	/** Get the connection lane for a connection */
+	private Worker connectionLane(ConnectionImpl c) {
+		return connectionLane(c.skey);
+	}
+
+	/** Check if the current thread is the namespace lane.  This is always
+	 * true with only one task processor thread, to keep the original
+	 * (single-threaded) behavior. */
+	boolean isNamespaceLane() {
+		return lanes.length == 1 || namespaceLane().isCurrentThread();
+	}
+
+	/** Add a task to a lane */
+	private void addTask(Worker w, TaskWork t) {
+		t.queued = currentTimeMillis();
+		w.addWork(t);
+	}
+
+	/** Add a task to the namespace lane */
+	private void addNamespaceTask(TaskWork t) {
+		addTask(namespaceLane(), t);
+	}
+
+	/** Add a task to the lane for a connection */
+	private void addConnectionTask(ConnectionImpl c, TaskWork t) {
+		addTask(connectionLane(c), t);
+	}
+
+	/** Get the total count of queued tasks */
+	private int queueSize() {
+		int n = 0;
+		for (Worker w: lanes)
+			n += w.size();
+		return n;
+	}
+
+	/** Record statistics for one task */
+	private void recordStats(String name, long q, long e) {
+		stats.record(name, q, e);
+		if (stats.shouldLog())
+			stats.log(describeQueues());
+	}
+
+	/** Describe the queue depth of all lanes */
+	private String describeQueues() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lanes.length; i++) {
+			if (i > 0)
+				sb.append(", ");
+			sb.append(i);
+			sb.append('=');
+			sb.append(lanes[i].size());
+		}
+		return sb.toString();
+	}
+
 	/** Add an authentication provider */
 	public void addProvider(AuthProvider ap) {
 		authenticator.addProvider(ap);
@@ -198,7 +315,7 @@ public class TaskProcessor {
 
 	/** Get user for current message processing */
 	public String getProcUser() {
-		return proc_user;
+		return proc_user.get();
 	}
 
 	/** Get a list of active connections */
@@ -218,7 +335,7 @@ public class TaskProcessor {
 	public void scheduleConnect(final SelectionKey skey,
 		final SocketChannel sc)
 	{
-		processor.addWork(new TaskWork("Connect") {
+		addTask(connectionLane(skey), new TaskWork("Connect") {
 			protected void doPerform() throws Exception {
 				try {
 					doConnect(skey, sc);
@@ -235,10 +352,10 @@ public class TaskProcessor {
 
 	/** Create a client connection */
 	private void doConnect(SelectionKey skey, SocketChannel sc)
-		throws IOException, NamespaceError
+		throws IOException
 	{
 		ConnectionImpl con = new ConnectionImpl(this, skey, sc);
-		doAddObject(con);
+		scheduleAddObject(con);
 		access_monitor.connect(con.getName());
 		synchronized (clients) {
 			clients.put(skey, con);
@@ -251,7 +368,7 @@ public class TaskProcessor {
 
 	/** Schedule a disconnect on a selection key */
 	public void scheduleDisconnect(final SelectionKey skey) {
-		processor.addWork(new TaskWork("Disconnect key") {
+		addTask(connectionLane(skey), new TaskWork("Disconnect key") {
 			protected void doPerform() {
 				disconnect(skey);
 			}
@@ -262,7 +379,7 @@ public class TaskProcessor {
 	public void scheduleDisconnect(final ConnectionImpl c,
 		final String msg)
 	{
-		processor.addWork(new TaskWork("Disconnect", c) {
+		addConnectionTask(c, new TaskWork("Disconnect", c) {
 			protected void doPerform() {
 				if (msg != null)
 					c.disconnect(msg);
@@ -313,24 +430,60 @@ public class TaskProcessor {
 
 	/** Process messages on one connection */
 	void processMessages(final ConnectionImpl c) {
-		processor.addWork(new TaskWork("Processing msgs", c) {
+		addConnectionTask(c, new TaskWork("Processing msgs", c) {
 			protected void doPerform() {
-				proc_user = c.getUserName();
-				c.processMessages();
-				proc_user = null;
+				proc_user.set(c.getUserName());
+				try {
+					c.processMessages();
+				}
+				finally {
+					proc_user.remove();
+				}
 			}
 		});
 	}
 
 	/** Flush outgoing data for one connection */
 	void flush(final ConnectionImpl c) {
-		processor.addWork(new TaskWork("Flush", c) {
+		addConnectionTask(c, new TaskWork("Flush", c) {
 			protected void doPerform() {
 				c.flush();
 			}
 		});
 	}
 
+	/** Hand off a message which changes the namespace to the namespace
+	 * lane */
+	void handoffMessage(final ConnectionImpl c,
+		final List<String> params)
+	{
+		addNamespaceTask(new TaskWork("Handoff msg", c) {
+			protected void doPerform() {
+				proc_user.set(c.getUserName());
+				try {
+					c.processHandoff(params);
+				}
+				finally {
+					proc_user.remove();
+				}
+			}
+		});
+	}
+
+	/** Drain the outbound queue for one connection.  This must be done
+	 * on the namespace lane to keep notifications in order. */
+	void drainOutbound(final ConnectionImpl c) {
+		if (isNamespaceLane())
+			c.drainOutbound();
+		else {
+			addNamespaceTask(new TaskWork("Drain outbound", c) {
+				protected void doPerform() {
+					c.drainOutbound();
+				}
+			});
+		}
+	}
+
 	/** Authenticate a user connection */
 	void authenticate(ConnectionImpl c, String name, char[] password) {
 		if (DEBUG.isOpen())
@@ -345,7 +498,7 @@ public class TaskProcessor {
 
 	/** Finish a LOGIN */
 	void finishLogin(final ConnectionImpl c, final UserImpl u) {
-		processor.addWork(new TaskWork("Finish LOGIN", c) {
+		addConnectionTask(c, new TaskWork("Finish LOGIN", c) {
 			protected void doPerform() {
 				access_monitor.authenticate(c.getName(),
 					u.getName());
@@ -359,7 +512,7 @@ public class TaskProcessor {
 	void failLogin(final ConnectionImpl c, final String name,
 		final boolean domain)
 	{
-		processor.addWork(new TaskWork("Fail LOGIN", c) {
+		addConnectionTask(c, new TaskWork("Fail LOGIN", c) {
 			protected void doPerform() {
 				if (domain) {
 					access_monitor.failDomain(c.getName(),
@@ -380,13 +533,14 @@ public class TaskProcessor {
 		authenticator.changePassword(c, u, pwd_current, pwd_new);
 	}
 
-	/** Finish a PASSWORD */
+	/** Finish a PASSWORD (on the namespace lane, since it changes the
+	 * user object) */
 	void finishPassword(final ConnectionImpl c, final UserImpl u,
 		char[] pwd_new)
 	{
 		// Need to copy password, since authenticator will clear it
 		final String pwd = new String(pwd_new);
-		processor.addWork(new TaskWork("Finish PASSWORD", c) {
+		addNamespaceTask(new TaskWork("Finish PASSWORD", c) {
 			protected void doPerform() {
 				try {
 					u.doSetPassword(pwd);
@@ -402,7 +556,7 @@ public class TaskProcessor {
 
 	/** Fail a PASSWORD */
 	void failPassword(final ConnectionImpl c, final String msg) {
-		processor.addWork(new TaskWork("Fail PASSWORD", c) {
+		addConnectionTask(c, new TaskWork("Fail PASSWORD", c) {
 			protected void doPerform() {
 				c.failPassword(msg);
 				access_monitor.failPassword(c.getName(),
@@ -440,33 +594,122 @@ public class TaskProcessor {
 	}
 
 	/** Notify all connections watching a name of an object add. */
-	private void notifyObject(SonarObject o) {
+	private void notifyObject(final SonarObject o) {
+		if (isNamespaceLane())
+			doNotifyObject(o);
+		else {
+			addNamespaceTask(new TaskWork("Notify object") {
+				protected void doPerform() {
+					doNotifyObject(o);
+				}
+			});
+		}
+	}
+
+	/** Notify all connections watching a name of an object add.
+	 * This may only be called on the namespace lane. */
+	private void doNotifyObject(SonarObject o) {
 		Name name = new Name(o);
-		for (ConnectionImpl c: getConnectionList())
-			c.notifyObject(name, o);
+		byte[] frame = null;
+		for (ConnectionImpl c: getConnectionList()) {
+			if (c.isWatching(name)) {
+				if (null == frame)
+					frame = encodeObject(o);
+				if (null == frame)
+					return;
+				c.notifyObject(frame);
+			}
+		}
+	}
+
+	/** Encode an object enumeration into a frame.
+	 * This may only be called on the namespace lane.
+	 * @return Encoded frame, or null on error. */
+	private byte[] encodeObject(SonarObject o) {
+		try {
+			namespace.enumerateObject(frame_enc, o);
+			return frame_enc.takeFrame();
+		}
+		catch (SonarException | IOException e) {
+			DEBUG.log("Notify error: " + o.getName() + " " +
+				e.getMessage());
+			frame_enc.clear();
+			return null;
+		}
 	}
 
 	/** Notify all connections watching a name of an attribute change. */
-	void notifyAttribute(Name name, String[] params) {
+	void notifyAttribute(final Name name, final String[] params) {
+		if (isNamespaceLane())
+			doNotifyAttribute(name, params);
+		else {
+			addNamespaceTask(new TaskWork("Notify attribute") {
+				protected void doPerform() {
+					doNotifyAttribute(name, params);
+				}
+			});
+		}
+	}
+
+	/** Notify all connections watching a name of an attribute change.
+	 * This may only be called on the namespace lane. */
+	private void doNotifyAttribute(Name name, String[] params) {
 		if (DEBUG_TASK.isOpen()) {
 			debugTask("Notify attribute", name.toString() + " (" +
-				processor.size() + ")");
+				queueSize() + ")");
 		}
 		if (namespace.isGettable(name)) {
-			for (ConnectionImpl c: getConnectionList())
-				c.notifyAttribute(name, params);
+			String n = name.toString();
+			byte[] frame = null;
+			for (ConnectionImpl c: getConnectionList()) {
+				if (c.canNotifyAttribute(name)) {
+					if (null == frame) {
+						frame = encodeAttribute(n,
+							params);
+					}
+					c.notifyAttribute(n, frame);
+				}
+			}
 		}
 	}
 
+	/** Encode an attribute change into a frame */
+	static private byte[] encodeAttribute(String n, String[] params) {
+		return MessageEncoder.encodeFrame(Message.ATTRIBUTE, n, params);
+	}
+
 	/** Notify all connections watching a name of an object remove. */
-	void notifyRemove(Name name) {
-		for (ConnectionImpl c: getConnectionList())
-			c.notifyRemove(name);
+	void notifyRemove(final Name name) {
+		if (isNamespaceLane())
+			doNotifyRemove(name);
+		else {
+			addNamespaceTask(new TaskWork("Notify remove") {
+				protected void doPerform() {
+					doNotifyRemove(name);
+				}
+			});
+		}
+	}
+
+	/** Notify all connections watching a name of an object remove.
+	 * This may only be called on the namespace lane. */
+	private void doNotifyRemove(Name name) {
+		byte[] frame = null;
+		for (ConnectionImpl c: getConnectionList()) {
+			if (c.isWatching(name)) {
+				if (null == frame) {
+					frame = MessageEncoder.encodeFrame(
+						Message.REMOVE, name.toString(),
+						null);
+				}
+				c.notifyRemove(name, frame);
+			}
+		}
 	}
 
 	/** Schedule an object to be added to the server's namespace */
 	public void scheduleAddObject(final SonarObject o) {
-		processor.addWork(new TaskWork("Add object") {
+		addNamespaceTask(new TaskWork("Add object") {
 			protected void doPerform() throws NamespaceError {
 				doAddObject(o);
 			}
@@ -483,14 +726,14 @@ public class TaskProcessor {
 	/** Create (synchronously) an object in the server's namespace */
 	public void storeObject(final SonarObject o) throws SonarException {
 		// Calling waitForCompletion will hang if we're
-		// running on the task processor thread.
-		if (processor.isCurrentThread()) {
+		// running on the namespace lane.
+		if (isNamespaceLane()) {
 			doStoreObject(o);
 			return;
 		}
 		// Array used to capture exception from processor thread
 		final SonarException[] se = new SonarException[1];
-		Work w = new TaskWork("Store object") {
+		TaskWork w = new TaskWork("Store object") {
 			protected void doPerform() {
 				try {
 					doStoreObject(o);
@@ -500,7 +743,7 @@ public class TaskProcessor {
 				}
 			}
 		};
-		processor.addWork(w);
+		addNamespaceTask(w);
 		try {
 			// Only wait for 30 seconds before giving up
 			w.waitForCompletion(30000);
@@ -513,7 +756,8 @@ public class TaskProcessor {
 			throw new SonarException(se[0]);
 	}
 
-	/** Store an object in the server's namespace. */
+	/** Store an object in the server's namespace.
+	 * This may only be called on the namespace lane. */
 	void doStoreObject(SonarObject o) throws SonarException {
 		debugTask("Storing object", o.getName());
 		namespace.storeObject(o);
@@ -522,7 +766,7 @@ public class TaskProcessor {
 
 	/** Remove the specified object from the server's namespace */
 	public void scheduleRemoveObject(final SonarObject o) {
-		processor.addWork(new TaskWork("Remove object") {
+		addNamespaceTask(new TaskWork("Remove object") {
 			protected void doPerform() throws SonarException {
 				doRemoveObject(o);
 			}
@@ -539,7 +783,10 @@ public class TaskProcessor {
 	/** Set the specified attribute in the server's namespace */
 	public void scheduleSetAttribute(SonarObject o, String a) {
 		final Name name = new Name(o, a);
-		processor.addWork(new TaskWork("Set attribute") {
+		// Invalidate now, so no enumeration started after this call
+		// can use a cached frame with the old value
+		namespace.invalidate(o);
+		addNamespaceTask(new TaskWork("Set attribute") {
 			protected void doPerform() throws SonarException {
 				doSetAttribute(name);
 			}
@@ -0,0 +1,102 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import us.mn.state.dot.sched.DebugLog;
+import static us.mn.state.dot.sched.TimeSteward.currentTimeMillis;
+
+/**
+ * Task statistics keep track of queue latency and run time for each type of
+ * task performed by the task processor.
+ *
+ * @author Douglas Lau
+ */
+public class TaskStats {
+
+	/** Interval to log statistics (ms) */
+	static private final long LOG_INTERVAL_MS = 60 * 1000;
+
+	/** Statistics for one type of task */
+	static private class Stat {
+		private int count;
+		private long queued;
+		private long elapsed;
+		private long max_queued;
+		private long max_elapsed;
+		private void record(long q, long e) {
+			count++;
+			queued += q;
+			elapsed += e;
+			max_queued = Math.max(max_queued, q);
+			max_elapsed = Math.max(max_elapsed, e);
+		}
+		@Override public String toString() {
+			return "n=" + count +
+			       ", avg_queued=" + (queued / count) +
+			       ", max_queued=" + max_queued +
+			       ", avg_elapsed=" + (elapsed / count) +
+			       ", max_elapsed=" + max_elapsed;
+		}
+	}
+
+	/** Debug log for statistics */
+	private final DebugLog slog;
+
+	/** Mapping of task names to statistics */
+	private final TreeMap<String, Stat> stats = new TreeMap<String, Stat>();
+
+	/** Time stats were last logged */
+	private long logged = currentTimeMillis();
+
+	/** Create task statistics */
+	public TaskStats(DebugLog l) {
+		slog = l;
+	}
+
+	/** Check if statistics are being collected */
+	public boolean isOpen() {
+		return slog.isOpen();
+	}
+
+	/** Record statistics for one task.
+	 * @param name Task name.
+	 * @param q Time queued before starting (ms).
+	 * @param e Elapsed time performing task (ms). */
+	public synchronized void record(String name, long q, long e) {
+		Stat s = stats.get(name);
+		if (null == s) {
+			s = new Stat();
+			stats.put(name, s);
+		}
+		s.record(q, e);
+	}
+
+	/** Check if statistics should be logged */
+	public synchronized boolean shouldLog() {
+		return currentTimeMillis() - logged >= LOG_INTERVAL_MS;
+	}
+
+	/** Log all statistics and clear them.
+	 * @param depth Description of queue depths. */
+	public synchronized void log(String depth) {
+		logged = currentTimeMillis();
+		slog.log("queue depth: " + depth);
+		for (Map.Entry<String, Stat> e: stats.entrySet())
+			slog.log(e.getKey() + ": " + e.getValue());
+		stats.clear();
+	}
+}
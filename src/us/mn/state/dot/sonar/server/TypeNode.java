@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2017  Minnesota Department of Transportation
+ * Copyright (C) 2006-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import us.mn.state.dot.sonar.GroupChecker;
 import us.mn.state.dot.sonar.Message;
 import us.mn.state.dot.sonar.MessageEncoder;
@@ -26,6 +27,7 @@ import us.mn.state.dot.sonar.Namespace;
 import us.mn.state.dot.sonar.NamespaceError;
 import us.mn.state.dot.sonar.SonarException;
 import us.mn.state.dot.sonar.SonarObject;
+import static us.mn.state.dot.sched.TimeSteward.currentTimeMillis;
 
 /**
  * A type node represents the first-level nodes in the SONAR namespace. It
@@ -38,6 +40,25 @@ public class TypeNode {
 	/** Initial capacity of type hash */
 	static private final int INITIAL_CAPACITY = 256;
 
+	/** Maximum age of cached enumeration frames (ms).  Some attributes
+	 * are derived from state which changes without a notification (such
+	 * as controller status while communication is failed), so frames are
+	 * refreshed after this time even if never invalidated. */
+	static private final long FRAME_MAX_AGE_MS = 10 * 1000;
+
+	/** Cached enumeration frame of one object */
+	static private final class Frame {
+		private final byte[] data;
+		private final long stamp;
+		private Frame(byte[] d, long s) {
+			data = d;
+			stamp = s;
+		}
+		private boolean isExpired(long now) {
+			return now - stamp > FRAME_MAX_AGE_MS;
+		}
+	}
+
 	/** Type name */
 	public final String name;
 
@@ -54,6 +75,16 @@ public class TypeNode {
 	/** An attribute dispatcher can set and get attributes on objects */
 	private final AttributeDispatcher dispatcher;
 
+	/** Cached enumeration frames, mapped by object name.  These are
+	 * shared by all clients enumerating the type, so a login storm only
+	 * needs to call getters once per object. */
+	private final ConcurrentHashMap<String, Frame> snapshot =
+		new ConcurrentHashMap<String, Frame>(INITIAL_CAPACITY,
+		0.75f, 1);
+
+	/** Snapshot version, incremented whenever a frame is invalidated */
+	private final AtomicLong version = new AtomicLong();
+
 	/** Create a namespace type node */
 	public TypeNode(Namespace ns, String n, Class c, GroupChecker gc) {
 		name = n;
@@ -76,6 +107,7 @@ public class TypeNode {
 				throw NamespaceError.nameExists(name);
 			dispatcher.storeObject(o);
 			children.put(name, o);
+			invalidate(name);
 		}
 	}
 
@@ -85,8 +117,10 @@ public class TypeNode {
 		synchronized (children) {
 			if (children.containsKey(name))
 				throw NamespaceError.nameExists(name);
-			else
+			else {
 				children.put(name, o);
+				invalidate(name);
+			}
 		}
 	}
 
@@ -99,6 +133,7 @@ public class TypeNode {
 				throw NamespaceError.nameUnknown(n);
 			if (obj != o)
 				throw NamespaceError.nameExists(n);
+			invalidate(n);
 			try {
 				dispatcher.destroyObject(o);
 			}
@@ -119,6 +154,11 @@ public class TypeNode {
 		return dispatcher.isGettable(a);
 	}
 
+	/** Get an array of gettable attributes */
+	public String[] getGettableAttributes() {
+		return dispatcher.getGettableAttributes();
+	}
+
 	/** Get the value of an attribute */
 	public String[] getValue(SonarObject o, String a)
 		throws SonarException
@@ -132,8 +172,10 @@ public class TypeNode {
 	{
 		assert(o.getTypeName() == name);
 		boolean first = true;
-		for (String a: dispatcher.getGettableAttributes()) {
-			String[] v = getValue(o, a);
+		int n_attrs = dispatcher.getGettableCount();
+		for (int i = 0; i < n_attrs; i++) {
+			String a = dispatcher.getGettable(i);
+			String[] v = dispatcher.getValue(o, i);
 			if (first) {
 				a = new Name(o, a).toString();
 				first = false;
@@ -145,18 +187,70 @@ public class TypeNode {
 		enc.encode(Message.OBJECT, o.getName());
 	}
 
-	/** Enumerate all the objects of the type node */
+	/** Enumerate all the objects of the type node.  Cached frames from
+	 * the snapshot are used for objects which have not changed, unless
+	 * they have expired. */
 	public void enumerateObjects(MessageEncoder enc) throws SonarException,
 		IOException
 	{
+		MessageEncoder fenc = null;
+		long now = currentTimeMillis();
 		// We must synchronize here to ensure that no objects are
 		// added or removed while enumerating
 		synchronized (children) {
-			for (SonarObject o: children.values())
-				enumerateObject(enc, o);
+			for (SonarObject o: children.values()) {
+				Frame frame = snapshot.get(o.getName());
+				if (null == frame || frame.isExpired(now)) {
+					if (null == fenc)
+						fenc = new MessageEncoder(0);
+					frame = encodeFrame(fenc, o, now);
+				}
+				enc.write(frame.data);
+			}
 		}
 	}
 
+	/** Encode an object enumeration frame and cache it in the snapshot.
+	 * The frame is only kept if no invalidation happened while getting
+	 * attribute values. */
+	private Frame encodeFrame(MessageEncoder fenc, SonarObject o,
+		long now) throws SonarException, IOException
+	{
+		String n = o.getName();
+		long v = version.get();
+		try {
+			enumerateObject(fenc, o);
+		}
+		catch (SonarException | IOException e) {
+			fenc.clear();
+			throw e;
+		}
+		Frame frame = new Frame(fenc.takeFrame(), now);
+		snapshot.put(n, frame);
+		// Invalidate increments version before removing frames, so
+		// either this check or the invalidation removes a stale frame
+		if (version.get() != v)
+			snapshot.remove(n, frame);
+		return frame;
+	}
+
+	/** Invalidate the cached enumeration frame of an object.  This must
+	 * be called after an attribute of the object changes. */
+	public void invalidate(SonarObject o) {
+		invalidate(o.getName());
+	}
+
+	/** Invalidate the cached enumeration frame of an object */
+	private void invalidate(String n) {
+		version.incrementAndGet();
+		snapshot.remove(n);
+	}
+
+	/** Get the number of cached enumeration frames */
+	public int getSnapshotSize() {
+		return snapshot.size();
+	}
+
 	/** Set the value of an attribute.
 	 * @param name Attribute name in SONAR namespace.
 	 * @param v New attribute value.
@@ -168,7 +262,12 @@ public class TypeNode {
 		String aname = name.getAttributePart();
 		SonarObject o = children.get(oname);
 		if (o != null) {
-			dispatcher.setValue(o, aname, v);
+			try {
+				dispatcher.setValue(o, aname, v);
+			}
+			finally {
+				invalidate(oname);
+			}
 			return null;
 		} else {
 			o = dispatcher.createObject(oname);
@@ -181,7 +280,12 @@ public class TypeNode {
 	public void setField(SonarObject o, String a, String[] v)
 		throws SonarException
 	{
-		dispatcher.setField(o, a, v);
+		try {
+			dispatcher.setField(o, a, v);
+		}
+		finally {
+			invalidate(o.getName());
+		}
 	}
 
 	/** Get an iterator of all objects of the type */
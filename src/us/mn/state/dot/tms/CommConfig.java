@@ -131,4 +131,16 @@ public interface CommConfig extends SonarObject {
 
 	/** Get no response disconnect (seconds) */
 	int getNoResponseDisconnectSec();
+
+	/** Maximum pipeline depth */
+	int MAX_PIPELINE_DEPTH = 16;
+
+	/** Set pipeline depth (maximum number of drops polled at once).
+	 * This should only be enabled for links which can carry overlapping
+	 * responses, such as UDP or full-duplex links.  0 or 1 disables
+	 * pipelining. */
+	void setPipelineDepth(int d);
+
+	/** Get pipeline depth */
+	int getPipelineDepth();
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2008-2019  Minnesota Department of Transportation
+ * Copyright (C) 2008-2020  Minnesota Department of Transportation
  * Copyright (C) 2010  AHMCT, University of California
  *
  * This program is free software; you can redistribute it and/or modify
@@ -61,23 +61,42 @@ public class SignMessageHelper extends BaseHelper {
 	static public SignMessage find(SignConfig sc, String inc, String multi,
 		boolean be, DmsMsgPriority mp, int src, String owner, Integer d)
 	{
-		int mpi = mp.ordinal();
 		Iterator<SignMessage> it = iterator();
 		while (it.hasNext()) {
 			SignMessage sm = it.next();
-			if (objectEquals(sc, sm.getSignConfig()) &&
-			    objectEquals(inc, sm.getIncident()) &&
-			    multi.equals(sm.getMulti()) &&
-			    be == sm.getBeaconEnabled() &&
-			    mpi == sm.getMsgPriority() &&
-			    sourceEquals(src, sm) &&
-			    objectEquals(owner, sm.getOwner()) &&
-			    objectEquals(d, sm.getDuration()))
+			if (isMatching(sm, sc, inc, multi, be, mp, src, owner,
+			    d))
 				return sm;
 		}
 		return null;
 	}
 
+	/** Check if a sign message has matching attributes.
+	 * @param sm Sign message to check (may be null).
+	 * @param sc Sign configuration.
+	 * @param inc Associated incident (original name).
+	 * @param multi MULTI string.
+	 * @param be Beacon enabled flag.
+	 * @param mp Message priority.
+	 * @param src Message source.
+	 * @param owner Use name (null for any).
+	 * @param d Duration (null for indefinite).
+	 * @return true if sign message matches. */
+	static public boolean isMatching(SignMessage sm, SignConfig sc,
+		String inc, String multi, boolean be, DmsMsgPriority mp,
+		int src, String owner, Integer d)
+	{
+		return (sm != null) &&
+		       objectEquals(sc, sm.getSignConfig()) &&
+		       objectEquals(inc, sm.getIncident()) &&
+		       multi.equals(sm.getMulti()) &&
+		       be == sm.getBeaconEnabled() &&
+		       mp.ordinal() == sm.getMsgPriority() &&
+		       sourceEquals(src, sm) &&
+		       objectEquals(owner, sm.getOwner()) &&
+		       objectEquals(d, sm.getDuration());
+	}
+
 	/** Sign msg source bits to ignore */
 	static private final int SRC_IGNORE = SignMsgSource.toBits(
 		SignMsgSource.tolling,
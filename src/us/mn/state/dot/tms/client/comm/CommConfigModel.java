@@ -83,7 +83,7 @@ public class CommConfigModel extends ProxyTableModel<CommConfig> {
 	@Override
 	protected ArrayList<ProxyColumn<CommConfig>> createColumns() {
 		ArrayList<ProxyColumn<CommConfig>> cols =
-			new ArrayList<ProxyColumn<CommConfig>>(9);
+			new ArrayList<ProxyColumn<CommConfig>>(10);
 		cols.add(new ProxyColumn<CommConfig>("comm.config", 60) {
 			public Object getValueAt(CommConfig cc) {
 				return cc.getName();
@@ -208,6 +208,20 @@ public class CommConfigModel extends ProxyTableModel<CommConfig> {
 				return canWrite(cc, "noResponseDisconnectSec");
 			}
 		});
+		cols.add(new ProxyColumn<CommConfig>(
+			"comm.config.pipeline_depth", 92, Integer.class)
+		{
+			public Object getValueAt(CommConfig cc) {
+				return cc.getPipelineDepth();
+			}
+			public boolean isEditable(CommConfig cc) {
+				return canWrite(cc, "pipelineDepth");
+			}
+			public void setValueAt(CommConfig cc, Object value) {
+				if (value instanceof Integer)
+					cc.setPipelineDepth((Integer) value);
+			}
+		});
 		return cols;
 	}
 
@@ -66,6 +66,9 @@ public class CommConfigPanel extends ProxyPanel<CommConfig> {
 	/** No response disconnect label */
 	private final JLabel no_response_disconnect_lbl = createValueLabel();
 
+	/** Pipeline depth label */
+	private final JLabel pipeline_depth_lbl = createValueLabel();
+
 	/** User session */
 	private final Session session;
 
@@ -99,6 +102,8 @@ public class CommConfigPanel extends ProxyPanel<CommConfig> {
 		add(idle_disconnect_lbl, Stretch.LAST);
 		add("comm.config.no_response_disconnect_sec");
 		add(no_response_disconnect_lbl, Stretch.LAST);
+		add("comm.config.pipeline_depth");
+		add(pipeline_depth_lbl, Stretch.LAST);
 	}
 
 	/** Update the edit mode */
@@ -132,6 +137,8 @@ public class CommConfigPanel extends ProxyPanel<CommConfig> {
 			no_response_disconnect_lbl.setText(prettyPeriod(
 				cc.getNoResponseDisconnectSec()));
 		}
+		if (a == null || a.equals("pipelineDepth"))
+			pipeline_depth_lbl.setText("" + cc.getPipelineDepth());
 	}
 
 	/** Clear the view */
@@ -145,5 +152,6 @@ public class CommConfigPanel extends ProxyPanel<CommConfig> {
 		long_period_lbl.setText("");
 		idle_disconnect_lbl.setText("");
 		no_response_disconnect_lbl.setText("");
+		pipeline_depth_lbl.setText("");
 	}
 }
@@ -20,13 +20,11 @@ import java.sql.SQLException;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Date;
-import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sonar.SonarException;
 import us.mn.state.dot.sonar.SonarObject;
 import us.mn.state.dot.sonar.server.Server;
 import us.mn.state.dot.sonar.server.ServerNamespace;
 import us.mn.state.dot.tms.TMSException;
-import static us.mn.state.dot.tms.server.MainServer.FLUSH;
 import us.mn.state.dot.tms.server.event.BaseEvent;
 
 /**
@@ -45,89 +43,145 @@ abstract public class BaseObjectImpl implements Storable, SonarObject {
 	/** Corridor manager */
 	static public final CorridorManager corridors = new CorridorManager();
 
-	/** Load all objects from the database into the SONAR Namespace */
+	/** Load all objects from the database into the SONAR Namespace.
+	 * Each type is loaded after the types it depends on; independent
+	 * types are loaded in parallel. */
 	static void loadAll(SQLConnection s, ServerNamespace ns)
 		throws TMSException
 	{
 		store = s;
 		namespace = ns;
+		// System attributes are needed by everything
 		SystemAttributeImpl.loadAll();
-		GraphicImpl.loadAll();
-		FontImpl.loadAll();
-		GlyphImpl.loadAll();
-		RoadImpl.loadAll();
-		RoadAffixImpl.loadAll();
-		GeoLocImpl.loadAll();
-		MapExtentImpl.loadAll();
-		IncidentDetailImpl.loadAll();
-		CommConfigImpl.loadAll();
-		CommLinkImpl.loadAll();
-		ModemImpl.loadAll();
-		CabinetStyleImpl.loadAll();
-		CabinetImpl.loadAll();
-		ControllerImpl.loadAll();
-		SignConfigImpl.loadAll();
-		SignDetailImpl.loadAll();
-		DayMatcherImpl.loadAll();
-		DayPlanImpl.loadAll();
-		PlanPhaseImpl.loadAll();
-		ActionPlanImpl.loadAll();
-		R_NodeImpl.loadAll();
-		/* NOTE: must happen after r_nodes are loaded */
-		corridors.createCorridors();
-		AlarmImpl.loadAll();
-		GpsImpl.loadAll();
-		CameraTemplateImpl.loadAll();
-		VidSourceTemplateImpl.loadAll();
-		CameraVidSourceOrderImpl.loadAll();
-		DetectorImpl.loadAll();
-		TollZoneImpl.loadAll();
-		EncoderTypeImpl.loadAll();
-		EncoderStreamImpl.loadAll();
-		CameraImpl.loadAll();
-		CameraPresetImpl.loadAll();
-		PlayListImpl.loadAll();
-		CatalogImpl.loadAll();
-		MonitorStyleImpl.loadAll();
-		VideoMonitorImpl.loadAll();
-		FlowStreamImpl.loadAll();
-		BeaconImpl.loadAll();
-		WeatherSensorImpl.loadAll();
-		RampMeterImpl.loadAll();
-		SignMessageImpl.loadAll();
-		DMSImpl.loadAll();
-		SignGroupImpl.loadAll();
-		DmsSignGroupImpl.loadAll();
-		QuickMessageImpl.loadAll();
-		SignTextImpl.loadAll();
-		GateArmArrayImpl.loadAll();
-		GateArmImpl.loadAll();
-		TagReaderImpl.loadAll();
-		LaneMarkingImpl.loadAll();
-		LCSArrayImpl.loadAll();
-		LCSImpl.loadAll();
-		LCSIndicationImpl.loadAll();
-		LaneUseMultiImpl.loadAll();
-		ParkingAreaImpl.loadAll();
-		IncidentImpl.loadAll();
-		IncDescriptorImpl.loadAll();
-		IncLocatorImpl.loadAll();
-		IncAdviceImpl.loadAll();
-		TimeActionImpl.loadAll();
-		DmsActionImpl.loadAll();
-		BeaconActionImpl.loadAll();
-		CameraActionImpl.loadAll();
-		LaneActionImpl.loadAll();
-		MeterActionImpl.loadAll();
-		WordImpl.loadAll();
-		DMSImpl.updateAllStyles();
-		RptConduitImpl.loadAll();
-		IpawsAlertImpl.loadAll();
-		IpawsConfigImpl.loadAll();
-		IpawsDeployerImpl.loadAll();
-		CapResponseImpl.loadAll();
-		CapUrgencyFieldImpl.loadAll();
-		NotificationImpl.loadAll();
+		StartupLoader ld = new StartupLoader();
+		ld.add(GraphicImpl.class);
+		ld.add(FontImpl.class);
+		ld.add(GlyphImpl.class, FontImpl.class);
+		ld.add(RoadImpl.class);
+		ld.add(RoadAffixImpl.class);
+		ld.add(GeoLocImpl.class, RoadImpl.class);
+		ld.add(MapExtentImpl.class);
+		ld.add(IncidentDetailImpl.class);
+		ld.add(CommConfigImpl.class);
+		ld.add(CommLinkImpl.class, CommConfigImpl.class);
+		ld.add(ModemImpl.class);
+		ld.add(CabinetStyleImpl.class);
+		ld.add(CabinetImpl.class, GeoLocImpl.class,
+			CabinetStyleImpl.class);
+		ld.add(ControllerImpl.class, CommLinkImpl.class,
+			CabinetImpl.class);
+		ld.add(SignConfigImpl.class, FontImpl.class);
+		ld.add(SignDetailImpl.class);
+		ld.add(DayMatcherImpl.class);
+		ld.add(DayPlanImpl.class, DayMatcherImpl.class);
+		ld.add(PlanPhaseImpl.class);
+		ld.add(ActionPlanImpl.class, PlanPhaseImpl.class);
+		ld.add(R_NodeImpl.class, GeoLocImpl.class);
+		ld.add("corridors", new StartupLoader.Task() {
+			public void perform() {
+				corridors.createCorridors();
+			}
+		}, R_NodeImpl.class);
+		ld.add(AlarmImpl.class, ControllerImpl.class);
+		ld.add(GpsImpl.class, GeoLocImpl.class, CommLinkImpl.class,
+			ControllerImpl.class);
+		ld.add(CameraTemplateImpl.class);
+		ld.add(VidSourceTemplateImpl.class);
+		ld.add(CameraVidSourceOrderImpl.class);
+		ld.add(DetectorImpl.class, RoadImpl.class, GeoLocImpl.class,
+			ControllerImpl.class, R_NodeImpl.class, "corridors");
+		ld.add(TollZoneImpl.class, GeoLocImpl.class);
+		ld.add(EncoderTypeImpl.class);
+		ld.add(EncoderStreamImpl.class, EncoderTypeImpl.class);
+		ld.add(CameraImpl.class, GeoLocImpl.class, ControllerImpl.class,
+			CameraTemplateImpl.class, EncoderTypeImpl.class);
+		ld.add(CameraPresetImpl.class, CameraImpl.class);
+		ld.add(PlayListImpl.class, CameraImpl.class);
+		ld.add(CatalogImpl.class, PlayListImpl.class);
+		ld.add(MonitorStyleImpl.class);
+		ld.add(VideoMonitorImpl.class, ControllerImpl.class,
+			CameraImpl.class, PlayListImpl.class,
+			MonitorStyleImpl.class);
+		ld.add(FlowStreamImpl.class, GeoLocImpl.class,
+			ControllerImpl.class, EncoderStreamImpl.class,
+			CameraImpl.class, VideoMonitorImpl.class);
+		ld.add(BeaconImpl.class, GeoLocImpl.class, ControllerImpl.class,
+			CameraPresetImpl.class);
+		ld.add(WeatherSensorImpl.class, GeoLocImpl.class,
+			ControllerImpl.class);
+		ld.add(RampMeterImpl.class, GeoLocImpl.class,
+			ControllerImpl.class, ActionPlanImpl.class,
+			R_NodeImpl.class, DetectorImpl.class,
+			CameraPresetImpl.class, BeaconImpl.class, "corridors");
+		ld.add(SignMessageImpl.class, SignConfigImpl.class);
+		ld.add(DMSImpl.class, GraphicImpl.class, FontImpl.class,
+			GeoLocImpl.class, ControllerImpl.class,
+			SignConfigImpl.class, SignDetailImpl.class,
+			GpsImpl.class, CameraPresetImpl.class, BeaconImpl.class,
+			SignMessageImpl.class);
+		ld.add(SignGroupImpl.class);
+		ld.add(DmsSignGroupImpl.class, DMSImpl.class,
+			SignGroupImpl.class);
+		ld.add(QuickMessageImpl.class, SignConfigImpl.class,
+			SignGroupImpl.class);
+		ld.add(SignTextImpl.class, SignGroupImpl.class);
+		ld.add(GateArmArrayImpl.class, RoadImpl.class, GeoLocImpl.class,
+			ControllerImpl.class, PlanPhaseImpl.class,
+			ActionPlanImpl.class, CameraImpl.class);
+		ld.add(GateArmImpl.class, ControllerImpl.class,
+			GateArmArrayImpl.class);
+		ld.add(TagReaderImpl.class, GeoLocImpl.class,
+			ControllerImpl.class, TollZoneImpl.class,
+			DMSImpl.class);
+		ld.add(LaneMarkingImpl.class, GeoLocImpl.class,
+			ControllerImpl.class);
+		ld.add(LCSArrayImpl.class, ControllerImpl.class,
+			R_NodeImpl.class, DMSImpl.class, "corridors");
+		ld.add(LCSImpl.class, LCSArrayImpl.class);
+		ld.add(LCSIndicationImpl.class, ControllerImpl.class,
+			LCSImpl.class);
+		ld.add(LaneUseMultiImpl.class, QuickMessageImpl.class);
+		ld.add(ParkingAreaImpl.class, GeoLocImpl.class,
+			R_NodeImpl.class, DetectorImpl.class,
+			CameraPresetImpl.class, "corridors");
+		ld.add(IncidentImpl.class, RoadImpl.class, GeoLocImpl.class,
+			IncidentDetailImpl.class, R_NodeImpl.class,
+			CameraImpl.class, "corridors");
+		ld.add(IncDescriptorImpl.class, IncidentDetailImpl.class,
+			SignGroupImpl.class);
+		ld.add(IncLocatorImpl.class, SignGroupImpl.class);
+		ld.add(IncAdviceImpl.class);
+		ld.add(TimeActionImpl.class, DayPlanImpl.class,
+			PlanPhaseImpl.class, ActionPlanImpl.class);
+		ld.add(DmsActionImpl.class, PlanPhaseImpl.class,
+			ActionPlanImpl.class, SignGroupImpl.class,
+			QuickMessageImpl.class);
+		ld.add(BeaconActionImpl.class, PlanPhaseImpl.class,
+			ActionPlanImpl.class, BeaconImpl.class);
+		ld.add(CameraActionImpl.class, PlanPhaseImpl.class,
+			ActionPlanImpl.class, CameraPresetImpl.class);
+		ld.add(LaneActionImpl.class, PlanPhaseImpl.class,
+			ActionPlanImpl.class, LaneMarkingImpl.class);
+		ld.add(MeterActionImpl.class, PlanPhaseImpl.class,
+			ActionPlanImpl.class, RampMeterImpl.class);
+		ld.add(WordImpl.class);
+		ld.add("dms_styles", new StartupLoader.Task() {
+			public void perform() {
+				DMSImpl.updateAllStyles();
+			}
+		}, ControllerImpl.class, SignMessageImpl.class, DMSImpl.class,
+			LCSArrayImpl.class, LCSImpl.class);
+		ld.add(RptConduitImpl.class);
+		ld.add(IpawsAlertImpl.class, GeoLocImpl.class, DMSImpl.class,
+			SignGroupImpl.class, QuickMessageImpl.class);
+		ld.add(IpawsConfigImpl.class, SignGroupImpl.class,
+			QuickMessageImpl.class);
+		ld.add(IpawsDeployerImpl.class, DMSImpl.class,
+			IpawsConfigImpl.class);
+		ld.add(CapResponseImpl.class);
+		ld.add(CapUrgencyFieldImpl.class);
+		ld.add(NotificationImpl.class);
+		ld.run(s.getReadConnections());
 	}
 
 	/** Get the time as a time stamp */
@@ -518,11 +572,12 @@ abstract public class BaseObjectImpl implements Storable, SonarObject {
 	}
 
 	/** Log an event */
-	static public void logEvent(final BaseEvent ev) {
-		FLUSH.addJob(new Job() {
-			public void perform() throws TMSException {
-				ev.doStore();
-			}
-		});
+	static public void logEvent(BaseEvent ev) {
+		try {
+			ev.doStoreLater();
+		}
+		catch (TMSException e) {
+			e.printStackTrace();
+		}
 	}
 }
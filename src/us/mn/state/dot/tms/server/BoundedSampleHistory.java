@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2001-2019  Minnesota Department of Transportation
+ * Copyright (C) 2001-2020  Minnesota Department of Transportation
  * Copyright (C) 2011  University of Minnesota Duluth (NATSRL)
  *
  * This program is free software; you can redistribute it and/or modify
@@ -16,18 +16,37 @@
 package us.mn.state.dot.tms.server;
 
 /**
- * Bounded Sample History container.
+ * Bounded Sample History container.  Samples are stored as primitive
+ * doubles, with NaN for missing data.  Cumulative sums are kept alongside
+ * the samples, so that averages over any window take constant time.
  *
  * @author Chongmyung Park (chongmyung.park@gmail.com)
  * @author Douglas Lau
  */
 public class BoundedSampleHistory {
 
+	/** Value for missing data */
+	static public final double MISSING = Double.NaN;
+
+	/** Check if a sample is missing */
+	static public boolean isMissing(double sam) {
+		return Double.isNaN(sam);
+	}
+
 	/** Sample data history */
-	private final Double[] samples;
+	private final double[] samples;
+
+	/** Cumulative sum of valid samples, by push number modulo the
+	 * length (one more than samples, to hold the sum before the oldest
+	 * retained sample) */
+	private final double[] sums;
 
-	/** Sample cursor (most recent) */
-	private int cursor = -1;
+	/** Cumulative count of valid samples, by push number modulo the
+	 * length */
+	private final int[] counts;
+
+	/** Number of pushes (reduced when cumulative values are rebased) */
+	private int n_pushed = 0;
 
 	/** Count of samples */
 	private int n_samples = 0;
@@ -37,60 +56,63 @@ public class BoundedSampleHistory {
 	 * @param max_samples Maximum number of samples to retain.
 	 */
 	public BoundedSampleHistory(int max_samples) {
-		samples = new Double[max_samples];
+		samples = new double[max_samples];
+		sums = new double[max_samples + 1];
+		counts = new int[max_samples + 1];
 	}
 
 	/**
 	 * Add one data sample to the history.
-	 * @param sam Current sample data, or null for missing data.
+	 * @param sam Current sample data, or NaN for missing data.
 	 */
-	public void push(Double sam) {
-		cursor = nextIndex(cursor);
-		samples[cursor] = filterSample(sam);
+	public void push(double sam) {
+		// Negative samples are missing data
+		boolean valid = (sam >= 0);
+		int prev = n_pushed % sums.length;
+		n_pushed++;
+		samples[n_pushed % samples.length] = valid ? sam : MISSING;
+		int cur = n_pushed % sums.length;
+		sums[cur] = sums[prev] + (valid ? sam : 0);
+		counts[cur] = counts[prev] + (valid ? 1 : 0);
 		if (n_samples < samples.length)
 			n_samples++;
+		if (n_pushed >= 2 * samples.length * sums.length)
+			rebase();
 	}
 
-	/**
-	 * Get the next sample array index.
-	 * @param idx Index into samples array.
-	 * @return Next index, rolling over if necessary.
-	 */
-	private int nextIndex(int idx) {
-		idx++;
-		return (idx < samples.length) ? idx : 0;
-	}
-
-	/**
-	 * Filter out negative data samples.
-	 * @param sam Sample data.
-	 * @return Sample data, with negative values replaced with null.
-	 */
-	private Double filterSample(Double sam) {
-		return (sam != null && sam >= 0) ? sam : null;
+	/** Rebase cumulative values to the oldest retained sample, so that
+	 * sums do not grow without bound.  Push numbers are shifted back by
+	 * a multiple of both array lengths, so no samples are moved. */
+	private void rebase() {
+		int oldest = n_pushed - n_samples;
+		double base_sum = sums[oldest % sums.length];
+		int base_count = counts[oldest % sums.length];
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] -= base_sum;
+			counts[i] -= base_count;
+		}
+		n_pushed -= samples.length * sums.length;
 	}
 
 	/**
 	 * Return sample at given time step index (in reversed direction).
 	 * @param t Time-step index (0 for most recent).
-	 * @return Sample data, or null for missing data.
+	 * @return Sample data, or NaN for missing data.
 	 */
-	public Double get(int t) {
-		if (t < n_samples) {
-			int idx = cursor - t;
-			if (idx < 0)
-				idx += samples.length;
-			return samples[idx];
-		} else
-			return null;
+	public double get(int t) {
+		return (t >= 0 && t < n_samples)
+		      ? samples[(n_pushed - t) % samples.length]
+		      : MISSING;
 	}
 
 	/**
 	 * Clear sample history.
 	 */
 	public void clear() {
-		cursor = -1;
+		n_pushed = 0;
 		n_samples = 0;
+		sums[0] = 0;
+		counts[0] = 0;
 	}
 
 	/**
@@ -105,26 +127,25 @@ public class BoundedSampleHistory {
 	 * Return the average of the specified number of samples.
 	 * @param t Starting time-step index (0 for most recent).
 	 * @param n_sam Number of samples to calculate average.
-	 * @return Average of the specified samples, or null for missing data.
+	 * @return Average of the specified samples, or NaN for missing data.
 	 */
-	public Double average(int t, int n_sam) {
-		double sum = 0;
-		int count = 0;
-		for (int i = t; i < t + n_sam; i++) {
-			Double d = get(i);
-			if (d != null) {
-				sum += d;
-				count++;
-			}
-		}
-		return (count > 0) ? sum / count : null;
+	public double average(int t, int n_sam) {
+		if (t < 0 || t >= n_samples || n_sam <= 0)
+			return MISSING;
+		int hi = (n_pushed - t) % sums.length;
+		int lo = (n_pushed - Math.min(t + n_sam, n_samples)) %
+			sums.length;
+		int count = counts[hi] - counts[lo];
+		return (count > 0)
+		      ? (sums[hi] - sums[lo]) / count
+		      : MISSING;
 	}
 
 	/**
 	 * Return the average of all saved samples.
-	 * @return Average of the samples, or null for missing data.
+	 * @return Average of the samples, or NaN for missing data.
 	 */
-	public Double average() {
+	public double average() {
 		return average(0, n_samples);
 	}
 }
@@ -388,6 +388,7 @@ public class CameraImpl extends DeviceImpl implements Camera {
 		try {
 			store.update(this, "video_loss", vl);
 			video_loss = vl;
+			notifyAttribute("videoLoss");
 			updateStyles();
 		}
 		catch (TMSException e) {
@@ -38,8 +38,8 @@ public class CommConfigImpl extends BaseObjectImpl implements CommConfig {
 		namespace.registerType(SONAR_TYPE, CommConfigImpl.class);
 		store.query("SELECT name, description, protocol, modem, " +
 			"timeout_ms, poll_period_sec, long_poll_period_sec, " +
-			"idle_disconnect_sec, no_response_disconnect_sec " +
-			"FROM iris." + SONAR_TYPE + ";", new ResultFactory()
+			"idle_disconnect_sec, no_response_disconnect_sec, " +
+			"pipeline_depth FROM iris." + SONAR_TYPE + ";", new ResultFactory()
 		{
 			public void create(ResultSet row) throws Exception {
 				namespace.addObject(new CommConfigImpl(row));
@@ -71,6 +71,7 @@ public class CommConfigImpl extends BaseObjectImpl implements CommConfig {
 		map.put("idle_disconnect_sec", idle_disconnect_sec);
 		map.put("no_response_disconnect_sec",
 			no_response_disconnect_sec);
+		map.put("pipeline_depth", pipeline_depth);
 		return map;
 	}
 
@@ -101,13 +102,14 @@ public class CommConfigImpl extends BaseObjectImpl implements CommConfig {
 		     row.getInt(6),     // poll_period_sec
 		     row.getInt(7),     // long_poll_period_sec
 		     row.getInt(8),     // idle_disconnect_sec
-		     row.getInt(9)      // no_response_disconnect_sec
+		     row.getInt(9),     // no_response_disconnect_sec
+		     row.getInt(10)     // pipeline_depth
 		);
 	}
 
 	/** Create a comm config */
 	private CommConfigImpl(String n, String d, short p, boolean m, int t,
-		int pp, int lpp, int idsc, int nrdsc)
+		int pp, int lpp, int idsc, int nrdsc, int pd)
 	{
 		super(n);
 		description = d;
@@ -119,6 +121,7 @@ public class CommConfigImpl extends BaseObjectImpl implements CommConfig {
 		long_poll_period_sec = lpp;
 		idle_disconnect_sec = idsc;
 		no_response_disconnect_sec = nrdsc;
+		pipeline_depth = pd;
 	}
 
 	/** Test whether gate arm system should be disabled.
@@ -337,4 +340,31 @@ public class CommConfigImpl extends BaseObjectImpl implements CommConfig {
 	public int getNoResponseDisconnectSec() {
 		return no_response_disconnect_sec;
 	}
+
+	/** Pipeline depth (maximum number of drops polled at once) */
+	private int pipeline_depth = 0;
+
+	/** Set pipeline depth */
+	@Override
+	public void setPipelineDepth(int d) {
+		testGateArmDisable(name, "set pipeline_depth");
+		pipeline_depth = d;
+		CommLinkImpl.recreatePollers(this);
+	}
+
+	/** Set the pipeline depth */
+	public void doSetPipelineDepth(int d) throws TMSException {
+		if (d < 0 || d > MAX_PIPELINE_DEPTH)
+			throw new ChangeVetoException("Bad depth: " + d);
+		if (d != pipeline_depth) {
+			store.update(this, "pipeline_depth", d);
+			setPipelineDepth(d);
+		}
+	}
+
+	/** Get pipeline depth */
+	@Override
+	public int getPipelineDepth() {
+		return pipeline_depth;
+	}
 }
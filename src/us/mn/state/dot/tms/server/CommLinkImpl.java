@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
+import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.Scheduler;
 import us.mn.state.dot.tms.ChangeVetoException;
@@ -35,6 +36,7 @@ import us.mn.state.dot.tms.TMSException;
 import static us.mn.state.dot.tms.server.XmlWriter.createAttribute;
 import us.mn.state.dot.tms.server.comm.DevicePoller;
 import us.mn.state.dot.tms.server.comm.DevicePollerFactory;
+import us.mn.state.dot.tms.server.comm.PollMetrics;
 
 /**
  * The CommLinkImpl class represents a single communication link which is
@@ -51,6 +53,9 @@ public class CommLinkImpl extends BaseObjectImpl implements CommLink {
 	/** Poller scheduler for repeating jobs */
 	static private final Scheduler POLLER = new Scheduler("poller");
 
+	/** Poll cycle debug log */
+	static private final DebugLog CYCLE_LOG = new DebugLog("poll_cycle");
+
 	/** Load all the comm links */
 	static protected void loadAll() throws TMSException {
 		namespace.registerType(SONAR_TYPE, CommLinkImpl.class);
@@ -321,9 +326,12 @@ public class CommLinkImpl extends BaseObjectImpl implements CommLink {
 		return null;
 	}
 
-	/** Recreate the device poller */
+	/** Recreate the device poller.  Query hints learned through the old
+	 * poller are cleared. */
 	private synchronized void recreatePoller() {
 		destroyPoller();
+		for (ControllerImpl c: controllers.values())
+			c.getQueryHints().clear();
 		if (poll_enabled)
 			createPoller();
 		updateStatus();
@@ -350,8 +358,21 @@ public class CommLinkImpl extends BaseObjectImpl implements CommLink {
 
 	/** Poll all controllers */
 	private synchronized void pollControllers(int period, boolean is_long) {
-		for (ControllerImpl c: controllers.values())
-			c.pollDevices(period, is_long);
+		DevicePoller dp = poller;
+		PollMetrics pm = (dp != null) ? dp.getMetrics() : null;
+		if (pm != null && !is_long)
+			logPollCycle(pm);
+		for (ControllerImpl c: controllers.values()) {
+			if (!c.pollDevices(period, is_long) && pm != null)
+				pm.skip();
+		}
+	}
+
+	/** Log poll metrics for the previous poll cycle */
+	private void logPollCycle(PollMetrics pm) {
+		String s = pm.nextCycle();
+		if (CYCLE_LOG.isOpen())
+			CYCLE_LOG.log(getName() + " " + s);
 	}
 
 	/** Communication link status */
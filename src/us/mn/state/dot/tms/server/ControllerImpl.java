@@ -43,6 +43,8 @@ import static us.mn.state.dot.tms.server.XmlWriter.createAttribute;
 import us.mn.state.dot.tms.server.comm.CamKeyboardPoller;
 import us.mn.state.dot.tms.server.comm.DevicePoller;
 import us.mn.state.dot.tms.server.comm.FeedPoller;
+import us.mn.state.dot.tms.server.comm.PollHealth;
+import us.mn.state.dot.tms.server.comm.QueryHints;
 import us.mn.state.dot.tms.server.comm.SamplePoller;
 import us.mn.state.dot.tms.server.event.CommEvent;
 import us.mn.state.dot.tms.utils.SString;
@@ -239,6 +241,7 @@ public class ControllerImpl extends BaseObjectImpl implements Controller {
 			store.update(this, "comm_link", cl);
 			pullCommLink(comm_link);
 			setCommLink(cl);
+			query_hints.clear();
 		}
 	}
 
@@ -270,6 +273,7 @@ public class ControllerImpl extends BaseObjectImpl implements Controller {
 			store.update(this, "drop_id", d);
 			pullCommLink(comm_link);
 			setDrop(d);
+			query_hints.clear();
 		}
 	}
 
@@ -639,6 +643,7 @@ public class ControllerImpl extends BaseObjectImpl implements Controller {
 			storeVersion(v);
 			version = v;
 			notifyAttribute("version");
+			query_hints.clear();
 		}
 	}
 
@@ -707,7 +712,11 @@ public class ControllerImpl extends BaseObjectImpl implements Controller {
 	/** Set the fail time */
 	private void setFailTime(Long ft) {
 		try {
-			store.update(this, "fail_time", asTimestamp(ft));
+			// Store is null when polling without a database
+			if (store != null) {
+				store.update(this, "fail_time",
+					asTimestamp(ft));
+			}
 		}
 		catch (TMSException e) {
 			// FIXME: what else can we do with this exception?
@@ -910,8 +919,25 @@ public class ControllerImpl extends BaseObjectImpl implements Controller {
 			logEvent(new CommEvent(event, getName(), id));
 	}
 
+	/** Poll health (round-trip time and failure backoff) */
+	private transient final PollHealth poll_health = new PollHealth();
+
+	/** Get the poll health */
+	public PollHealth getPollHealth() {
+		return poll_health;
+	}
+
+	/** Query hints (learned from errors) */
+	private transient final QueryHints query_hints = new QueryHints();
+
+	/** Get the query hints */
+	public QueryHints getQueryHints() {
+		return query_hints;
+	}
+
 	/** Complete a controller operation */
 	public void completeOperation(String id, boolean success) {
+		poll_health.recordResult(success);
 		if (success)
 			incrementSuccessOps();
 		else
@@ -934,12 +960,20 @@ public class ControllerImpl extends BaseObjectImpl implements Controller {
 		return dp;
 	}
 
-	/** Poll controller devices */
-	public void pollDevices(int period, boolean is_long) {
-		if (isConditionActive())
-			pollActiveDevices(period, is_long);
+	/** Poll controller devices.
+	 * @param period Poll period (seconds).
+	 * @param is_long Flag for long poll period.
+	 * @return false if polling was skipped to back off from failures. */
+	public boolean pollDevices(int period, boolean is_long) {
+		boolean polled = true;
+		if (isConditionActive()) {
+			polled = poll_health.checkPoll(period, is_long);
+			if (polled)
+				pollActiveDevices(period, is_long);
+		}
 		if (isConditionTesting())
 			startTesting();
+		return polled;
 	}
 
 	/** Poll active controller devices */
@@ -16,9 +16,12 @@ package us.mn.state.dot.tms.server;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import us.mn.state.dot.tms.Direction;
 import us.mn.state.dot.tms.GeoLoc;
 import us.mn.state.dot.tms.GeoLocHelper;
@@ -85,10 +88,24 @@ public class CorridorManager {
 			c.writeXml(w, m_nodes);
 	}
 
-	/** Find the current bottlenecks for all corridors */
-	public synchronized void findBottlenecks() {
-		for (Corridor c: corridors.values())
-			c.findBottlenecks();
+	/** Find the current bottlenecks for all corridors.
+	 * @param pool Pool to fan out corridors. */
+	public void findBottlenecks(ForkJoinPool pool) {
+		ArrayList<RecursiveAction> tasks =
+			new ArrayList<RecursiveAction>();
+		for (final Corridor c: getCorridors()) {
+			tasks.add(new RecursiveAction() {
+				protected void compute() {
+					c.findBottlenecks();
+				}
+			});
+		}
+		MeteringJob.invokeAll(pool, tasks);
+	}
+
+	/** Get a snapshot of all corridors */
+	private synchronized ArrayList<Corridor> getCorridors() {
+		return new ArrayList<Corridor>(corridors.values());
 	}
 
 	/** Lookup the corridor for a location */
@@ -27,6 +27,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.sonar.SonarException;
@@ -849,8 +850,8 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 	private SignMessage findOrCreateMsg(String inc, String m, boolean be,
 		boolean pp, DmsMsgPriority mp, int src, String o, Integer d)
 	{
-		SignMessage esm = SignMessageHelper.find(sign_config, inc, m,
-			be, mp, src, o, d);
+		SignMessage esm = SignMessageImpl.find(sign_config, inc, m, be,
+			mp, src, o, d);
 		if (esm != null)
 			return esm;
 		else
@@ -901,8 +902,16 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 		DmsMsgPriority mp = DmsMsgPriority.fromOrdinal(
 			da.getMsgPriority());
 		String o = da.getActionPlan().getName();
-		return createMsg(amsg.getMulti(), be, pp, mp, amsg.getSrc(), o,
-			getDuration(da));
+		String ms = amsg.getMulti();
+		int src = amsg.getSrc();
+		Integer d = getDuration(da);
+		// Avoid searching all sign messages when unchanged
+		SignMessage sm = msg_sched;
+		if (SignMessageHelper.isMatching(sm, sign_config, null, ms, be,
+		    mp, src, o, d))
+			return sm;
+		else
+			return createMsg(ms, be, pp, mp, src, o, d);
 	}
 
 	/** Get the duration of a DMS action.
@@ -1243,12 +1252,20 @@ public class DMSImpl extends DeviceImpl implements DMS, Comparable<DMSImpl> {
 			blankMsgUser();
 	}
 
-	/** Check if the sign has a reference to a sign message */
-	public boolean hasReference(final SignMessage sm) {
-		return sm == msg_user ||
-		       sm == msg_sched ||
-		       sm == msg_current ||
-		       sm == msg_next;
+	/** Add all sign messages referenced by the sign to a set */
+	public void addReferences(Set<SignMessage> refs) {
+		addReference(refs, msg_user);
+		addReference(refs, msg_sched);
+		addReference(refs, msg_current);
+		addReference(refs, msg_next);
+	}
+
+	/** Add a sign message reference to a set */
+	static private void addReference(Set<SignMessage> refs,
+		SignMessage sm)
+	{
+		if (sm != null)
+			refs.add(sm);
 	}
 
 	/** Current message expiration time */
@@ -1093,21 +1093,21 @@ public class DetectorImpl extends DeviceImpl implements Detector,VehicleSampler{
 		w.write("/>\n");
 	}
 
-	/** Print the current sample as an XML element */
-	public void writeSampleXml(Writer w) throws IOException {
+	/** Write the current sample as an XML element */
+	public void writeSampleXml(FeedWriter w) {
 		if (abandoned || !isSampling())
 			return;
 		int flow = getFlowRaw();
 		int speed = Math.round(getSpeed());
 		float occ = getOccupancy();
 		w.write("\t<sample");
-		w.write(createAttribute("sensor", name));
+		w.writeAttr("sensor", name);
 		if (flow != MISSING_DATA)
-			w.write(createAttribute("flow", flow));
+			w.writeAttr("flow", flow);
 		if (isMainline() && speed > 0)
-			w.write(createAttribute("speed", speed));
+			w.writeAttr("speed", speed);
 		if (occ >= 0)
-			w.write(createAttribute("occ", formatFloat(occ, 2)));
+			w.writeAttr("occ", occ, 2);
 		w.write("/>\n");
 	}
 
@@ -16,7 +16,9 @@ package us.mn.state.dot.tms.server;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import us.mn.state.dot.sonar.Namespace;
 import us.mn.state.dot.tms.ActionPlan;
@@ -34,6 +36,52 @@ import us.mn.state.dot.tms.TMSException;
  */
 public class DmsActionImpl extends BaseObjectImpl implements DmsAction {
 
+	/** Mapping of action plans to DMS actions */
+	static private final HashMap<ActionPlan, HashSet<DmsActionImpl>>
+		by_plan = new HashMap<ActionPlan, HashSet<DmsActionImpl>>();
+
+	/** Add a DMS action to the action plan index */
+	static private void addPlanAction(DmsActionImpl da) {
+		ActionPlan ap = da.getActionPlan();
+		if (ap != null) {
+			synchronized (by_plan) {
+				HashSet<DmsActionImpl> a = by_plan.get(ap);
+				if (null == a) {
+					a = new HashSet<DmsActionImpl>();
+					by_plan.put(ap, a);
+				}
+				a.add(da);
+			}
+		}
+	}
+
+	/** Remove a DMS action from the action plan index */
+	static private void removePlanAction(DmsActionImpl da) {
+		ActionPlan ap = da.getActionPlan();
+		if (ap != null) {
+			synchronized (by_plan) {
+				HashSet<DmsActionImpl> a = by_plan.get(ap);
+				if (a != null) {
+					a.remove(da);
+					if (a.isEmpty())
+						by_plan.remove(ap);
+				}
+			}
+		}
+	}
+
+	/** Get the DMS actions for an action plan.
+	 * @param ap Action plan.
+	 * @return List of DMS actions (copy). */
+	static public ArrayList<DmsActionImpl> getActions(ActionPlan ap) {
+		synchronized (by_plan) {
+			HashSet<DmsActionImpl> a = by_plan.get(ap);
+			return (a != null)
+			      ? new ArrayList<DmsActionImpl>(a)
+			      : new ArrayList<DmsActionImpl>();
+		}
+	}
+
 	/** Load all the DMS actions */
 	static protected void loadAll() throws TMSException {
 		namespace.registerType(SONAR_TYPE, DmsActionImpl.class);
@@ -110,6 +158,20 @@ public class DmsActionImpl extends BaseObjectImpl implements DmsAction {
 		quick_message = qm;
 		beacon_enabled = be;
 		msg_priority = mp;
+		addPlanAction(this);
+	}
+
+	/** Initialize the transient fields */
+	@Override
+	protected void initTransients() {
+		addPlanAction(this);
+	}
+
+	/** Destroy an object */
+	@Override
+	public void doDestroy() throws TMSException {
+		super.doDestroy();
+		removePlanAction(this);
 	}
 
 	/** Action plan */
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2019  Minnesota Department of Transportation
+ * Copyright (C) 2009-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -15,16 +15,15 @@
 package us.mn.state.dot.tms.server;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.tms.ActionPlan;
+import us.mn.state.dot.tms.ActionPlanHelper;
 import us.mn.state.dot.tms.DMS;
 import us.mn.state.dot.tms.DMSHelper;
 import us.mn.state.dot.tms.DmsAction;
-import us.mn.state.dot.tms.DmsActionHelper;
-import us.mn.state.dot.tms.DmsSignGroup;
-import us.mn.state.dot.tms.DmsSignGroupHelper;
 import us.mn.state.dot.tms.SignGroup;
 
 /**
@@ -34,6 +33,13 @@ import us.mn.state.dot.tms.SignGroup;
  */
 public class DmsActionJob extends Job {
 
+	/** Lock for scheduled DMS set */
+	static private final Object LOCK = new Object();
+
+	/** DMS which were scheduled by the previous job, or null if no job
+	 * has been performed yet */
+	static private HashSet<DMSImpl> scheduled = null;
+
 	/** Logger for debugging */
 	private final DebugLog logger;
 
@@ -56,30 +62,28 @@ public class DmsActionJob extends Job {
 	/** Perform DMS actions */
 	@Override
 	public void perform() {
-		Iterator<DmsAction> it = DmsActionHelper.iterator();
+		Iterator<ActionPlan> it = ActionPlanHelper.iterator();
 		while (it.hasNext()) {
-			DmsAction da = it.next();
-			ActionPlan ap = da.getActionPlan();
-			if (ap.getActive()) {
-				if (ap.getPhase() == da.getPhase())
-					performDmsAction(da);
-			}
+			ActionPlan ap = it.next();
+			if (ap.getActive())
+				performActionPlan(ap);
 		}
 		updateDmsMessages();
 	}
 
+	/** Perform DMS actions for an active action plan */
+	private void performActionPlan(ActionPlan ap) {
+		for (DmsActionImpl da: DmsActionImpl.getActions(ap)) {
+			if (ap.getPhase() == da.getPhase())
+				performDmsAction(da);
+		}
+	}
+
 	/** Perform a DMS action */
 	private void performDmsAction(DmsAction da) {
 		SignGroup sg = da.getSignGroup();
-		Iterator<DmsSignGroup> it = DmsSignGroupHelper.iterator();
-		while (it.hasNext()) {
-			DmsSignGroup dsg = it.next();
-			if (dsg.getSignGroup() == sg) {
-				DMS dms = dsg.getDms();
-				if (dms instanceof DMSImpl)
-					checkAction(da, (DMSImpl) dms);
-			}
-		}
+		for (DMSImpl dms: DmsSignGroupImpl.getMembers(sg))
+			checkAction(da, dms);
 	}
 
 	/** Check an action for one DMS */
@@ -101,18 +105,42 @@ public class DmsActionJob extends Job {
 		return (null == o) || da.getMsgPriority() >= o.getMsgPriority();
 	}
 
-	/** Update the DMS messages */
+	/** Update the DMS messages.  After the first job, only DMS which
+	 * were scheduled by the previous job or by this one are updated. */
 	private void updateDmsMessages() {
+		synchronized (LOCK) {
+			if (null == scheduled)
+				updateAllDmsMessages();
+			else {
+				for (DMSImpl dms: scheduled) {
+					if (!dms_actions.containsKey(dms))
+						updateDmsMessage(dms);
+				}
+				for (DMSImpl dms: dms_actions.keySet())
+					updateDmsMessage(dms);
+			}
+			scheduled = new HashSet<DMSImpl>(dms_actions.keySet());
+		}
+	}
+
+	/** Update the messages for all DMS */
+	private void updateAllDmsMessages() {
 		Iterator<DMS> it = DMSHelper.iterator();
 		while (it.hasNext()) {
 			DMS dms = it.next();
-			if (dms instanceof DMSImpl) {
-				DMSImpl dmsi = (DMSImpl) dms;
-				DmsActionMsg amsg = dms_actions.get(dmsi);
-				if (logger.isOpen())
-					logSched(dms, "scheduling " + amsg);
-				dmsi.setActionMsg(amsg);
-			}
+			if (dms instanceof DMSImpl)
+				updateDmsMessage((DMSImpl) dms);
 		}
 	}
+
+	/** Update the message for one DMS */
+	private void updateDmsMessage(DMSImpl dms) {
+		// Skip signs which have been removed
+		if (DMSHelper.lookup(dms.getName()) != dms)
+			return;
+		DmsActionMsg amsg = dms_actions.get(dms);
+		if (logger.isOpen())
+			logSched(dms, "scheduling " + amsg);
+		dms.setActionMsg(amsg);
+	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2008-2016  Minnesota Department of Transportation
+ * Copyright (C) 2008-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,7 +16,9 @@ package us.mn.state.dot.tms.server;
 
 import java.sql.ResultSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import us.mn.state.dot.sonar.server.ServerNamespace;
 import us.mn.state.dot.tms.DmsSignGroup;
 import us.mn.state.dot.tms.DMS;
@@ -31,6 +33,58 @@ import us.mn.state.dot.tms.TMSException;
  */
 public class DmsSignGroupImpl extends BaseObjectImpl implements DmsSignGroup {
 
+	/** Mapping of sign groups to DMS sign group relations */
+	static private final HashMap<SignGroup, HashSet<DmsSignGroupImpl>>
+		members = new HashMap<SignGroup, HashSet<DmsSignGroupImpl>>();
+
+	/** Add a DMS sign group to the sign group index */
+	static private void addMember(DmsSignGroupImpl dsg) {
+		SignGroup sg = dsg.getSignGroup();
+		if (sg != null) {
+			synchronized (members) {
+				HashSet<DmsSignGroupImpl> m = members.get(sg);
+				if (null == m) {
+					m = new HashSet<DmsSignGroupImpl>();
+					members.put(sg, m);
+				}
+				m.add(dsg);
+			}
+		}
+	}
+
+	/** Remove a DMS sign group from the sign group index */
+	static private void removeMember(DmsSignGroupImpl dsg) {
+		SignGroup sg = dsg.getSignGroup();
+		if (sg != null) {
+			synchronized (members) {
+				HashSet<DmsSignGroupImpl> m = members.get(sg);
+				if (m != null) {
+					m.remove(dsg);
+					if (m.isEmpty())
+						members.remove(sg);
+				}
+			}
+		}
+	}
+
+	/** Get the DMS which are members of a sign group.
+	 * @param sg Sign group.
+	 * @return Set of member DMS (copy). */
+	static public Set<DMSImpl> getMembers(SignGroup sg) {
+		HashSet<DMSImpl> signs = new HashSet<DMSImpl>();
+		synchronized (members) {
+			HashSet<DmsSignGroupImpl> m = members.get(sg);
+			if (m != null) {
+				for (DmsSignGroupImpl dsg: m) {
+					DMS dms = dsg.getDms();
+					if (dms instanceof DMSImpl)
+						signs.add((DMSImpl) dms);
+				}
+			}
+		}
+		return signs;
+	}
+
 	/** Load all the DMS sign groups */
 	static protected void loadAll() throws TMSException {
 		namespace.registerType(SONAR_TYPE, DmsSignGroupImpl.class);
@@ -79,6 +133,7 @@ public class DmsSignGroupImpl extends BaseObjectImpl implements DmsSignGroup {
 		super(n);
 		dms = d;
 		sign_group = g;
+		addMember(this);
 	}
 
 	/** Create a new DMS sign group */
@@ -86,6 +141,19 @@ public class DmsSignGroupImpl extends BaseObjectImpl implements DmsSignGroup {
 		this(n, lookupDMS(d), lookupSignGroup(g));
 	}
 
+	/** Initialize the transient fields */
+	@Override
+	protected void initTransients() {
+		addMember(this);
+	}
+
+	/** Destroy an object */
+	@Override
+	public void doDestroy() throws TMSException {
+		super.doDestroy();
+		removeMember(this);
+	}
+
 	/** DMS name */
 	private DMS dms;
 
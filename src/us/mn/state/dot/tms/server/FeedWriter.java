@@ -0,0 +1,242 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A feed writer appends UTF-8 encoded XML or JSON text to a reusable byte
+ * buffer.  Values are escaped in a single pass, and numbers are formatted
+ * without creating any objects.
+ *
+ * @author Douglas Lau
+ */
+final class FeedWriter {
+
+	/** Largest float which can be formatted without a NumberFormat */
+	static private final float MAX_FIXED = 1e12f;
+
+	/** Powers of ten for fraction digits */
+	static private final int[] POW10 = { 1, 10, 100, 1000, 10000 };
+
+	/** Buffer of encoded text */
+	private byte[] buf = new byte[64 * 1024];
+
+	/** Number of bytes in buffer */
+	private int count = 0;
+
+	/** Scratch buffer for formatting integers */
+	private final byte[] digits = new byte[20];
+
+	/** Clear the buffer */
+	void reset() {
+		count = 0;
+	}
+
+	/** Get the number of bytes in the buffer */
+	int size() {
+		return count;
+	}
+
+	/** Write the buffer to an output stream */
+	void writeTo(OutputStream os) throws IOException {
+		os.write(buf, 0, count);
+	}
+
+	/** Get the buffer contents as a string */
+	@Override
+	public String toString() {
+		return new String(buf, 0, count, StandardCharsets.UTF_8);
+	}
+
+	/** Make room for a number of bytes */
+	private void ensure(int n) {
+		if (count + n > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2,
+				count + n));
+		}
+	}
+
+	/** Write one ASCII character */
+	void write(char c) {
+		ensure(1);
+		buf[count++] = (byte) c;
+	}
+
+	/** Write a string, without escaping */
+	void write(String s) {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80)
+				write(c);
+			else
+				i = writeUtf8(s, i);
+		}
+	}
+
+	/** Write a non-ASCII character (or surrogate pair) as UTF-8.
+	 * @return Index of last char written. */
+	private int writeUtf8(String s, int i) {
+		int cp = s.codePointAt(i);
+		ensure(4);
+		if (cp < 0x800) {
+			buf[count++] = (byte) (0xC0 | (cp >> 6));
+		} else if (cp < 0x10000) {
+			buf[count++] = (byte) (0xE0 | (cp >> 12));
+			buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+		} else {
+			buf[count++] = (byte) (0xF0 | (cp >> 18));
+			buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+			buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+		}
+		buf[count++] = (byte) (0x80 | (cp & 0x3F));
+		return i + Character.charCount(cp) - 1;
+	}
+
+	/** Write an integer value */
+	void writeInt(long v) {
+		if (v < 0) {
+			if (Long.MIN_VALUE == v) {
+				write(Long.toString(v));
+				return;
+			}
+			write('-');
+			v = -v;
+		}
+		int n = digits.length;
+		do {
+			digits[--n] = (byte) ('0' + (v % 10));
+			v /= 10;
+		} while (v > 0);
+		int len = digits.length - n;
+		ensure(len);
+		System.arraycopy(digits, n, buf, count, len);
+		count += len;
+	}
+
+	/** Write a float value with a maximum number of fraction digits.
+	 * Formatting matches BaseObjectImpl.formatFloat (with a '.' decimal
+	 * separator): rounding is half-even and trailing zeros are dropped.
+	 * @param v Value to write.
+	 * @param fd Maximum fraction digits (0-4). */
+	void writeFloat(float v, int fd) {
+		if (Float.isNaN(v) || Math.abs(v) >= MAX_FIXED) {
+			write(BaseObjectImpl.formatFloat(v, fd));
+			return;
+		}
+		int p = POW10[fd];
+		// A float times 10^4 or less is exact as a double
+		long r = (long) Math.rint((double) v * p);
+		if (r < 0 || (0 == r && v < 0)) {
+			write('-');
+			r = -r;
+		}
+		writeInt(r / p);
+		int f = (int) (r % p);
+		if (f > 0) {
+			while (f % 10 == 0) {
+				f /= 10;
+				p /= 10;
+			}
+			write('.');
+			for (p /= 10; p > 0; p /= 10) {
+				write((char) ('0' + f / p));
+				f %= p;
+			}
+		}
+	}
+
+	/** Write a string with XML escaping */
+	void writeXml(String s) {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '&':
+				write("&amp;");
+				break;
+			case '<':
+				write("&lt;");
+				break;
+			case '>':
+				write("&gt;");
+				break;
+			case '"':
+				write("&quot;");
+				break;
+			case '\'':
+				write("&apos;");
+				break;
+			default:
+				if (c < 0x80)
+					write(c);
+				else
+					i = writeUtf8(s, i);
+			}
+		}
+	}
+
+	/** Write an XML attribute with a string value */
+	void writeAttr(String name, String value) {
+		write(' ');
+		write(name);
+		write("='");
+		writeXml(value);
+		write('\'');
+	}
+
+	/** Write an XML attribute with an integer value */
+	void writeAttr(String name, int value) {
+		write(' ');
+		write(name);
+		write("='");
+		writeInt(value);
+		write('\'');
+	}
+
+	/** Write an XML attribute with a float value */
+	void writeAttr(String name, float value, int fd) {
+		write(' ');
+		write(name);
+		write("='");
+		writeFloat(value, fd);
+		write('\'');
+	}
+
+	/** Write a quoted JSON string */
+	void writeJson(String s) {
+		write('"');
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				write('\\');
+				write(c);
+			} else if (c < 0x20) {
+				write("\\u00");
+				write(Character.forDigit(c >> 4, 16));
+				write(Character.forDigit(c & 0xF, 16));
+			} else if (c < 0x80)
+				write(c);
+			else
+				i = writeUtf8(s, i);
+		}
+		write('"');
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.Calendar;
+import us.mn.state.dot.sched.Job;
+
+/**
+ * Job to flush buffered vehicle events to disk.
+ *
+ * @author Douglas Lau
+ */
+public class FlushEventsJob extends Job {
+
+	/** Create a new flush events job */
+	public FlushEventsJob() {
+		super(Calendar.SECOND, 10);
+	}
+
+	/** Perform the flush events job */
+	public void perform() {
+		VehicleEventAppender.flushAll();
+	}
+}
@@ -14,8 +14,6 @@
  */
 package us.mn.state.dot.tms.server;
 
-import java.io.IOException;
-import java.io.Writer;
 import java.util.Iterator;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.TimeSteward;
@@ -35,6 +33,10 @@ public class FlushXmlJob extends Job {
 	/** Station manager */
 	private final StationManager station_manager;
 
+	/** Detector sample XML feed */
+	private final SampleFeed xml_feed = new SampleFeed(
+		XmlWriter.XML_OUTPUT_DIRECTORY, SAMPLE_XML, true);
+
 	/** Create a new flush XML samples job */
 	public FlushXmlJob(StationManager sm) {
 		station_manager = sm;
@@ -42,51 +44,31 @@ public class FlushXmlJob extends Job {
 
 	/** Perform flush XML data to disk */
 	@Override
-	public void perform() throws IOException {
+	public void perform() {
 		writeSampleXml();
-		station_manager.writeSampleXml();
-		station_manager.writeSampleJson();
+		station_manager.writeSamples();
 	}
 
 	/** Write the sample data out as XML */
-	private void writeSampleXml() throws IOException {
-		XmlWriter w = new XmlWriter(SAMPLE_XML, true) {
-			@Override protected void write(Writer w)
-				throws IOException
-			{
-				writeSampleXmlHead(w);
-				writeSampleXmlBody(w);
-				writeSampleXmlTail(w);
-			}
-		};
-		w.write();
+	private void writeSampleXml() {
+		FeedWriter w = xml_feed.begin();
+		writeSampleXmlHead(w);
+		writeSampleXmlBody(w);
+		w.write("</traffic_sample>\n");
+		xml_feed.publish(w);
 	}
 
 	/** Write the header of the detector sample XML file */
-	private void writeSampleXmlHead(Writer w) throws IOException {
+	private void writeSampleXmlHead(FeedWriter w) {
 		w.write(XmlWriter.XML_DECLARATION);
-		writeDtd(w);
-		w.write("<traffic_sample time_stamp='" +
-			TimeSteward.getDateInstance() + "' period='30'>\n");
-	}
-
-	/** Write the DTD */
-	private void writeDtd(Writer w) throws IOException {
-		w.write("<!DOCTYPE traffic_sample [\n");
-		w.write("<!ELEMENT traffic_sample (sample)*>\n");
-		w.write("<!ATTLIST traffic_sample time_stamp " +
-			"CDATA #REQUIRED>\n");
-		w.write("<!ATTLIST traffic_sample period CDATA #REQUIRED>\n");
-		w.write("<!ELEMENT sample EMPTY>\n");
-		w.write("<!ATTLIST sample sensor CDATA #REQUIRED>\n");
-		w.write("<!ATTLIST sample flow CDATA 'UNKNOWN'>\n");
-		w.write("<!ATTLIST sample speed CDATA 'UNKNOWN'>\n");
-		w.write("<!ATTLIST sample occ CDATA 'UNKNOWN'>\n");
-		w.write("]>\n");
+		w.write(StationManager.SAMPLE_DTD);
+		w.write("<traffic_sample time_stamp='");
+		w.write(TimeSteward.getDateInstance().toString());
+		w.write("' period='30'>\n");
 	}
 
 	/** Write the body of the detector sample XML file */
-	private void writeSampleXmlBody(Writer w) throws IOException {
+	private void writeSampleXmlBody(FeedWriter w) {
 		Iterator<Detector> it = DetectorHelper.iterator();
 		while (it.hasNext()) {
 			Detector d = it.next();
@@ -96,9 +78,4 @@ public class FlushXmlJob extends Job {
 			}
 		}
 	}
-
-	/** Write the tail of the detector sample XML file */
-	private void writeSampleXmlTail(Writer w) throws IOException {
-		w.write("</traffic_sample>\n");
-	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2001-2018  Minnesota Department of Transportation
+ * Copyright (C) 2001-2020  Minnesota Department of Transportation
  * Copyright (C) 2011-2012  University of Minnesota Duluth (NATSRL)
  *
  * This program is free software; you can redistribute it and/or modify
@@ -25,6 +25,8 @@ import us.mn.state.dot.tms.R_NodeType;
 import us.mn.state.dot.tms.RampMeterQueue;
 import us.mn.state.dot.tms.units.Interval;
 import static us.mn.state.dot.tms.units.Interval.HOUR;
+import static us.mn.state.dot.tms.server.BoundedSampleHistory.MISSING;
+import static us.mn.state.dot.tms.server.BoundedSampleHistory.isMissing;
 import static us.mn.state.dot.tms.server.Constants.FEET_PER_MILE;
 import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
 import static us.mn.state.dot.tms.server.RampMeterImpl.filterRate;
@@ -159,9 +161,9 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 
 	/** Convert single step vehicle count to flow rate.
 	 * @param v Vehicle count to convert.
-	 * @return Flow rate (vehicles / hour), or null for missing data. */
-	static private Double flowRate(float v) {
-		return (v >= 0) ? (v * STEP_HOUR) : null;
+	 * @return Flow rate (vehicles / hour), or NaN for missing data. */
+	static private double flowRate(float v) {
+		return (v >= 0) ? (v * STEP_HOUR) : MISSING;
 	}
 
 	/** Convert flow rate to vehicle count for a given period.
@@ -177,8 +179,8 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 	}
 
 	/** Check if density is below "low" threshold */
-	static private boolean isDensityLow(Double k) {
-		return (k != null) && (k < K_LOW);
+	static private boolean isDensityLow(double k) {
+		return k < K_LOW;
 	}
 
 	/** States for all K adaptive algorithms */
@@ -485,15 +487,15 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		}
 
 		/** Get the current station density */
-		private Double getStationDensity() {
+		private double getStationDensity() {
 			float d = station.getDensity();
-			return (d >= 0) ? (double) d : null;
+			return (d >= 0) ? d : MISSING;
 		}
 
 		/** Get the current station speed */
-		private Double getStationSpeed() {
+		private double getStationSpeed() {
 			float s = station.getSpeed();
-			return (s >= 0) ? (double) s : null;
+			return (s >= 0) ? s : MISSING;
 		}
 
 		/** Get average density of a mainline segment beginning at the
@@ -531,15 +533,15 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		/** Get 1 minute density at current time step.
 		 * @return average 1 min density; missing data returns 0. */
 		public double getDensity() {
-			Double avg = density_hist.average(0, steps(60));
-			return (avg != null) ? avg : 0;
+			double avg = density_hist.average(0, steps(60));
+			return isMissing(avg) ? 0 : avg;
 		}
 
 		/** Get 1 minute speed at current time step.
 		 * @return Average 1 min speed; missing data returns 0. */
 		private double getSpeed() {
-			Double avg = speed_hist.average(0, steps(60));
-			return (avg != null) ? avg : 0;
+			double avg = speed_hist.average(0, steps(60));
+			return isMissing(avg) ? 0 : avg;
 		}
 
 		/** Find downstream segment station node.  This is the station
@@ -738,8 +740,8 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		 * @param step Time step in past (0 for current).
 		 * @return Cumulative demand at specified time. */
 		private float cumulativeDemand(int step) {
-			Double d = demand_accum_hist.get(step);
-			return (d != null) ? d.floatValue() : 0;
+			double d = demand_accum_hist.get(step);
+			return isMissing(d) ? 0 : (float) d;
 		}
 
 		/** Validate meter state.
@@ -827,7 +829,7 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 			demand_hist.push(flowRate(adjusted_dem));
 			// Recalculate demand with adjustment
 			demand_accum = da + adjusted_dem;
-			demand_accum_hist.push((double) demand_accum);
+			demand_accum_hist.push(demand_accum);
 			tracking_demand = trackingDemand();
 		}
 
@@ -908,10 +910,10 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		/** Calculate tracking demand rate at queue detector.
 		 * @return Tracking demand flow rate (vehicles / hour) */
 		private int trackingDemand() {
-			Double d = demand_hist.average();
-			return (d != null)
-			      ?	(int) Math.round(d)
-			      : getDefaultTarget();
+			double d = demand_hist.average();
+			return isMissing(d)
+			      ? getDefaultTarget()
+			      : (int) Math.round(d);
 		}
 
 		/** Get the default target metering rate (vehicles / hour) */
@@ -1212,8 +1214,8 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		 * @return true if metering should start, based on segment
 		 *         density. */
 		private boolean shouldStart(int n_secs) {
-			Double sk = segment_k_hist.average(0, steps(n_secs));
-			return (sk != null) && (sk > K_DES);
+			double sk = segment_k_hist.average(0, steps(n_secs));
+			return sk > K_DES;
 		}
 
 		/** Check if early metering period is over */
@@ -1251,9 +1253,9 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 
 		/** Check if mainline segment is flowing */
 		private boolean isSegmentFlowing() {
-			Double str_k = segment_k_hist.average(0,
+			double str_k = segment_k_hist.average(0,
 				steps(START_SECS));
-			Double stp_k = segment_k_hist.average(0,
+			double stp_k = segment_k_hist.average(0,
 				steps(STOP_SECS));
 			return isDensityLow(str_k) && isDensityLow(stp_k);
 		}
@@ -1305,14 +1307,15 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		/** Get historical passage flow.
 		 * @param step Time step in past (0 for current).
 		 * @param secs Number of seconds to average.
-		 * @return Passage flow at 'step' time steps ago. */
-		private Double getPassage(int step, int secs) {
+		 * @return Passage flow at 'step' time steps ago, or NaN for
+		 *         missing data. */
+		private double getPassage(int step, int secs) {
 			return passage_hist.average(step, steps(secs));
 		}
 
 		/** Get current segment density.
-		 * @return segment density, or null for missing data. */
-		private Double getSegmentDensity() {
+		 * @return segment density, or NaN for missing data. */
+		private double getSegmentDensity() {
 			return segment_k_hist.get(0);
 		}
 
@@ -1355,8 +1358,8 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 			if (r > 0)
 				return r;
 			else {
-				Double p = getPassage(0, 90);
-				return (p != null) ? p : getMaxRelease();
+				double p = getPassage(0, 90);
+				return isMissing(p) ? getMaxRelease() : p;
 			}
 		}
 
@@ -1430,8 +1433,8 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		protected void logMeterEvent() {
 			StationNode dn = segmentDownstream();
 			String dns = (dn != null) ? dn.station.getName() : null;
-			Double sd = getSegmentDensity();
-			float seg_den = (sd != null) ? sd.floatValue() : 0;
+			double sd = getSegmentDensity();
+			float seg_den = isMissing(sd) ? 0 : (float) sd;
 			MeterEvent ev = new MeterEvent(EventType.METER_EVENT,
 				meter.name, phase.ordinal(),
 				getQueueState().ordinal(), queueLength(),
@@ -1444,8 +1447,8 @@ public class KAdaptiveAlgorithm implements MeterAlgorithmState {
 		/** Get a string representation of a meter state */
 		@Override
 		public String toString() {
-			Double sd = getSegmentDensity();
-			float seg_den = (sd != null) ? sd.floatValue() : 0;
+			double sd = getSegmentDensity();
+			float seg_den = isMissing(sd) ? 0 : (float) sd;
 			return "meter:" + meter.getName() + " phase:" + phase +
 			       " seg_den:" + seg_den;
 		}
@@ -33,6 +33,7 @@ import us.mn.state.dot.tms.Station;
 import us.mn.state.dot.tms.SystemAttrEnum;
 import us.mn.state.dot.tms.TMSException;
 import us.mn.state.dot.tms.server.event.BaseEvent;
+import us.mn.state.dot.tms.server.comm.CommPool;
 import us.mn.state.dot.tms.server.comm.cux50.CUx50;
 import us.mn.state.dot.tms.server.comm.cux50.PrServer;
 import us.mn.state.dot.tms.utils.HttpProxySelector;
@@ -96,7 +97,9 @@ public class MainServer {
 			initialize();
 			Properties props = PropertyLoader.load(PROP_FILE);
 			district = props.getProperty("district", "tms");
+			a_factory.configure(props);
 			initProxySelector(props);
+			CommPool.initialize(props);
 			store = createStore(props);
 			BaseEvent.store = store;
 			I18N.initialize(props);
@@ -184,10 +187,19 @@ public class MainServer {
 		return new SQLConnection(
 			props.getProperty("db.url"),
 			props.getProperty("db.user"),
-			props.getProperty("db.password")
+			props.getProperty("db.password"),
+			getReadConnections(props)
 		);
 	}
 
+	/** Get the number of database connections for reading */
+	static private int getReadConnections(Properties props) {
+		String v = props.getProperty("db.read.connections");
+		return (v != null)
+		      ? Integer.parseInt(v.trim())
+		      : SQLConnection.READ_CONNECTIONS;
+	}
+
 	/** Create the server namespace */
 	static private WhitelistNamespace createNamespace(Properties props)
 		throws UnknownHostException, NumberFormatException
@@ -215,7 +227,9 @@ public class MainServer {
 	/** Schedule jobs on FLUSH thread */
 	static private void scheduleFlushJobs() {
 		FLUSH.addJob(new FlushSamplesJob(a_factory));
-		FLUSH.addJob(new ArchiveSamplesJob(a_factory));
+		FLUSH.addJob(new FlushEventsJob());
+		FLUSH.addJob(new ArchiveSamplesJob(
+			a_factory.createArchiveBuilder()));
 		FLUSH.addJob(new ProfilingJob());
 		FLUSH.addJob(new XmlConfigJob());
 		FLUSH.addJob(new XmlConfigJob(1000));
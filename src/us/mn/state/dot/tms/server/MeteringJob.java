@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2016  Minnesota Department of Transportation
+ * Copyright (C) 2009-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,21 +16,67 @@ package us.mn.state.dot.tms.server;
 
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.Scheduler;
+import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.RampMeter;
 import us.mn.state.dot.tms.RampMeterHelper;
 
 /**
- * Job to calculate station data and ramp metering.
+ * Job to calculate station data and ramp metering.  Each 30-second cycle is
+ * split into stages.  Station data and corridor bottlenecks are fanned out
+ * across a fork-join pool; each stage must finish before the next begins.
+ * Metering rates are computed on the TIMER thread after all station data is
+ * ready.
  *
  * @author Douglas Lau
  */
 public class MeteringJob extends Job {
 
+	/** Metering statistics debug log */
+	static private final DebugLog STATS_LOG =
+		new DebugLog("metering_stats");
+
 	/** Seconds to offset each poll from start of interval */
 	static private final int OFFSET_SECS = 29;
 
+	/** Cycle period (ms) */
+	static private final long CYCLE_MS = 30 * 1000;
+
+	/** Create a fork-join pool for metering stages */
+	static private ForkJoinPool createPool() {
+		int n = Runtime.getRuntime().availableProcessors();
+		return new ForkJoinPool(n, new ForkJoinPool
+			.ForkJoinWorkerThreadFactory()
+		{
+			public ForkJoinWorkerThread newThread(ForkJoinPool p) {
+				ForkJoinWorkerThread t = ForkJoinPool
+					.defaultForkJoinWorkerThreadFactory
+					.newThread(p);
+				t.setName("Metering " + t.getPoolIndex());
+				return t;
+			}
+		}, null, false);
+	}
+
+	/** Perform tasks on a pool, and wait for all of them to finish.
+	 * An exception thrown by any task is rethrown. */
+	static void invokeAll(ForkJoinPool pool,
+		final List<? extends ForkJoinTask<?>> tasks)
+	{
+		pool.invoke(new RecursiveAction() {
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+	}
+
 	/** FLUSH Scheduler for writing XML (I/O to disk) */
 	private final Scheduler flush;
 
@@ -40,6 +86,20 @@ public class MeteringJob extends Job {
 	/** Job to be performed after data has been processed */
 	private final FlushXmlJob flush_job;
 
+	/** Pool for fanning out stages */
+	private final ForkJoinPool pool = createPool();
+
+	/** Names of cycle stages */
+	static private final String[] STAGES = {
+		"stations", "bottlenecks", "k_adaptive", "meters"
+	};
+
+	/** Time taken by each stage in the current cycle (ms) */
+	private final long[] stage_ms = new long[STAGES.length];
+
+	/** Start time of current stage */
+	private long stage_start;
+
 	/** Create a new metering job */
 	public MeteringJob(Scheduler f) {
 		super(Calendar.SECOND, 30, Calendar.SECOND, OFFSET_SECS);
@@ -51,20 +111,53 @@ public class MeteringJob extends Job {
 	/** Perform the metering job */
 	@Override
 	public void perform() {
+		long start = TimeSteward.currentTimeMillis();
+		stage_start = start;
 		try {
-			station_manager.calculateData();
+			station_manager.calculateData(pool);
+			endStage(0);
 			// Perform flush job after station data calculated
 			flush.addJob(flush_job);
-			BaseObjectImpl.corridors.findBottlenecks();
+			BaseObjectImpl.corridors.findBottlenecks(pool);
+			endStage(1);
 		}
 		finally {
 			validateMetering();
+			logStats(start);
+		}
+	}
+
+	/** End a stage of the cycle */
+	private void endStage(int s) {
+		long now = TimeSteward.currentTimeMillis();
+		stage_ms[s] = now - stage_start;
+		stage_start = now;
+	}
+
+	/** Log the stage times and headroom for the cycle */
+	private void logStats(long start) {
+		if (STATS_LOG.isOpen()) {
+			long total = TimeSteward.currentTimeMillis() - start;
+			StringBuilder sb = new StringBuilder();
+			for (int s = 0; s < STAGES.length; s++) {
+				sb.append(STAGES[s]);
+				sb.append(": ");
+				sb.append(stage_ms[s]);
+				sb.append(" ms, ");
+			}
+			sb.append("total: ");
+			sb.append(total);
+			sb.append(" ms, headroom: ");
+			sb.append(CYCLE_MS - total);
+			sb.append(" ms");
+			STATS_LOG.log(sb.toString());
 		}
 	}
 
 	/** Validate all metering algorithms */
 	private void validateMetering() {
 		KAdaptiveAlgorithm.processAllStates();
+		endStage(2);
 		Iterator<RampMeter> it = RampMeterHelper.iterator();
 		while (it.hasNext()) {
 			RampMeter rm = it.next();
@@ -82,5 +175,6 @@ public class MeteringJob extends Job {
 				meter.updateRatePlanned();
 			}
 		}
+		endStage(3);
 	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2018  Minnesota Department of Transportation
+ * Copyright (C) 2018-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -820,12 +820,11 @@ public class ParkingAreaImpl extends BaseObjectImpl implements ParkingArea {
 	private String calculateTrend(int a) {
 		int i = getOldestSample();
 		if (i > 0) {
-			Double p = hist.get(i);
+			double p = hist.get(i);
 			Integer cap = capacity;
-			if (p != null && cap != null && cap > 0) {
-				double pr = p;
-				return calculateTrend(a, (int) pr, i, cap);
-			}
+			if (!BoundedSampleHistory.isMissing(p) && cap != null &&
+			    cap > 0)
+				return calculateTrend(a, (int) p, i, cap);
 		}
 		return null;
 	}
@@ -833,8 +832,7 @@ public class ParkingAreaImpl extends BaseObjectImpl implements ParkingArea {
 	/** Get the oldest sample number in history */
 	private int getOldestSample() {
 		for (int i = HIST_STEPS - 1; i > 0; i--) {
-			Double a = hist.get(i);
-			if (a != null)
+			if (!BoundedSampleHistory.isMissing(hist.get(i)))
 				return i;
 		}
 		return 0;
@@ -845,7 +843,7 @@ public class ParkingAreaImpl extends BaseObjectImpl implements ParkingArea {
 
 	/** Set the number of available parking spaces */
 	private void setTrueAvailableNotify(Integer a) throws TMSException {
-		hist.push((a != null) ? (double) a : null);
+		hist.push((a != null) ? a : BoundedSampleHistory.MISSING);
 		if (!objectEquals(a, true_available)) {
 			store.update(this, "true_available", a);
 			updateTimeStamp();
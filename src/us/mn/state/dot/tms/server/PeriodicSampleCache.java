@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2010-2019  Minnesota Department of Transportation
+ * Copyright (C) 2010-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,16 +14,20 @@
  */
 package us.mn.state.dot.tms.server;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.concurrent.ConcurrentSkipListSet;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.units.Interval;
 import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
 
 /**
- * A cache for periodic sample data.  
+ * A cache for periodic sample data.  Samples are stored in a ring buffer of
+ * primitive values, indexed by slot number (sample start time divided by the
+ * sample period).  The ring covers a window of consecutive slots, and grows
+ * if a sample does not fit in the window.
  *
  * @author Douglas Lau
  */
@@ -40,6 +44,22 @@ public class PeriodicSampleCache {
 	static private final long SAMPLE_MAX_MS = new Interval(1,
 		Interval.Units.HOURS).ms();
 
+	/** Initial window of cached samples (seconds) */
+	static private final int INITIAL_WINDOW_SEC = 16 * 60;
+
+	/** Maximum window of cached samples (seconds).  This covers every
+	 * time stamp accepted by checkStamp. */
+	static private final int MAX_WINDOW_SEC =
+		(int) ((SAMPLE_MIN_MS + SAMPLE_MAX_MS) / 1000);
+
+	/** Slot number for an empty ring entry */
+	static private final int NO_SLOT = -1;
+
+	/** Get the number of slots in a window */
+	static private int windowSlots(int window_sec, int period) {
+		return Math.max(window_sec / period, 4);
+	}
+
 	/** Check if a timestamp is valid */
 	static private boolean checkStamp(long ts) {
 		long now = TimeSteward.currentTimeMillis();
@@ -130,10 +150,24 @@ public class PeriodicSampleCache {
 	/** Sample type */
 	public final PeriodicSampleType sample_type;
 
-	/** Collection of periodic samples.  Every sample is guaranteed to
-	 * have the same sampling period. */
-	private final ConcurrentSkipListSet<PeriodicSample> samples =
-		new ConcurrentSkipListSet<PeriodicSample>();
+	/** Sampling period (seconds), or 0 if the cache is empty.  Every
+	 * sample has the same sampling period. */
+	private int period = 0;
+
+	/** Slot numbers of ring entries (NO_SLOT if empty) */
+	private int[] slots = new int[0];
+
+	/** Sample values of ring entries */
+	private int[] values = new int[0];
+
+	/** Number of samples in the cache */
+	private int n_samples = 0;
+
+	/** Slot number of the first sample */
+	private int first_slot = 0;
+
+	/** Slot number of the last sample */
+	private int last_slot = 0;
 
 	/** Create a new periodic sample cache.
 	 * @param tp Sample type. */
@@ -148,12 +182,10 @@ public class PeriodicSampleCache {
 	public void add(PeriodicSample ps, String name) {
 		if (checkStamp(ps.stamp)) {
 			if (sample_type.isValid(ps)) {
-				if (!isPeriodOk(ps.period))
-					samples.clear();
-				if (isPeriodSame(ps.period))
-					addSample(ps);
-				else
-					interpolate(ps);
+				if (!addValid(ps) && SAMPLE_LOG.isOpen()) {
+					SAMPLE_LOG.log(name + ": dropped: " +
+						new Date(ps.stamp));
+				}
 			}
 		} else {
 			if (SAMPLE_LOG.isOpen()) {
@@ -163,87 +195,199 @@ public class PeriodicSampleCache {
 		}
 	}
 
+	/** Add a valid periodic sample to the cache.
+	 * @return false if the sample was dropped. */
+	private synchronized boolean addValid(PeriodicSample ps) {
+		if (!isPeriodOk(ps.period))
+			clear();
+		if (isPeriodSame(ps.period))
+			return addSample(ps.start(), ps.period, ps.value);
+		else
+			return interpolate(ps);
+	}
+
 	/** Check if a period is OK to be cached.
-	 * @param period Period to check (seconds).
+	 * @param p Period to check (seconds).
 	 * @return true if period is OK to be cached. */
-	private boolean isPeriodOk(int period) {
-		return period % getPeriod(period) == 0;
+	private boolean isPeriodOk(int p) {
+		return p % getPeriod(p) == 0;
 	}
 
 	/** Is a sample period the same as for the cache? */
-	private boolean isPeriodSame(int period) {
-		return period == getPeriod(period);
+	private boolean isPeriodSame(int p) {
+		return p == getPeriod(p);
 	}
 
 	/** Get the sample period.
-	 * @param period Default sample period.
+	 * @param p Default sample period.
 	 * @return Sample period (seconds). */
-	private int getPeriod(int period) {
-		return samples.isEmpty()
-		      ? period
-		      : samples.first().period;
+	private int getPeriod(int p) {
+		return (0 == period) ? p : period;
+	}
+
+	/** Get the slot number of a sample start time */
+	private int slotNumber(long start) {
+		return (int) (start / periodMillis());
 	}
 
-	/** Add a sample */
-	private void addSample(PeriodicSample ps) {
-		assert ps.period == getPeriod(ps.period) : "Invalid period";
-		assert !exists(ps.start()) : "Duplicate start time";
-		samples.add(ps);
+	/** Get the start time of a slot */
+	private long slotStart(int slot) {
+		return slot * periodMillis();
 	}
 
-	/** Check if a sample exists with the given time stamp (start) */
-	private boolean exists(long stamp) {
-		for (PeriodicSample ps: samples) {
-			if (ps.start() == stamp)
+	/** Get the sampling period in milliseconds */
+	private long periodMillis() {
+		return period * 1000L;
+	}
+
+	/** Get the ring index of a slot */
+	private int index(int slot) {
+		return slot % slots.length;
+	}
+
+	/** Clear all samples */
+	private void clear() {
+		Arrays.fill(slots, NO_SLOT);
+		n_samples = 0;
+		period = 0;
+	}
+
+	/** Add a sample.
+	 * @param start Time stamp at start of sample.
+	 * @param p Sampling period (seconds).
+	 * @param value Sample value.
+	 * @return false if the sample was dropped. */
+	private boolean addSample(long start, int p, int value) {
+		if (0 == period)
+			setPeriod(p);
+		int slot = slotNumber(start);
+		if (!reserve(slot))
+			return false;
+		int i = index(slot);
+		// An existing sample is not replaced
+		if (slots[i] != slot) {
+			slots[i] = slot;
+			values[i] = value;
+			n_samples++;
+		}
+		return true;
+	}
+
+	/** Set the sampling period of an empty cache */
+	private void setPeriod(int p) {
+		int n_slots = windowSlots(INITIAL_WINDOW_SEC, p);
+		if (slots.length != n_slots) {
+			slots = new int[n_slots];
+			values = new int[n_slots];
+			Arrays.fill(slots, NO_SLOT);
+		}
+		period = p;
+	}
+
+	/** Reserve a slot in the ring window.
+	 * @param slot Slot number.
+	 * @return false if the slot is too old to fit in the window. */
+	private boolean reserve(int slot) {
+		if (0 == n_samples) {
+			first_slot = slot;
+			last_slot = slot;
+			return true;
+		}
+		int max_slots = windowSlots(MAX_WINDOW_SEC, period);
+		if (slot - first_slot >= max_slots) {
+			// Make room by dropping the oldest samples
+			removeBefore(slot - max_slots + 1);
+			if (0 == n_samples) {
+				first_slot = slot;
+				last_slot = slot;
 				return true;
+			}
+		} else if (last_slot - slot >= max_slots)
+			return false;
+		int first = Math.min(first_slot, slot);
+		int last = Math.max(last_slot, slot);
+		int n_slots = last - first + 1;
+		if (n_slots > slots.length) {
+			resize(Math.min(Math.max(n_slots, slots.length * 2),
+				max_slots));
 		}
-		return false;
+		first_slot = first;
+		last_slot = last;
+		return true;
+	}
+
+	/** Resize the ring */
+	private void resize(int n_slots) {
+		int[] s = slots;
+		int[] v = values;
+		slots = new int[n_slots];
+		values = new int[n_slots];
+		Arrays.fill(slots, NO_SLOT);
+		for (int i = 0; i < s.length; i++) {
+			if (s[i] != NO_SLOT) {
+				int j = index(s[i]);
+				slots[j] = s[i];
+				values[j] = v[i];
+			}
+		}
+	}
+
+	/** Lookup the value of a slot */
+	private int lookup(int slot) {
+		if (n_samples > 0 && slot >= first_slot && slot <= last_slot) {
+			int i = index(slot);
+			if (slots[i] == slot)
+				return values[i];
+		}
+		return MISSING_DATA;
 	}
 
 	/** Interpolate sample data from a sample with a larger period.
 	 * Any missing samples are estimated and added to the cache.
-	 * @param ps Periodic sample (with a larger period). */
-	private void interpolate(PeriodicSample ps) {
+	 * @param ps Periodic sample (with a larger period).
+	 * @return false if the samples were dropped. */
+	private boolean interpolate(PeriodicSample ps) {
 		long start = ps.start();
-		int period = getPeriod(ps.period);
-		int n_samples = ps.period / period;
-		assert n_samples > 1;
-		int[] values = getValues(start, ps.end(), n_samples, period);
+		int n = ps.period / period;
+		assert n > 1;
+		int[] vals = getValues(slotNumber(start), n);
 		switch (sample_type.aggregation) {
 		case SUM:
-			addSamples(start, period, interpolateSum(values,
+			return addSamples(start, interpolateSum(vals,
 				ps.value));
-			return;
 		case AVERAGE:
-			addSamples(start, period, interpolateAverage(values,
+			return addSamples(start, interpolateAverage(vals,
 				ps.value));
-			return;
 		default:
-			return;
+			return true;
 		}
 	}
 
 	/** Get an array of sample values from the cache.
-	 * @param start Time stamp at start of samples.
-	 * @param end Time stamp at end of samples.
-	 * @param n_samples Number of sample values.
-	 * @param period Period used for samples.
+	 * @param slot Slot number of first sample.
+	 * @param n Number of sample values.
 	 * @return Array of samples values. */
-	private int[] getValues(long start, long end, int n_samples,
-		int period)
-	{
-		int period_ms = period * 1000;
-		int[] values = new int[n_samples];
-		for (int i = 0; i < values.length; i++)
-			values[i] = MISSING_DATA;
-		for (PeriodicSample ps: samples) {
-			long stamp = ps.start();
-			if (stamp >= start && stamp < end) {
-				int i = (int) ((stamp - start) / period_ms);
-				values[i] = ps.value;
+	private int[] getValues(int slot, int n) {
+		int[] vals = new int[n];
+		for (int i = 0; i < n; i++)
+			vals[i] = lookup(slot + i);
+		return vals;
+	}
+
+	/** Add an array of samples.
+	 * @param start Start time of sample array.
+	 * @param vals Array of sample values to add.
+	 * @return false if any samples were dropped. */
+	private boolean addSamples(long start, int[] vals) {
+		long period_ms = periodMillis();
+		boolean added = true;
+		for (int i = 0; i < vals.length; i++) {
+			if (vals[i] >= 0) {
+				long st = start + period_ms * i;
+				added &= addSample(st, period, vals[i]);
 			}
 		}
-		return values;
+		return added;
 	}
 
 	/** Get aggregate of sampled values in a time interval */
@@ -258,26 +402,29 @@ public class PeriodicSampleCache {
 		}
 	}
 
+	/** Get the first slot starting at or after a time stamp */
+	private int slotAtOrAfter(long stamp) {
+		long pms = periodMillis();
+		return (int) ((stamp + pms - 1) / pms);
+	}
+
 	/** Get sum of sampled values in a time interval */
-	private int getSum(long start, long end) {
-		int period = 0;
+	private synchronized int getSum(long start, long end) {
 		int total = 0;
-		int n_samples = 0;
-		for (PeriodicSample ps: samples) {
-			if (0 == period)
-				period = ps.period;
-			else if (period != ps.period)
-				break;
-			if (ps.value >= 0) {
-				long stamp = ps.start();
-				if (stamp >= start && stamp < end) {
-					total += ps.value;
-					n_samples++;
+		int n = 0;
+		if (n_samples > 0) {
+			int s0 = Math.max(slotAtOrAfter(start), first_slot);
+			int s1 = Math.min(slotAtOrAfter(end) - 1, last_slot);
+			for (int slot = s0; slot <= s1; slot++) {
+				int v = lookup(slot);
+				if (v >= 0) {
+					total += v;
+					n++;
 				}
 			}
 		}
-		long sam_ms = n_samples * period * 1000; // sampled period
-		long full_ms = end - start;              // full period
+		long sam_ms = n * periodMillis();   // sampled period
+		long full_ms = end - start;          // full period
 		if (sam_ms == full_ms)
 			return total;
 		else if (2 * sam_ms >= full_ms) {  // at least half sampled
@@ -288,53 +435,68 @@ public class PeriodicSampleCache {
 	}
 
 	/** Get average of sampled values in a time interval */
-	private int getAverage(long start, long end) {
+	private synchronized int getAverage(long start, long end) {
 		int total = 0;
-		int n_samples = 0;
-		for (PeriodicSample ps: samples) {
-			if (ps.value >= 0) {
-				long stamp = ps.start();
-				if (stamp >= start && stamp < end) {
-					total += ps.value;
-					n_samples++;
+		int n = 0;
+		if (n_samples > 0) {
+			int s0 = Math.max(slotAtOrAfter(start), first_slot);
+			int s1 = Math.min(slotAtOrAfter(end) - 1, last_slot);
+			for (int slot = s0; slot <= s1; slot++) {
+				int v = lookup(slot);
+				if (v >= 0) {
+					total += v;
+					n++;
 				}
 			}
 		}
-		return (n_samples > 0)
-		      ? Math.round(total / (float) n_samples)
+		return (n > 0)
+		      ? Math.round(total / (float) n)
 		      : MISSING_DATA;
 	}
 
-	/** Add an array of samples.
-	 * @param start Start time of sample array.
-	 * @param period Sampling period (seconds).
-	 * @param vals Array of sample values to add. */
-	private void addSamples(long start, int period, int[] vals) {
-		int period_ms = period * 1000;
-		for (int i = 0; i < vals.length; i++) {
-			if (vals[i] >= 0) {
-				long stamp = start + period_ms * (i + 1);
-				addSample(new PeriodicSample(stamp, period,
-					vals[i]));
+	/** Get a sample iterator.  The iterator is a snapshot of the cache
+	 * at the time it was created, in time order. */
+	public synchronized Iterator<PeriodicSample> iterator() {
+		ArrayList<PeriodicSample> samples =
+			new ArrayList<PeriodicSample>(n_samples);
+		if (n_samples > 0) {
+			long pms = periodMillis();
+			for (int slot = first_slot; slot <= last_slot; slot++) {
+				int v = lookup(slot);
+				if (v >= 0) {
+					long end = slotStart(slot) + pms;
+					samples.add(new PeriodicSample(end,
+						period, v));
+				}
 			}
 		}
-	}
-
-	/** Get a sample iterator. */
-	public Iterator<PeriodicSample> iterator() {
 		return samples.iterator();
 	}
 
 	/** Purge all samples before a specified time stamp.
 	 * @param before Time stamp to purge before. */
-	public void purge(long before) {
-		Iterator<PeriodicSample> it = iterator();
-		while (it.hasNext()) {
-			PeriodicSample ps = it.next();
-			if (ps.end() < before)
-				it.remove();
-			else
-				break;
+	public synchronized void purge(long before) {
+		if (n_samples > 0) {
+			// Purge samples which end before the time stamp
+			long pms = periodMillis();
+			removeBefore(slotAtOrAfter(before - pms));
+			if (0 == n_samples)
+				period = 0;
+		}
+	}
+
+	/** Remove all samples before a slot */
+	private void removeBefore(int slot) {
+		while (n_samples > 0 && first_slot < slot) {
+			int i = index(first_slot);
+			if (slots[i] == first_slot) {
+				slots[i] = NO_SLOT;
+				n_samples--;
+			}
+			first_slot++;
 		}
+		// Advance to the next sample
+		while (n_samples > 0 && lookup(first_slot) < 0)
+			first_slot++;
 	}
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012-2019  Minnesota Department of Transportation
+ * Copyright (C) 2012-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -78,16 +78,45 @@ public enum PeriodicSampleType {
 	 * @param buffer Byte buffer.
 	 * @param value Sample value. */
 	public void putValue(ByteBuffer buffer, int value) {
-		if (sample_bytes == 1) {
-			int v = Math.min(Math.max(value, Byte.MIN_VALUE),
-			                 Byte.MAX_VALUE);
-			buffer.put((byte) v);
-		}
-		else if (sample_bytes == 2) {
-			int v = Math.min(Math.max(value, Short.MIN_VALUE),
-			                 Short.MAX_VALUE);
-			buffer.putShort((short) v);
-		}
+		if (sample_bytes == 1)
+			buffer.put(clampByte(value));
+		else if (sample_bytes == 2)
+			buffer.putShort(clampShort(value));
+	}
+
+	/** Put a sample value into a buffer at an absolute position.
+	 * @param buffer Byte buffer.
+	 * @param pos Position in buffer.
+	 * @param value Sample value. */
+	public void putValue(ByteBuffer buffer, int pos, int value) {
+		if (sample_bytes == 1)
+			buffer.put(pos, clampByte(value));
+		else if (sample_bytes == 2)
+			buffer.putShort(pos, clampShort(value));
+	}
+
+	/** Clamp a value to a byte */
+	static private byte clampByte(int value) {
+		return (byte) Math.min(Math.max(value, Byte.MIN_VALUE),
+			Byte.MAX_VALUE);
+	}
+
+	/** Clamp a value to a short */
+	static private short clampShort(int value) {
+		return (short) Math.min(Math.max(value, Short.MIN_VALUE),
+			Short.MAX_VALUE);
+	}
+
+	/** Get a sample value from a buffer.
+	 * @param buffer Byte buffer.
+	 * @return Sample value. */
+	public int getValue(ByteBuffer buffer) {
+		if (sample_bytes == 1)
+			return buffer.get();
+		else if (sample_bytes == 2)
+			return buffer.getShort();
+		else
+			return MISSING_DATA;
 	}
 
 	/** Is a periodic sample valid? */
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2010-2019  Minnesota Department of Transportation
+ * Copyright (C) 2010-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -19,6 +19,8 @@ import java.io.RandomAccessFile;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Iterator;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.TimeSteward;
@@ -33,14 +35,17 @@ import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
  *
  * Sample files are binary with a fixed number of bytes per sample.
  * Each file contains one day of sample data.  For example, a vehicle count file
- * with a 30-second period would have 2880 bytes.
+ * with a 30-second period would have 2880 bytes.  If the archive factory
+ * provides column files, samples are stored in place in a column file instead.
+ * The date of each sample is locked for writing until the flush is done, so
+ * that the day cannot be archived while its files are being written.
  *
  * @author Douglas Lau
  */
 public class PeriodicSampleWriter {
 
 	/** Flush debug log */
-	static private final DebugLog FLUSH_LOG = new DebugLog("flush");
+	static final DebugLog FLUSH_LOG = new DebugLog("flush");
 
 	/** Minimum sample period (seconds) */
 	static private final Interval MIN_PERIOD = new Interval(5);
@@ -66,6 +71,15 @@ public class PeriodicSampleWriter {
 	/** Current file channel */
 	private transient FileChannel channel;
 
+	/** Dates locked for writing by current flush */
+	private final ArrayList<String> locked = new ArrayList<String>();
+
+	/** Start of most recently locked day */
+	private long lock_start;
+
+	/** End of most recently locked day */
+	private long lock_end;
+
 	/** Create a new periodic sample writer */
 	public PeriodicSampleWriter(SampleArchiveFactory f) {
 		factory = f;
@@ -98,6 +112,13 @@ public class PeriodicSampleWriter {
 		try {
 			while (it.hasNext()) {
 				PeriodicSample ps = it.next();
+				lockDate(ps.start());
+				SampleColumnFile cf = factory.columnFile(
+					ps.start());
+				if (cf != null) {
+					cf.store(sensor_id, s_type, ps);
+					continue;
+				}
 				period = new Interval(ps.period);
 				File f = factory.createFile(sensor_id, s_type,
 					ps);
@@ -110,11 +131,45 @@ public class PeriodicSampleWriter {
 			writeBuffer(s_type.sample_bytes);
 		}
 		finally {
-			if (channel != null)
-				channel.close();
+			try {
+				if (channel != null)
+					channel.close();
+			}
+			finally {
+				unlockDates();
+			}
 		}
 	}
 
+	/** Lock the date of a sample for writing */
+	private void lockDate(long stamp) throws IOException {
+		if (stamp >= lock_start && stamp < lock_end)
+			return;
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(stamp);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		lock_start = cal.getTimeInMillis();
+		cal.add(Calendar.DATE, 1);
+		lock_end = cal.getTimeInMillis();
+		String d = TimeSteward.dateShortString(stamp);
+		if (!locked.contains(d)) {
+			SampleArchiveBuilder.lockWrite(d);
+			locked.add(d);
+		}
+	}
+
+	/** Unlock all dates locked by current flush */
+	private void unlockDates() {
+		for (String d: locked)
+			SampleArchiveBuilder.unlockWrite(d);
+		locked.clear();
+		lock_start = 0;
+		lock_end = 0;
+	}
+
 	/** Read next file (after writing current file buffer). */
 	private void readNextFile(PeriodicSampleType s_type) throws IOException{
 		writeBuffer(s_type.sample_bytes);
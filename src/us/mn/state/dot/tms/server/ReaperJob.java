@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2018  Minnesota Department of Transportation
+ * Copyright (C) 2009-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,7 +16,9 @@ package us.mn.state.dot.tms.server;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.DMS;
@@ -67,65 +69,44 @@ public class ReaperJob extends Job {
 	/** Reap sign messages which have been unused for awhile */
 	private void reapSignMessages() {
 		// NOTE: there is a small race where a client could send a
-		// message to a DMS just after isReferenced is called.  It can
-		// only happen during a very short window about one minute
-		// after the message loses its last reference.  Is it worth
-		// making a fix for this unlikely scenario?
+		// message to a DMS just after the referenced messages are
+		// found.  It can only happen during a very short window about
+		// one minute after the message loses its last reference.  Is
+		// it worth making a fix for this unlikely scenario?
+		HashSet<SignMessage> refs = findReferencedMessages();
 		if (zombie_msgs.isEmpty()) {
-			findReapableMessages();
-			removeReferencedMessages();
+			zombie_msgs.addAll(SignMessageImpl.findUnreferenced(
+				refs));
 		} else {
 			for (SignMessageImpl sm: zombie_msgs)
-				reapMessage(sm);
+				reapMessage(sm, refs);
 			zombie_msgs.clear();
 		}
 	}
 
 	/** Reap one sign message */
-	private void reapMessage(SignMessageImpl sm) {
+	private void reapMessage(SignMessageImpl sm, Set<SignMessage> refs) {
 		// Make sure the message has not already been
 		// reaped by looking it up in the namespace.
 		// This is needed because objects are removed
 		// asynchronously from the namespace.
 		SignMessage m = SignMessageHelper.lookup(sm.getName());
-		if ((m == sm) && !isReferenced(m)) {
+		if ((m == sm) && !refs.contains(m)) {
 			sm.notifyRemove();
 			sm.logMsg("removed (reaper)");
 		}
 	}
 
-	/** Find all reapable sign messages */
-	private void findReapableMessages() {
-		Iterator<SignMessage> it = SignMessageHelper.iterator();
-		while (it.hasNext()) {
-			SignMessage sm = it.next();
-			if (sm instanceof SignMessageImpl)
-				zombie_msgs.add((SignMessageImpl) sm);
-		}
-	}
-
-	/** Remove referenced sign messages */
-	private void removeReferencedMessages() {
-		Iterator<SignMessageImpl> it = zombie_msgs.iterator();
-		while (it.hasNext()) {
-			SignMessage sm = it.next();
-			if (isReferenced(sm))
-				it.remove();
-		}
-	}
-
-	/** Check if a sign message is referenced by any DMS */
-	private boolean isReferenced(SignMessage sm) {
+	/** Find all sign messages referenced by any DMS */
+	private HashSet<SignMessage> findReferencedMessages() {
+		HashSet<SignMessage> refs = new HashSet<SignMessage>();
 		Iterator<DMS> it = DMSHelper.iterator();
 		while (it.hasNext()) {
 			DMS dms = it.next();
-			if (dms instanceof DMSImpl) {
-				DMSImpl dmsi = (DMSImpl) dms;
-				if (dmsi.hasReference(sm))
-					return true;
-			}
+			if (dms instanceof DMSImpl)
+				((DMSImpl) dms).addReferences(refs);
 		}
-		return false;
+		return refs;
 	}
 
 	/** Reap incidents which have been cleared for awhile */
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2005-2016  Minnesota Department of Transportation
+ * Copyright (C) 2005-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -15,13 +15,17 @@
 package us.mn.state.dot.tms.server;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
-import java.util.LinkedList;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import us.mn.state.dot.sched.DebugLog;
@@ -29,28 +33,39 @@ import us.mn.state.dot.tms.ChangeVetoException;
 import us.mn.state.dot.tms.TMSException;
 
 /**
- * Simple SQL database abstraction stuff
+ * Simple SQL database abstraction stuff.  Connections are pooled in separate
+ * lanes for reading, interactive writes and write-behind events.  Event
+ * records are written behind by a SQL writer; all other commands (including
+ * field updates) are synchronous, so errors are returned to the caller.
  *
  * @author Douglas Lau
  */
 public class SQLConnection {
 
 	/** SQL debug log */
-	static private final DebugLog SQL_LOG = new DebugLog("sql");
+	static final DebugLog SQL_LOG = new DebugLog("sql");
 
 	/** Pattern to match for a SQL identifier */
 	static private final Pattern SQL_IDENTIFIER =
 		Pattern.compile("[a-z_0-9.]*");
 
+	/** Set of identifiers which have been validated */
+	static private final Set<String> VALID_IDENTIFIERS =
+		Collections.newSetFromMap(
+		new ConcurrentHashMap<String, Boolean>());
+
 	/** Validate a SQL identifier */
 	static private void validateIdentifier(String sql)
 		throws ChangeVetoException
 	{
+		if (VALID_IDENTIFIERS.contains(sql))
+			return;
 		Matcher m = SQL_IDENTIFIER.matcher(sql);
 		if (!m.matches()) {
 			throw new ChangeVetoException("Invalid SQL identifier: "
 				+ sql);
 		}
+		VALID_IDENTIFIERS.add(sql);
 	}
 
 	/** Pattern to match for a SQL string constant value */
@@ -78,24 +93,24 @@ public class SQLConnection {
 		return value.toString();
 	}
 
-	/** Location of database server */
-	private final String location;
+	/** Default number of connections for reading */
+	static public final int READ_CONNECTIONS = 4;
 
-	/** User to log into database server */
-	private final String user;
+	/** Lane for reading (queries) */
+	private final SQLLane read_lane;
 
-	/** Password to log into database server */
-	private final String password;
+	/** Lane for interactive writes */
+	private final SQLLane write_lane;
 
-	/** Connection to the SQL database */
-	private Connection connection = null;
+	/** SQL writer for write-behind events */
+	private final SQLWriter writer;
 
-	/** Available SQL statements */
-	private final LinkedList<Statement> statements =
-		new LinkedList<Statement>();
-
-	/** Create a new SQL connection */
-	public SQLConnection(String url, String usr, String pswd)
+	/** Create a new SQL connection.
+	 * @param url Location of database server.
+	 * @param usr Database user.
+	 * @param pswd Database password.
+	 * @param n_read Number of connections for reading. */
+	public SQLConnection(String url, String usr, String pswd, int n_read)
 		throws TMSException
 	{
 		try {
@@ -104,129 +119,121 @@ public class SQLConnection {
 		catch (ClassNotFoundException e) {
 			throw new TMSException(e);
 		}
-		location = url;
-		user = usr;
-		password = pswd;
+		read_lane = new SQLLane("read", url, usr, pswd, n_read, true);
+		write_lane = new SQLLane("write", url, usr, pswd, 1, true);
+		writer = new SQLWriter(new SQLLane("event", url, usr, pswd, 1,
+			false));
 	}
 
-	/** Close the current database connection */
-	private void close() throws SQLException {
-		statements.clear();
-		if (connection != null) {
-			try {
-				connection.close();
-			}
-			finally {
-				connection = null;
-			}
-		}
+	/** Create a new SQL connection */
+	public SQLConnection(String url, String usr, String pswd)
+		throws TMSException
+	{
+		this(url, usr, pswd, READ_CONNECTIONS);
 	}
 
-	/** Open a new database connection */
-	private void open() throws SQLException {
-		connection = DriverManager.getConnection(location, user,
-			password);
-		connection.setAutoCommit(true);
+	/** Get the number of connections for reading */
+	public int getReadConnections() {
+		return read_lane.getSize();
 	}
 
-	/** Create a database statement */
-	private Statement _createStatement() throws SQLException {
-		if (connection == null)
-			open();
-		return connection.createStatement();
+	/** Wait until all pending event writes are committed */
+	public void flush() {
+		writer.sync();
 	}
 
-	/** Create a database statement */
-	private Statement createStatement() throws TMSException {
+	/** Acquire a connection from a lane */
+	private Connection acquire(SQLLane lane) throws TMSException {
 		try {
-			return _createStatement();
+			return lane.acquire();
 		}
 		catch (SQLException e) {
-			SQL_LOG.log("createStatement -> " + e);
-			try {
-				close();
-				return _createStatement();
-			}
-			catch (SQLException e2) {
-				SQL_LOG.log("createStatement.2 -> " + e2);
-				throw new TMSException(e2);
-			}
+			SQL_LOG.log(lane.getName() + " acquire -> " + e);
+			throw new TMSException(e);
 		}
 	}
 
-	/** Get an available statement */
-	private synchronized Statement getStatement() throws TMSException {
-		if (statements.isEmpty())
-			return createStatement();
-		else
-			return statements.removeLast();
-	}
-
-	/** Put a statement back after using it */
-	private synchronized void putStatement(Statement s) {
-		statements.add(s);
-	}
-
 	/** Query the database and call a factory for each result */
 	public void query(String sql, ResultFactory factory)
 		throws TMSException
 	{
-		Statement s = getStatement();
+		Connection c = acquire(read_lane);
 		try {
-			ResultSet set = s.executeQuery(sql);
+			Statement s = c.createStatement();
 			try {
-				while (set.next())
-					factory.create(set);
+				ResultSet set = s.executeQuery(sql);
+				try {
+					while (set.next())
+						factory.create(set);
+				}
+				finally {
+					set.close();
+				}
 			}
 			finally {
-				set.close();
+				s.close();
 			}
-			putStatement(s);
+			read_lane.release(c);
 		}
 		catch (Exception e) {
+			read_lane.releaseFailed(c);
 			throw new TMSException(e);
 		}
 	}
 
 	/** Update the database with the given SQL command */
 	public void update(String sql) throws TMSException {
-		Statement s = getStatement();
+		Connection c = acquire(write_lane);
 		try {
-			s.executeUpdate(sql);
-			putStatement(s);
+			Statement s = c.createStatement();
+			try {
+				s.executeUpdate(sql);
+			}
+			finally {
+				s.close();
+			}
+			write_lane.release(c);
 		}
 		catch (SQLException e) {
 			SQL_LOG.log(sql + " -> " + e);
+			write_lane.releaseFailed(c);
 			throw new TMSException(e);
 		}
 	}
 
-	/** Update one field in a storable database table */
+	/** Update one field in a storable database table.  Values are bound
+	 * as untyped parameters, so the server converts them to the column
+	 * type, the same as quoted literals. */
 	public void update(Storable s, String field, Object value)
 		throws TMSException
 	{
+		validateIdentifier(s.getTable());
+		validateIdentifier(s.getKeyName());
 		validateIdentifier(field);
-		String key = escapeValue(s.getKey());
-		validateValue(key);
-		if (value == null) {
-			updateNull(s, field, key);
-			return;
+		String v = (value != null) ? prepareArray(value) : null;
+		String sql = "UPDATE " + s.getTable() + " SET " + field +
+			" = ? WHERE " + s.getKeyName() + " = ?;";
+		Connection c = acquire(write_lane);
+		try {
+			PreparedStatement ps = c.prepareStatement(sql);
+			try {
+				if (v != null)
+					ps.setObject(1, v, Types.OTHER);
+				else
+					ps.setNull(1, Types.OTHER);
+				ps.setObject(2, s.getKey(), Types.OTHER);
+				ps.executeUpdate();
+			}
+			finally {
+				ps.close();
+			}
+			write_lane.release(c);
+		}
+		catch (SQLException e) {
+			SQL_LOG.log(sql + " -> " + e);
+			write_lane.releaseFailed(c);
+			throw new TMSException(e);
 		}
-		String av = prepareArray(value);
-		String ev = escapeValue(av);
-		validateValue(ev);
-		update("UPDATE " + s.getTable() +
-		      " SET " + field + " = '" + ev + "'" +
-		      " WHERE " + s.getKeyName() + " = '" + key + "';");
-	}
-
-	/** Update one field with a NULL value */
-	private void updateNull(Storable s, String field, String key)
-		throws TMSException
-	{
-		update("UPDATE " + s.getTable() +
-		      " SET " + field + " = NULL" +
-		      " WHERE " + s.getKeyName() + " = '" + key + "';");
 	}
 
 	/** Create one storable record */
@@ -257,6 +264,23 @@ public class SQLConnection {
 		update(sql);
 	}
 
+	/** Create one storable record, written behind.  This is intended
+	 * for event records, so database errors are only logged. */
+	public void createLater(Storable s) throws TMSException {
+		validateIdentifier(s.getTable());
+		LinkedHashMap<String, String> cols =
+			new LinkedHashMap<String, String>();
+		for (Map.Entry<String, Object> e: s.getColumns().entrySet()) {
+			Object value = e.getValue();
+			if (value != null) {
+				String field = e.getKey();
+				validateIdentifier(field);
+				cols.put(field, prepareArray(value));
+			}
+		}
+		writer.insert(s.getTable(), cols);
+	}
+
 	/** Destroy one storable record */
 	public void destroy(Storable s) throws TMSException {
 		String esc_val = escapeValue(s.getKey());
@@ -268,20 +292,26 @@ public class SQLConnection {
 
 	/** Update the database with a batch of SQL commands */
 	public void batch(BatchFactory f) throws TMSException {
-		Statement s = getStatement();
+		Connection c = acquire(write_lane);
 		try {
-			while (true) {
-				String sql = f.next();
-				if (sql == null)
-					break;
-				s.addBatch(sql);
+			Statement s = c.createStatement();
+			try {
+				while (true) {
+					String sql = f.next();
+					if (sql == null)
+						break;
+					s.addBatch(sql);
+				}
+				s.executeBatch();
+			}
+			finally {
+				s.close();
 			}
-			s.executeBatch();
-			s.clearBatch();
-			putStatement(s);
+			write_lane.release(c);
 		}
 		catch (SQLException e) {
 			SQL_LOG.log("batch -> " + e);
+			write_lane.releaseFailed(c);
 			throw new TMSException(e);
 		}
 	}
@@ -0,0 +1,266 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Properties;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * A SQL lane is a small pool of database connections used for one kind of
+ * work, such as bulk reads or background writes.  Separate lanes keep one
+ * kind of work from waiting behind another.  Connections are checked before
+ * reuse if they have been idle, and are reopened after failures.
+ *
+ * @author Douglas Lau
+ */
+final class SQLLane {
+
+	/** SQL statistics debug log */
+	static private final DebugLog STATS_LOG = new DebugLog("sql_stats");
+
+	/** SQL debug log */
+	static private final DebugLog SQL_LOG = SQLConnection.SQL_LOG;
+
+	/** Idle time before a connection is checked for reuse (ms) */
+	static private final long CHECK_IDLE_MS = 30 * 1000;
+
+	/** Timeout for connection health checks (sec) */
+	static private final int CHECK_TIMEOUT_SEC = 5;
+
+	/** Interval to log statistics (ms) */
+	static private final long LOG_INTERVAL_MS = 60 * 1000;
+
+	/** Lane name */
+	private final String name;
+
+	/** Location of database server */
+	private final String location;
+
+	/** Connection properties */
+	private final Properties props;
+
+	/** Auto-commit mode for connections */
+	private final boolean auto_commit;
+
+	/** Maximum number of connections */
+	private final int size;
+
+	/** Idle connections */
+	private final LinkedList<Connection> idle =
+		new LinkedList<Connection>();
+
+	/** Time each idle connection was released */
+	private final IdentityHashMap<Connection, Long> released =
+		new IdentityHashMap<Connection, Long>();
+
+	/** Number of open connections (idle or in use) */
+	private int n_open = 0;
+
+	/** Number of connections acquired since last log */
+	private int n_acquired = 0;
+
+	/** Total wait time since last log (ms) */
+	private long wait_ms = 0;
+
+	/** Maximum wait time since last log (ms) */
+	private long max_wait_ms = 0;
+
+	/** Number of connections reopened since last log */
+	private int n_reopened = 0;
+
+	/** Time stats were last logged */
+	private long logged = TimeSteward.currentTimeMillis();
+
+	/** Create a new SQL lane.
+	 * @param n Lane name.
+	 * @param url Location of database server.
+	 * @param usr Database user.
+	 * @param pswd Database password.
+	 * @param sz Maximum number of connections.
+	 * @param ac Auto-commit mode. */
+	SQLLane(String n, String url, String usr, String pswd, int sz,
+		boolean ac)
+	{
+		name = n;
+		location = url;
+		props = new Properties();
+		if (usr != null)
+			props.setProperty("user", usr);
+		if (pswd != null)
+			props.setProperty("password", pswd);
+		// Rewrite batched inserts as multi-row inserts
+		props.setProperty("reWriteBatchedInserts", "true");
+		size = Math.max(sz, 1);
+		auto_commit = ac;
+	}
+
+	/** Get the lane name */
+	String getName() {
+		return name;
+	}
+
+	/** Get the maximum number of connections */
+	int getSize() {
+		return size;
+	}
+
+	/** Acquire a connection, waiting for one to become available.
+	 * It must be returned with release. */
+	Connection acquire() throws SQLException {
+		long start = TimeSteward.currentTimeMillis();
+		Connection c = take();
+		recordWait(TimeSteward.currentTimeMillis() - start);
+		if (null == c)
+			return open();
+		if (isHealthy(c))
+			return c;
+		// Reopen the connection, keeping its slot
+		close(c);
+		synchronized (this) {
+			n_reopened++;
+		}
+		return open();
+	}
+
+	/** Take an idle connection, or reserve a slot for a new one.
+	 * @return Idle connection, or null to open a new one. */
+	private synchronized Connection take() throws SQLException {
+		while (idle.isEmpty() && n_open >= size) {
+			try {
+				wait();
+			}
+			catch (InterruptedException e) {
+				throw new SQLException(e);
+			}
+		}
+		if (!idle.isEmpty())
+			return idle.removeLast();
+		n_open++;
+		return null;
+	}
+
+	/** Check if a connection is healthy */
+	private boolean isHealthy(Connection c) {
+		Long r;
+		synchronized (this) {
+			r = released.remove(c);
+		}
+		long now = TimeSteward.currentTimeMillis();
+		if (r != null && now - r < CHECK_IDLE_MS)
+			return true;
+		try {
+			return c.isValid(CHECK_TIMEOUT_SEC);
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/** Open a new connection in a reserved slot */
+	private Connection open() throws SQLException {
+		try {
+			Connection c = DriverManager.getConnection(location,
+				props);
+			c.setAutoCommit(auto_commit);
+			return c;
+		}
+		catch (SQLException e) {
+			SQL_LOG.log(name + " open -> " + e);
+			synchronized (this) {
+				n_open--;
+				notify();
+			}
+			throw e;
+		}
+	}
+
+	/** Release a connection after using it */
+	void release(Connection c) {
+		synchronized (this) {
+			released.put(c, TimeSteward.currentTimeMillis());
+			idle.add(c);
+			notify();
+		}
+	}
+
+	/** Close a connection */
+	private void close(Connection c) {
+		try {
+			c.close();
+		}
+		catch (SQLException e) {
+			SQL_LOG.log(name + " close -> " + e);
+		}
+	}
+
+	/** Discard a failed connection, freeing its slot */
+	void discard(Connection c) {
+		close(c);
+		synchronized (this) {
+			released.remove(c);
+			n_open--;
+			notify();
+		}
+	}
+
+	/** Release a connection after an error.  If the connection is no
+	 * longer valid, it is discarded. */
+	void releaseFailed(Connection c) {
+		boolean valid;
+		try {
+			valid = c.isValid(CHECK_TIMEOUT_SEC);
+		}
+		catch (SQLException e) {
+			valid = false;
+		}
+		if (valid)
+			release(c);
+		else
+			discard(c);
+	}
+
+	/** Record time waiting for a connection */
+	private synchronized void recordWait(long ms) {
+		n_acquired++;
+		wait_ms += ms;
+		max_wait_ms = Math.max(max_wait_ms, ms);
+		long now = TimeSteward.currentTimeMillis();
+		if (now - logged >= LOG_INTERVAL_MS) {
+			logged = now;
+			if (STATS_LOG.isOpen())
+				logStats();
+			n_acquired = 0;
+			wait_ms = 0;
+			max_wait_ms = 0;
+			n_reopened = 0;
+		}
+	}
+
+	/** Log lane statistics */
+	private void logStats() {
+		STATS_LOG.log(name + " n=" + n_acquired +
+			", avg_wait=" + (wait_ms / n_acquired) +
+			", max_wait=" + max_wait_ms +
+			", open=" + n_open +
+			", idle=" + idle.size() +
+			", reopened=" + n_reopened);
+	}
+}
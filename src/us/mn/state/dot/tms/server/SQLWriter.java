@@ -0,0 +1,356 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.Scheduler;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * SQL writer for write-behind event inserts.  Writes are queued and
+ * committed in batches on a dedicated connection lane, using a prepared
+ * statement for each distinct SQL command.  A batch is written when the time
+ * window expires or the row threshold is reached.  Writes are executed in
+ * the order they were queued.
+ *
+ * @author Douglas Lau
+ */
+final class SQLWriter {
+
+	/** SQL writer debug log */
+	static private final DebugLog WRITER_LOG = new DebugLog("sql_writer");
+
+	/** Time window for batching writes (ms) */
+	static private final int WINDOW_MS = 200;
+
+	/** Number of pending writes to trigger a batch immediately */
+	static private final int BATCH_ROWS = 500;
+
+	/** Maximum number of pending writes before blocking producers */
+	static private final int MAX_PENDING = 20000;
+
+	/** A pending write */
+	static private class Write {
+		private final String sql;
+		private final String[] params;
+		private Write(String s, String[] p) {
+			sql = s;
+			params = p;
+		}
+	}
+
+	/** Lane for database connections */
+	private final SQLLane lane;
+
+	/** Scheduler for writing batches */
+	private final Scheduler sched = new Scheduler("sql_writer");
+
+	/** Connection for cached statements (writer thread only) */
+	private Connection stmt_conn = null;
+
+	/** Prepared statements, mapped by SQL command (writer thread only) */
+	private final HashMap<String, PreparedStatement> statements =
+		new HashMap<String, PreparedStatement>();
+
+	/** Pending writes */
+	private ArrayList<Write> pending = new ArrayList<Write>();
+
+	/** Total number of writes queued */
+	private long n_queued = 0;
+
+	/** Total number of writes completed */
+	private long n_done = 0;
+
+	/** Flag indicating a batch job is scheduled for the window */
+	private boolean scheduled = false;
+
+	/** Flag indicating an immediate batch job is scheduled */
+	private boolean urgent = false;
+
+	/** Number of times a producer was blocked since last batch */
+	private int n_stalled = 0;
+
+	/** Create a new SQL writer.
+	 * @param l Lane for database connections (without auto-commit). */
+	SQLWriter(SQLLane l) {
+		lane = l;
+	}
+
+	/** Queue an insert of one record.
+	 * @param table Table name.
+	 * @param columns Mapping of column names to values. */
+	void insert(String table, Map<String, String> columns) {
+		StringBuilder keys = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		String[] params = new String[columns.size()];
+		int i = 0;
+		for (Map.Entry<String, String> e: columns.entrySet()) {
+			if (i > 0) {
+				keys.append(',');
+				values.append(',');
+			}
+			keys.append(e.getKey());
+			values.append('?');
+			params[i++] = e.getValue();
+		}
+		String sql = "INSERT INTO " + table + " (" + keys +
+			") VALUES (" + values + ");";
+		enqueue(new Write(sql, params));
+	}
+
+	/** Add a write to the pending queue */
+	private synchronized void enqueue(Write w) {
+		while (pending.size() >= MAX_PENDING) {
+			n_stalled++;
+			scheduleBatch(true);
+			try {
+				wait();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		pending.add(w);
+		n_queued++;
+		scheduleBatch(pending.size() >= BATCH_ROWS);
+	}
+
+	/** Schedule a batch job.
+	 * @param now Flag to write the batch immediately. */
+	private void scheduleBatch(boolean now) {
+		if (now) {
+			if (!urgent) {
+				urgent = true;
+				sched.addJob(new BatchJob(0));
+			}
+		} else if (!scheduled) {
+			scheduled = true;
+			sched.addJob(new BatchJob(WINDOW_MS));
+		}
+	}
+
+	/** Job to write a batch */
+	private class BatchJob extends Job {
+		private BatchJob(int ms) {
+			super(ms);
+		}
+		public void perform() {
+			writeBatch();
+		}
+	}
+
+	/** Wait until all writes queued before this call are committed */
+	void sync() {
+		synchronized (this) {
+			long target = n_queued;
+			if (n_done >= target)
+				return;
+			scheduleBatch(true);
+			while (n_done < target) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/** Get the number of pending writes */
+	synchronized int getPending() {
+		return pending.size();
+	}
+
+	/** Write a batch of all pending writes */
+	private void writeBatch() {
+		ArrayList<Write> writes;
+		long target;
+		int stalled;
+		synchronized (this) {
+			writes = pending;
+			pending = new ArrayList<Write>();
+			target = n_queued;
+			stalled = n_stalled;
+			n_stalled = 0;
+			scheduled = false;
+			urgent = false;
+			notifyAll();
+		}
+		if (!writes.isEmpty()) {
+			long start = TimeSteward.currentTimeMillis();
+			int failed = write(writes);
+			if (WRITER_LOG.isOpen()) {
+				long e = TimeSteward.currentTimeMillis() -
+					start;
+				WRITER_LOG.log("rows: " + writes.size() +
+					", failed: " + failed +
+					", stalled: " + stalled +
+					", elapsed: " + e);
+			}
+		}
+		synchronized (this) {
+			n_done = target;
+			notifyAll();
+		}
+	}
+
+	/** Write a batch in one transaction.
+	 * @return Number of failed writes. */
+	private int write(Collection<Write> writes) {
+		Connection c;
+		try {
+			c = lane.acquire();
+		}
+		catch (SQLException e) {
+			WRITER_LOG.log("acquire -> " + e);
+			return writes.size();
+		}
+		try {
+			executeBatches(c, writes);
+			c.commit();
+			lane.release(c);
+			return 0;
+		}
+		catch (SQLException e) {
+			WRITER_LOG.log("batch -> " + e);
+			rollback(c);
+			lane.releaseFailed(c);
+			// Retry each write separately, so one bad row
+			// does not lose the whole batch
+			return executeEach(writes);
+		}
+	}
+
+	/** Execute writes in order.  Each run of consecutive writes with
+	 * the same SQL command is sent as one batch. */
+	private void executeBatches(Connection c, Collection<Write> writes)
+		throws SQLException
+	{
+		PreparedStatement ps = null;
+		String sql = null;
+		int n = 0;
+		for (Write w: writes) {
+			if (!w.sql.equals(sql) || n >= BATCH_ROWS) {
+				if (n > 0)
+					ps.executeBatch();
+				sql = w.sql;
+				ps = prepare(c, sql);
+				n = 0;
+			}
+			bind(ps, w);
+			ps.addBatch();
+			n++;
+		}
+		if (n > 0)
+			ps.executeBatch();
+	}
+
+	/** Execute each write in a separate transaction.
+	 * @return Number of failed writes. */
+	private int executeEach(Collection<Write> writes) {
+		Connection c;
+		try {
+			c = lane.acquire();
+		}
+		catch (SQLException e) {
+			WRITER_LOG.log("acquire -> " + e);
+			return writes.size();
+		}
+		int failed = 0;
+		for (Write w: writes) {
+			try {
+				PreparedStatement ps = prepare(c, w.sql);
+				bind(ps, w);
+				ps.executeUpdate();
+				c.commit();
+			}
+			catch (SQLException e) {
+				WRITER_LOG.log(w.sql + " -> " + e);
+				failed++;
+				rollback(c);
+			}
+		}
+		if (failed > 0)
+			lane.releaseFailed(c);
+		else
+			lane.release(c);
+		return failed;
+	}
+
+	/** Get a prepared statement for a SQL command */
+	private PreparedStatement prepare(Connection c, String sql)
+		throws SQLException
+	{
+		// Statements are only cached for one connection
+		if (c != stmt_conn) {
+			closeStatements();
+			stmt_conn = c;
+		}
+		PreparedStatement ps = statements.get(sql);
+		if (null == ps) {
+			ps = c.prepareStatement(sql);
+			statements.put(sql, ps);
+		}
+		return ps;
+	}
+
+	/** Close all cached prepared statements */
+	private void closeStatements() {
+		for (PreparedStatement ps: statements.values()) {
+			try {
+				ps.close();
+			}
+			catch (SQLException e) {
+				WRITER_LOG.log("close -> " + e);
+			}
+		}
+		statements.clear();
+	}
+
+	/** Bind parameters of a write to a prepared statement.  Parameters
+	 * are untyped, so the server converts them to the column types, the
+	 * same as quoted literals. */
+	private void bind(PreparedStatement ps, Write w) throws SQLException {
+		for (int i = 0; i < w.params.length; i++) {
+			String p = w.params[i];
+			if (p != null)
+				ps.setObject(i + 1, p, Types.OTHER);
+			else
+				ps.setNull(i + 1, Types.OTHER);
+		}
+	}
+
+	/** Roll back the current transaction */
+	private void rollback(Connection c) {
+		try {
+			c.rollback();
+		}
+		catch (SQLException e) {
+			WRITER_LOG.log("rollback -> " + e);
+		}
+	}
+}
@@ -0,0 +1,548 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * Builder for sample archive (.traffic) files.  Each day is archived on a
+ * bounded pool of threads, so that the FLUSH thread is never blocked.
+ *
+ * An archive is written to a temporary file, which is synced and renamed
+ * into place before any sample files are deleted.  After a crash, a
+ * half-written temporary file is discarded and the day is built again from
+ * the sample files, which are still intact.  If a crash happens while
+ * deleting sample files, the next run merges the remaining files into the
+ * existing archive.
+ *
+ * Writers of sample data lock each date while writing it.  A day is only
+ * built while no writer holds its date, and late writers wait until the
+ * build is done, so that no samples are written to files which are about
+ * to be deleted.
+ *
+ * @author Douglas Lau
+ */
+public class SampleArchiveBuilder {
+
+	/** Archive debug log */
+	static private final DebugLog ARCHIVE_LOG = new DebugLog("archive");
+
+	/** Archive file extension */
+	static public final String ARCHIVE_EXT = ".traffic";
+
+	/** Temporary archive file extension */
+	static public final String TEMP_EXT = ".traffic.tmp";
+
+	/** Initial size of file read buffer */
+	static private final int BUFFER_BYTES = 64 * 1024;
+
+	/** Dates currently being archived */
+	static private final Set<String> ARCHIVING = Collections.newSetFromMap(
+		new ConcurrentHashMap<String, Boolean>());
+
+	/** Number of writers holding each date, or -1 while a date is being
+	 * built */
+	static private final HashMap<String, Integer> LOCKS =
+		new HashMap<String, Integer>();
+
+	/** Lock a date for writing sample data.  If the date is being built,
+	 * this waits until the build is done.
+	 * @param date Date string (YYYYMMDD). */
+	static void lockWrite(String date) throws InterruptedIOException {
+		synchronized (LOCKS) {
+			Integer n = LOCKS.get(date);
+			while (n != null && n < 0) {
+				waitLocks();
+				n = LOCKS.get(date);
+			}
+			LOCKS.put(date, (n != null) ? n + 1 : 1);
+		}
+	}
+
+	/** Unlock a date after writing sample data.
+	 * @param date Date string (YYYYMMDD). */
+	static void unlockWrite(String date) {
+		synchronized (LOCKS) {
+			Integer n = LOCKS.get(date);
+			if (n != null && n > 1)
+				LOCKS.put(date, n - 1);
+			else {
+				LOCKS.remove(date);
+				LOCKS.notifyAll();
+			}
+		}
+	}
+
+	/** Lock a date for building, waiting until no writers hold it */
+	static private void lockBuild(String date)
+		throws InterruptedIOException
+	{
+		synchronized (LOCKS) {
+			while (LOCKS.containsKey(date))
+				waitLocks();
+			LOCKS.put(date, -1);
+		}
+	}
+
+	/** Unlock a date after building */
+	static private void unlockBuild(String date) {
+		synchronized (LOCKS) {
+			LOCKS.remove(date);
+			LOCKS.notifyAll();
+		}
+	}
+
+	/** Wait for a change to date locks */
+	static private void waitLocks() throws InterruptedIOException {
+		try {
+			LOCKS.wait();
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException("date lock");
+		}
+	}
+
+	/** Check if a date has been (or is being) archived.  Sample data for
+	 * an archived date must not be written to a column file.
+	 * @param year Year directory.
+	 * @param date Date string (YYYYMMDD). */
+	static boolean isArchived(File year, String date) {
+		return ARCHIVING.contains(date) ||
+		       new File(year, date + ARCHIVE_EXT).exists();
+	}
+
+	/** Archive statistics */
+	static final class Stats {
+		int n_days;
+		int n_files;
+		long n_bytes;
+		long elapsed;
+
+		/** Add statistics from another */
+		void add(Stats s) {
+			n_days += s.n_days;
+			n_files += s.n_files;
+			n_bytes += s.n_bytes;
+		}
+
+		/** Get the throughput (MB per second) */
+		double mbPerSec() {
+			return (elapsed > 0)
+			      ? (n_bytes / 1048576.0) / (elapsed / 1000.0)
+			      : 0;
+		}
+
+		/** Get the throughput (files per second) */
+		double filesPerSec() {
+			return (elapsed > 0)
+			      ? n_files / (elapsed / 1000.0)
+			      : 0;
+		}
+
+		@Override
+		public String toString() {
+			return n_days + " days, " + n_files + " files, " +
+				String.format("%.1f MB in %.1f s (%.1f MB/s, " +
+				"%.0f files/s)", n_bytes / 1048576.0,
+				elapsed / 1000.0, mbPerSec(), filesPerSec());
+		}
+	}
+
+	/** A sample file added to an archive */
+	static private final class Source {
+		private final File file;
+		private final long length;
+		private final long modified;
+		private Source(File f, long len, long mod) {
+			file = f;
+			length = len;
+			modified = mod;
+		}
+
+		/** Delete the file, unless it changed after being read */
+		private void delete() {
+			if (file.length() == length &&
+			    file.lastModified() == modified)
+				file.delete();
+			else
+				ARCHIVE_LOG.log("Changed: " + file);
+		}
+	}
+
+	/** Sample archive factory */
+	private final SampleArchiveFactory factory;
+
+	/** Compression level (0-9, or -1 for default) */
+	private final int zip_level;
+
+	/** Executor for archiving days */
+	private final ThreadPoolExecutor executor;
+
+	/** Number of days queued or being archived */
+	private int n_pending = 0;
+
+	/** Statistics for current run */
+	private Stats run;
+
+	/** Start time of current run */
+	private long run_start;
+
+	/** Create a new sample archive builder.
+	 * @param f Sample archive factory.
+	 * @param n_threads Number of archive threads.
+	 * @param level Compression level. */
+	SampleArchiveBuilder(SampleArchiveFactory f, int n_threads, int level)
+	{
+		factory = f;
+		zip_level = level;
+		executor = new ThreadPoolExecutor(n_threads, n_threads, 60,
+			TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			createThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/** Create a thread factory for archive threads */
+	static private ThreadFactory createThreadFactory() {
+		return new ThreadFactory() {
+			private int n_thread = 0;
+			public synchronized Thread newThread(Runnable r) {
+				n_thread++;
+				Thread t = new Thread(r, "Archive " + n_thread);
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		};
+	}
+
+	/** Submit days to be archived, as one run.  Days which are already
+	 * queued are skipped.
+	 * @param year Year directory.
+	 * @param dates Date strings (YYYYMMDD). */
+	void submit(File year, Collection<String> dates) {
+		ArrayList<String> run_dates = new ArrayList<String>();
+		for (String date: dates) {
+			if (ARCHIVING.add(date))
+				run_dates.add(date);
+		}
+		beginDays(run_dates.size());
+		for (String date: run_dates)
+			execute(year, date);
+	}
+
+	/** Execute archiving of one day */
+	private void execute(final File year, final String date) {
+		executor.execute(new Runnable() {
+			public void run() {
+				Stats s = null;
+				try {
+					s = build(year, date);
+				}
+				catch (IOException e) {
+					ARCHIVE_LOG.log(date + ", " +
+						e.getMessage());
+				}
+				finally {
+					ARCHIVING.remove(date);
+					endDay(s);
+				}
+			}
+		});
+	}
+
+	/** Begin archiving a number of days */
+	private synchronized void beginDays(int n_days) {
+		if (n_days > 0) {
+			if (0 == n_pending) {
+				run = new Stats();
+				run_start = TimeSteward.currentTimeMillis();
+			}
+			n_pending += n_days;
+		}
+	}
+
+	/** End archiving a day */
+	private synchronized void endDay(Stats s) {
+		if (s != null)
+			run.add(s);
+		n_pending--;
+		if (0 == n_pending) {
+			run.elapsed = TimeSteward.currentTimeMillis() -
+				run_start;
+			if (ARCHIVE_LOG.isOpen() && run.n_days > 0)
+				ARCHIVE_LOG.log("Run: " + run);
+			notifyAll();
+		}
+	}
+
+	/** Wait until all submitted days have been archived.
+	 * @param ms Maximum time to wait (ms).
+	 * @return Statistics for the run, or null on timeout. */
+	synchronized Stats waitIdle(long ms) throws InterruptedException {
+		long end = TimeSteward.currentTimeMillis() + ms;
+		while (n_pending > 0) {
+			long w = end - TimeSteward.currentTimeMillis();
+			if (w <= 0)
+				return null;
+			wait(w);
+		}
+		return run;
+	}
+
+	/** Build the archive file for one day and delete the sample files.
+	 * This waits until no writers hold the date.
+	 * @param year Year directory.
+	 * @param date Date string (YYYYMMDD).
+	 * @return Archive statistics. */
+	Stats build(File year, String date) throws IOException {
+		long start = TimeSteward.currentTimeMillis();
+		Stats s;
+		lockBuild(date);
+		try {
+			s = new DayBuilder(year, date).build();
+		}
+		finally {
+			unlockBuild(date);
+		}
+		s.elapsed = TimeSteward.currentTimeMillis() - start;
+		if (ARCHIVE_LOG.isOpen() && s.n_days > 0)
+			ARCHIVE_LOG.log(date + ": " + s);
+		return s;
+	}
+
+	/** Builder for one day of sample data */
+	private final class DayBuilder {
+		private final File traf;
+		private final File temp;
+		private final File day;
+		private final File base;
+		private final Stats stats = new Stats();
+
+		/** CRC of each entry, by name */
+		private final HashMap<String, Long> crcs =
+			new HashMap<String, Long>();
+
+		/** Sample files to delete after archiving */
+		private final ArrayList<Source> sources =
+			new ArrayList<Source>();
+
+		/** File read buffer */
+		private byte[] buffer = new byte[BUFFER_BYTES];
+
+		/** Zip output stream */
+		private ZipOutputStream zos;
+
+		private DayBuilder(File year, String date) {
+			traf = new File(year, date + ARCHIVE_EXT);
+			temp = new File(year, date + TEMP_EXT);
+			day = new File(year, date);
+			base = SampleColumnFile.baseFile(year, date);
+		}
+
+		/** Build the archive */
+		private Stats build() throws IOException {
+			// Left over from a crash while writing
+			if (temp.exists() && !temp.delete())
+				throw new IOException("delete failed: " + temp);
+			factory.closeColumnFile(base);
+			boolean has_col = SampleColumnFile.exists(base);
+			if (!has_col && !day.isDirectory())
+				return stats;
+			FileOutputStream fos = new FileOutputStream(temp);
+			try {
+				zos = new ZipOutputStream(
+					new BufferedOutputStream(fos,
+					BUFFER_BYTES));
+				zos.setLevel(zip_level);
+				if (traf.exists())
+					addArchiveEntries();
+				if (has_col)
+					addColumnEntries();
+				if (day.isDirectory())
+					addSampleEntries();
+				zos.finish();
+				zos.flush();
+				fos.getFD().sync();
+			}
+			finally {
+				fos.close();
+			}
+			Files.move(temp.toPath(), traf.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+			for (Source src: sources)
+				src.delete();
+			if (day.isDirectory())
+				day.delete();
+			if (has_col)
+				SampleColumnFile.delete(base);
+			stats.n_days = 1;
+			return stats;
+		}
+
+		/** Add an entry to the archive */
+		private void addEntry(String name, byte[] data, int len)
+			throws IOException
+		{
+			zos.putNextEntry(new ZipEntry(name));
+			zos.write(data, 0, len);
+			zos.closeEntry();
+			crcs.put(name, crc(data, len));
+			stats.n_files++;
+			stats.n_bytes += len;
+		}
+
+		/** Copy entries from an existing archive, left by a crash while
+		 * deleting sample files */
+		private void addArchiveEntries() throws IOException {
+			ZipFile zf = new ZipFile(traf);
+			try {
+				Enumeration<? extends ZipEntry> e =
+					zf.entries();
+				while (e.hasMoreElements()) {
+					ZipEntry ze = e.nextElement();
+					InputStream is = zf.getInputStream(ze);
+					try {
+						int len = readFully(is,
+							(int) ze.getSize());
+						addEntry(ze.getName(), buffer,
+							len);
+					}
+					finally {
+						is.close();
+					}
+				}
+			}
+			finally {
+				zf.close();
+			}
+		}
+
+		/** Add all columns from the column file */
+		private void addColumnEntries() throws IOException {
+			SampleColumnFile cf = new SampleColumnFile(base);
+			try {
+				TreeSet<String> entries = new TreeSet<String>(
+					cf.getColumnNames());
+				for (String entry: entries) {
+					if (!crcs.containsKey(entry)) {
+						byte[] data = cf.read(entry);
+						addEntry(entry, data,
+							data.length);
+					}
+				}
+			}
+			finally {
+				cf.close();
+			}
+		}
+
+		/** Add all valid sample files from the day directory */
+		private void addSampleEntries() throws IOException {
+			String[] entries = day.list(new FilenameFilter() {
+				public boolean accept(File dir, String name) {
+					return factory.hasKnownExtension(name);
+				}
+			});
+			if (null == entries)
+				return;
+			Arrays.sort(entries);
+			for (String entry: entries)
+				addSampleEntry(entry);
+		}
+
+		/** Add one sample file to the archive */
+		private void addSampleEntry(String name) throws IOException {
+			File file = new File(day, name);
+			long mod = file.lastModified();
+			int len;
+			FileInputStream fis = new FileInputStream(file);
+			try {
+				len = readFully(fis, (int) file.length());
+			}
+			finally {
+				fis.close();
+			}
+			Long crc = crcs.get(name);
+			if (null == crc) {
+				addEntry(name, buffer, len);
+				sources.add(new Source(file, len, mod));
+			} else if (crc == crc(buffer, len))
+				sources.add(new Source(file, len, mod));
+			else
+				ARCHIVE_LOG.log("Conflict: " + file);
+		}
+
+		/** Read a stream into the buffer.
+		 * @param is Input stream.
+		 * @param sz Expected size, or -1 if unknown.
+		 * @return Number of bytes read. */
+		private int readFully(InputStream is, int sz)
+			throws IOException
+		{
+			if (sz > buffer.length)
+				buffer = new byte[sz];
+			int n = 0;
+			while (true) {
+				if (n == buffer.length) {
+					if (n == sz)
+						break;
+					buffer = Arrays.copyOf(buffer, n * 2);
+				}
+				int r = is.read(buffer, n, buffer.length - n);
+				if (r < 0)
+					break;
+				n += r;
+			}
+			return n;
+		}
+	}
+
+	/** Calculate the CRC-32 of a buffer */
+	static private long crc(byte[] data, int len) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, len);
+		return crc.getValue();
+	}
+}
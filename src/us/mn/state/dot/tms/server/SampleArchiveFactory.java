@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2010-2013  Minnesota Department of Transportation
+ * Copyright (C) 2010-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -43,4 +43,17 @@ public interface SampleArchiveFactory {
 
 	/** Test if a sample file name has a known extension */
 	boolean hasKnownExtension(String name);
+
+	/** Get a column file to archive periodic samples.
+	 * @param stamp Time stamp.
+	 * @return Column file for the day of the time stamp, or null if
+	 *         periodic samples are archived in separate files. */
+	SampleColumnFile columnFile(long stamp) throws IOException;
+
+	/** Close all open column files */
+	void closeColumnFiles();
+
+	/** Close a column file, if it is open.
+	 * @param base Base file name (without extension). */
+	void closeColumnFile(File base);
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2010-2018  Minnesota Department of Transportation
+ * Copyright (C) 2010-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,7 +16,11 @@ package us.mn.state.dot.tms.server;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Properties;
+import java.util.zip.Deflater;
+import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.TimeSteward;
 
 /**
@@ -26,30 +30,113 @@ import us.mn.state.dot.sched.TimeSteward;
  */
 public class SampleArchiveFactoryImpl implements SampleArchiveFactory {
 
+	/** Flush debug log */
+	static private final DebugLog FLUSH_LOG =
+		PeriodicSampleWriter.FLUSH_LOG;
+
+	/** Property to enable columnar sample archive */
+	static private final String COLUMNAR_PROP = "sample.archive.columnar";
+
+	/** Property to enable binary vehicle event logs */
+	static private final String VLOG_BINARY_PROP =
+		"sample.archive.vlog.binary";
+
+	/** Property for number of archive threads */
+	static private final String THREADS_PROP = "sample.archive.threads";
+
+	/** Property for archive compression level */
+	static private final String LEVEL_PROP = "sample.archive.zip.level";
+
+	/** Default number of archive threads */
+	static private final int DEFAULT_THREADS = 2;
+
+	/** Maximum number of open column files */
+	static private final int MAX_COLUMN_FILES = 2;
+
 	/** Sample archive directory */
 	static public File sampleArchiveDir() {
 		return new File("/var/lib/iris/traffic",
 			MainServer.districtId());
 	}
 
-	/** Get a valid directory for a given date stamp.
-	 * @param stamp Time stamp
+	/** Get a valid year directory for a given date.
+	 * @param d Date string (YYYYMMDD).
 	 * @return Directory to store sample data.
 	 * @throws IOException If directory cannot be created. */
-	static private String directory(long stamp) throws IOException {
+	static private File yearDirectory(String d) throws IOException {
 		File arc = sampleArchiveDir();
-		if(!arc.exists() && !arc.mkdir())
+		if (!arc.exists() && !arc.mkdir())
 			throw new IOException("mkdir failed: " + arc);
-		String d = TimeSteward.dateShortString(stamp);
 		File year = new File(arc, d.substring(0, 4));
-		if(!year.exists() && !year.mkdir())
+		if (!year.exists() && !year.mkdir())
 			throw new IOException("mkdir failed: " + year);
+		return year;
+	}
+
+	/** Get a valid directory for a given date stamp.
+	 * @param stamp Time stamp
+	 * @return Directory to store sample data.
+	 * @throws IOException If directory cannot be created. */
+	static private String directory(long stamp) throws IOException {
+		String d = TimeSteward.dateShortString(stamp);
+		File year = yearDirectory(d);
 		File dir = new File(year.getPath(), d);
 		if(!dir.exists() && !dir.mkdir())
 			throw new IOException("mkdir failed: " + dir);
 		return dir.getCanonicalPath();
 	}
 
+	/** Flag to store periodic samples in column files */
+	private boolean columnar = false;
+
+	/** Flag to log vehicle events in binary format */
+	private boolean vlog_binary = false;
+
+	/** Number of threads for building archive files */
+	private int archive_threads = DEFAULT_THREADS;
+
+	/** Compression level for archive files */
+	private int zip_level = Deflater.DEFAULT_COMPRESSION;
+
+	/** Open column files, most recently opened last */
+	private final ArrayList<SampleColumnFile> col_files =
+		new ArrayList<SampleColumnFile>();
+
+	/** Configure the sample archive.
+	 * @param props Server properties. */
+	public void configure(Properties props) {
+		columnar = getBoolean(props, COLUMNAR_PROP);
+		vlog_binary = getBoolean(props, VLOG_BINARY_PROP);
+		archive_threads = Math.max(1, getInt(props, THREADS_PROP,
+			DEFAULT_THREADS));
+		zip_level = Math.max(Deflater.DEFAULT_COMPRESSION, Math.min(
+			Deflater.BEST_COMPRESSION, getInt(props, LEVEL_PROP,
+			Deflater.DEFAULT_COMPRESSION)));
+	}
+
+	/** Get a boolean property */
+	static private boolean getBoolean(Properties props, String p) {
+		String v = props.getProperty(p);
+		return (v != null) && Boolean.parseBoolean(v.trim());
+	}
+
+	/** Get an integer property */
+	static private int getInt(Properties props, String p, int d) {
+		String v = props.getProperty(p);
+		return (v != null) ? Integer.parseInt(v.trim()) : d;
+	}
+
+	/** Create a builder for sample archive files */
+	public SampleArchiveBuilder createArchiveBuilder() {
+		return new SampleArchiveBuilder(this, archive_threads,
+			zip_level);
+	}
+
+	/** Check if vehicle events are logged in binary format */
+	public boolean isVehicleLogBinary() {
+		return vlog_binary;
+	}
+
 	/** Set of all archive file extensions */
 	private final HashSet<String> extensions = new HashSet<String>();
 
@@ -95,4 +182,58 @@ public class SampleArchiveFactoryImpl implements SampleArchiveFactory {
 		return createFile(sensor_id, s_type.extension + ps.period,
 			ps.start());
 	}
+
+	/** Get a column file to archive periodic samples.
+	 * @param stamp Time stamp.
+	 * @return Column file for the day of the time stamp, or null if
+	 *         periodic samples are archived in separate files. */
+	public synchronized SampleColumnFile columnFile(long stamp)
+		throws IOException
+	{
+		if (!columnar)
+			return null;
+		for (SampleColumnFile cf: col_files) {
+			if (cf.contains(stamp))
+				return cf;
+		}
+		String d = TimeSteward.dateShortString(stamp);
+		File year = yearDirectory(d);
+		// Late samples for an archived day go to separate files
+		if (SampleArchiveBuilder.isArchived(year, d))
+			return null;
+		File base = SampleColumnFile.baseFile(year, d);
+		SampleColumnFile cf = new SampleColumnFile(base, stamp, true);
+		col_files.add(cf);
+		if (col_files.size() > MAX_COLUMN_FILES)
+			close(col_files.remove(0));
+		return cf;
+	}
+
+	/** Close all open column files */
+	public synchronized void closeColumnFiles() {
+		for (SampleColumnFile cf: col_files)
+			close(cf);
+		col_files.clear();
+	}
+
+	/** Close a column file, if it is open */
+	public synchronized void closeColumnFile(File base) {
+		for (int i = 0; i < col_files.size(); i++) {
+			SampleColumnFile cf = col_files.get(i);
+			if (cf.hasBase(base)) {
+				close(col_files.remove(i));
+				return;
+			}
+		}
+	}
+
+	/** Close a column file */
+	private void close(SampleColumnFile cf) {
+		try {
+			cf.close();
+		}
+		catch (IOException e) {
+			FLUSH_LOG.log(cf + ", " + e.getMessage());
+		}
+	}
 }
@@ -0,0 +1,372 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import us.mn.state.dot.sched.TimeSteward;
+import us.mn.state.dot.tms.units.Interval;
+import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
+
+/**
+ * A sample column file stores one day of periodic sample data for all
+ * sensors in a single memory-mapped file.  Each column holds the samples of
+ * one sensor, sample type and period, in the same format as a sample file
+ * (one day, fixed number of bytes per sample).  Samples are written in place,
+ * so storing a sample does not require reading or writing the whole column.
+ *
+ * Column data is stored in a ".col" file, and an ".idx" text file contains
+ * one line for each column: name, offset and length.  Columns are named the
+ * same as sample files, such as "100.v30".  The index is only appended to, so
+ * a reader can open a file which is still being written.
+ *
+ * @author Douglas Lau
+ */
+public class SampleColumnFile {
+
+	/** File extension for column data */
+	static public final String DATA_EXT = ".col";
+
+	/** File extension for column index */
+	static public final String INDEX_EXT = ".idx";
+
+	/** Size of mapped segments.  Columns never span a segment boundary. */
+	static private final int SEGMENT_BYTES = 16 << 20;
+
+	/** Get the number of samples per day */
+	static private int samplesPerDay(int period) {
+		return (int) new Interval(period).per(Interval.DAY);
+	}
+
+	/** Get the name of a column */
+	static public String columnName(String sensor_id,
+		PeriodicSampleType s_type, int period)
+	{
+		return sensor_id + "." + s_type.extension + period;
+	}
+
+	/** Get the base file (without extension) for a date */
+	static public File baseFile(File year, String date) {
+		return new File(year, date);
+	}
+
+	/** Check if a column file exists for a base file */
+	static public boolean exists(File base) {
+		return new File(base.getPath() + DATA_EXT).isFile();
+	}
+
+	/** Delete column data and index files */
+	static public void delete(File base) {
+		new File(base.getPath() + DATA_EXT).delete();
+		new File(base.getPath() + INDEX_EXT).delete();
+	}
+
+	/** A column of samples */
+	static private final class Column {
+		private final long offset;
+		private final int length;
+		private Column(long o, int l) {
+			offset = o;
+			length = l;
+		}
+	}
+
+	/** Column data file */
+	private final File data_file;
+
+	/** Column index file */
+	private final File index_file;
+
+	/** Flag indicating file is writable */
+	private final boolean writable;
+
+	/** Column data channel */
+	private final FileChannel channel;
+
+	/** Mapped data segments */
+	private final ArrayList<MappedByteBuffer> segments =
+		new ArrayList<MappedByteBuffer>();
+
+	/** Columns mapped by name, in index order */
+	private final LinkedHashMap<String, Column> columns =
+		new LinkedHashMap<String, Column>();
+
+	/** Writer for appending to the index */
+	private Writer index;
+
+	/** Offset at end of last column */
+	private long end = 0;
+
+	/** Start of day (ms) */
+	private final long day_start;
+
+	/** End of day (ms) */
+	private final long day_end;
+
+	/** Open a sample column file.
+	 * @param base Base file name (without extension).
+	 * @param day Any time stamp within the day of the file.
+	 * @param w Flag to open for writing (creating if needed). */
+	public SampleColumnFile(File base, long day, boolean w)
+		throws IOException
+	{
+		data_file = new File(base.getPath() + DATA_EXT);
+		index_file = new File(base.getPath() + INDEX_EXT);
+		writable = w;
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(day);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		day_start = cal.getTimeInMillis();
+		cal.add(Calendar.DATE, 1);
+		day_end = cal.getTimeInMillis();
+		channel = new RandomAccessFile(data_file, w ? "rw" : "r")
+			.getChannel();
+		try {
+			readIndex();
+			if (w) {
+				index = new OutputStreamWriter(
+					new FileOutputStream(index_file, true),
+					"US-ASCII");
+			}
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** Open a sample column file for reading.
+	 * @param base Base file name (without extension). */
+	public SampleColumnFile(File base) throws IOException {
+		this(base, 0, false);
+	}
+
+	/** Read the column index */
+	private void readIndex() throws IOException {
+		if (!index_file.exists())
+			return;
+		long size = channel.size();
+		BufferedReader r = new BufferedReader(new InputStreamReader(
+			new FileInputStream(index_file), "US-ASCII"));
+		try {
+			while (true) {
+				String line = r.readLine();
+				if (null == line)
+					break;
+				String[] f = line.split(" ");
+				// Skip a partial line (after a crash)
+				if (f.length != 3)
+					continue;
+				try {
+					long o = Long.parseLong(f[1]);
+					int l = Integer.parseInt(f[2]);
+					if (o >= 0 && l > 0 && o + l <= size)
+						addColumn(f[0], o, l);
+				}
+				catch (NumberFormatException e) {
+					continue;
+				}
+			}
+		}
+		finally {
+			r.close();
+		}
+	}
+
+	/** Add a column to the column map */
+	private void addColumn(String name, long o, int l) {
+		columns.put(name, new Column(o, l));
+		end = Math.max(end, o + l);
+	}
+
+	/** Check if the file has a base name */
+	public boolean hasBase(File base) {
+		return data_file.getPath().equals(base.getPath() + DATA_EXT);
+	}
+
+	/** Check if a time stamp is within the day of the file */
+	public boolean contains(long stamp) {
+		return stamp >= day_start && stamp < day_end;
+	}
+
+	/** Store a periodic sample.
+	 * @param sensor_id Sensor identifier.
+	 * @param s_type Periodic sample type.
+	 * @param ps Periodic sample to store. */
+	public synchronized void store(String sensor_id,
+		PeriodicSampleType s_type, PeriodicSample ps) throws IOException
+	{
+		String name = columnName(sensor_id, s_type, ps.period);
+		Column c = lookupColumn(name, s_type.sample_bytes *
+			samplesPerDay(ps.period));
+		int pos = TimeSteward.secondOfDayInt(ps.start()) *
+			s_type.sample_bytes / ps.period;
+		if (pos >= 0 && pos < c.length) {
+			long o = c.offset + pos;
+			s_type.putValue(segment(o), segmentPos(o), ps.value);
+		}
+	}
+
+	/** Lookup a column, or create a new one */
+	private Column lookupColumn(String name, int length)
+		throws IOException
+	{
+		Column c = columns.get(name);
+		if (c != null && c.length == length)
+			return c;
+		if (!writable)
+			throw new IOException("Read only: " + data_file);
+		return createColumn(name, length);
+	}
+
+	/** Create a new column filled with MISSING_DATA */
+	private Column createColumn(String name, int length)
+		throws IOException
+	{
+		long o = end;
+		int sp = segmentPos(o);
+		if (sp + length > SEGMENT_BYTES)
+			o += SEGMENT_BYTES - sp;
+		MappedByteBuffer seg = segment(o);
+		sp = segmentPos(o);
+		for (int i = 0; i < length; i++)
+			seg.put(sp + i, MISSING_DATA);
+		// Column data must be on disk before it is added to the
+		// index, or a crash could leave the index covering zeros
+		seg.force();
+		index.write(name + " " + o + " " + length + "\n");
+		index.flush();
+		addColumn(name, o, length);
+		return columns.get(name);
+	}
+
+	/** Get the mapped segment containing an offset */
+	private MappedByteBuffer segment(long o) throws IOException {
+		int s = (int) (o / SEGMENT_BYTES);
+		while (segments.size() <= s)
+			segments.add(null);
+		MappedByteBuffer seg = segments.get(s);
+		if (null == seg) {
+			seg = mapSegment(s);
+			segments.set(s, seg);
+		}
+		return seg;
+	}
+
+	/** Map one segment of the data file */
+	private MappedByteBuffer mapSegment(int s) throws IOException {
+		long o = (long) s * SEGMENT_BYTES;
+		if (writable) {
+			// Extends the file (sparse) if needed
+			return channel.map(FileChannel.MapMode.READ_WRITE, o,
+				SEGMENT_BYTES);
+		} else {
+			long sz = Math.min(SEGMENT_BYTES, channel.size() - o);
+			return channel.map(FileChannel.MapMode.READ_ONLY, o,
+				Math.max(sz, 0));
+		}
+	}
+
+	/** Get the position of an offset within its segment */
+	static private int segmentPos(long o) {
+		return (int) (o % SEGMENT_BYTES);
+	}
+
+	/** Get a list of column names, in the order they were created */
+	public synchronized List<String> getColumnNames() {
+		return new ArrayList<String>(columns.keySet());
+	}
+
+	/** Read one column.
+	 * @param name Column name, such as "100.v30".
+	 * @return Sample data (same format as a sample file), or null if the
+	 *         column does not exist. */
+	public synchronized byte[] read(String name) throws IOException {
+		Column c = columns.get(name);
+		if (null == c)
+			return null;
+		ByteBuffer seg = segment(c.offset).duplicate();
+		int sp = segmentPos(c.offset);
+		seg.limit(sp + c.length);
+		seg.position(sp);
+		byte[] buf = new byte[c.length];
+		seg.get(buf);
+		return buf;
+	}
+
+	/** Read one column for a sensor.
+	 * @param sensor_id Sensor identifier.
+	 * @param s_type Periodic sample type.
+	 * @param period Sample period (seconds).
+	 * @return Array of sample values for the day, or null if the column
+	 *         does not exist. */
+	public int[] readSamples(String sensor_id, PeriodicSampleType s_type,
+		int period) throws IOException
+	{
+		byte[] buf = read(columnName(sensor_id, s_type, period));
+		if (null == buf)
+			return null;
+		ByteBuffer b = ByteBuffer.wrap(buf);
+		int[] vals = new int[buf.length / s_type.sample_bytes];
+		for (int i = 0; i < vals.length; i++)
+			vals[i] = s_type.getValue(b);
+		return vals;
+	}
+
+	/** Force written samples to disk */
+	public synchronized void force() {
+		for (MappedByteBuffer seg: segments) {
+			if (seg != null)
+				seg.force();
+		}
+	}
+
+	/** Close the file */
+	public synchronized void close() throws IOException {
+		if (writable)
+			force();
+		segments.clear();
+		try {
+			if (index != null)
+				index.close();
+		}
+		finally {
+			channel.close();
+		}
+	}
+
+	/** Get a string representation */
+	@Override
+	public String toString() {
+		return data_file.toString();
+	}
+}
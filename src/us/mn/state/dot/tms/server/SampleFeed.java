@@ -0,0 +1,107 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.Scheduler;
+import us.mn.state.dot.tms.utils.FileIO;
+
+/**
+ * A sample feed is a file which is written every sample period.  The feed
+ * text is formatted into a FeedWriter buffer, and then compressed and written
+ * to disk by the FEED thread, so that formatting the next feed does not wait
+ * for gzip or file I/O.
+ *
+ * @author Douglas Lau
+ */
+final class SampleFeed {
+
+	/** Scheduler for compressing and writing feed files */
+	static private final Scheduler FEED = new Scheduler("sample_feed");
+
+	/** Size of gzip buffer */
+	static private final int GZIP_BUFFER = 64 * 1024;
+
+	/** File to write final feed data */
+	private final File file;
+
+	/** Temporary file to write feed data */
+	private final File temp;
+
+	/** Should the feed be compressed? */
+	private final boolean gzip;
+
+	/** Feed writer which is not being written to a file */
+	private FeedWriter spare = new FeedWriter();
+
+	/** Create a new sample feed.
+	 * @param dir Output directory.
+	 * @param f File name (".gz" is appended if compressed).
+	 * @param gz Flag to compress feed with gzip. */
+	SampleFeed(File dir, String f, boolean gz) {
+		file = new File(dir, gz ? f + ".gz" : f);
+		temp = new File(file.getAbsolutePath() + "~");
+		gzip = gz;
+	}
+
+	/** Begin writing the feed.
+	 * @return An empty feed writer. */
+	synchronized FeedWriter begin() {
+		// If the previous feed is still being written, use a new
+		// writer rather than waiting for it
+		FeedWriter w = (spare != null) ? spare : new FeedWriter();
+		spare = null;
+		w.reset();
+		return w;
+	}
+
+	/** Publish the feed, by writing it on the FEED thread */
+	void publish(final FeedWriter w) {
+		FEED.addJob(new Job() {
+			public void perform() throws IOException {
+				try {
+					writeFile(w);
+				}
+				finally {
+					release(w);
+				}
+			}
+		});
+	}
+
+	/** Release a feed writer for reuse */
+	private synchronized void release(FeedWriter w) {
+		spare = w;
+	}
+
+	/** Write a feed file */
+	private void writeFile(FeedWriter w) throws IOException {
+		OutputStream os = new FileOutputStream(temp);
+		try {
+			if (gzip)
+				os = new GZIPOutputStream(os, GZIP_BUFFER);
+			w.writeTo(os);
+		}
+		finally {
+			os.close();
+		}
+		FileIO.atomicMove(temp.toPath(), file.toPath());
+	}
+}
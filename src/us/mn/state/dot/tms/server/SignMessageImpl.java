@@ -18,14 +18,18 @@ import java.io.IOException;
 import java.io.Writer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.tms.DMSHelper;
 import us.mn.state.dot.tms.DmsMsgPriority;
 import us.mn.state.dot.tms.SignConfig;
 import us.mn.state.dot.tms.SignConfigHelper;
 import us.mn.state.dot.tms.SignMessage;
+import us.mn.state.dot.tms.SignMessageHelper;
 import us.mn.state.dot.tms.TMSException;
 import static us.mn.state.dot.tms.server.XmlWriter.createAttribute;
 
@@ -61,6 +65,137 @@ public class SignMessageImpl extends BaseObjectImpl implements SignMessage {
 		return "system_" + last_id;
 	}
 
+	/** Get the hash code of an object (or 0 for null) */
+	static private int hashOf(Object o) {
+		return (o != null) ? o.hashCode() : 0;
+	}
+
+	/** Sign message index key.  Source is not included, since some
+	 * source bits are ignored when finding a matching message. */
+	static private class MsgKey {
+		private final SignConfig sign_config;
+		private final String incident;
+		private final String multi;
+		private final boolean beacon_enabled;
+		private final int msg_priority;
+		private final String owner;
+		private final Integer duration;
+		private MsgKey(SignConfig sc, String inc, String m,
+			boolean be, int mp, String o, Integer d)
+		{
+			sign_config = sc;
+			incident = inc;
+			multi = m;
+			beacon_enabled = be;
+			msg_priority = mp;
+			owner = o;
+			duration = d;
+		}
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof MsgKey) {
+				MsgKey k = (MsgKey) o;
+				return objectEquals(sign_config, k.sign_config)
+				    && objectEquals(incident, k.incident)
+				    && objectEquals(multi, k.multi)
+				    && beacon_enabled == k.beacon_enabled
+				    && msg_priority == k.msg_priority
+				    && objectEquals(owner, k.owner)
+				    && objectEquals(duration, k.duration);
+			} else
+				return false;
+		}
+		@Override
+		public int hashCode() {
+			int h = hashOf(sign_config);
+			h = h * 31 + hashOf(incident);
+			h = h * 31 + hashOf(multi);
+			h = h * 31 + (beacon_enabled ? 1 : 0);
+			h = h * 31 + msg_priority;
+			h = h * 31 + hashOf(owner);
+			return h * 31 + hashOf(duration);
+		}
+	}
+
+	/** Index of sign messages by key */
+	static private final HashMap<MsgKey, ArrayList<SignMessageImpl>>
+		msg_index = new HashMap<MsgKey, ArrayList<SignMessageImpl>>();
+
+	/** Add a sign message to the index */
+	static private void addIndex(SignMessageImpl sm) {
+		MsgKey k = sm.createKey();
+		synchronized (msg_index) {
+			ArrayList<SignMessageImpl> msgs = msg_index.get(k);
+			if (null == msgs) {
+				msgs = new ArrayList<SignMessageImpl>(1);
+				msg_index.put(k, msgs);
+			}
+			if (!msgs.contains(sm))
+				msgs.add(sm);
+		}
+	}
+
+	/** Remove a sign message from the index */
+	static private void removeIndex(SignMessageImpl sm) {
+		MsgKey k = sm.createKey();
+		synchronized (msg_index) {
+			ArrayList<SignMessageImpl> msgs = msg_index.get(k);
+			if (msgs != null) {
+				msgs.remove(sm);
+				if (msgs.isEmpty())
+					msg_index.remove(k);
+			}
+		}
+	}
+
+	/** Find a sign message with matching attributes.  This uses the
+	 * sign message index instead of searching the namespace.
+	 * @param sc Sign configuration.
+	 * @param inc Associated incident (original name).
+	 * @param m MULTI string.
+	 * @param be Beacon enabled flag.
+	 * @param mp Message priority.
+	 * @param src Message source.
+	 * @param o Message owner.
+	 * @param d Duration (null for indefinite).
+	 * @return Matching sign message, or null if not found.
+	 * @see us.mn.state.dot.tms.SignMessageHelper#find */
+	static public SignMessage find(SignConfig sc, String inc, String m,
+		boolean be, DmsMsgPriority mp, int src, String o, Integer d)
+	{
+		MsgKey k = new MsgKey(sc, inc, m, be, mp.ordinal(), o, d);
+		synchronized (msg_index) {
+			ArrayList<SignMessageImpl> msgs = msg_index.get(k);
+			if (msgs != null) {
+				for (SignMessageImpl sm: msgs) {
+					if (SignMessageHelper.isMatching(sm, sc,
+					    inc, m, be, mp, src, o, d))
+						return sm;
+				}
+			}
+		}
+		return null;
+	}
+
+	/** Find all indexed sign messages which are not referenced.
+	 * @param refs Set of referenced sign messages.
+	 * @return List of unreferenced sign messages. */
+	static public ArrayList<SignMessageImpl> findUnreferenced(
+		Set<SignMessage> refs)
+	{
+		ArrayList<SignMessageImpl> unref =
+			new ArrayList<SignMessageImpl>();
+		synchronized (msg_index) {
+			for (List<SignMessageImpl> msgs: msg_index.values()) {
+				for (SignMessageImpl sm: msgs) {
+					if (!refs.contains(sm))
+						unref.add(sm);
+				}
+			}
+		}
+		return unref;
+	}
+
 	/** Load all the sign messages */
 	static protected void loadAll() throws TMSException {
 		namespace.registerType(SONAR_TYPE, SignMessageImpl.class);
@@ -138,7 +273,8 @@ public class SignMessageImpl extends BaseObjectImpl implements SignMessage {
 		msg_priority = mp;
 		source = s;
 		owner = o;
-		duration = d;		
+		duration = d;
+		addIndex(this);
 	}
 
 	/** Create a new sign message (by IRIS) */
@@ -158,6 +294,25 @@ public class SignMessageImpl extends BaseObjectImpl implements SignMessage {
 		logMsg("created (server)");
 	}
 
+	/** Create the index key for this message */
+	private MsgKey createKey() {
+		return new MsgKey(sign_config, incident, multi, beacon_enabled,
+			msg_priority, owner, duration);
+	}
+
+	/** Initialize the transient fields */
+	@Override
+	protected void initTransients() {
+		addIndex(this);
+	}
+
+	/** Destroy a sign message */
+	@Override
+	public void doDestroy() throws TMSException {
+		super.doDestroy();
+		removeIndex(this);
+	}
+
 	/** Log a message */
 	void logMsg(String msg) {
 		if (MSG_LOG.isOpen())
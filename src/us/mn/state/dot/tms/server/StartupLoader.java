@@ -0,0 +1,262 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.TimeSteward;
+import us.mn.state.dot.tms.TMSException;
+
+/**
+ * Startup loader performs steps to load objects from the database.  Each
+ * step declares the steps it depends on, which must be added before it.  A
+ * step is started as soon as all of its dependencies are done, so steps
+ * which are independent are performed in parallel.
+ *
+ * @author Douglas Lau
+ */
+final class StartupLoader {
+
+	/** Startup debug log */
+	static private final DebugLog STARTUP_LOG = new DebugLog("startup");
+
+	/** A task to perform for one step */
+	interface Task {
+		void perform() throws Exception;
+	}
+
+	/** A loading step */
+	private final class Step implements Runnable {
+		private final String name;
+		private final Task task;
+		private final ArrayList<Step> dependents =
+			new ArrayList<Step>();
+		private int n_waiting;
+		private long started;
+		private long elapsed;
+		private Step(String n, Task t) {
+			name = n;
+			task = t;
+		}
+		public void run() {
+			long st = TimeSteward.currentTimeMillis();
+			Throwable ex = null;
+			try {
+				task.perform();
+			}
+			catch (Throwable t) {
+				// Errors must also finish the step, or
+				// waitSteps would never return
+				ex = t;
+			}
+			finally {
+				long e = TimeSteward.currentTimeMillis() - st;
+				finish(this, st, e, ex);
+			}
+		}
+	}
+
+	/** All steps, in order added */
+	private final ArrayList<Step> steps = new ArrayList<Step>();
+
+	/** Steps mapped by name */
+	private final HashMap<String, Step> names = new HashMap<String, Step>();
+
+	/** Executor for performing steps */
+	private ExecutorService executor;
+
+	/** Time loading started */
+	private long start;
+
+	/** Number of steps not yet finished */
+	private int n_remaining;
+
+	/** Number of steps running */
+	private int n_running;
+
+	/** First exception (or error) thrown by a step */
+	private Throwable error;
+
+	/** Add a step to call the static loadAll method of a class.
+	 * @param c Class to load.
+	 * @param deps Dependencies (classes or step names). */
+	void add(Class<?> c, Object... deps) {
+		final Method m = lookupLoadAll(c);
+		add(c.getSimpleName(), new Task() {
+			public void perform() throws Exception {
+				try {
+					m.invoke(null);
+				}
+				catch (InvocationTargetException e) {
+					Throwable t = e.getCause();
+					if (t instanceof Exception)
+						throw (Exception) t;
+					else if (t instanceof Error)
+						throw (Error) t;
+					else
+						throw e;
+				}
+			}
+		}, deps);
+	}
+
+	/** Lookup the static loadAll method of a class */
+	static private Method lookupLoadAll(Class<?> c) {
+		try {
+			Method m = c.getDeclaredMethod("loadAll");
+			m.setAccessible(true);
+			return m;
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException(c.getName(), e);
+		}
+	}
+
+	/** Add a step.
+	 * @param n Step name.
+	 * @param t Task to perform.
+	 * @param deps Dependencies (classes or step names). */
+	void add(String n, Task t, Object... deps) {
+		if (names.containsKey(n))
+			throw new IllegalArgumentException("Duplicate: " + n);
+		Step s = new Step(n, t);
+		for (Object d: deps) {
+			Step ds = names.get(stepName(d));
+			if (null == ds) {
+				throw new IllegalArgumentException(n +
+					" dependency not added: " + d);
+			}
+			ds.dependents.add(s);
+			s.n_waiting++;
+		}
+		steps.add(s);
+		names.put(n, s);
+	}
+
+	/** Get the step name of a dependency */
+	static private String stepName(Object d) {
+		return (d instanceof Class)
+		      ? ((Class) d).getSimpleName()
+		      : d.toString();
+	}
+
+	/** Perform all steps.
+	 * @param n_threads Number of threads to perform steps.
+	 * @throws TMSException if any step fails. */
+	void run(int n_threads) throws TMSException {
+		executor = new ThreadPoolExecutor(n_threads, n_threads, 0,
+			TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			createThreadFactory());
+		try {
+			waitSteps();
+		}
+		finally {
+			executor.shutdown();
+		}
+		logTimes();
+		if (error instanceof TMSException)
+			throw (TMSException) error;
+		else if (error != null)
+			throw new TMSException(error);
+	}
+
+	/** Create a thread factory for loading threads */
+	static private ThreadFactory createThreadFactory() {
+		return new ThreadFactory() {
+			private int n_thread = 0;
+			public synchronized Thread newThread(Runnable r) {
+				n_thread++;
+				Thread t = new Thread(r, "Startup " + n_thread);
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/** Start all steps and wait for them to finish */
+	private synchronized void waitSteps() throws TMSException {
+		start = TimeSteward.currentTimeMillis();
+		n_remaining = steps.size();
+		for (Step s: steps) {
+			if (0 == s.n_waiting)
+				submit(s);
+		}
+		while (n_running > 0) {
+			try {
+				wait();
+			}
+			catch (InterruptedException e) {
+				throw new TMSException(e);
+			}
+		}
+		if (n_remaining > 0 && null == error) {
+			// Should never happen; dependencies must be added
+			// before dependents
+			error = new TMSException("Steps not performed: " +
+				n_remaining);
+		}
+	}
+
+	/** Submit a step to the executor */
+	private void submit(Step s) {
+		n_running++;
+		executor.execute(s);
+	}
+
+	/** Finish a step */
+	private synchronized void finish(Step s, long st, long e,
+		Throwable ex)
+	{
+		s.started = st - start;
+		s.elapsed = e;
+		n_running--;
+		n_remaining--;
+		if (ex != null) {
+			if (null == error)
+				error = ex;
+			STARTUP_LOG.log(s.name + " failed: " + ex);
+		}
+		// After an error, no more steps are started
+		if (null == error) {
+			for (Step d: s.dependents) {
+				if (--d.n_waiting == 0)
+					submit(d);
+			}
+		}
+		notify();
+	}
+
+	/** Log step timing */
+	private void logTimes() {
+		long total = TimeSteward.currentTimeMillis() - start;
+		if (STARTUP_LOG.isOpen()) {
+			for (Step s: steps) {
+				STARTUP_LOG.log(s.name + ": start " +
+					s.started + " ms, elapsed " +
+					s.elapsed + " ms");
+			}
+			STARTUP_LOG.log("total: " + total + " ms");
+		}
+	}
+}
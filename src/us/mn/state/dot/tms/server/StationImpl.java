@@ -14,8 +14,6 @@
  */
 package us.mn.state.dot.tms.server;
 
-import java.io.IOException;
-import java.io.Writer;
 import java.util.Map;
 import java.util.NavigableMap;
 import us.mn.state.dot.sched.DebugLog;
@@ -24,7 +22,6 @@ import us.mn.state.dot.tms.R_Node;
 import us.mn.state.dot.tms.Station;
 import us.mn.state.dot.tms.SystemAttrEnum;
 import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
-import static us.mn.state.dot.tms.server.XmlWriter.createAttribute;
 
 /**
  * A station is a group of related detectors.
@@ -397,52 +394,57 @@ public class StationImpl implements Station, VehicleSampler {
 		updateLowSpeed(low);
 	}
 
-	/** Write the current sample as an XML element */
-	public void writeSampleXml(Writer w) throws IOException {
-		if (!getActive())
-			return;
-		long end = DetectorImpl.calculateEndTime();
-		long start = end - DetectorImpl.SAMPLE_PERIOD_MS;
-		int f = getFlow(start, end);
-		int s = Math.round(getSpeed());
-		float o = occupancy;
-		w.write("\t<sample");
-		w.write(createAttribute("sensor", name));
-		if (f > MISSING_DATA)
-			w.write(createAttribute("flow", f));
-		if (s > 0)
-			w.write(createAttribute("speed", s));
-		if (o >= 0) {
-			w.write(createAttribute("occ",
-				BaseObjectImpl.formatFloat(o, 2)));
-		}
-		w.write("/>\n");
-	}
-
-	/** Write the current sample as a JSON object */
-	public boolean writeSampleJson(long start, long end, Writer writer)
-		throws IOException
+	/** Write the current sample to the station feeds.
+	 * @param xml Writer for XML feed.
+	 * @param json Writer for JSON feed.
+	 * @param sep Flag to write a separator before the JSON entry.
+	 * @param start Start of sample period.
+	 * @param end End of sample period.
+	 * @return true if a JSON entry was written. */
+	public boolean writeSample(FeedWriter xml, FeedWriter json,
+		boolean sep, long start, long end)
 	{
 		int f = getFlow(start, end);
 		int s = Math.round(getSpeed());
+		if (getActive())
+			writeSampleXml(xml, f, s);
 		if (f > MISSING_DATA || s > 0) {
-			writeSampleJson(f, s, writer);
+			if (sep)
+				json.write(",\n");
+			writeSampleJson(json, f, s);
 			return true;
 		} else
 			return false;
 	}
 
+	/** Write the current sample as an XML element */
+	private void writeSampleXml(FeedWriter w, int f, int s) {
+		float o = occupancy;
+		w.write("\t<sample");
+		w.writeAttr("sensor", name);
+		if (f > MISSING_DATA)
+			w.writeAttr("flow", f);
+		if (s > 0)
+			w.writeAttr("speed", s);
+		if (o >= 0)
+			w.writeAttr("occ", o, 2);
+		w.write("/>\n");
+	}
+
 	/** Write the current sample as a JSON object */
-	private void writeSampleJson(int f, int s, Writer writer)
-		throws IOException
-	{
-		writer.write('"');
-		writer.write(name);
-		writer.write("\":[");
-		writer.write((f > MISSING_DATA) ? String.valueOf(f) : "null");
-		writer.write(',');
-		writer.write((s > 0) ? String.valueOf(s) : "null");
-		writer.write(']');
+	private void writeSampleJson(FeedWriter w, int f, int s) {
+		w.writeJson(name);
+		w.write(":[");
+		if (f > MISSING_DATA)
+			w.writeInt(f);
+		else
+			w.write("null");
+		w.write(',');
+		if (s > 0)
+			w.writeInt(s);
+		else
+			w.write("null");
+		w.write(']');
 	}
 
 	/** Acceleration from previous station */
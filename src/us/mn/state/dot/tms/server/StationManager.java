@@ -14,20 +14,19 @@
  */
 package us.mn.state.dot.tms.server;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.Station;
 import us.mn.state.dot.tms.StationHelper;
-import us.mn.state.dot.tms.utils.FileIO;
 
 /**
- * This class writes out station XML files.
+ * This class writes out station sample XML and JSON files.
  *
  * @author Douglas Lau
  */
@@ -47,121 +46,102 @@ class StationManager {
 	/** Name of station sample JSON file */
 	static private final String SAMPLE_JSON = "station_sample";
 
-	/** Calculate the current data for all stations */
-	public void calculateData() {
+	/** Number of stations in each calculation task */
+	static private final int CHUNK_STATIONS = 64;
+
+	/** DTD for sample XML files */
+	static final String SAMPLE_DTD =
+		"<!DOCTYPE traffic_sample [\n" +
+		"<!ELEMENT traffic_sample (sample)*>\n" +
+		"<!ATTLIST traffic_sample time_stamp CDATA #REQUIRED>\n" +
+		"<!ATTLIST traffic_sample period CDATA #REQUIRED>\n" +
+		"<!ELEMENT sample EMPTY>\n" +
+		"<!ATTLIST sample sensor CDATA #REQUIRED>\n" +
+		"<!ATTLIST sample flow CDATA 'UNKNOWN'>\n" +
+		"<!ATTLIST sample speed CDATA 'UNKNOWN'>\n" +
+		"<!ATTLIST sample occ CDATA 'UNKNOWN'>\n" +
+		"]>\n";
+
+	/** Calculate the current data for all stations.
+	 * @param pool Pool to fan out calculations. */
+	public void calculateData(ForkJoinPool pool) {
+		final ArrayList<StationImpl> stations =
+			new ArrayList<StationImpl>();
 		Iterator<Station> it = StationHelper.iterator();
 		while (it.hasNext()) {
 			Station s = it.next();
-			if (s instanceof StationImpl) {
-				StationImpl si = (StationImpl) s;
-				si.calculateData();
-			}
+			if (s instanceof StationImpl)
+				stations.add((StationImpl) s);
 		}
-	}
-
-	/** Write the station sample data out as XML */
-	public void writeSampleXml() throws IOException {
-		XmlWriter w = new XmlWriter(SAMPLE_XML, true) {
-			@Override protected void write(Writer w)
-				throws IOException
-			{
-				writeSampleXmlHead(w);
-				writeSampleXmlBody(w);
-				writeSampleXmlTail(w);
-			}
-		};
-		w.write();
-	}
-
-	/** Write the station sample data out as JSON */
-	public void writeSampleJson() throws IOException {
-		File file = new File(JSON_OUTPUT_DIRECTORY, SAMPLE_JSON);
-		File temp = new File(file.getAbsolutePath() + "~");
-		FileWriter writer = new FileWriter(temp);
-		try {
-			writeSampleJson(writer);
-		}
-		finally {
-			writer.flush();
-			writer.close();
+		ArrayList<RecursiveAction> tasks =
+			new ArrayList<RecursiveAction>();
+		for (int i = 0; i < stations.size(); i += CHUNK_STATIONS) {
+			final int start = i;
+			final int end = Math.min(i + CHUNK_STATIONS,
+				stations.size());
+			tasks.add(new RecursiveAction() {
+				protected void compute() {
+					for (int j = start; j < end; j++)
+						stations.get(j).calculateData();
+				}
+			});
 		}
-		FileIO.atomicMove(temp.toPath(), file.toPath());
+		MeteringJob.invokeAll(pool, tasks);
 	}
 
-	/** Write the station sample data out as JSON */
-	private void writeSampleJson(FileWriter writer) throws IOException {
-		BufferedWriter buf_writer = new BufferedWriter(writer);
-		try {
-			writeSampleJson(buf_writer);
-		}
-		finally {
-			buf_writer.flush();
-		}
-	}
+	/** Station sample XML feed */
+	private final SampleFeed xml_feed = new SampleFeed(
+		XmlWriter.XML_OUTPUT_DIRECTORY, SAMPLE_XML, true);
 
-	/** Write the station sample data out as JSON */
-	private void writeSampleJson(BufferedWriter writer) throws IOException {
+	/** Station sample JSON feed */
+	private final SampleFeed json_feed = new SampleFeed(
+		JSON_OUTPUT_DIRECTORY, SAMPLE_JSON, false);
+
+	/** Write the station sample data out as XML and JSON, in one pass
+	 * over all stations */
+	public void writeSamples() {
 		long end = DetectorImpl.calculateEndTime();
 		long start = end - DetectorImpl.SAMPLE_PERIOD_MS;
-		writer.write("{\n");
-		writer.write("\"time_stamp\":\"");
-		writer.write(RFC3339.format(TimeSteward.getDateInstance()));
-		writer.write("\",\n");
-		writer.write("\"period\":30,\n");
-		writer.write("\"samples\":{\n");
+		Date now = TimeSteward.getDateInstance();
+		FeedWriter xml = xml_feed.begin();
+		FeedWriter json = json_feed.begin();
+		writeSampleXmlHead(xml, now);
+		writeSampleJsonHead(json, now);
+		boolean sep = false;
 		Iterator<Station> it = StationHelper.iterator();
 		while (it.hasNext()) {
 			Station s = it.next();
 			if (s instanceof StationImpl) {
 				StationImpl si = (StationImpl) s;
-				if (si.writeSampleJson(start, end, writer)) {
-					if (it.hasNext())
-						writer.write(',');
-					writer.write('\n');
-				}
+				if (si.writeSample(xml, json, sep, start, end))
+					sep = true;
 			}
 		}
-		writer.write("}\n");
-		writer.write("}\n");
-	}
-
-	/** Print the header of the station sample XML file */
-	private void writeSampleXmlHead(Writer w) throws IOException {
-		w.write(XmlWriter.XML_DECLARATION);
-		writeDtd(w);
-		w.write("<traffic_sample time_stamp='" +
-			TimeSteward.getDateInstance() + "' period='30'>\n");
+		xml.write("</traffic_sample>\n");
+		if (sep)
+			json.write('\n');
+		json.write("}\n");
+		json.write("}\n");
+		xml_feed.publish(xml);
+		json_feed.publish(json);
 	}
 
-	/** Print the DTD */
-	private void writeDtd(Writer w) throws IOException {
-		w.write("<!DOCTYPE traffic_sample [\n");
-		w.write("<!ELEMENT traffic_sample (sample)*>\n");
-		w.write("<!ATTLIST traffic_sample time_stamp " +
-			"CDATA #REQUIRED>\n");
-		w.write("<!ATTLIST traffic_sample period CDATA #REQUIRED>\n");
-		w.write("<!ELEMENT sample EMPTY>\n");
-		w.write("<!ATTLIST sample sensor CDATA #REQUIRED>\n");
-		w.write("<!ATTLIST sample flow CDATA 'UNKNOWN'>\n");
-		w.write("<!ATTLIST sample speed CDATA 'UNKNOWN'>\n");
-		w.write("<!ATTLIST sample occ CDATA 'UNKNOWN'>\n");
-		w.write("]>\n");
+	/** Write the header of the station sample JSON file */
+	private void writeSampleJsonHead(FeedWriter w, Date now) {
+		w.write("{\n");
+		w.write("\"time_stamp\":\"");
+		w.write(RFC3339.format(now));
+		w.write("\",\n");
+		w.write("\"period\":30,\n");
+		w.write("\"samples\":{\n");
 	}
 
-	/** Print the body of the station sample XML file */
-	private void writeSampleXmlBody(Writer w) throws IOException {
-		Iterator<Station> it = StationHelper.iterator();
-		while (it.hasNext()) {
-			Station s = it.next();
-			if (s instanceof StationImpl) {
-				StationImpl si = (StationImpl) s;
-				si.writeSampleXml(w);
-			}
-		}
-	}
-
-	/** Print the tail of the station sample XML file */
-	private void writeSampleXmlTail(Writer w) throws IOException {
-		w.write("</traffic_sample>\n");
+	/** Write the header of the station sample XML file */
+	private void writeSampleXmlHead(FeedWriter w, Date now) {
+		w.write(XmlWriter.XML_DECLARATION);
+		w.write(SAMPLE_DTD);
+		w.write("<traffic_sample time_stamp='");
+		w.write(now.toString());
+		w.write("' period='30'>\n");
 	}
 }
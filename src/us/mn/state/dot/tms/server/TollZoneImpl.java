@@ -300,9 +300,13 @@ public class TollZoneImpl extends BaseObjectImpl implements TollZone {
 		 * @param np New period.
 		 * @param k Current density. */
 		void updateDensity(boolean np, double k) {
-			hist.push((k >= 0) ? k : null);
-			if (np)
-				density = hist.average();
+			hist.push(k);
+			if (np) {
+				double a = hist.average();
+				density = BoundedSampleHistory.isMissing(a)
+				        ? null
+				        : a;
+			}
 		}
 	}
 
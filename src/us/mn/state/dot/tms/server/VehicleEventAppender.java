@@ -0,0 +1,250 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.TimeSteward;
+import static us.mn.state.dot.tms.server.MainServer.FLUSH;
+
+/**
+ * A vehicle event appender buffers encoded events for one sensor, and appends
+ * them to the log file for the day of each event.  Buffered events are written
+ * when the buffer reaches a size threshold, or by FlushEventsJob at regular
+ * intervals.  The log file is kept open until the day changes or it has been
+ * idle for a while.  The date of the open log file is locked for writing, so
+ * that the day cannot be archived until it is closed.  All file I/O happens
+ * on the FLUSH thread.
+ *
+ * @author Douglas Lau
+ */
+final class VehicleEventAppender {
+
+	/** Flush debug log */
+	static private final DebugLog FLUSH_LOG =
+		PeriodicSampleWriter.FLUSH_LOG;
+
+	/** Number of buffered bytes to trigger a flush */
+	static private final int FLUSH_BYTES = 8192;
+
+	/** Time to keep an idle log file open (ms) */
+	static private final long IDLE_MS = 5 * 60 * 1000;
+
+	/** Appenders with buffered events or an open file */
+	static private final Set<VehicleEventAppender> ACTIVE =
+		Collections.newSetFromMap(
+		new ConcurrentHashMap<VehicleEventAppender, Boolean>());
+
+	/** Flush all active appenders (FLUSH thread only) */
+	static void flushAll() {
+		for (VehicleEventAppender a: ACTIVE)
+			a.flush();
+	}
+
+	/** Get the start of the day containing a time stamp */
+	static private long startOfDay(long stamp) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(stamp);
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE, 0);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+		return cal.getTimeInMillis();
+	}
+
+	/** Get the start of the next day */
+	static private long startOfNextDay(long day) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(day);
+		cal.add(Calendar.DATE, 1);
+		return cal.getTimeInMillis();
+	}
+
+	/** A block of events for one day */
+	static private final class Block {
+		private final long day;
+		private final byte[] data;
+		private Block(long d, byte[] b) {
+			day = d;
+			data = b;
+		}
+	}
+
+	/** Sample archive factory */
+	private final SampleArchiveFactory factory;
+
+	/** Sensor ID */
+	private final String sensor_id;
+
+	/** Log file extension */
+	private final String ext;
+
+	/** Buffer of events for current day */
+	private byte[] buffer = new byte[256];
+
+	/** Number of bytes in buffer */
+	private int n_bytes = 0;
+
+	/** Start of day for buffered events */
+	private long day = 0;
+
+	/** Start of next day */
+	private long next_day = 0;
+
+	/** Blocks ready to be written */
+	private ArrayList<Block> blocks = new ArrayList<Block>();
+
+	/** Flag indicating a flush job is scheduled */
+	private boolean scheduled = false;
+
+	/** Open log file (FLUSH thread only) */
+	private FileOutputStream out;
+
+	/** Day of open log file (FLUSH thread only) */
+	private long out_day;
+
+	/** Date locked for open log file (FLUSH thread only) */
+	private String out_date;
+
+	/** Time of most recent write (FLUSH thread only) */
+	private long written;
+
+	/** Create a new vehicle event appender.
+	 * @param f Sample archive factory.
+	 * @param sid Sensor ID.
+	 * @param e Log file extension. */
+	VehicleEventAppender(SampleArchiveFactory f, String sid, String e) {
+		factory = f;
+		sensor_id = sid;
+		ext = e;
+	}
+
+	/** Append an encoded event.
+	 * @param stamp Time stamp of event.
+	 * @param ev Encoded event buffer.
+	 * @param len Length of encoded event. */
+	synchronized void append(long stamp, byte[] ev, int len) {
+		if (stamp < day || stamp >= next_day) {
+			seal();
+			day = startOfDay(stamp);
+			next_day = startOfNextDay(day);
+		}
+		if (n_bytes + len > buffer.length) {
+			int sz = Math.max(buffer.length * 2, n_bytes + len);
+			byte[] b = new byte[sz];
+			System.arraycopy(buffer, 0, b, 0, n_bytes);
+			buffer = b;
+		}
+		System.arraycopy(ev, 0, buffer, n_bytes, len);
+		n_bytes += len;
+		ACTIVE.add(this);
+		if (n_bytes >= FLUSH_BYTES) {
+			seal();
+			scheduleFlush();
+		}
+	}
+
+	/** Seal the buffered events into a block */
+	private void seal() {
+		if (n_bytes > 0) {
+			byte[] b = new byte[n_bytes];
+			System.arraycopy(buffer, 0, b, 0, n_bytes);
+			blocks.add(new Block(day, b));
+			n_bytes = 0;
+		}
+	}
+
+	/** Schedule a job to flush the appender */
+	private void scheduleFlush() {
+		if (!scheduled) {
+			scheduled = true;
+			FLUSH.addJob(new Job() {
+				public void perform() {
+					flush();
+				}
+			});
+		}
+	}
+
+	/** Write all buffered events (FLUSH thread only) */
+	void flush() {
+		ArrayList<Block> bl;
+		synchronized (this) {
+			seal();
+			bl = blocks;
+			blocks = new ArrayList<Block>();
+			scheduled = false;
+		}
+		long now = TimeSteward.currentTimeMillis();
+		for (Block b: bl)
+			write(b, now);
+		if (out != null && now - written >= IDLE_MS)
+			close();
+		synchronized (this) {
+			if (null == out && blocks.isEmpty() && 0 == n_bytes)
+				ACTIVE.remove(this);
+		}
+	}
+
+	/** Write a block to the log file */
+	private void write(Block b, long now) {
+		try {
+			if (out != null && out_day != b.day)
+				close();
+			if (null == out) {
+				String d = TimeSteward.dateShortString(b.day);
+				SampleArchiveBuilder.lockWrite(d);
+				out_date = d;
+				File f = factory.createFile(sensor_id, ext,
+					b.day);
+				out = new FileOutputStream(f, true);
+				out_day = b.day;
+			}
+			out.write(b.data);
+			written = now;
+		}
+		catch (IOException e) {
+			FLUSH_LOG.log(sensor_id + "." + ext + ", " +
+				e.getMessage());
+			close();
+		}
+	}
+
+	/** Close the log file */
+	private void close() {
+		if (out != null) {
+			try {
+				out.close();
+			}
+			catch (IOException e) {
+				FLUSH_LOG.log(sensor_id + "." + ext + ", " +
+					e.getMessage());
+			}
+			out = null;
+		}
+		if (out_date != null) {
+			SampleArchiveBuilder.unlockWrite(out_date);
+			out_date = null;
+		}
+	}
+}
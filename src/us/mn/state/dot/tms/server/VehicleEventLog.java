@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2006-2019  Minnesota Department of Transportation
+ * Copyright (C) 2006-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,18 +14,20 @@
  */
 package us.mn.state.dot.tms.server;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
-import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.SystemAttrEnum;
 import static us.mn.state.dot.tms.server.Constants.MISSING_DATA;
-import static us.mn.state.dot.tms.server.MainServer.FLUSH;
 
 /**
- * The vehicle event log records vehicle detection events.
+ * The vehicle event log records vehicle detection events.  Events are logged
+ * as text lines in a ".vlog" file, or as compact binary records in a ".vlogb"
+ * file, for each day.  A binary record contains the same fields as a text
+ * line, so it can be converted with VehicleLogConverter.
+ *
+ * Binary record: flags byte, followed by an unsigned varint for each field
+ * with a flag set (duration, headway, second-of-day stamp, speed).
  *
  * @author Douglas Lau
  */
@@ -34,6 +36,30 @@ public class VehicleEventLog {
 	/** Maximum logged headway is 90 seconds */
 	static private final int MAX_HEADWAY = 90 * 1000;
 
+	/** Text log file extension */
+	static public final String TEXT_EXT = "vlog";
+
+	/** Binary log file extension */
+	static public final String BINARY_EXT = "vlogb";
+
+	/** Binary flag for a gap in events */
+	static public final int FLAG_GAP = 1 << 0;
+
+	/** Binary flag for duration field */
+	static public final int FLAG_DURATION = 1 << 1;
+
+	/** Binary flag for headway field */
+	static public final int FLAG_HEADWAY = 1 << 2;
+
+	/** Binary flag for time stamp field */
+	static public final int FLAG_STAMP = 1 << 3;
+
+	/** Binary flag for speed field */
+	static public final int FLAG_SPEED = 1 << 4;
+
+	/** Maximum length of an encoded event */
+	static private final int MAX_EVENT_BYTES = 32;
+
 	/** Is archiving enabled? */
 	static private boolean isArchiveEnabled() {
 		return SystemAttrEnum.SAMPLE_ARCHIVE_ENABLE.getBoolean();
@@ -64,15 +90,27 @@ public class VehicleEventLog {
 	/** Sum of all vehicle speeds (mph) in current sampling period */
 	private int ev_speed = 0;
 
+	/** Event appender */
+	private final VehicleEventAppender appender;
+
+	/** Flag to log binary records */
+	private final boolean binary;
+
+	/** Buffer for encoding events */
+	private final byte[] ev_buf = new byte[MAX_EVENT_BYTES];
+
 	/** Create a new vehicle event log */
 	public VehicleEventLog(String sid) {
 		sensor_id = sid;
 		factory = MainServer.a_factory;
+		binary = MainServer.a_factory.isVehicleLogBinary();
+		appender = new VehicleEventAppender(factory, sid, binary
+			? BINARY_EXT : TEXT_EXT);
 	}
 
 	/** Log a vehicle detection event */
-	public void logVehicle(final Calendar stamp, final int duration,
-		final int headway, final int speed)
+	public void logVehicle(Calendar stamp, int duration, int headway,
+		int speed)
 	{
 		ev_vehicles++;
 		ev_duration += duration;
@@ -80,86 +118,158 @@ public class VehicleEventLog {
 			ev_n_speed++;
 			ev_speed += speed;
 		}
-		if (isArchiveEnabled()) {
-			FLUSH.addJob(new Job() {
-				public void perform() throws IOException {
-					appendEvent(stamp, formatEvent(stamp,
-						duration, headway, speed));
-				}
-			});
-		}
-	}
-
-	/** Append an event to the log */
-	private void appendEvent(Calendar stamp, String line)
-		throws IOException
-	{
-		File file = factory.createFile(sensor_id, "vlog",
-			getStampMillis(stamp));
-		if (file != null) {
-			FileWriter fw = new FileWriter(file, true);
-			try {
-				fw.write(line);
-			}
-			finally {
-				fw.close();
-			}
-		}
+		if (isArchiveEnabled())
+			appendEvent(stamp, duration, headway, speed);
 	}
 
 	/** Log a gap in vehicle events */
 	public void logGap() {
-		p_stamp = null;
-		if (isArchiveEnabled()) {
-			FLUSH.addJob(new Job() {
-				public void perform() throws IOException {
-					appendEvent(null, "*\n");
-				}
-			});
-		}
+		if (isArchiveEnabled())
+			appendGap();
+		else
+			clearStamp();
 	}
 
 	/** Time stamp of most recent vehicle event */
 	private transient Calendar p_stamp;
 
-	/** Format a vehicle detection event */
-	private String formatEvent(Calendar stamp, int duration, int headway,
-		int speed)
+	/** Clear the most recent time stamp */
+	private synchronized void clearStamp() {
+		p_stamp = null;
+	}
+
+	/** Append a gap to the log */
+	private synchronized void appendGap() {
+		p_stamp = null;
+		append(getStampMillis(null), FLAG_GAP, 0, 0, 0, 0);
+	}
+
+	/** Append a vehicle detection event to the log */
+	private synchronized void appendEvent(Calendar stamp, int duration,
+		int headway, int speed)
 	{
+		int flags = 0;
 		boolean log_stamp = false;
-		StringBuilder b = new StringBuilder();
 		if (duration > 0)
-			b.append(duration);
-		else
-			b.append('?');
-		b.append(',');
+			flags |= FLAG_DURATION;
 		if (headway > 0 && headway <= MAX_HEADWAY)
-			b.append(headway);
-		else {
-			b.append('?');
+			flags |= FLAG_HEADWAY;
+		else
 			log_stamp = true;
-		}
 		if (p_stamp == null || (stamp.get(Calendar.HOUR) !=
 			p_stamp.get(Calendar.HOUR)))
 		{
 			log_stamp = true;
 		}
-		b.append(',');
 		p_stamp = stamp;
 		if (log_stamp) {
-			if (headway > 0 || duration > 0) {
-				long st = stamp.getTimeInMillis();
-				b.append(TimeSteward.timeShortString(st));
-			} else
+			if (headway > 0 || duration > 0)
+				flags |= FLAG_STAMP;
+			else
 				p_stamp = null;
 		}
-		b.append(',');
 		if (speed > 0)
+			flags |= FLAG_SPEED;
+		long st = getStampMillis(stamp);
+		int sec = TimeSteward.secondOfDayInt(st);
+		append(st, flags, duration, headway, sec, speed);
+	}
+
+	/** Append an event to the log */
+	private void append(long st, int flags, int duration, int headway,
+		int sec, int speed)
+	{
+		if (binary) {
+			int n = encodeEvent(ev_buf, flags, duration, headway,
+				sec, speed);
+			appender.append(st, ev_buf, n);
+		} else {
+			StringBuilder b = new StringBuilder();
+			formatEvent(b, flags, duration, headway, sec, speed);
+			byte[] line = b.toString().getBytes(
+				StandardCharsets.US_ASCII);
+			appender.append(st, line, line.length);
+		}
+	}
+
+	/** Format an event as a text line.
+	 * @param b String builder to append line.
+	 * @param flags Event flags.
+	 * @param duration Vehicle duration (ms).
+	 * @param headway Headway (ms).
+	 * @param sec Second-of-day time stamp.
+	 * @param speed Vehicle speed (mph). */
+	static void formatEvent(StringBuilder b, int flags, int duration,
+		int headway, int sec, int speed)
+	{
+		if ((flags & FLAG_GAP) != 0) {
+			b.append("*\n");
+			return;
+		}
+		int start = b.length();
+		if ((flags & FLAG_DURATION) != 0)
+			b.append(duration);
+		else
+			b.append('?');
+		b.append(',');
+		if ((flags & FLAG_HEADWAY) != 0)
+			b.append(headway);
+		else
+			b.append('?');
+		b.append(',');
+		if ((flags & FLAG_STAMP) != 0)
+			appendTime(b, sec);
+		b.append(',');
+		if ((flags & FLAG_SPEED) != 0)
 			b.append(speed);
-		while (b.charAt(b.length() - 1) == ',')
+		while (b.length() > start && b.charAt(b.length() - 1) == ',')
 			b.setLength(b.length() - 1);
 		b.append('\n');
-		return b.toString();
+	}
+
+	/** Append a second-of-day as HH:mm:ss */
+	static private void appendTime(StringBuilder b, int sec) {
+		append2(b, sec / 3600);
+		b.append(':');
+		append2(b, (sec / 60) % 60);
+		b.append(':');
+		append2(b, sec % 60);
+	}
+
+	/** Append a 2-digit number */
+	static private void append2(StringBuilder b, int v) {
+		if (v < 10)
+			b.append('0');
+		b.append(v);
+	}
+
+	/** Encode an event as a binary record.
+	 * @return Number of bytes encoded. */
+	static int encodeEvent(byte[] buf, int flags, int duration,
+		int headway, int sec, int speed)
+	{
+		int n = 0;
+		buf[n++] = (byte) flags;
+		if ((flags & FLAG_DURATION) != 0)
+			n = putVarint(buf, n, duration);
+		if ((flags & FLAG_HEADWAY) != 0)
+			n = putVarint(buf, n, headway);
+		if ((flags & FLAG_STAMP) != 0)
+			n = putVarint(buf, n, sec);
+		if ((flags & FLAG_SPEED) != 0)
+			n = putVarint(buf, n, speed);
+		return n;
+	}
+
+	/** Put an unsigned varint into a buffer.
+	 * @return Position after varint. */
+	static private int putVarint(byte[] buf, int n, int v) {
+		while ((v & ~0x7F) != 0) {
+			buf[n++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		buf[n++] = (byte) v;
+		return n;
 	}
 
 	/** Bin 30-second sample data */
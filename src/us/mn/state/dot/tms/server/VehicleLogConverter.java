@@ -0,0 +1,112 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import static us.mn.state.dot.tms.server.VehicleEventLog.FLAG_DURATION;
+import static us.mn.state.dot.tms.server.VehicleEventLog.FLAG_HEADWAY;
+import static us.mn.state.dot.tms.server.VehicleEventLog.FLAG_SPEED;
+import static us.mn.state.dot.tms.server.VehicleEventLog.FLAG_STAMP;
+
+/**
+ * Converter for binary vehicle event logs (.vlogb) to the text format
+ * (.vlog).
+ *
+ * Usage: VehicleLogConverter in.vlogb [out.vlog]
+ *
+ * @author Douglas Lau
+ */
+public class VehicleLogConverter {
+
+	/** Read an unsigned varint */
+	static private int readVarint(InputStream in) throws IOException {
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.read();
+			if (b < 0)
+				throw new EOFException("Truncated record");
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("Invalid varint");
+	}
+
+	/** Convert a binary log to text.
+	 * @param in Input stream of binary records.
+	 * @param out Writer for text lines.
+	 * @return Number of records converted. */
+	static public int convert(InputStream in, Writer out)
+		throws IOException
+	{
+		StringBuilder b = new StringBuilder();
+		int n = 0;
+		while (true) {
+			int flags = in.read();
+			if (flags < 0)
+				break;
+			int duration = ((flags & FLAG_DURATION) != 0)
+			             ? readVarint(in) : 0;
+			int headway = ((flags & FLAG_HEADWAY) != 0)
+			            ? readVarint(in) : 0;
+			int sec = ((flags & FLAG_STAMP) != 0)
+			        ? readVarint(in) : 0;
+			int speed = ((flags & FLAG_SPEED) != 0)
+			          ? readVarint(in) : 0;
+			b.setLength(0);
+			VehicleEventLog.formatEvent(b, flags, duration, headway,
+				sec, speed);
+			out.write(b.toString());
+			n++;
+		}
+		return n;
+	}
+
+	/** Convert a binary log file */
+	static public void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("Usage: VehicleLogConverter " +
+				"in.vlogb [out.vlog]");
+			System.exit(1);
+		}
+		InputStream in = new BufferedInputStream(new FileInputStream(
+			args[0]));
+		try {
+			OutputStream os = (args.length > 1)
+			                ? new FileOutputStream(args[1])
+			                : System.out;
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+				os, "US-ASCII"));
+			try {
+				convert(in, out);
+			}
+			finally {
+				out.close();
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+}
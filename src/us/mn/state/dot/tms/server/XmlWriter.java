@@ -51,14 +51,49 @@ abstract public class XmlWriter {
 
 	/** Validate an xml element value */
 	static public String validateElementValue(String v) {
-		v = v.replace("&", "&amp;");
-		v = v.replace("<", "&lt;");
-		v = v.replace(">", "&gt;");
-		v = v.replace("\"", "&quot;");
-		v = v.replace("\'", "&apos;");
+		int len = v.length();
+		for (int i = 0; i < len; i++) {
+			if (escapeChar(v.charAt(i)) != null)
+				return escapeValue(v, i);
+		}
 		return v;
 	}
 
+	/** Get the escape sequence for a character, or null */
+	static private String escapeChar(char c) {
+		switch (c) {
+		case '&':
+			return "&amp;";
+		case '<':
+			return "&lt;";
+		case '>':
+			return "&gt;";
+		case '"':
+			return "&quot;";
+		case '\'':
+			return "&apos;";
+		default:
+			return null;
+		}
+	}
+
+	/** Escape a value in one pass, starting from the first character
+	 * which needs escaping */
+	static private String escapeValue(String v, int i) {
+		int len = v.length();
+		StringBuilder sb = new StringBuilder(len + 16);
+		sb.append(v, 0, i);
+		for (; i < len; i++) {
+			char c = v.charAt(i);
+			String e = escapeChar(c);
+			if (e != null)
+				sb.append(e);
+			else
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+
 	/** Create an XML attribute */
 	static public String createAttribute(String name, Object value) {
 		if (value != null) {
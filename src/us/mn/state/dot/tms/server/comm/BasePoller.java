@@ -108,6 +108,9 @@ abstract public class BasePoller implements DevicePoller {
 	/** Protocol logger */
 	private final DebugLog logger;
 
+	/** Poll metrics */
+	private final PollMetrics metrics = new PollMetrics();
+
 	/** Set of owned operations.  All access must be synchronized. */
 	private final HashSet<Operation> op_set = new HashSet<Operation>();
 
@@ -120,6 +123,9 @@ abstract public class BasePoller implements DevicePoller {
 			//       while the operations are in the queue
 			int c = Integer.signum(a.getPriority().ordinal()
 			                     - b.getPriority().ordinal());
+			if (c != 0)
+				return c;
+			c = Boolean.compare(a.isDeferred(), b.isDeferred());
 			if (c != 0)
 				return c;
 			c = Integer.signum(a.getRuns() - b.getRuns());
@@ -265,6 +271,8 @@ abstract public class BasePoller implements DevicePoller {
 			log("DROPPING " + op);
 		op.destroy();
 		removeWorking(op);
+		metrics.complete(op.getStart(), op.getDeadline(),
+			op.isSuccess());
 	}
 
 	/** Remove an operation from the working set */
@@ -289,6 +297,9 @@ abstract public class BasePoller implements DevicePoller {
 
 	/** Add an operation to the poll queue */
 	private void addPollQueue(Operation op) {
+		// Defer ops for failing controllers behind healthy ones
+		op.setDeferred(!op.getPriority().isCritical() &&
+			op.getController().getPollHealth().isFailing());
 		synchronized (op_set) {
 			if (!p_queue.add(op)) {
 				// This should never happen
@@ -342,6 +353,12 @@ abstract public class BasePoller implements DevicePoller {
 			openChannel();
 	}
 
+	/** Get the poll metrics for the current poll cycle */
+	@Override
+	public PollMetrics getMetrics() {
+		return metrics;
+	}
+
 	/** Check if the poller is currently connected */
 	@Override
 	public boolean isConnected() {
@@ -610,8 +627,16 @@ abstract public class BasePoller implements DevicePoller {
 		}
 	}
 
+	/** Record the round-trip time of an operation */
+	private void recordRtt(Operation op) {
+		long rtt = timeout_ms - op.getRemaining();
+		metrics.recordRtt(rtt);
+		op.getController().getPollHealth().recordRtt(rtt);
+	}
+
 	/** Parse received data */
 	private void recvOperation(Operation op) {
+		recordRtt(op);
 		try {
 			synchronized (rx_buf) {
 				if (logger.isOpen())
@@ -0,0 +1,159 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import us.mn.state.dot.sched.Job;
+import us.mn.state.dot.sched.Scheduler;
+
+/**
+ * The comm pool is a bounded set of threads shared by all comm threads.
+ * When it is enabled, a comm thread only uses a pool thread while it has
+ * operations to poll, instead of blocking a dedicated thread while idle.
+ * Comm threads which are connecting use the connect lane, and those with
+ * polls timing out use the timeout lane, so they can't starve healthy links.
+ * Each lane has its own bounded set of threads, so many unreachable links
+ * can't exhaust threads either -- they wait their turn in the lane queue.
+ * Connecting links are not stuck behind links which are timing out.
+ *
+ * @author Douglas Lau
+ */
+public final class CommPool {
+
+	/** Property for number of comm pool threads (0 to disable) */
+	static private final String THREADS_PROP = "comm.pool.threads";
+
+	/** Property for number of connect and timeout lane threads (defaults
+	 * to the number of comm pool threads) */
+	static private final String LANE_THREADS_PROP =
+		"comm.pool.lane.threads";
+
+	/** Time idle lane threads are kept (sec) */
+	static private final int LANE_KEEP_SEC = 5;
+
+	/** Thread group for comm pool threads */
+	static private final ThreadGroup GROUP = new ThreadGroup("CommPool");
+
+	/** Thread pool executor (null if disabled) */
+	static private volatile ThreadPoolExecutor executor;
+
+	/** Connect lane executor (null if disabled) */
+	static private volatile ThreadPoolExecutor connect_lane;
+
+	/** Timeout lane executor (null if disabled) */
+	static private volatile ThreadPoolExecutor timeout_lane;
+
+	/** Scheduler for retry and idle disconnect jobs */
+	static private volatile Scheduler timer;
+
+	/** Don't allow instantiation */
+	private CommPool() { }
+
+	/** Initialize the comm pool.
+	 * @param props Server properties. */
+	static public synchronized void initialize(Properties props) {
+		String v = props.getProperty(THREADS_PROP);
+		int n = (v != null) ? Integer.parseInt(v.trim()) : 0;
+		String tv = props.getProperty(LANE_THREADS_PROP);
+		int nt = (tv != null) ? Integer.parseInt(tv.trim()) : n;
+		nt = Math.max(1, nt);
+		if (n > 0 && null == executor) {
+			timer = new Scheduler("comm_timer");
+			executor = new ThreadPoolExecutor(n, n, 0,
+				TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				createThreadFactory("Comm pool "));
+			connect_lane = createLane(nt, "Comm connect ");
+			timeout_lane = createLane(nt, "Comm timeout ");
+		}
+	}
+
+	/** Create a bounded lane executor, with threads kept while busy */
+	static private ThreadPoolExecutor createLane(int n, String name) {
+		ThreadPoolExecutor e = new ThreadPoolExecutor(n, n,
+			LANE_KEEP_SEC, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(),
+			createThreadFactory(name));
+		e.allowCoreThreadTimeOut(true);
+		return e;
+	}
+
+	/** Create a thread factory for pool threads */
+	static private ThreadFactory createThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger n_thread =
+				new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(GROUP, r, name +
+					n_thread.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/** Check if the comm pool is enabled */
+	static public boolean isEnabled() {
+		return executor != null;
+	}
+
+	/** Execute a task on a pool thread.
+	 * @param r Task to execute.
+	 * @param slow Use the timeout lane. */
+	static void execute(Runnable r, boolean slow) {
+		if (slow)
+			timeout_lane.execute(r);
+		else
+			executor.execute(r);
+	}
+
+	/** Execute a task on a connect lane thread */
+	static void connect(Runnable r) {
+		connect_lane.execute(r);
+	}
+
+	/** Schedule a job on the comm pool timer */
+	static void addJob(Job job) {
+		timer.addJob(job);
+	}
+
+	/** Remove a job from the comm pool timer */
+	static void removeJob(Job job) {
+		timer.removeJob(job);
+	}
+
+	/** Get the number of tasks waiting for a connect lane thread */
+	static public int getConnectQueueSize() {
+		ThreadPoolExecutor e = connect_lane;
+		return (e != null) ? e.getQueue().size() : 0;
+	}
+
+	/** Get the number of tasks waiting for a timeout lane thread */
+	static public int getTimeoutQueueSize() {
+		ThreadPoolExecutor e = timeout_lane;
+		return (e != null) ? e.getQueue().size() : 0;
+	}
+
+	/** Get the number of tasks waiting for a pool thread */
+	static public int getQueueSize() {
+		ThreadPoolExecutor e = executor;
+		return (e != null) ? e.getQueue().size() : 0;
+	}
+}
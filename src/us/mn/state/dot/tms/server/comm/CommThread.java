@@ -20,7 +20,12 @@ import java.net.ConnectException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.sched.Job;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.EventType;
 import static us.mn.state.dot.tms.EventType.COMM_ERROR;
@@ -29,6 +34,12 @@ import us.mn.state.dot.tms.server.ControllerImpl;
 
 /**
  * CommThread represents a communication channel with priority-queued polling.
+ * Normally, each comm thread has a dedicated thread.  If the comm pool is
+ * enabled, operations are polled in slices on comm pool threads instead, and
+ * no thread is used while the operation queue is empty.  If the protocol
+ * can frame responses by drop address and the comm config has a pipeline
+ * depth, operations for several drops are polled at once, on comm pool
+ * threads (or pipeline threads if the comm pool is disabled).
  *
  * @author Douglas Lau
  * @author John L. Stanley - SRF Consulting
@@ -47,6 +58,25 @@ public class CommThread<T extends ControllerProperty> {
 	/** Thread group for all comm threads */
 	static private final ThreadGroup GROUP = new ThreadGroup("Comm");
 
+	/** Maximum number of polls in one comm pool slice */
+	static private final int SLICE_POLLS = 16;
+
+	/** Maximum time for one comm pool slice (ms) */
+	static private final int SLICE_MS = 1000;
+
+	/** Delay before retrying after an error (ms) */
+	static private final int RETRY_MS = 1000;
+
+	/** Time idle pipeline threads are kept (sec) */
+	static private final int PIPE_KEEP_SEC = 5;
+
+	/** Recovery action after a messenger error */
+	private enum Recovery {
+		STOP,		// stop the comm thread
+		RECONNECT,	// reconnect immediately
+		RETRY,		// reconnect after a delay
+	}
+
 	/** Check if messenger needs reconnect after read timeout failure.
 	 * For a modem link, read timeout should be handled by reconnecting
 	 * the modem.  For a datagram messenger (UDP), a reconnect may be
@@ -56,14 +86,22 @@ public class CommThread<T extends ControllerProperty> {
 	 * throw SocketTimeoutException until the socket was torn down and
 	 * re-established.  Crazy.  2017-04-25. */
 	static private boolean needsReconnect(Messenger m) {
+		m = unwrap(m);
 		return (m instanceof ModemMessenger) ||
 		       (m instanceof DatagramMessenger);
 	}
 
+	/** Get the messenger wrapped by a pipelined messenger */
+	static private Messenger unwrap(Messenger m) {
+		return (m instanceof PipelinedMessenger)
+		      ? ((PipelinedMessenger) m).getWrapped()
+		      : m;
+	}
+
 	/** Write a message to the comm log */
 	private void clog(String msg) {
 		if (logger.isOpen())
-			logger.log(thread.getName() + " " + msg);
+			logger.log(name + " " + msg);
 	}
 
 	/** Get an exception message */
@@ -76,9 +114,57 @@ public class CommThread<T extends ControllerProperty> {
 	/** Threaded poller */
 	private final ThreadedPoller<T> poller;
 
-	/** Thread to poll operations */
+	/** Comm thread name */
+	private final String name;
+
+	/** Response framer for pipelined polling (null if not supported) */
+	private final ResponseFramer framer;
+
+	/** Maximum number of operations in progress */
+	private final int depth;
+
+	/** Thread to poll operations (null when using comm pool) */
 	private final Thread thread;
 
+	/** Executor for pipelined polls (null if not pipelined, or using
+	 * comm pool) */
+	private final ThreadPoolExecutor pipeline;
+
+	/** Task to perform a comm pool slice */
+	private final Runnable slice = new Runnable() {
+		public void run() {
+			runSlice();
+		}
+	};
+
+	/** Messenger for comm pool slices */
+	private volatile Messenger messenger;
+
+	/** Time of last comm pool poll */
+	private long last_poll;
+
+	/** Flag indicating a comm pool slice is running or queued */
+	private boolean active = false;
+
+	/** Flag indicating an operation was added while active */
+	private boolean pending = false;
+
+	/** Flag indicating comm pool slices have stopped */
+	private boolean stopped = false;
+
+	/** Flag indicating the link is timing out, or has not responded
+	 * since connecting */
+	private volatile boolean timing_out = true;
+
+	/** Flag indicating slices are submitted to the timeout lane */
+	private boolean slow = false;
+
+	/** Flag indicating slices are submitted to the connect lane */
+	private boolean connecting = false;
+
+	/** Comm pool idle disconnect job */
+	private Job idle_job;
+
 	/** Operation queue */
 	protected final OpQueue<T> queue;
 
@@ -127,13 +213,15 @@ public class CommThread<T extends ControllerProperty> {
 		int rt, int nrd, DebugLog log)
 	{
 		poller = dp;
- 		thread = new Thread(GROUP, "Comm: " + poller.name) {
-			@Override
-			public void run() {
-				doRun();
-			}
-		};
-		thread.setDaemon(true);
+		name = "Comm: " + poller.name;
+		framer = poller.getFramer();
+		depth = poller.getPipelineDepth();
+		thread = (CommPool.isEnabled() && !isPipelined())
+		      ? null
+		      : createThread();
+		pipeline = (isPipelined() && !CommPool.isEnabled())
+		         ? createPipeline()
+		         : null;
 		queue = q;
 		scheme = s;
 		uri = u;
@@ -143,9 +231,53 @@ public class CommThread<T extends ControllerProperty> {
 		logger = log;
 	}
 
+	/** Create a dedicated thread */
+	private Thread createThread() {
+		Thread t = new Thread(GROUP, name) {
+			@Override
+			public void run() {
+				doRun();
+			}
+		};
+		t.setDaemon(true);
+		return t;
+	}
+
+	/** Check if operations are polled in pipelined mode */
+	private boolean isPipelined() {
+		return depth > 1;
+	}
+
+	/** Create an executor for pipelined polls.  Threads are only kept
+	 * while operations are in progress. */
+	private ThreadPoolExecutor createPipeline() {
+		ThreadFactory tf = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(GROUP, r, name + " pipe");
+				t.setDaemon(true);
+				return t;
+			}
+		};
+		ThreadPoolExecutor e = new ThreadPoolExecutor(depth, depth,
+			PIPE_KEEP_SEC, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), tf);
+		e.allowCoreThreadTimeOut(true);
+		return e;
+	}
+
 	/** Start the thread */
 	public void start() {
-		thread.start();
+		if (thread != null)
+			thread.start();
+		else {
+			clog("STARTING");
+			queue.setWaker(new Runnable() {
+				public void run() {
+					wake();
+				}
+			});
+			wake();
+		}
 	}
 
 	/** Check if the thread is done */
@@ -156,7 +288,10 @@ public class CommThread<T extends ControllerProperty> {
 	/** Destroy the comm thread */
 	public void destroy() {
 		done = true;
-		thread.interrupt();
+		if (thread != null)
+			thread.interrupt();
+		else
+			wake();
 	}
 
 	/** Check if the comm thread should continue */
@@ -179,6 +314,8 @@ public class CommThread<T extends ControllerProperty> {
 		finally {
 			done = true;
 			clog("STOPPING");
+			if (pipeline != null)
+				pipeline.shutdown();
 			poller.disconnect();
 		}
 	}
@@ -187,45 +324,246 @@ public class CommThread<T extends ControllerProperty> {
 	 * @throws MessengerException if the messenger could not be created. */
 	private void performOperations() throws MessengerException {
 		while (shouldContinue()) {
+			Recovery r = Recovery.RETRY;
 			try (Messenger m = createMessenger(scheme, uri,
 				timeout, no_resp_disconnect_sec))
 			{
-				pollQueue(m);
+				if (isPipelined())
+					pollPipelined(m);
+				else
+					pollQueue(m);
+			}
+			catch (NoModemException e) {
+				r = recover(e);
 			}
-			catch (DisconnectException e) {
-				setStatus(getMessage(e));
+			catch (IOException e) {
+				r = recover(e);
+			}
+			if (Recovery.STOP == r)
 				break;
+			if (Recovery.RETRY == r) {
+				// Rest a second before trying again
+				TimeSteward.sleep_well(RETRY_MS);
+			}
+		}
+	}
+
+	/** Determine how to recover from a messenger error.
+	 * @param e Exception thrown while polling.
+	 * @return Recovery action. */
+	private Recovery recover(Exception e) {
+		if (e instanceof ReconnectException)
+			return Recovery.RECONNECT;
+		String msg = getMessage(e);
+		setStatus(msg);
+		if (e instanceof DisconnectException)
+			return Recovery.STOP;
+		else if (e instanceof NoModemException) {
+			// Keep looping until modem is available
+			return Recovery.RETRY;
+		} else if (e instanceof ConnectException) {
+			return poller.handleError(CONNECTION_REFUSED, msg)
+			      ? Recovery.STOP
+			      : Recovery.RETRY;
+		} else if (e instanceof NoResponseException) {
+			return poller.noMoreOps()
+			      ? Recovery.STOP
+			      : Recovery.RETRY;
+		} else {
+			return poller.handleError(COMM_ERROR, msg)
+			      ? Recovery.STOP
+			      : Recovery.RETRY;
+		}
+	}
+
+	/** Wake up comm pool slices after an operation is added */
+	private synchronized void wake() {
+		pending = true;
+		if (!active) {
+			active = true;
+			submitSlice();
+		}
+	}
+
+	/** Submit a comm pool slice.  Slices which need to connect are
+	 * submitted to the connect lane.  While polls are timing out (or
+	 * before the first response after connecting), slices are submitted
+	 * to the timeout lane, so they don't hold shared pool threads while
+	 * waiting for responses. */
+	private synchronized void submitSlice() {
+		if (!stopped) {
+			slow = timing_out;
+			connecting = (null == messenger);
+			if (connecting)
+				CommPool.connect(slice);
+			else
+				CommPool.execute(slice, slow);
+		}
+	}
+
+	/** Park comm pool slices while the queue is empty.
+	 * @return true if parked, false if an operation was added. */
+	private synchronized boolean park() {
+		if (pending) {
+			pending = false;
+			return false;
+		}
+		active = false;
+		if (idle_disconnect_ms > 0)
+			scheduleIdleJob();
+		return true;
+	}
+
+	/** Schedule a job to check for idle disconnect */
+	private void scheduleIdleJob() {
+		if (idle_job != null)
+			CommPool.removeJob(idle_job);
+		long idle = TimeSteward.currentTimeMillis() - last_poll;
+		long ms = Math.max(0, idle_disconnect_ms - idle);
+		idle_job = new Job((int) Math.min(ms, Integer.MAX_VALUE)) {
+			public void perform() {
+				wake();
 			}
-			catch (ReconnectException e) {
-				continue;
+		};
+		CommPool.addJob(idle_job);
+	}
+
+	/** Run one comm pool slice */
+	private void runSlice() {
+		try {
+			if (performSlice())
+				return;
+		}
+		catch (MessengerException e) {
+			setStatus(getMessage(e));
+		}
+		catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+		stopSlices();
+	}
+
+	/** Perform operations from the poll queue until it is empty.
+	 * @return true if the comm thread should continue.
+	 * @throws MessengerException if the messenger could not be created. */
+	private boolean performSlice() throws MessengerException {
+		while (shouldContinue()) {
+			Recovery r;
+			try {
+				return pollSlice();
 			}
 			catch (NoModemException e) {
-				// Keep looping until modem is available
-				setStatus(getMessage(e));
+				r = recover(e);
+			}
+			catch (IOException e) {
+				r = recover(e);
+			}
+			closeMessenger();
+			if (Recovery.STOP == r)
+				return false;
+			if (Recovery.RETRY == r) {
+				scheduleRetry();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Poll operations until the queue is empty or the slice is full.
+	 * @return true if the comm thread should continue.
+	 * @throws MessengerException if the messenger could not be created.
+	 * @throws IOException if an unrecoverable IO error happens. */
+	private boolean pollSlice() throws MessengerException, IOException {
+		if (null == messenger) {
+			if (!connecting) {
+				// Connect on the connect lane
+				timing_out = true;
+				submitSlice();
+				return true;
 			}
-			catch (ConnectException e) {
-				String msg = getMessage(e);
-				setStatus(msg);
-				if (poller.handleError(CONNECTION_REFUSED, msg))
-					break;
+			messenger = createMessenger(scheme, uri, timeout,
+				no_resp_disconnect_sec);
+			last_poll = TimeSteward.currentTimeMillis();
+			setStatus("");
+		}
+		int n_polls = 0;
+		long start = TimeSteward.currentTimeMillis();
+		while (shouldContinue()) {
+			OpController<T> op = queue.nextWork();
+			if (op != null) {
+				doPoll(messenger, op);
+				last_poll = TimeSteward.currentTimeMillis();
+				setStatus("");
+				if (++n_polls >= SLICE_POLLS ||
+				    last_poll - start >= SLICE_MS ||
+				    timing_out != slow || connecting)
+				{
+					// Give other comm threads a turn
+					submitSlice();
+					return true;
+				}
+			} else {
+				checkIdle();
+				if (park())
+					return true;
 			}
-			catch (NoResponseException e) {
-				String msg = getMessage(e);
-				setStatus(msg);
-				if (poller.noMoreOps())
-					break;
+		}
+		return false;
+	}
+
+	/** Check if the messenger has been idle too long.
+	 * @throws DisconnectException if idle timeout has expired. */
+	private void checkIdle() throws DisconnectException {
+		if (idle_disconnect_ms > 0) {
+			long idle = TimeSteward.currentTimeMillis() - last_poll;
+			if (idle >= idle_disconnect_ms) {
+				// Empty msg (status) doesn't fail controllers
+				throw new DisconnectException("");
+			}
+		}
+	}
+
+	/** Schedule a comm pool slice to retry after an error */
+	private void scheduleRetry() {
+		CommPool.addJob(new Job(RETRY_MS) {
+			public void perform() {
+				submitSlice();
+			}
+		});
+	}
+
+	/** Close the comm pool messenger */
+	private void closeMessenger() {
+		Messenger m = messenger;
+		messenger = null;
+		if (m != null) {
+			try {
+				m.close();
 			}
 			catch (IOException e) {
-				String msg = getMessage(e);
-				setStatus(msg);
-				if (poller.handleError(COMM_ERROR, msg))
-					break;
+				clog("Close -- " + exceptionMessage(e));
 			}
-			// Rest a second before trying again
-			TimeSteward.sleep_well(1000);
 		}
 	}
 
+	/** Stop performing comm pool slices */
+	private void stopSlices() {
+		// Clear waker first, so no slice is submitted after this
+		queue.setWaker(null);
+		synchronized (this) {
+			if (stopped)
+				return;
+			stopped = true;
+			if (idle_job != null)
+				CommPool.removeJob(idle_job);
+			idle_job = null;
+		}
+		closeMessenger();
+		done = true;
+		clog("STOPPING");
+		poller.disconnect();
+	}
+
 	/** Create a messenger.
 	 * @param s Default URI scheme.
 	 * @param u The URI.
@@ -253,6 +591,76 @@ public class CommThread<T extends ControllerProperty> {
 		}
 	}
 
+	/** Poll the operation queue with operations for several drops in
+	 * progress at once.
+	 * @throws DisconnectException if the link should be disconnected.
+	 * @throws IOException if an unrecoverable IO error happens. */
+	private void pollPipelined(Messenger m) throws DisconnectException,
+		IOException
+	{
+		Pipe pipe = new Pipe(new PipelinedMessenger(m, framer,
+			timeout));
+		setStatus("");
+		while (shouldContinue()) {
+			OpController<T> op = queue.nextPipelined(
+				idle_disconnect_ms, depth);
+			if (pipe.error != null) {
+				if (op != null)
+					queue.requeue(op);
+				throw pipe.error;
+			}
+			if (op != null)
+				pipe.poll(op);
+		}
+	}
+
+	/** Pipe for polling operations on a pipelined messenger */
+	private class Pipe {
+
+		/** Pipelined messenger */
+		private final PipelinedMessenger messenger;
+
+		/** Unrecoverable IO error from a poll */
+		private volatile IOException error;
+
+		/** Create a new pipe */
+		private Pipe(PipelinedMessenger pm) {
+			messenger = pm;
+		}
+
+		/** Poll an operation on a comm pool or pipeline thread.
+		 * While polls are timing out, the timeout lane is used. */
+		private void poll(final OpController<T> op) {
+			Runnable r = new Runnable() {
+				public void run() {
+					doPipePoll(op);
+				}
+			};
+			if (pipeline != null)
+				pipeline.execute(r);
+			else
+				CommPool.execute(r, timing_out);
+		}
+
+		/** Perform one poll for an operation */
+		private void doPipePoll(OpController<T> op) {
+			try {
+				doPoll(messenger, op);
+				setStatus("");
+			}
+			catch (IOException e) {
+				error = e;
+			}
+			catch (RuntimeException e) {
+				clog("Pipe " + op + " -- " +
+					exceptionMessage(e));
+			}
+			finally {
+				queue.finish(op);
+			}
+		}
+	}
+
 	/** Perform one poll for an operation.
 	 * @param m Messenger to communicate with controller.
 	 * @param o Operation to poll.
@@ -261,7 +669,10 @@ public class CommThread<T extends ControllerProperty> {
 		throws IOException
 	{
 		try {
+			long start = TimeSteward.currentTimeMillis();
 			o.poll(createCommMessage(m, o));
+			recordRtt(o, TimeSteward.currentTimeMillis() - start);
+			timing_out = false;
 		}
 		catch (DeviceContentionException e) {
 			handleContention(o, e);
@@ -291,6 +702,7 @@ public class CommThread<T extends ControllerProperty> {
 			o.setMaintStatus(msg);
 		}
 		catch (SocketTimeoutException e) {
+			timing_out = true;
 			String msg = getMessage(e);
 			o.handleCommError(EventType.POLL_TIMEOUT_ERROR, msg);
 			// Not sure if this is needed in addition
@@ -300,8 +712,9 @@ public class CommThread<T extends ControllerProperty> {
 		}
 		catch (SocketException e) {
 			String msg = getMessage(e);
-			if (m instanceof BasicMessenger) {
-				BasicMessenger bm = (BasicMessenger) m;
+			Messenger um = unwrap(m);
+			if (um instanceof BasicMessenger) {
+				BasicMessenger bm = (BasicMessenger) um;
 				if (bm.hitNoResponseDisconnect()) {
 					o.handleCommError(EventType
 						.POLL_TIMEOUT_ERROR, msg);
@@ -313,11 +726,22 @@ public class CommThread<T extends ControllerProperty> {
 			throw new ReconnectException();
 		}
 		finally {
-			if (o.isDone() || !requeueOperation(o))
+			if (o.isDone() || !requeueOperation(o)) {
 				o.cleanup();
+				poller.getMetrics().complete(o.getStart(),
+					o.getDeadline(), o.isSuccess());
+			}
 		}
 	}
 
+	/** Record the round-trip time of one poll.
+	 * @param o Operation polled.
+	 * @param ms Time to poll one phase (ms). */
+	private void recordRtt(OpController<T> o, long ms) {
+		poller.getMetrics().recordRtt(ms);
+		o.getController().getPollHealth().recordRtt(ms);
+	}
+
 	/** Handle device contention.  Another operation has the device lock.
 	 * Ensure that we don't have a priority inversion problem. */
 	@SuppressWarnings("unchecked")
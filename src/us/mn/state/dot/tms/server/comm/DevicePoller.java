@@ -39,6 +39,9 @@ public interface DevicePoller {
 	/** Start communication test */
 	void startTesting(ControllerImpl c);
 
+	/** Get the poll metrics for the current poll cycle */
+	PollMetrics getMetrics();
+
 	/** Destroy the poller */
 	void destroy();
 }
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2005-2017  Minnesota Department of Transportation
+ * Copyright (C) 2005-2020  Minnesota Department of Transportation
  * Copyright (C) 2012  Iteris Inc.
  * Copyright (C) 2014-2015  AHMCT, University of California
  *
@@ -17,6 +17,7 @@
 package us.mn.state.dot.tms.server.comm;
 
 import java.io.IOException;
+import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.tms.EventType;
 import us.mn.state.dot.tms.SystemAttrEnum;
 import us.mn.state.dot.tms.server.ControllerImpl;
@@ -70,9 +71,28 @@ abstract public class OpController<T extends ControllerProperty> {
 	/** Begin the operation.  The operation begins when it is queued for
 	 * processing. */
 	public final void begin() {
+		start = TimeSteward.currentTimeMillis();
+		deadline = start + controller.getPollPeriodSec() * 1000L;
 		phase = phaseOne();
 	}
 
+	/** Time the operation began */
+	private long start;
+
+	/** Get the time the operation began */
+	public final long getStart() {
+		return start;
+	}
+
+	/** Deadline to complete the operation (one poll period after it
+	 * began) */
+	private long deadline;
+
+	/** Get the deadline to complete the operation */
+	public final long getDeadline() {
+		return deadline;
+	}
+
 	/** Create the first phase of the operation.  This method cannot be
 	 * called in the Operation constructor, because the object may not
 	 * have been fully constructed yet (subclass initialization). */
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2018  Minnesota Department of Transportation
+ * Copyright (C) 2000-2020  Minnesota Department of Transportation
  * Copyright (C) 2017       SRF Consulting Group
  *
  * This program is free software; you can redistribute it and/or modify
@@ -16,10 +16,14 @@
 package us.mn.state.dot.tms.server.comm;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import us.mn.state.dot.sched.TimeSteward;
 
 /**
  * A prioritized queue which sorts Operation objects by their priority
- * class.  Operations with the same priority are sorted FIFO.
+ * class.  Critical operations with the same priority are sorted FIFO.  Other
+ * operations with the same priority are sorted by deadline, except those for
+ * failing controllers, which are deferred behind healthy controllers.
  *
  * @author Douglas Lau
  * @author John L. Stanley
@@ -30,12 +34,27 @@ public final class OpQueue<T extends ControllerProperty> {
 	static private final class Node<T extends ControllerProperty> {
 		final OpController<T> operation;
 		final PriorityLevel priority;
+		final boolean deferred;
 		Node<T> next;
 		Node(OpController<T> op, Node<T> n) {
 			operation = op;
 			priority = op.getPriority();
+			deferred = !priority.isCritical() && op.getController()
+				.getPollHealth().isFailing();
 			next = n;
 		}
+		/** Check if this node should be polled before another */
+		boolean isBefore(Node<T> other) {
+			int c = priority.ordinal() - other.priority.ordinal();
+			if (c != 0)
+				return c < 0;
+			if (priority.isCritical())
+				return true;
+			if (deferred != other.deferred)
+				return other.deferred;
+			return operation.getDeadline() <=
+			       other.operation.getDeadline();
+		}
 	}
 
 	/** Front node in the queue */
@@ -45,9 +64,22 @@ public final class OpQueue<T extends ControllerProperty> {
 	 * operation cannot be added while work is in progress. */
 	private OpController<T> work = null;
 
+	/** Operations in progress on a pipelined link */
+	private final ArrayList<OpController<T>> working =
+		new ArrayList<OpController<T>>();
+
 	/** Flag to tell when the poller is closing */
 	private boolean closing = false;
 
+	/** Callback to run when an operation is added (may be null) */
+	private Runnable waker = null;
+
+	/** Set the callback to run when an operation is added.  This is used
+	 * by comm threads which do not wait on the queue. */
+	public synchronized void setWaker(Runnable w) {
+		waker = w;
+	}
+
 	/** Close the queue for new operations */
 	public synchronized void close() {
 		closing = true;
@@ -60,7 +92,7 @@ public final class OpQueue<T extends ControllerProperty> {
 
 	/** Check if the queue is empty */
 	public synchronized boolean isEmpty() {
-		return (work == null) && (front == null);
+		return (work == null) && (front == null) && working.isEmpty();
 	}
 
 	/** Check if the queue has any more ops to process.
@@ -88,6 +120,10 @@ public final class OpQueue<T extends ControllerProperty> {
 	private boolean contains(OpController<T> op) {
 		if (op.equals(work) && !work.isDone())
 			return true;
+		for (OpController<T> w: working) {
+			if (op.equals(w) && !w.isDone())
+				return true;
+		}
 		Node<T> node = front;
 		while (node != null) {
 			OpController<T> nop = node.operation;
@@ -100,21 +136,23 @@ public final class OpQueue<T extends ControllerProperty> {
 
 	/** Add an operation to the queue */
 	private void add(OpController<T> op) {
-		PriorityLevel priority = op.getPriority();
+		Node<T> added = new Node<T>(op, null);
 		Node<T> prev = null;
 		Node<T> node = front;
 		while (node != null) {
-			if (priority.ordinal() < node.priority.ordinal())
+			if (!node.isBefore(added))
 				break;
 			prev = node;
 			node = node.next;
 		}
-		node = new Node<T>(op, node);
+		added.next = node;
 		if (prev == null)
-			front = node;
+			front = added;
 		else
-			prev.next = node;
-		notify();
+			prev.next = added;
+		notifyAll();
+		if (waker != null)
+			waker.run();
 	}
 
 	/** Requeue an in-progress operation */
@@ -132,6 +170,8 @@ public final class OpQueue<T extends ControllerProperty> {
 			work = null;
 			return op;
 		}
+		if (working.remove(op))
+			return op;
 		Node<T> prev = null;
 		Node<T> node = front;
 		while (node != null) {
@@ -176,6 +216,92 @@ public final class OpQueue<T extends ControllerProperty> {
 		return work;
 	}
 
+	/** Get the next operation from the queue (and remove it) without
+	 * waiting.  It becomes the current work operation.
+	 * @return Operation at front of queue, or null if queue is empty. */
+	public synchronized OpController<T> nextWork() {
+		work = null;
+		if (front != null) {
+			work = front.operation;
+			front = front.next;
+		}
+		return work;
+	}
+
+	/** Get the next operation for a pipelined link (and remove it).  The
+	 * operation must be for a drop which has no operation in progress.
+	 * Waits until an operation is available, the timeout expires or the
+	 * thread is interrupted (destroyed).  It becomes one of the operations
+	 * in progress, until it is requeued or finished.
+	 * @param idle_ms Idle timeout (ms); 0 indicates no timeout.
+	 * @param depth Maximum number of operations in progress.
+	 * @return Operation for an idle drop, or null if a wait was
+	 *         interrupted by an operation finishing.
+	 * @throws DisconnectException If idle timeout expires or comm thread is
+	 *                             destroyed. */
+	public synchronized OpController<T> nextPipelined(long idle_ms,
+		int depth) throws DisconnectException
+	{
+		OpController<T> op = takeIdleDrop(depth);
+		if (op != null)
+			return op;
+		long start = TimeSteward.currentTimeMillis();
+		try {
+			wait(idle_ms);
+		}
+		catch (InterruptedException e) {
+			throw new DisconnectException("DESTROYED");
+		}
+		op = takeIdleDrop(depth);
+		if (null == op && idle_ms > 0 && isEmpty()) {
+			long idle = TimeSteward.currentTimeMillis() - start;
+			// Empty msg (status) doesn't fail controllers
+			if (idle >= idle_ms)
+				throw new DisconnectException("");
+		}
+		return op;
+	}
+
+	/** Take the first operation for a drop with no operation in progress.
+	 * @param depth Maximum number of operations in progress.
+	 * @return Operation, or null if none can start. */
+	private OpController<T> takeIdleDrop(int depth) {
+		if (working.size() >= depth)
+			return null;
+		Node<T> prev = null;
+		Node<T> node = front;
+		while (node != null) {
+			OpController<T> op = node.operation;
+			if (!isDropWorking(op.getController().getDrop())) {
+				if (prev == null)
+					front = node.next;
+				else
+					prev.next = node.next;
+				working.add(op);
+				return op;
+			}
+			prev = node;
+			node = node.next;
+		}
+		return null;
+	}
+
+	/** Check if a drop has an operation in progress */
+	private boolean isDropWorking(int drop) {
+		for (OpController<T> w: working) {
+			if (w.getController().getDrop() == drop)
+				return true;
+		}
+		return false;
+	}
+
+	/** Finish an operation in progress on a pipelined link.  This does
+	 * nothing if the operation has been requeued. */
+	public synchronized void finish(OpController<T> op) {
+		if (working.remove(op))
+			notifyAll();
+	}
+
 	/** Get the next operation from the queue (and remove it).
 	 * If there's no op in the queue, immediately return null. */
 	public synchronized OpController<T> tryNext() {
@@ -191,6 +317,8 @@ public final class OpQueue<T extends ControllerProperty> {
 	public synchronized boolean forEach(OpHandler<T> handler) {
 		OpController<T> w = work;
 		boolean flag = (w != null) ? handler.handle(w) : true;
+		for (OpController<T> op: working)
+			flag &= handler.handle(op);
 		Node<T> node = front;
 		while (node != null) {
 			flag &= handler.handle(node.operation);
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2005-2017  Minnesota Department of Transportation
+ * Copyright (C) 2005-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -97,6 +97,9 @@ public final class Operation implements Comparable<Operation> {
 		controller = c;
 		device = d;
 		step = s;
+		int period = (c != null) ? c.getPollPeriodSec() : 0;
+		start = TimeSteward.currentTimeMillis();
+		deadline = start + period * 1000L;
 	}
 
 	/** Create a new operation.
@@ -116,6 +119,23 @@ public final class Operation implements Comparable<Operation> {
 		// FIXME: acquire device lock before first step
 	}
 
+	/** Time the operation was created */
+	private final long start;
+
+	/** Get the time the operation was created */
+	public long getStart() {
+		return start;
+	}
+
+	/** Deadline to complete the operation (one poll period after it was
+	 * created) */
+	private final long deadline;
+
+	/** Get the deadline to complete the operation */
+	public long getDeadline() {
+		return deadline;
+	}
+
 	/** Get a string description */
 	@Override
 	public String toString() {
@@ -187,6 +207,20 @@ public final class Operation implements Comparable<Operation> {
 		priority = p;
 	}
 
+	/** Flag to defer operation behind others of the same priority */
+	private boolean deferred = false;
+
+	/** Check if the operation is deferred */
+	public boolean isDeferred() {
+		return deferred;
+	}
+
+	/** Set the deferred flag.  This must not be changed while the
+	 * operation is queued. */
+	public void setDeferred(boolean d) {
+		deferred = d;
+	}
+
 	/** Number of runs -- used for fair queueing */
 	private int n_runs = 0;
 
@@ -0,0 +1,280 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import us.mn.state.dot.sched.TimeSteward;
+import us.mn.state.dot.tms.server.ControllerImpl;
+
+/**
+ * A pipelined messenger allows operations for several drops on one link to
+ * be in progress at the same time.  Requests are written to the link as soon
+ * as they are flushed, without waiting for responses to earlier requests.
+ * Responses are split into frames by a response framer, and routed to the
+ * operation polling the drop address in each frame.  Each drop has its own
+ * receive timeout.
+ *
+ * This must only be used on links which can carry overlapping responses,
+ * such as UDP or full-duplex links which buffer responses from each drop.
+ * It is enabled by the pipeline depth of a comm config.
+ *
+ * @author Douglas Lau
+ */
+public class PipelinedMessenger extends Messenger {
+
+	/** Exception thrown when a drop timeout expires */
+	static private final SocketTimeoutException DROP_TIMEOUT =
+		new SocketTimeoutException("DROP TIMEOUT");
+
+	/** Wrapped messenger */
+	private final Messenger wrapped;
+
+	/** Response framer */
+	private final ResponseFramer framer;
+
+	/** Receive timeout for each drop (ms) */
+	private final int timeout;
+
+	/** Frames received for each drop, which have not been read */
+	private final HashMap<Integer, LinkedList<byte[]>> frames =
+		new HashMap<Integer, LinkedList<byte[]>>();
+
+	/** Lock for writing requests */
+	private final Object write_lock = new Object();
+
+	/** Flag indicating a thread is reading from the wrapped messenger */
+	private boolean reading = false;
+
+	/** Create a new pipelined messenger.
+	 * @param m Wrapped messenger.
+	 * @param f Response framer.
+	 * @param rt Receive timeout for each drop (ms). */
+	public PipelinedMessenger(Messenger m, ResponseFramer f, int rt) {
+		wrapped = m;
+		framer = f;
+		timeout = rt;
+	}
+
+	/** Get the wrapped messenger */
+	public Messenger getWrapped() {
+		return wrapped;
+	}
+
+	/** Close the messenger */
+	@Override
+	public void close() throws IOException {
+		wrapped.close();
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/** Get the input stream (not routed by drop) */
+	@Override
+	public InputStream getInputStream(String path) throws IOException {
+		return wrapped.getInputStream(path);
+	}
+
+	/** Get an input stream for frames from one controller */
+	@Override
+	public InputStream getInputStream(String path, ControllerImpl c)
+		throws IOException
+	{
+		return new FrameInputStream(c.getDrop());
+	}
+
+	/** Get an output stream for requests to one controller.  Requests are
+	 * buffered, and written to the link when flushed. */
+	@Override
+	public OutputStream getOutputStream(final ControllerImpl c)
+		throws IOException
+	{
+		final OutputStream os = wrapped.getOutputStream(c);
+		return new ByteArrayOutputStream() {
+			@Override
+			public void flush() throws IOException {
+				if (size() > 0) {
+					writeRequest(c, os, toByteArray());
+					reset();
+				}
+			}
+		};
+	}
+
+	/** Write a request to the link.
+	 * @param c Controller to receive request.
+	 * @param os Output stream of wrapped messenger.
+	 * @param req Request to write. */
+	private void writeRequest(ControllerImpl c, OutputStream os,
+		byte[] req) throws IOException
+	{
+		// Discard stale frames from an earlier (timed out) request
+		synchronized (this) {
+			frames.remove(Integer.valueOf(c.getDrop()));
+		}
+		synchronized (write_lock) {
+			os.write(req);
+			os.flush();
+		}
+	}
+
+	/** Drain the input stream.  This does nothing, since draining the
+	 * link would discard responses for other drops. */
+	@Override
+	public void drain() {
+		// Framing errors are drained in readFrame
+	}
+
+	/** Take the next frame received for a drop.
+	 * @param drop Drop address.
+	 * @return Frame, or null if none have been received. */
+	private byte[] takeFrame(int drop) {
+		LinkedList<byte[]> fr = frames.get(drop);
+		return (fr != null) ? fr.poll() : null;
+	}
+
+	/** Add a frame received from the link */
+	private void addFrame(byte[] frame) {
+		int drop = framer.getDrop(frame);
+		LinkedList<byte[]> fr = frames.get(drop);
+		if (null == fr) {
+			fr = new LinkedList<byte[]>();
+			frames.put(drop, fr);
+		}
+		fr.add(frame);
+	}
+
+	/** Read the next frame for a drop.  While no other thread is reading
+	 * from the link, this thread reads frames (for any drop) until one
+	 * for its own drop arrives.
+	 * @param drop Drop address.
+	 * @return Frame received from the drop.
+	 * @throws SocketTimeoutException if the drop timeout expires. */
+	private byte[] readFrame(int drop) throws IOException {
+		long deadline = TimeSteward.currentTimeMillis() + timeout;
+		while (true) {
+			synchronized (this) {
+				byte[] frame = waitFrame(drop, deadline);
+				if (frame != null)
+					return frame;
+				reading = true;
+			}
+			byte[] frame = null;
+			try {
+				frame = readLink();
+			}
+			finally {
+				synchronized (this) {
+					reading = false;
+					if (frame != null)
+						addFrame(frame);
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/** Wait for a frame, or until no other thread is reading the link.
+	 * @param drop Drop address.
+	 * @param deadline Time to stop waiting.
+	 * @return Frame for drop, or null if this thread should read. */
+	private byte[] waitFrame(int drop, long deadline) throws IOException {
+		while (true) {
+			byte[] frame = takeFrame(drop);
+			if (frame != null)
+				return frame;
+			long ms = deadline - TimeSteward.currentTimeMillis();
+			if (ms <= 0)
+				throw DROP_TIMEOUT;
+			if (!reading)
+				return null;
+			try {
+				wait(ms);
+			}
+			catch (InterruptedException e) {
+				throw new SocketTimeoutException("INTERRUPTED");
+			}
+		}
+	}
+
+	/** Read one frame from the wrapped messenger */
+	private byte[] readLink() throws IOException {
+		try {
+			return framer.readFrame(wrapped.getInputStream(""));
+		}
+		catch (ParsingException e) {
+			wrapped.drain();
+			throw e;
+		}
+	}
+
+	/** Input stream for frames from one drop */
+	private class FrameInputStream extends InputStream {
+
+		/** Drop address */
+		private final int drop;
+
+		/** Current frame */
+		private byte[] frame;
+
+		/** Position in current frame */
+		private int pos;
+
+		/** Create a frame input stream */
+		private FrameInputStream(int d) {
+			drop = d;
+		}
+
+		/** Check for data in the current frame, reading the next
+		 * frame if necessary */
+		private void checkFrame() throws IOException {
+			if (null == frame || pos >= frame.length) {
+				frame = readFrame(drop);
+				pos = 0;
+			}
+		}
+
+		/** Read one byte */
+		@Override
+		public int read() throws IOException {
+			checkFrame();
+			return frame[pos++] & 0xFF;
+		}
+
+		/** Read bytes (not past the end of the current frame) */
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len <= 0)
+				return 0;
+			checkFrame();
+			int n = Math.min(len, frame.length - pos);
+			System.arraycopy(frame, pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		/** Get the number of bytes available in current frame */
+		@Override
+		public int available() {
+			return (frame != null) ? frame.length - pos : 0;
+		}
+	}
+}
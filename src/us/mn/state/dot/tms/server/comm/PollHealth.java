@@ -0,0 +1,144 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * Poll health tracks the round-trip time and failure history of one
+ * controller.  Periodic polls of a failing controller are backed off
+ * exponentially, so that it does not use up the link's poll cycle with
+ * timeouts.  Short and long periodic polls are backed off separately, since
+ * their periods can be very different.  Any successful operation ends the
+ * backoff.
+ *
+ * @author Douglas Lau
+ */
+public final class PollHealth {
+
+	/** Maximum backoff level (2^n poll periods) */
+	static private final int MAX_LEVEL = 5;
+
+	/** Maximum backoff time (ms), unless the poll period is longer */
+	static private final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+
+	/** Backoff state for one class of periodic polls */
+	static private final class Backoff {
+
+		/** Backoff level */
+		private int level = 0;
+
+		/** Time of next allowed periodic poll */
+		private long next_poll = 0;
+
+		/** Reset the backoff */
+		private void reset() {
+			level = 0;
+			next_poll = 0;
+		}
+
+		/** Check whether a periodic poll should be performed.
+		 * @param period_ms Poll period (ms).
+		 * @param now Current time (ms).
+		 * @return true if the poll should be performed. */
+		private boolean check(long period_ms, long now) {
+			// Allow half a period of slack for poll job jitter
+			if (now < next_poll - period_ms / 2)
+				return false;
+			long backoff = Math.min(period_ms << level,
+				Math.max(MAX_BACKOFF_MS, period_ms));
+			next_poll = now + backoff;
+			level = Math.min(level + 1, MAX_LEVEL);
+			return true;
+		}
+	}
+
+	/** Smoothed round-trip time (ms), or -1 if unknown */
+	private long srtt = -1;
+
+	/** Flag indicating the most recent operation failed */
+	private boolean failing = false;
+
+	/** Backoff for short periodic polls */
+	private final Backoff short_backoff = new Backoff();
+
+	/** Backoff for long periodic polls */
+	private final Backoff long_backoff = new Backoff();
+
+	/** Count of periodic polls skipped while backing off */
+	private int n_skipped = 0;
+
+	/** Record the round-trip time of a poll.
+	 * @param ms Round-trip time (ms). */
+	public synchronized void recordRtt(long ms) {
+		// Exponentially weighted, with gain 1/8 (same as TCP)
+		srtt = (srtt < 0) ? ms : srtt + (ms - srtt) / 8;
+	}
+
+	/** Get the smoothed round-trip time (ms), or -1 if unknown */
+	public synchronized long getRtt() {
+		return srtt;
+	}
+
+	/** Record the result of an operation.
+	 * @param success True if the operation succeeded. */
+	public synchronized void recordResult(boolean success) {
+		if (success) {
+			failing = false;
+			short_backoff.reset();
+			long_backoff.reset();
+		} else
+			failing = true;
+	}
+
+	/** Check if the most recent operation failed */
+	public synchronized boolean isFailing() {
+		return failing;
+	}
+
+	/** Check whether a periodic poll should be performed.
+	 * @param period_sec Poll period (seconds).
+	 * @param is_long Flag for long poll period.
+	 * @return true if the poll should be performed, false to skip. */
+	public boolean checkPoll(int period_sec, boolean is_long) {
+		return checkPoll(period_sec, is_long,
+			TimeSteward.currentTimeMillis());
+	}
+
+	/** Check whether a periodic poll should be performed.
+	 * @param period_sec Poll period (seconds).
+	 * @param is_long Flag for long poll period.
+	 * @param now Current time (ms).
+	 * @return true if the poll should be performed, false to skip. */
+	synchronized boolean checkPoll(int period_sec, boolean is_long,
+		long now)
+	{
+		if (!failing)
+			return true;
+		Backoff b = is_long ? long_backoff : short_backoff;
+		if (b.check(period_sec * 1000L, now))
+			return true;
+		n_skipped++;
+		return false;
+	}
+
+	/** Get a string representation */
+	@Override
+	public synchronized String toString() {
+		return "rtt: " + srtt + " ms, failing: " + failing +
+			", level: " + short_backoff.level + "/" +
+			long_backoff.level + ", skipped: " + n_skipped;
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.util.Arrays;
+import us.mn.state.dot.sched.TimeSteward;
+
+/**
+ * Poll metrics for one comm link, collected over one poll cycle.  An
+ * operation which completes after its deadline (one poll period after it was
+ * queued) has overrun the poll cycle.  Latency is the time from queueing an
+ * operation until it completes.
+ *
+ * @author Douglas Lau
+ */
+public final class PollMetrics {
+
+	/** Maximum number of latency samples per cycle */
+	static private final int MAX_SAMPLES = 4096;
+
+	/** Get a percentile from sorted samples.
+	 * @param sorted Sorted samples.
+	 * @param pct Percentile (0-100).
+	 * @return Sample at percentile, or 0 if there are no samples. */
+	static public long percentile(long[] sorted, int pct) {
+		if (sorted.length > 0) {
+			int i = (sorted.length * pct + 99) / 100;
+			i = Math.min(i, sorted.length);
+			return sorted[Math.max(0, i - 1)];
+		} else
+			return 0;
+	}
+
+	/** Count of completed operations */
+	private int n_ops;
+
+	/** Count of failed operations */
+	private int n_failed;
+
+	/** Count of operations completed after their deadline */
+	private int n_late;
+
+	/** Maximum time past deadline (ms) */
+	private long max_late;
+
+	/** Count of polls (round trips) */
+	private int n_polls;
+
+	/** Total round-trip time of polls (ms) */
+	private long rtt_total;
+
+	/** Count of periodic polls skipped for backoff */
+	private int n_skipped;
+
+	/** Operation latency samples (ms) */
+	private long[] latency = new long[16];
+
+	/** Count of latency samples */
+	private int n_latency;
+
+	/** Record the round-trip time of a poll.
+	 * @param ms Round-trip time (ms). */
+	public synchronized void recordRtt(long ms) {
+		n_polls++;
+		rtt_total += ms;
+	}
+
+	/** Record a completed operation.
+	 * @param start Time the operation was queued.
+	 * @param deadline Deadline of the operation.
+	 * @param success True if the operation succeeded. */
+	public synchronized void complete(long start, long deadline,
+		boolean success)
+	{
+		long now = TimeSteward.currentTimeMillis();
+		n_ops++;
+		if (!success)
+			n_failed++;
+		long late = now - deadline;
+		if (late > 0) {
+			n_late++;
+			max_late = Math.max(max_late, late);
+		}
+		addLatency(now - start);
+	}
+
+	/** Add a latency sample */
+	private void addLatency(long ms) {
+		if (n_latency < MAX_SAMPLES) {
+			if (n_latency >= latency.length) {
+				latency = Arrays.copyOf(latency,
+					latency.length * 2);
+			}
+			latency[n_latency++] = ms;
+		}
+	}
+
+	/** Get the count of completed operations */
+	public synchronized int getOps() {
+		return n_ops;
+	}
+
+	/** Get the count of failed operations */
+	public synchronized int getFailed() {
+		return n_failed;
+	}
+
+	/** Get sorted operation latency samples (ms) */
+	public synchronized long[] getLatencies() {
+		long[] s = Arrays.copyOf(latency, n_latency);
+		Arrays.sort(s);
+		return s;
+	}
+
+	/** Record a periodic poll skipped for backoff */
+	public synchronized void skip() {
+		n_skipped++;
+	}
+
+	/** Get a summary of the poll cycle, and start a new cycle */
+	public synchronized String nextCycle() {
+		String s = toString();
+		n_ops = 0;
+		n_failed = 0;
+		n_late = 0;
+		max_late = 0;
+		n_polls = 0;
+		rtt_total = 0;
+		n_skipped = 0;
+		n_latency = 0;
+		return s;
+	}
+
+	/** Get a string representation */
+	@Override
+	public synchronized String toString() {
+		long rtt = (n_polls > 0) ? rtt_total / n_polls : 0;
+		long[] lat = getLatencies();
+		return "ops: " + n_ops + ", failed: " + n_failed +
+			", overrun: " + n_late + " (max " + max_late +
+			" ms), rtt: " + rtt + " ms, latency p50: " +
+			percentile(lat, 50) + " ms, p95: " +
+			percentile(lat, 95) + " ms, skipped: " + n_skipped;
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2002-2010  Minnesota Department of Transportation
+ * Copyright (C) 2002-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -28,4 +28,10 @@ public enum PriorityLevel {
 	DATA_5_MIN,	/* 4 */
 	DEVICE_DATA,	/* 5 */
 	DIAGNOSTIC;	/* 6 */
+
+	/** Check if the priority is critical (commands to devices).  Critical
+	 * operations are never deferred for controller health. */
+	public boolean isCritical() {
+		return ordinal() <= COMMAND.ordinal();
+	}
 }
@@ -0,0 +1,62 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.util.HashSet;
+
+/**
+ * Query hints are learned from errors while querying one controller, so
+ * that later operations can avoid them: the largest number of objects it
+ * accepts in one request, and groups of objects which must be queried
+ * alone.  Hints are kept with the controller, and cleared whenever its comm
+ * link, drop address, comm config or firmware version changes.
+ *
+ * @author Douglas Lau
+ */
+public final class QueryHints {
+
+	/** Learned object limit, or 0 if unknown */
+	private int limit = 0;
+
+	/** Keys of groups which must be queried alone */
+	private final HashSet<String> solo = new HashSet<String>();
+
+	/** Get the object limit.
+	 * @param d Default limit, if none has been learned. */
+	public synchronized int getLimit(int d) {
+		return (limit > 0) ? limit : d;
+	}
+
+	/** Set the learned object limit */
+	public synchronized void setLimit(int lim) {
+		limit = lim;
+	}
+
+	/** Check if a group must be queried alone */
+	public synchronized boolean isSolo(String key) {
+		return solo.contains(key);
+	}
+
+	/** Remember that a group must be queried alone */
+	public synchronized void addSolo(String key) {
+		solo.add(key);
+	}
+
+	/** Clear all hints */
+	public synchronized void clear() {
+		limit = 0;
+		solo.clear();
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A response framer splits the responses received on a multi-drop link into
+ * complete frames, each tagged with the drop address of the controller which
+ * sent it.  Protocols which can frame responses this way can be polled in
+ * pipelined mode (@see PipelinedMessenger).
+ *
+ * @author Douglas Lau
+ */
+abstract public class ResponseFramer {
+
+	/** Read bytes until a buffer is full.
+	 * @param is Input stream to read.
+	 * @param buf Buffer to store data.
+	 * @param off Offset to start reading.
+	 * @throws EOFException at end of input stream. */
+	static protected void readFully(InputStream is, byte[] buf, int off)
+		throws IOException
+	{
+		while (off < buf.length) {
+			int b = is.read(buf, off, buf.length - off);
+			if (b < 0)
+				throw new EOFException("END OF STREAM");
+			off += b;
+		}
+	}
+
+	/** Read one complete response frame.
+	 * @param is Input stream to read.
+	 * @return Frame read from stream.
+	 * @throws IOException on parse errors or end of stream. */
+	abstract public byte[] readFrame(InputStream is) throws IOException;
+
+	/** Get the drop address of a response frame.
+	 * @param frame Frame read from stream.
+	 * @return Drop address of controller which sent the frame. */
+	abstract public int getDrop(byte[] frame);
+}
@@ -51,6 +51,9 @@ public class ThreadedPoller<T extends ControllerProperty>
 	/** Protocol logger */
 	protected final DebugLog logger;
 
+	/** Poll metrics */
+	private final PollMetrics metrics = new PollMetrics();
+
 	/** Write a message to the protocol log */
 	public void log(String msg) {
 		if (logger.isOpen())
@@ -63,6 +66,9 @@ public class ThreadedPoller<T extends ControllerProperty>
 	/** No response disconnect seconds */
 	private final int no_resp_disconnect_sec;
 
+	/** Pipeline depth */
+	private final int pipeline_depth;
+
 	/** Create a threaded device poller */
 	protected ThreadedPoller(CommLink link, URI s, DebugLog l) {
 		CommConfig cc = link.getCommConfig();
@@ -73,6 +79,7 @@ public class ThreadedPoller<T extends ControllerProperty>
 		timeout_ms = cc.getTimeoutMs();
 		idle_disconnect_sec = cc.getIdleDisconnectSec();
 		no_resp_disconnect_sec = cc.getNoResponseDisconnectSec();
+		pipeline_depth = cc.getPipelineDepth();
 		log("CREATED");
 	}
 
@@ -138,6 +145,20 @@ public class ThreadedPoller<T extends ControllerProperty>
 		// Subclasses should override this if necessary
 	}
 
+	/** Get a response framer for pipelined polling.  Subclasses should
+	 * override this if the protocol tags responses by drop address.
+	 * @return Response framer, or null if not supported. */
+	protected ResponseFramer getFramer() {
+		return null;
+	}
+
+	/** Get the maximum number of operations in progress at once.  This is
+	 * 1 unless the protocol has a response framer and pipelining is
+	 * enabled for the comm config. */
+	public int getPipelineDepth() {
+		return (getFramer() != null) ? Math.max(1, pipeline_depth) : 1;
+	}
+
 	/** Comm thread (may be null) */
 	private CommThread c_thread;
 
@@ -191,6 +212,12 @@ public class ThreadedPoller<T extends ControllerProperty>
 		if (logger.isOpen())
 			log("TESTING not implemented: " + c);
 	}
+
+	/** Get the poll metrics for the current poll cycle */
+	@Override
+	public PollMetrics getMetrics() {
+		return metrics;
+	}
 	
 	/** Check if the poller's queue has any more ops to
 	 *  process.  (Ignores the queue's current work op.) */
@@ -19,6 +19,7 @@ import java.io.IOException;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.tms.CommLink;
 import us.mn.state.dot.tms.server.ControllerImpl;
+import us.mn.state.dot.tms.server.comm.ResponseFramer;
 import us.mn.state.dot.tms.server.comm.SamplePoller;
 import us.mn.state.dot.tms.server.comm.ThreadedPoller;
 import static us.mn.state.dot.tms.utils.URIUtil.TCP;
@@ -40,6 +41,12 @@ public class G4Poller extends ThreadedPoller<G4Property>
 		super(link, TCP, G4_LOG);
 	}
 
+	/** Get a response framer for pipelined polling */
+	@Override
+	protected ResponseFramer getFramer() {
+		return G4Property.FRAMER;
+	}
+
 	/** Perform a controller reset */
 	@Override
 	public void resetController(ControllerImpl c) {
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012-2016  Minnesota Department of Transportation
+ * Copyright (C) 2012-2020  Minnesota Department of Transportation
  * Copyright (C) 2012  Iteris Inc.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -24,6 +24,7 @@ import us.mn.state.dot.tms.server.comm.ControllerException;
 import us.mn.state.dot.tms.server.comm.ControllerProperty;
 import us.mn.state.dot.tms.server.comm.InvalidAddressException;
 import us.mn.state.dot.tms.server.comm.ParsingException;
+import us.mn.state.dot.tms.server.comm.ResponseFramer;
 
 /**
  * A property which can be sent or received from a controller.
@@ -59,6 +60,24 @@ abstract public class G4Property extends ControllerProperty {
 		return drop >= 0 && drop < 65536;
 	}
 
+	/** Response framer for pipelined polling */
+	static public final ResponseFramer FRAMER = new ResponseFramer() {
+		public byte[] readFrame(InputStream is) throws IOException {
+			byte[] header = new byte[OFF_SENSOR_ID];
+			readFully(is, header, 0);
+			if (parse16(header, OFF_SENTINEL) != SENTINEL)
+				throw new ParsingException("INVALID SENTINEL");
+			int length = parse8(header, OFF_LENGTH);
+			byte[] frame = new byte[OFF_SENSOR_ID + 2 + length];
+			System.arraycopy(header, 0, frame, 0, OFF_SENSOR_ID);
+			readFully(is, frame, OFF_SENSOR_ID);
+			return frame;
+		}
+		public int getDrop(byte[] frame) {
+			return parse16(frame, OFF_SENSOR_ID);
+		}
+	};
+
 	/** Format a request frame */
 	static protected final byte[] formatRequest(QualCode qual, int drop,
 		byte[] data) throws IOException
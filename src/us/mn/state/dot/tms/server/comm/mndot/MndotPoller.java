@@ -33,6 +33,7 @@ import us.mn.state.dot.tms.server.comm.LaneMarkingPoller;
 import us.mn.state.dot.tms.server.comm.LCSPoller;
 import us.mn.state.dot.tms.server.comm.MeterPoller;
 import us.mn.state.dot.tms.server.comm.PriorityLevel;
+import us.mn.state.dot.tms.server.comm.ResponseFramer;
 import us.mn.state.dot.tms.server.comm.SamplePoller;
 import us.mn.state.dot.tms.server.comm.ThreadedPoller;
 import static us.mn.state.dot.tms.utils.URIUtil.TCP;
@@ -60,6 +61,12 @@ public class MndotPoller extends ThreadedPoller<MndotProperty>
 		protocol = cp;
 	}
 
+	/** Get a response framer for pipelined polling */
+	@Override
+	protected ResponseFramer getFramer() {
+		return MndotProperty.createFramer(protocol);
+	}
+
 	/** Perform a controller reset */
 	@Override
 	public void resetController(ControllerImpl c) {
@@ -26,6 +26,7 @@ import us.mn.state.dot.tms.server.comm.ControllerProperty;
 import us.mn.state.dot.tms.server.comm.DownloadRequestException;
 import us.mn.state.dot.tms.server.comm.InvalidAddressException;
 import us.mn.state.dot.tms.server.comm.ParsingException;
+import us.mn.state.dot.tms.server.comm.ResponseFramer;
 
 /**
  * Mndot Property.
@@ -132,6 +133,32 @@ abstract public class MndotProperty extends ControllerProperty {
 			return header;
 	}
 
+	/** Create a response framer for pipelined polling.
+	 * @param cp Communication protocol.
+	 * @return Framer which tags responses by drop address. */
+	static public ResponseFramer createFramer(final CommProtocol cp) {
+		return new ResponseFramer() {
+			public byte[] readFrame(InputStream is)
+				throws IOException
+			{
+				byte[] header = new byte[3];
+				readFully(is, header, 0);
+				int len = header[OFF_LENGTH];
+				if (len < 0 || len > MAX_DATA_BYTES) {
+					throw new ParsingException(
+						"INVALID LENGTH: " + len);
+				}
+				byte[] pkt = new byte[3 + len];
+				System.arraycopy(header, 0, pkt, 0, 3);
+				readFully(is, pkt, 3);
+				return pkt;
+			}
+			public int getDrop(byte[] pkt) {
+				return parseDrop(pkt, cp);
+			}
+		};
+	}
+
 	/** Parse the drop address from a response packet.
 	 * @param pkt Response packet.
 	 * @param cp Communication protocol.
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2013-2016  Minnesota Department of Transportation
+ * Copyright (C) 2013-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -26,6 +26,7 @@ import us.mn.state.dot.tms.LaneUseMultiHelper;
 import us.mn.state.dot.tms.QuickMessage;
 import us.mn.state.dot.tms.SignMessage;
 import us.mn.state.dot.tms.server.DeviceImpl;
+import us.mn.state.dot.tms.server.comm.CommMessage;
 import us.mn.state.dot.tms.server.comm.OpDevice;
 import us.mn.state.dot.tms.server.comm.PriorityLevel;
 import us.mn.state.dot.tms.server.comm.ntcip.mib1203.GraphicInfoList;
@@ -176,6 +177,37 @@ abstract public class OpNtcip extends OpDevice {
 		super(p, d);
 	}
 
+	/** Create a query planner for the controller */
+	protected QueryPlanner createPlanner() {
+		return new QueryPlanner(controller.getQueryHints());
+	}
+
+	/** Phase to query all groups of a query plan */
+	protected class QueryPlan extends Phase {
+
+		/** Query planner */
+		private final QueryPlanner plan;
+
+		/** Phase to follow the plan */
+		private final Phase next;
+
+		/** Create a new query plan phase */
+		protected QueryPlan(QueryPlanner p, Phase n) {
+			plan = p;
+			next = n;
+		}
+
+		/** Query the next request of the plan */
+		@SuppressWarnings("unchecked")
+		protected Phase poll(CommMessage mess) throws IOException {
+			plan.poll(mess);
+			if (!plan.isDone())
+				return this;
+			log(plan.toString());
+			return next;
+		}
+	}
+
 	/** Set the error status message.  If non-null, the controller "error"
 	 * attribute is set to this message when the operation completes. */
 	@Override
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2019  Minnesota Department of Transportation
+ * Copyright (C) 2000-2020  Minnesota Department of Transportation
  * Copyright (C) 2016-2017  SRF Consulting Group
  * Copyright (C) 2017  	    Iteris Inc.
  *
@@ -158,156 +158,112 @@ public class OpQueryDMSConfiguration extends OpDMS {
 			mess.add(modules);
 			mess.queryProps();
 			logQuery(modules);
-			return new QueryModules(modules.getInteger());
+			QueryPlanner plan = createPlanner();
+			for (int mod = 1; mod <= modules.getInteger(); mod++)
+				planModule(plan, mod);
+			planDmsInfo(plan);
+			planVmsInfo(plan);
+			planSupportsBeacon(plan);
+			planSupportsPixelService(plan);
+			return new QueryPlan(plan, new QueryV2());
 		}
 	}
 
-	/** Phase to query the module information */
-	protected class QueryModules extends Phase {
-
-		/** Count of rows in the module table */
-		private final int count;
-
-		/** Module number to query */
-		private int mod = 1;
-
-		/** Create a queryModules phase */
-		protected QueryModules(int c) {
-			count = c;
-		}
-
-		/** Query the module make, model and version */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			ASN1String make = moduleMake.makeStr(mod);
-			ASN1String model = moduleModel.makeStr(mod);
-			ASN1String version = moduleVersion.makeStr(mod);
-			ASN1Enum<ModuleType> m_type = new ASN1Enum<ModuleType>(
-				ModuleType.class, moduleType.node, mod);
-			mess.add(make);
-			mess.add(model);
-			mess.add(version);
-			mess.add(m_type);
-			mess.queryProps();
-			logQuery(make);
-			logQuery(model);
-			logQuery(version);
-			logQuery(m_type);
-			if (m_type.getEnum() == ModuleType.hardware) {
-				hardware_make = make.getValue();
-				hardware_model = model.getValue();
+	/** Plan to query the make, model and version of one module */
+	private void planModule(QueryPlanner plan, int mod) {
+		final ASN1String make = moduleMake.makeStr(mod);
+		final ASN1String model = moduleModel.makeStr(mod);
+		final ASN1String version = moduleVersion.makeStr(mod);
+		final ASN1Enum<ModuleType> m_type = new ASN1Enum<ModuleType>(
+			ModuleType.class, moduleType.node, mod);
+		plan.add(new QueryPlanner.Group(make, model, version, m_type) {
+			protected void done() {
+				logQuery(make);
+				logQuery(model);
+				logQuery(version);
+				logQuery(m_type);
+				if (m_type.getEnum() == ModuleType.hardware) {
+					hardware_make = make.getValue();
+					hardware_model = model.getValue();
+				}
+				if (m_type.getEnum() == ModuleType.software) {
+					software_make = make.getValue();
+					software_model = model.getValue();
+					dms.setVersionNotify(
+						version.getValue());
+				}
 			}
-			if (m_type.getEnum() == ModuleType.software) {
-				software_make = make.getValue();
-				software_model = model.getValue();
-				dms.setVersionNotify(version.getValue());
-			}
-			mod += 1;
-			if (mod <= count)
-				return this;
-			else
-				return new QueryDmsInfo();
-		}
+		});
 	}
 
-	/** Phase to query the DMS information */
-	protected class QueryDmsInfo extends Phase {
-
-		/** Query the DMS information */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			mess.add(access);
-			mess.add(type);
-			mess.add(face_height);
-			mess.add(face_width);
-			mess.add(h_border);
-			mess.add(v_border);
-			mess.add(legend);
-			mess.add(beaconType);
-			mess.add(tech);
-			mess.queryProps();
-			logQuery(access);
-			logQuery(type);
-			logQuery(face_height);
-			logQuery(face_width);
-			logQuery(h_border);
-			logQuery(v_border);
-			logQuery(legend);
-			logQuery(beaconType);
-			logQuery(tech);
-			return new QueryVmsInfo();
-		}
+	/** Plan to query the DMS information */
+	private void planDmsInfo(QueryPlanner plan) {
+		plan.add(new QueryPlanner.Group(access, type, face_height,
+			face_width, h_border, v_border, legend, beaconType,
+			tech)
+		{
+			protected void done() {
+				logQuery(access);
+				logQuery(type);
+				logQuery(face_height);
+				logQuery(face_width);
+				logQuery(h_border);
+				logQuery(v_border);
+				logQuery(legend);
+				logQuery(beaconType);
+				logQuery(tech);
+			}
+		});
 	}
 
-	/** Phase to query the VMS information */
-	protected class QueryVmsInfo extends Phase {
-
-		/** Query the VMS information */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			mess.add(s_height);
-			mess.add(s_width);
-			mess.add(h_pitch);
-			mess.add(v_pitch);
-			mess.add(c_height);
-			mess.add(c_width);
-			mess.queryProps();
-			logQuery(s_height);
-			logQuery(s_width);
-			logQuery(h_pitch);
-			logQuery(v_pitch);
-			logQuery(c_height);
-			logQuery(c_width);
-			return new QuerySupportsBeacon();
-		}
+	/** Plan to query the VMS information */
+	private void planVmsInfo(QueryPlanner plan) {
+		plan.add(new QueryPlanner.Group(s_height, s_width, h_pitch,
+			v_pitch, c_height, c_width)
+		{
+			protected void done() {
+				logQuery(s_height);
+				logQuery(s_width);
+				logQuery(h_pitch);
+				logQuery(v_pitch);
+				logQuery(c_height);
+				logQuery(c_width);
+			}
+		});
 	}
 
-	/** Phase to check for beacon support */
-	private class QuerySupportsBeacon extends Phase {
-
-		/** Query dmsMessageBeacon object */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-
-			// Verify beacon support by reading
-			// dmsMessageBeacon from the
-			// changeable.1 message slot.
-			ASN1Integer beacon = dmsMessageBeacon.makeInt(
-					DmsMessageMemoryType.changeable, 1);
-			mess.add(beacon);
-			try {
-				mess.queryProps();
+	/** Plan to check for beacon support */
+	private void planSupportsBeacon(QueryPlanner plan) {
+		// Verify beacon support by reading
+		// dmsMessageBeacon from the
+		// changeable.1 message slot.
+		ASN1Integer beacon = dmsMessageBeacon.makeInt(
+			DmsMessageMemoryType.changeable, 1);
+		plan.add(new QueryPlanner.Group(beacon) {
+			protected void done() {
 				dms.setSupportsBeaconObject(true);
 			}
-			catch (NoSuchName e) {
+			protected void noSuchName(NoSuchName e) {
 				dms.setSupportsBeaconObject(false);
 			}
-			return new QuerySupportsPixelService();
-		}
+		});
 	}
 
-	/** Phase to check for pixelService support */
-	private class QuerySupportsPixelService extends Phase {
-
-		/** Query dmsMessagePixelService object */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-
-			// Verify pixelService support by reading
-			// dmsMessagePixelService from the
-			// changeable.1 message slot.
-			ASN1Integer srv = dmsMessagePixelService.makeInt(
-				DmsMessageMemoryType.changeable, 1);
-			mess.add(srv);
-			try {
-				mess.queryProps();
+	/** Plan to check for pixelService support */
+	private void planSupportsPixelService(QueryPlanner plan) {
+		// Verify pixelService support by reading
+		// dmsMessagePixelService from the
+		// changeable.1 message slot.
+		ASN1Integer srv = dmsMessagePixelService.makeInt(
+			DmsMessageMemoryType.changeable, 1);
+		plan.add(new QueryPlanner.Group(srv) {
+			protected void done() {
 				dms.setSupportsPixelServiceObject(true);
 			}
-			catch (NoSuchName e) {
+			protected void noSuchName(NoSuchName e) {
 				dms.setSupportsPixelServiceObject(false);
 			}
-			return new QueryV2();
-		}
+		});
 	}
 
 	/** Phase to query the 1203v2 objects */
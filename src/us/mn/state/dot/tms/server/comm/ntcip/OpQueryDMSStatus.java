@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2019  Minnesota Department of Transportation
+ * Copyright (C) 2000-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -89,106 +89,91 @@ public class OpQueryDMSStatus extends OpDMS {
 	/** Create the second phase of the operation */
 	@Override
 	protected Phase phaseTwo() {
-		return new QueryBrightness();
+		QueryPlanner plan = createPlanner();
+		planBrightness(plan);
+		planMessageTable(plan);
+		planControllerTemperature(plan);
+		planAmbientTemperature(plan);
+		planHousingTemperature(plan);
+		plan.add(new QueryPlanner.Group(shortError) {
+			protected void done() {
+				logQuery(shortError);
+			}
+		});
+		return new QueryPlan(plan, new MoreFailures());
 	}
 
-	/** Phase to query the brightness status */
-	protected class QueryBrightness extends Phase {
-
-		/** Query the DMS brightness status */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			ASN1Integer b_level =
-				dmsIllumBrightLevelStatus.makeInt();
-			ASN1Integer light =
-				dmsIllumLightOutputStatus.makeInt();
-			ASN1Enum<DmsIllumControl> control = new ASN1Enum<
-				DmsIllumControl>(DmsIllumControl.class,
-				dmsIllumControl.node);
-			mess.add(p_level);
-			mess.add(b_level);
-			mess.add(light);
-			mess.add(control);
-			mess.queryProps();
-			logQuery(p_level);
-			logQuery(b_level);
-			logQuery(light);
-			logQuery(control);
-			dms.setLightOutput(getPercent(light));
-			return new QueryMessageTable();
-		}
+	/** Plan to query the DMS brightness status */
+	private void planBrightness(QueryPlanner plan) {
+		final ASN1Integer b_level = dmsIllumBrightLevelStatus.makeInt();
+		final ASN1Integer light = dmsIllumLightOutputStatus.makeInt();
+		final ASN1Enum<DmsIllumControl> control = new ASN1Enum<
+			DmsIllumControl>(DmsIllumControl.class,
+			dmsIllumControl.node);
+		plan.add(new QueryPlanner.Group(p_level, b_level, light,
+			control)
+		{
+			protected void done() {
+				logQuery(p_level);
+				logQuery(b_level);
+				logQuery(light);
+				logQuery(control);
+				dms.setLightOutput(getPercent(light));
+			}
+		});
 	}
 
-	/** Phase to query the DMS message table status */
-	protected class QueryMessageTable extends Phase {
-
-		/** Query the DMS message table status */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			ASN1Integer perm_num = dmsNumPermanentMsg.makeInt();
-			ASN1Integer chg_num = dmsNumChangeableMsg.makeInt();
-			ASN1Integer chg_max = dmsMaxChangeableMsg.makeInt();
-			ASN1Integer chg_mem = dmsFreeChangeableMemory.makeInt();
-			ASN1Integer vol_num = dmsNumVolatileMsg.makeInt();
-			ASN1Integer vol_max = dmsMaxVolatileMsg.makeInt();
-			ASN1Integer vol_mem = dmsFreeVolatileMemory.makeInt();
-			mess.add(perm_num);
-			mess.add(chg_num);
-			mess.add(chg_max);
-			mess.add(chg_mem);
-			mess.add(vol_num);
-			mess.add(vol_max);
-			mess.add(vol_mem);
-			mess.queryProps();
-			logQuery(perm_num);
-			logQuery(chg_num);
-			logQuery(chg_max);
-			logQuery(chg_mem);
-			logQuery(vol_num);
-			logQuery(vol_max);
-			logQuery(vol_mem);
-			return new ControllerTemperature();
-		}
+	/** Plan to query the DMS message table status */
+	private void planMessageTable(QueryPlanner plan) {
+		final ASN1Integer perm_num = dmsNumPermanentMsg.makeInt();
+		final ASN1Integer chg_num = dmsNumChangeableMsg.makeInt();
+		final ASN1Integer chg_max = dmsMaxChangeableMsg.makeInt();
+		final ASN1Integer chg_mem = dmsFreeChangeableMemory.makeInt();
+		final ASN1Integer vol_num = dmsNumVolatileMsg.makeInt();
+		final ASN1Integer vol_max = dmsMaxVolatileMsg.makeInt();
+		final ASN1Integer vol_mem = dmsFreeVolatileMemory.makeInt();
+		plan.add(new QueryPlanner.Group(perm_num, chg_num, chg_max,
+			chg_mem, vol_num, vol_max, vol_mem)
+		{
+			protected void done() {
+				logQuery(perm_num);
+				logQuery(chg_num);
+				logQuery(chg_max);
+				logQuery(chg_mem);
+				logQuery(vol_num);
+				logQuery(vol_max);
+				logQuery(vol_mem);
+			}
+		});
 	}
 
-	/** Phase to query the DMS controller temperature status */
-	protected class ControllerTemperature extends Phase {
-
-		/** Query the DMS controller temperature */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			ASN1Integer min_cab = tempMinCtrlCabinet.makeInt();
-			ASN1Integer max_cab = tempMaxCtrlCabinet.makeInt();
-			mess.add(min_cab);
-			mess.add(max_cab);
-			mess.queryProps();
-			logQuery(min_cab);
-			logQuery(max_cab);
-			int mn = min_cab.getInteger();
-			int mx = max_cab.getInteger();
-			if (mn <= mx) {
-				dms.setMinCabinetTemp(mn);
-				dms.setMaxCabinetTemp(mx);
-			} else {
-				dms.setMinCabinetTemp(null);
-				dms.setMaxCabinetTemp(null);
+	/** Plan to query the DMS controller temperature */
+	private void planControllerTemperature(QueryPlanner plan) {
+		final ASN1Integer min_cab = tempMinCtrlCabinet.makeInt();
+		final ASN1Integer max_cab = tempMaxCtrlCabinet.makeInt();
+		plan.add(new QueryPlanner.Group(min_cab, max_cab) {
+			protected void done() {
+				logQuery(min_cab);
+				logQuery(max_cab);
+				int mn = min_cab.getInteger();
+				int mx = max_cab.getInteger();
+				if (mn <= mx) {
+					dms.setMinCabinetTemp(mn);
+					dms.setMaxCabinetTemp(mx);
+				} else {
+					dms.setMinCabinetTemp(null);
+					dms.setMaxCabinetTemp(null);
+				}
 			}
-			return new AmbientTemperature();
-		}
+		});
 	}
 
-	/** Phase to query the DMS ambient temperature status */
-	protected class AmbientTemperature extends Phase {
-
-		/** Query the DMS ambient temperature */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			ASN1Integer min_amb = tempMinAmbient.makeInt();
-			ASN1Integer max_amb = tempMaxAmbient.makeInt();
-			mess.add(min_amb);
-			mess.add(max_amb);
-			try {
-				mess.queryProps();
+	/** Plan to query the DMS ambient temperature */
+	private void planAmbientTemperature(QueryPlanner plan) {
+		final ASN1Integer min_amb = tempMinAmbient.makeInt();
+		final ASN1Integer max_amb = tempMaxAmbient.makeInt();
+		plan.add(new QueryPlanner.Group(min_amb, max_amb) {
+			protected void done() {
 				logQuery(min_amb);
 				logQuery(max_amb);
 				int mn = min_amb.getInteger();
@@ -201,52 +186,33 @@ public class OpQueryDMSStatus extends OpDMS {
 					dms.setMaxAmbientTemp(null);
 				}
 			}
-			catch (NoSuchName e) {
+			protected void noSuchName(NoSuchName e) {
 				// Ledstar has no ambient temp objects
 				dms.setMinAmbientTemp(null);
 				dms.setMaxAmbientTemp(null);
 			}
-			return new HousingTemperature();
-		}
+		});
 	}
 
-	/** Phase to query the DMS housing temperature status */
-	protected class HousingTemperature extends Phase {
-
-		/** Query the DMS housing temperature */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			ASN1Integer min_hou = tempMinSignHousing.makeInt();
-			ASN1Integer max_hou = tempMaxSignHousing.makeInt();
-			mess.add(min_hou);
-			mess.add(max_hou);
-			mess.queryProps();
-			logQuery(min_hou);
-			logQuery(max_hou);
-			int mn = min_hou.getInteger();
-			int mx = max_hou.getInteger();
-			if (mn <= mx) {
-				dms.setMinHousingTemp(mn);
-				dms.setMaxHousingTemp(mx);
-			} else {
-				dms.setMinHousingTemp(null);
-				dms.setMaxHousingTemp(null);
+	/** Plan to query the DMS housing temperature */
+	private void planHousingTemperature(QueryPlanner plan) {
+		final ASN1Integer min_hou = tempMinSignHousing.makeInt();
+		final ASN1Integer max_hou = tempMaxSignHousing.makeInt();
+		plan.add(new QueryPlanner.Group(min_hou, max_hou) {
+			protected void done() {
+				logQuery(min_hou);
+				logQuery(max_hou);
+				int mn = min_hou.getInteger();
+				int mx = max_hou.getInteger();
+				if (mn <= mx) {
+					dms.setMinHousingTemp(mn);
+					dms.setMaxHousingTemp(mx);
+				} else {
+					dms.setMinHousingTemp(null);
+					dms.setMaxHousingTemp(null);
+				}
 			}
-			return new Failures();
-		}
-	}
-
-	/** Phase to query the DMS failure status */
-	protected class Failures extends Phase {
-
-		/** Query the DMS failure status */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			mess.add(shortError);
-			mess.queryProps();
-			logQuery(shortError);
-			return new MoreFailures();
-		}
+		});
 	}
 
 	/** Phase to query more DMS failure status */
@@ -1,7 +1,7 @@
 /*
  * IRIS -- Intelligent Roadway Information System
  * Copyright (C) 2017 Iteris Inc.
- * Copyright (C) 2019  Minnesota Department of Transportation
+ * Copyright (C) 2019-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -15,7 +15,6 @@
  */
 package us.mn.state.dot.tms.server.comm.ntcip;
 
-import java.io.IOException;
 import us.mn.state.dot.tms.server.WeatherSensorImpl;
 import us.mn.state.dot.tms.server.comm.CommMessage;
 import us.mn.state.dot.tms.server.comm.PriorityLevel;
@@ -23,6 +22,7 @@ import us.mn.state.dot.tms.server.comm.ntcip.mib1204.EssRec;
 import us.mn.state.dot.tms.server.comm.ntcip.mib1204.PavementSensorsTable;
 import us.mn.state.dot.tms.server.comm.ntcip.mib1204.SubSurfaceSensorsTable;
 import us.mn.state.dot.tms.server.comm.ntcip.mib1204.TemperatureSensorsTable;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Object;
 
 /**
  * Operation to query the status of a weather sensor.
@@ -55,186 +55,118 @@ public class OpQueryEssStatus extends OpEss {
 	/** Create the second phase of the operation */
 	@Override
 	protected Phase phaseTwo() {
-		return new QueryAtmospheric();
+		QueryPlanner plan = createPlanner();
+		planAtmospheric(plan);
+		planWind(plan);
+		planTemperatureSensors(plan);
+		planPrecipitation(plan);
+		planSensorCounts(plan);
+		return new QueryPlan(plan, new QueryTables());
 	}
 
-	/** Phase to query atmospheric values */
-	protected class QueryAtmospheric extends Phase {
-
-		/** Query */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			mess.add(ess_rec.atmospheric_values.atmospheric_pressure);
-			mess.add(ess_rec.atmospheric_values.visibility);
-			mess.add(ess_rec.atmospheric_values.visibility_situation);
-			mess.queryProps();
-			logQuery(ess_rec.atmospheric_values.atmospheric_pressure);
-			logQuery(ess_rec.atmospheric_values.visibility);
-			logQuery(ess_rec.atmospheric_values.visibility_situation);
-			return new QueryWind();
-		}
+	/** Add a query group which logs all objects */
+	private void planGroup(QueryPlanner plan, final ASN1Object... objs) {
+		plan.add(new QueryPlanner.Group(objs) {
+			protected void done() {
+				for (ASN1Object o: objs)
+					logQuery(o);
+			}
+		});
 	}
 
-	/** Phase to query wind values */
-	protected class QueryWind extends Phase {
-
-		/** Query */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			mess.add(ess_rec.wind_values.avg_wind_dir);
-			mess.add(ess_rec.wind_values.avg_wind_speed);
-			mess.add(ess_rec.wind_values.spot_wind_dir);
-			mess.add(ess_rec.wind_values.spot_wind_speed);
-			mess.add(ess_rec.wind_values.gust_wind_dir);
-			mess.add(ess_rec.wind_values.gust_wind_speed);
-			mess.queryProps();
-			logQuery(ess_rec.wind_values.avg_wind_dir);
-			logQuery(ess_rec.wind_values.avg_wind_speed);
-			logQuery(ess_rec.wind_values.spot_wind_dir);
-			logQuery(ess_rec.wind_values.spot_wind_speed);
-			logQuery(ess_rec.wind_values.gust_wind_dir);
-			logQuery(ess_rec.wind_values.gust_wind_speed);
-			return new QueryTemperatureSensors();
-		}
+	/** Plan to query atmospheric values */
+	private void planAtmospheric(QueryPlanner plan) {
+		planGroup(plan,
+			ess_rec.atmospheric_values.atmospheric_pressure,
+			ess_rec.atmospheric_values.visibility,
+			ess_rec.atmospheric_values.visibility_situation);
 	}
 
-	/** Phase to query the temperature sensors and other data */
-	protected class QueryTemperatureSensors extends Phase {
-
-		/** Query */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			mess.add(ts_table.num_temp_sensors);
-			mess.add(ts_table.wet_bulb_temp.node);
-			mess.add(ts_table.dew_point_temp.node);
-			mess.add(ts_table.max_air_temp.node);
-			mess.add(ts_table.min_air_temp.node);
-			mess.queryProps();
-			logQuery(ts_table.num_temp_sensors);
-			logQuery(ts_table.wet_bulb_temp.node);
-			logQuery(ts_table.dew_point_temp.node);
-			logQuery(ts_table.max_air_temp.node);
-			logQuery(ts_table.min_air_temp.node);
-			return new QueryTemperatureTable();
-		}
+	/** Plan to query wind values */
+	private void planWind(QueryPlanner plan) {
+		planGroup(plan,
+			ess_rec.wind_values.avg_wind_dir,
+			ess_rec.wind_values.avg_wind_speed,
+			ess_rec.wind_values.spot_wind_dir,
+			ess_rec.wind_values.spot_wind_speed,
+			ess_rec.wind_values.gust_wind_dir,
+			ess_rec.wind_values.gust_wind_speed);
 	}
 
-	/** Phase to query all rows in temperature table */
-	protected class QueryTemperatureTable extends Phase {
-
-		/** Query */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			if (ts_table.isDone())
-				return new QueryPrecipitation();
-			TemperatureSensorsTable.Row tr = ts_table.addRow();
-			mess.add(tr.air_temp.node);
-			mess.queryProps();
-			logQuery(tr.air_temp.node);
-			return this;
-		}
+	/** Plan to query the temperature sensors and other data */
+	private void planTemperatureSensors(QueryPlanner plan) {
+		planGroup(plan,
+			ts_table.num_temp_sensors,
+			ts_table.wet_bulb_temp.node,
+			ts_table.dew_point_temp.node,
+			ts_table.max_air_temp.node,
+			ts_table.min_air_temp.node);
 	}
 
-	/** Phase to query precipitation values */
-	protected class QueryPrecipitation extends Phase {
-
-		/** Query */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			mess.add(ess_rec.precip_values.relative_humidity);
-			mess.add(ess_rec.precip_values.precip_rate);
-			mess.add(ess_rec.precip_values.precip_1_hour);
-			mess.add(ess_rec.precip_values.precip_3_hours);
-			mess.add(ess_rec.precip_values.precip_6_hours);
-			mess.add(ess_rec.precip_values.precip_12_hours);
-			mess.add(ess_rec.precip_values.precip_24_hours);
-			mess.add(ess_rec.precip_values.precip_situation);
-			mess.queryProps();
-			logQuery(ess_rec.precip_values.relative_humidity);
-			logQuery(ess_rec.precip_values.precip_rate);
-			logQuery(ess_rec.precip_values.precip_1_hour);
-			logQuery(ess_rec.precip_values.precip_3_hours);
-			logQuery(ess_rec.precip_values.precip_6_hours);
-			logQuery(ess_rec.precip_values.precip_12_hours);
-			logQuery(ess_rec.precip_values.precip_24_hours);
-			logQuery(ess_rec.precip_values.precip_situation);
-			return new QueryPavement();
-		}
+	/** Plan to query precipitation values */
+	private void planPrecipitation(QueryPlanner plan) {
+		planGroup(plan,
+			ess_rec.precip_values.relative_humidity,
+			ess_rec.precip_values.precip_rate,
+			ess_rec.precip_values.precip_1_hour,
+			ess_rec.precip_values.precip_3_hours,
+			ess_rec.precip_values.precip_6_hours,
+			ess_rec.precip_values.precip_12_hours,
+			ess_rec.precip_values.precip_24_hours,
+			ess_rec.precip_values.precip_situation);
 	}
 
-	/** Phase to query pavement values */
-	protected class QueryPavement extends Phase {
+	/** Plan to query pavement and sub-surface sensor counts */
+	private void planSensorCounts(QueryPlanner plan) {
+		planGroup(plan, ps_table.num_sensors);
+		planGroup(plan, ss_table.num_sensors);
+	}
 
-		/** Query */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			mess.add(ps_table.num_sensors);
-			mess.queryProps();
-			logQuery(ps_table.num_sensors);
-			return new QueryPavementTable();
+	/** Plan to query all rows in temperature table */
+	private void planTemperatureTable(QueryPlanner plan) {
+		while (!ts_table.isDone()) {
+			TemperatureSensorsTable.Row tr = ts_table.addRow();
+			planGroup(plan, tr.air_temp.node);
 		}
 	}
 
-	/** Phase to query all rows in pavement table */
-	protected class QueryPavementTable extends Phase {
-
-		/** Query */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			if (ps_table.isDone())
-				return new QuerySubSurface();
+	/** Plan to query all rows in pavement table */
+	private void planPavementTable(QueryPlanner plan) {
+		while (!ps_table.isDone()) {
 			PavementSensorsTable.Row pr = ps_table.addRow();
-			mess.add(pr.surface_status);
-			mess.add(pr.surface_temp.node);
-			mess.add(pr.pavement_temp.node);
-			mess.add(pr.surface_freeze_point.node);
-			mess.add(pr.sensor_error);
-			mess.add(pr.surface_water_depth);
-			mess.add(pr.salinity);
-			mess.add(pr.black_ice_signal);
-			mess.queryProps();
-			logQuery(pr.surface_status);
-			logQuery(pr.surface_temp.node);
-			logQuery(pr.pavement_temp.node);
-			logQuery(pr.surface_freeze_point.node);
-			logQuery(pr.sensor_error);
-			logQuery(pr.surface_water_depth);
-			logQuery(pr.salinity);
-			logQuery(pr.black_ice_signal);
-			return this;
+			planGroup(plan,
+				pr.surface_status,
+				pr.surface_temp.node,
+				pr.pavement_temp.node,
+				pr.surface_freeze_point.node,
+				pr.sensor_error,
+				pr.surface_water_depth,
+				pr.salinity,
+				pr.black_ice_signal);
 		}
 	}
 
-	/** Phase to query sub-surface values */
-	protected class QuerySubSurface extends Phase {
-
-		/** Query */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			mess.add(ss_table.num_sensors);
-			mess.queryProps();
-			logQuery(ss_table.num_sensors);
-			return new QuerySubSurfaceTable();
+	/** Plan to query all rows in sub-surface table */
+	private void planSubSurfaceTable(QueryPlanner plan) {
+		while (!ss_table.isDone()) {
+			SubSurfaceSensorsTable.Row sr = ss_table.addRow();
+			planGroup(plan,
+				sr.temp.node,
+				sr.moisture,
+				sr.sensor_error);
 		}
 	}
 
-	/** Phase to query all rows in sub-surface table */
-	protected class QuerySubSurfaceTable extends Phase {
+	/** Phase to query all rows in sensor tables */
+	protected class QueryTables extends Phase {
 
-		/** Query */
-		@SuppressWarnings("unchecked")
-		protected Phase poll(CommMessage mess) throws IOException {
-			if (ss_table.isDone())
-				return null;
-			SubSurfaceSensorsTable.Row sr = ss_table.addRow();
-			mess.add(sr.temp.node);
-			mess.add(sr.moisture);
-			mess.add(sr.sensor_error);
-			mess.queryProps();
-			logQuery(sr.temp.node);
-			logQuery(sr.moisture);
-			logQuery(sr.sensor_error);
-			return this;
+		/** Plan table rows, once the row counts are known */
+		protected Phase poll(CommMessage mess) {
+			QueryPlanner plan = createPlanner();
+			planTemperatureTable(plan);
+			planPavementTable(plan);
+			planSubSurfaceTable(plan);
+			return plan.isDone() ? null : new QueryPlan(plan, null);
 		}
 	}
 
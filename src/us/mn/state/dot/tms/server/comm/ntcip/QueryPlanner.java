@@ -0,0 +1,225 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.ntcip;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import us.mn.state.dot.tms.server.comm.CommMessage;
+import us.mn.state.dot.tms.server.comm.QueryHints;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Object;
+import us.mn.state.dot.tms.server.comm.snmp.NoSuchName;
+import us.mn.state.dot.tms.server.comm.snmp.TooBig;
+
+/**
+ * A query planner packs groups of MIB objects into as few SNMP GET requests
+ * as possible.  The number of objects per request is limited by the largest
+ * message a controller will accept.  When a controller responds with a
+ * tooBig error, the limit is halved and remembered for later operations.
+ * When a request fails with noSuchName, the groups containing the missing
+ * object are queried alone, so that one unsupported group cannot fail the
+ * others.  Those groups are also remembered, so that later operations query
+ * them alone from the start.  Learned limits and groups are kept in the
+ * controller's query hints.
+ *
+ * @author Douglas Lau
+ */
+public class QueryPlanner {
+
+	/** Default limit of objects per request.  Every SNMP agent must
+	 * accept messages of 484 bytes, which leaves room for about 16
+	 * typical integer varbinds. */
+	static public final int DEFAULT_LIMIT = 16;
+
+	/** A group of objects which must be queried in the same request */
+	static abstract public class Group {
+
+		/** Objects in the group */
+		private final ASN1Object[] objs;
+
+		/** Create a new query group */
+		public Group(ASN1Object... o) {
+			objs = o;
+		}
+
+		/** Get a key for the group (object names), which is the same
+		 * for every operation */
+		private String getKey() {
+			StringBuilder b = new StringBuilder();
+			for (ASN1Object o: objs) {
+				if (b.length() > 0)
+					b.append(' ');
+				b.append(o.getName());
+			}
+			return b.toString();
+		}
+
+		/** Check if the group contains an object */
+		private boolean contains(String name) {
+			for (ASN1Object o: objs) {
+				if (o.getName().equals(name))
+					return true;
+			}
+			return false;
+		}
+
+		/** Handle the query response.  Called after all objects in the
+		 * group have been queried successfully. */
+		abstract protected void done() throws IOException;
+
+		/** Handle a noSuchName error when the group was queried alone.
+		 * By default, the error fails the operation. */
+		protected void noSuchName(NoSuchName e) throws IOException {
+			throw e;
+		}
+	}
+
+	/** Query hints for the controller */
+	private final QueryHints hints;
+
+	/** Groups remaining to be queried */
+	private final LinkedList<Group> pending = new LinkedList<Group>();
+
+	/** Groups which must be queried alone (after noSuchName) */
+	private final ArrayList<Group> solo = new ArrayList<Group>();
+
+	/** Number of groups added */
+	private int n_groups = 0;
+
+	/** Number of requests sent */
+	private int n_requests = 0;
+
+	/** Create a new query planner.
+	 * @param h Query hints for the controller. */
+	public QueryPlanner(QueryHints h) {
+		hints = h;
+	}
+
+	/** Add a group of objects to query */
+	public void add(Group g) {
+		pending.add(g);
+		if (hints.isSolo(g.getKey()))
+			solo.add(g);
+		n_groups++;
+	}
+
+	/** Check if all groups have been queried */
+	public boolean isDone() {
+		return pending.isEmpty();
+	}
+
+	/** Get the number of requests sent */
+	public int getRequests() {
+		return n_requests;
+	}
+
+	/** Get the number of round-trips saved by packing groups */
+	public int getSaved() {
+		return n_groups - n_requests;
+	}
+
+	/** Get a summary of the plan */
+	@Override
+	public String toString() {
+		return "query plan: " + n_groups + " groups in " + n_requests +
+			" requests (" + getSaved() + " saved)";
+	}
+
+	/** Pack the next request from pending groups.  Groups which must be
+	 * queried alone are skipped, unless they are first in line. */
+	private ArrayList<Group> nextRequest() {
+		ArrayList<Group> req = new ArrayList<Group>();
+		Group first = pending.peek();
+		if (first == null || solo.contains(first)) {
+			if (first != null)
+				req.add(first);
+			return req;
+		}
+		int lim = hints.getLimit(DEFAULT_LIMIT);
+		int n_objs = 0;
+		for (Group g: pending) {
+			if (solo.contains(g))
+				continue;
+			if (req.size() > 0 && n_objs + g.objs.length > lim)
+				break;
+			req.add(g);
+			n_objs += g.objs.length;
+		}
+		return req;
+	}
+
+	/** Count the objects in a request */
+	static private int countObjects(ArrayList<Group> req) {
+		int n_objs = 0;
+		for (Group g: req)
+			n_objs += g.objs.length;
+		return n_objs;
+	}
+
+	/** Mark groups to be queried alone after a noSuchName error.
+	 * @param req Groups in failed request.
+	 * @param name Name of missing object. */
+	private void markSolo(ArrayList<Group> req, String name) {
+		boolean found = false;
+		for (Group g: req) {
+			if (g.contains(name)) {
+				solo.add(g);
+				hints.addSolo(g.getKey());
+				found = true;
+			}
+		}
+		// Unknown object -- query every group alone
+		if (!found)
+			solo.addAll(req);
+	}
+
+	/** Query the next request.  This should be called (with a new message)
+	 * until the plan is done.
+	 * @param mess Message to query. */
+	@SuppressWarnings("unchecked")
+	public void poll(CommMessage mess) throws IOException {
+		ArrayList<Group> req = nextRequest();
+		if (req.isEmpty())
+			return;
+		for (Group g: req) {
+			for (ASN1Object o: g.objs)
+				mess.add(o);
+		}
+		n_requests++;
+		try {
+			mess.queryProps();
+		}
+		catch (TooBig e) {
+			// A single group cannot be split
+			if (req.size() <= 1)
+				throw e;
+			int lim = countObjects(req) / 2;
+			hints.setLimit(Math.max(1, lim));
+			return;
+		}
+		catch (NoSuchName e) {
+			if (req.size() > 1) {
+				markSolo(req, e.getName());
+				return;
+			}
+			pending.removeAll(req);
+			req.get(0).noSuchName(e);
+			return;
+		}
+		pending.removeAll(req);
+		for (Group g: req)
+			g.done();
+	}
+}
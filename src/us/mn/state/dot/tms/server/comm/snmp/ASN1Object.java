@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2015  Minnesota Department of Transportation
+ * Copyright (C) 2009-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -46,6 +46,11 @@ abstract public class ASN1Object extends ControllerProperty {
 		return oid;
 	}
 
+	/** Encode the object identifier */
+	public void encodeOID(BER er) throws IOException {
+		er.encodeObjectIdentifier(node, nid);
+	}
+
 	/** Get the object name */
 	public final String getName() {
 		return node.getName();
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2002-2015  Minnesota Department of Transportation
+ * Copyright (C) 2002-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,7 +17,6 @@ package us.mn.state.dot.tms.server.comm.snmp;
 import java.io.EOFException;
 import java.io.InputStream;
 import java.io.IOException;
-import java.io.ByteArrayOutputStream;
 import us.mn.state.dot.tms.server.comm.ParsingException;
 
 /**
@@ -40,11 +39,15 @@ abstract public class BER extends ASN1 {
 	/** Reserved length code constant */
 	static public final int RESERVED = 0xFF;
 
+	/** Empty object identifier */
+	static private final int[] EMPTY_OID = new int[0];
+
 	/** Tag numbers equal or greater than ONE_OCTET are encoded with more
 	 * than one octet */
 	static private final int ONE_OCTET = 0x1F;
 
-	/** Encode a BER identifier to the output stream */
+	/** Encode a BER identifier.  Like all encode methods, this prepends
+	 * to the encoded data, so values must be encoded in reverse order. */
 	protected void encodeIdentifier(Tag tag) throws IOException {
 		byte first = tag.getClazz();
 		int number = tag.getNumber();
@@ -54,15 +57,15 @@ abstract public class BER extends ASN1 {
 			encoder.write(first | number);
 			return;
 		}
+		encodeSubidentifier(number);
 		encoder.write(first | ONE_OCTET);
-		byte[] buffer = new byte[5];
-		int start = 4;
-		buffer[start] = (byte)(number & SEVEN_BITS);
-		for (number >>= 7; number > SEVEN_BITS; number >>= 7) {
-			buffer[--start] = (byte)
-				((number & SEVEN_BITS) | HIGH_BIT);
-		}
-		encoder.write(buffer, start, 5 - start);
+	}
+
+	/** Encode a BER subidentifier (base 128) */
+	private void encodeSubidentifier(int number) {
+		encoder.write(number & SEVEN_BITS);
+		for (number >>>= 7; number > 0; number >>>= 7)
+			encoder.write((number & SEVEN_BITS) | HIGH_BIT);
 	}
 
 	/** Encode a BER length */
@@ -70,79 +73,99 @@ abstract public class BER extends ASN1 {
 		if (length < 128)
 			encoder.write(length);
 		else if (length < 256) {
-			encoder.write(HIGH_BIT | 1);
 			encoder.write(length);
+			encoder.write(HIGH_BIT | 1);
 		} else {
+			encoder.write(length & 0xFF);
+			encoder.write(length >> 8);
 			encoder.write(HIGH_BIT | 2);
-			encoder.write((byte)(length >> 8));
-			encoder.write((byte)(length & 0xFF));
 		}
 	}
 
+	/** Encode a length and identifier for contents encoded since a mark.
+	 * @param tag Identifier tag.
+	 * @param mark Encoded length before contents were encoded. */
+	protected void encodeHeader(Tag tag, int mark) throws IOException {
+		encodeLength(encoder.length() - mark);
+		encodeIdentifier(tag);
+	}
+
 	/** Encode a boolean value */
 	protected void encodeBoolean(boolean value) throws IOException {
-		encodeIdentifier(ASN1Tag.BOOLEAN);
+		encoder.write(value ? 0xFF : 0x00);
 		encodeLength(1);
-		if (value)
-			encoder.write(0xFF);
-		else
-			encoder.write(0x00);
+		encodeIdentifier(ASN1Tag.BOOLEAN);
 	}
 
 	/** Encode an integer value */
 	protected void encodeInteger(int value) throws IOException {
-		byte[] buffer = new byte[4];
-		int len = 0;
-		boolean flag = false;
+		int len = 1;
 		for (int shift = 23; shift > 0; shift -= 8) {
 			int test = (value >> shift) & 0x1FF;
-			if (test != 0 && test != 0x1FF)
-				flag = true;
-			if (flag)
-				buffer[len++] = (byte)(test >> 1);
+			if (test != 0 && test != 0x1FF) {
+				len = (shift + 9) / 8;
+				break;
+			}
 		}
-		buffer[len++] = (byte)(value & 0xFF);
-		encodeIdentifier(ASN1Tag.INTEGER);
+		for (int i = 0; i < len; i++)
+			encoder.write(value >> (i * 8));
 		encodeLength(len);
-		encoder.write(buffer, 0, len);
+		encodeIdentifier(ASN1Tag.INTEGER);
 	}
 
 	/** Encode an octet string */
 	protected void encodeOctetString(byte[] string) throws IOException {
-		encodeIdentifier(ASN1Tag.OCTET_STRING);
-		encodeLength(string.length);
 		encoder.write(string);
+		encodeLength(string.length);
+		encodeIdentifier(ASN1Tag.OCTET_STRING);
 	}
 
 	/** Encode a null value */
 	protected void encodeNull() throws IOException {
-		encodeIdentifier(ASN1Tag.NULL);
 		encodeLength(0);
+		encodeIdentifier(ASN1Tag.NULL);
 	}
 
 	/** Encode an object identifier */
 	protected void encodeObjectIdentifier(int[] oid) throws IOException {
-		ByteArrayOutputStream bs = new ByteArrayOutputStream();
-		bs.write(oid[0] * 40 + oid[1]);
-		for (int i = 2; i < oid.length; i++) {
-			int subid = oid[i];
-			if (subid > SEVEN_BITS) {
-				bs.write(HIGH_BIT | (subid >> 7));
-				subid &= SEVEN_BITS;
+		int mark = encoder.length();
+		encodeSubidentifiers(oid, 2);
+		encodeSubidentifier(oid[0] * 40 + oid[1]);
+		encodeHeader(ASN1Tag.OBJECT_IDENTIFIER, mark);
+	}
+
+	/** Encode an object identifier for a MIB node.
+	 * @param node MIB node.
+	 * @param idx Index subidentifiers (following node). */
+	protected void encodeObjectIdentifier(MIBNode node, int[] idx)
+		throws IOException
+	{
+		int mark = encoder.length();
+		encodeSubidentifiers(idx, 0);
+		for (MIBNode n = node; n != null; n = n.getParent()) {
+			int[] nid = n.getNodeId();
+			if (n.getParent() != null)
+				encodeSubidentifiers(nid, 0);
+			else {
+				encodeSubidentifiers(nid, 2);
+				encodeSubidentifier(nid[0] * 40 + nid[1]);
 			}
-			bs.write(subid);
 		}
-		byte[] buffer = bs.toByteArray();
-		encodeIdentifier(ASN1Tag.OBJECT_IDENTIFIER);
-		encodeLength(buffer.length);
-		encoder.write(buffer);
+		encodeHeader(ASN1Tag.OBJECT_IDENTIFIER, mark);
 	}
 
-	/** Encode a sequence (or sequence-of) */
-	protected void encodeSequence(byte[] seq) throws IOException {
-		encodeIdentifier(ASN1Tag.SEQUENCE);
-		encodeLength(seq.length);
-		encoder.write(seq);
+	/** Encode subidentifiers (in reverse order).
+	 * @param ids Subidentifiers.
+	 * @param first Index of first subidentifier to encode. */
+	private void encodeSubidentifiers(int[] ids, int first) {
+		for (int i = ids.length - 1; i >= first; i--)
+			encodeSubidentifier(ids[i]);
+	}
+
+	/** Encode a sequence (or sequence-of) header.
+	 * @param mark Encoded length before sequence contents. */
+	protected void encodeSequence(int mark) throws IOException {
+		encodeHeader(ASN1Tag.SEQUENCE, mark);
 	}
 
 	/** Decode a BER identifier (tag) */
@@ -253,16 +276,13 @@ abstract public class BER extends ASN1 {
 		int length = decodeLength(is);
 		if (length < 1)
 			throw new ParsingException("NEGATIVE OID LENGTH");
-		byte[] buffer = new byte[length];
-		if (length > 0) {
-			int blen = is.read(buffer);
-			if (blen < 0)
+		// Skip the OID contents without buffering them
+		for (int i = 0; i < length; i++) {
+			if (is.read() < 0)
 				throw END_OF_STREAM;
-			if (blen != length)
-				throw new ParsingException("READ OID FAIL");
 		}
-		// NOTE: when the length is zero, there is no OID
-		return new int[0];
+		// NOTE: the OID is not decoded
+		return EMPTY_OID;
 	}
 
 	/** Decode a sequence (or sequence-of)
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2015  Minnesota Department of Transportation
+ * Copyright (C) 2009-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -29,9 +29,19 @@ public class MIBNode {
 	/** Parent node */
 	private final MIBNode parent;
 
+	/** Get the parent node (null for root) */
+	MIBNode getParent() {
+		return parent;
+	}
+
 	/** Node ID */
 	private final int[] nid;
 
+	/** Get the node ID */
+	int[] getNodeId() {
+		return nid;
+	}
+
 	/** Node name */
 	private final String name;
 
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2015  Minnesota Department of Transportation
+ * Copyright (C) 2000-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -23,8 +23,17 @@ import us.mn.state.dot.tms.server.comm.ControllerException;
  */
 public class NoSuchName extends ControllerException {
 
+	/** Name of missing object */
+	private final String name;
+
 	/** Create a new NoSuchName exception */
 	public NoSuchName(String n) {
 		super("SNMP: NO SUCH NAME: " + n);
+		name = n;
+	}
+
+	/** Get the name of the missing object */
+	public String getName() {
+		return name;
 	}
 }
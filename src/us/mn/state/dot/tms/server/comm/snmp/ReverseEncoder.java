@@ -0,0 +1,82 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.snmp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Reusable buffer for encoding data back-to-front.  Each write prepends bytes
+ * to the encoded data.  This allows the contents of a constructed value to be
+ * encoded before its length is known, without copying any data.
+ *
+ * @author Douglas Lau
+ */
+public class ReverseEncoder {
+
+	/** Initial buffer capacity */
+	static private final int INITIAL_CAPACITY = 512;
+
+	/** Buffer containing encoded data (at end) */
+	private byte[] buf = new byte[INITIAL_CAPACITY];
+
+	/** Position of first encoded byte */
+	private int pos = buf.length;
+
+	/** Get the number of encoded bytes */
+	public int length() {
+		return buf.length - pos;
+	}
+
+	/** Reset the encoder (discarding encoded data) */
+	public void reset() {
+		pos = buf.length;
+	}
+
+	/** Ensure capacity for more bytes */
+	private void ensureCapacity(int n) {
+		if (n > pos) {
+			int len = length();
+			int cap = Math.max(buf.length * 2, len + n);
+			byte[] b = new byte[cap];
+			System.arraycopy(buf, pos, b, cap - len, len);
+			buf = b;
+			pos = cap - len;
+		}
+	}
+
+	/** Prepend one byte */
+	public void write(int b) {
+		ensureCapacity(1);
+		buf[--pos] = (byte) b;
+	}
+
+	/** Prepend an array of bytes */
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(len);
+		pos -= len;
+		System.arraycopy(b, off, buf, pos, len);
+	}
+
+	/** Prepend an array of bytes */
+	public void write(byte[] b) {
+		write(b, 0, b.length);
+	}
+
+	/** Write the encoded data to an output stream */
+	public void writeTo(OutputStream os) throws IOException {
+		os.write(buf, pos, length());
+	}
+}
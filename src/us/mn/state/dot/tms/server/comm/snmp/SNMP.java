@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2000-2016  Minnesota Department of Transportation
+ * Copyright (C) 2000-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,7 +17,7 @@ package us.mn.state.dot.tms.server.comm.snmp;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
 import java.util.LinkedList;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.tms.server.comm.CommMessage;
@@ -64,13 +64,12 @@ public class SNMP extends BER {
 	/** Last SNMP request-id */
 	private int last_request = 0;
 
-	/** Encode an SNMP message */
+	/** Encode an SNMP message.  The message contains all data which
+	 * has been encoded, starting with the PDU. */
 	private void encodeSNMPMessage(String community) throws IOException {
-		byte[] pdu = getEncodedData();
-		encodeInteger(SNMP_VERSION);
 		encodeOctetString(community.getBytes());
-		encoder.write(pdu);
-		encodeSequence(getEncodedData());
+		encodeInteger(SNMP_VERSION);
+		encodeSequence(0);
 	}
 
 	/** Decode an SNMP message */
@@ -128,12 +127,7 @@ public class SNMP extends BER {
 			if (mos.isEmpty())
 				return;
 			is.skip(is.available());
-			encodeVarBindList(false);
-			encodeRequestPDU(SNMPTag.GET_REQUEST);
-			encodeSNMPMessage(community);
-			encoder.writeTo(os);
-			encoder.reset();
-			os.flush();
+			sendRequest(SNMPTag.GET_REQUEST, false);
 			decodeResponse();
 		}
 
@@ -163,13 +157,25 @@ public class SNMP extends BER {
 			if (mos.isEmpty())
 				return;
 			is.skip(is.available());
-			encodeVarBindList(true);
-			encodeRequestPDU(SNMPTag.SET_REQUEST);
+			sendRequest(SNMPTag.SET_REQUEST, true);
+			decodeResponse();
+		}
+
+		/** Encode and send a request.  The message is encoded
+		 * back-to-front, from the last variable binding to the
+		 * message header.
+		 * @param tag PDU type identifier.
+		 * @param set Flag to encode values of objects. */
+		private void sendRequest(Tag tag, boolean set)
+			throws IOException
+		{
+			encoder.reset();
+			encodeVarBindList(set);
+			encodeRequestPDU(tag);
 			encodeSNMPMessage(community);
 			encoder.writeTo(os);
 			encoder.reset();
 			os.flush();
-			decodeResponse();
 		}
 
 		/** Decode a response to a SET or GET request */
@@ -190,40 +196,37 @@ public class SNMP extends BER {
 			}
 		}
 
-		/** Encode a null variable binding */
+		/** Encode a variable binding (null value unless set) */
 		private void encodeVarBind(ASN1Object mo, boolean set)
 			throws IOException
 		{
-			encodeObjectIdentifier(mo.oid());
+			int mark = encoder.length();
 			if (set)
 				mo.encode(SNMP.this);
 			else
 				encodeNull();
-			encodeSequence(getEncodedData());
+			mo.encodeOID(SNMP.this);
+			encodeSequence(mark);
 		}
 
-		/** Encode the variable binding list */
+		/** Encode the variable binding list (in reverse order) */
 		private void encodeVarBindList(boolean set) throws IOException {
-			ByteArrayOutputStream vb = new ByteArrayOutputStream();
-			for (ASN1Object mo: mos) {
-				encodeVarBind(mo, set);
-				vb.write(getEncodedData());
-			}
-			encodeSequence(vb.toByteArray());
+			int mark = encoder.length();
+			Iterator<ASN1Object> it = mos.descendingIterator();
+			while (it.hasNext())
+				encodeVarBind(it.next(), set);
+			encodeSequence(mark);
 		}
 
-		/** Encode an SNMP request PDU
+		/** Encode an SNMP request PDU.  The PDU contains all data
+		 * which has been encoded, starting with the variable binding
+		 * list.
 		 * @param tag PDU type identifier */
 		private void encodeRequestPDU(Tag tag) throws IOException {
-			byte[] varBindList = getEncodedData();
-			encodeInteger(request_id);
-			encodeInteger(0);	// error-status
 			encodeInteger(0);	// error-index
-			encoder.write(varBindList);
-			byte[] buffer = getEncodedData();
-			encodeIdentifier(tag);
-			encodeLength(buffer.length);
-			encoder.write(buffer);
+			encodeInteger(0);	// error-status
+			encodeInteger(request_id);
+			encodeHeader(tag, 0);
 		}
 
 		/** Decode a variable binding */
@@ -18,6 +18,7 @@ import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.tms.CommLink;
 import us.mn.state.dot.tms.server.ControllerImpl;
 import us.mn.state.dot.tms.server.comm.PriorityLevel;
+import us.mn.state.dot.tms.server.comm.ResponseFramer;
 import us.mn.state.dot.tms.server.comm.SamplePoller;
 import us.mn.state.dot.tms.server.comm.ThreadedPoller;
 import static us.mn.state.dot.tms.utils.URIUtil.TCP;
@@ -39,6 +40,12 @@ public class SS125Poller extends ThreadedPoller<SS125Property>
 		super(link, TCP, SS125_LOG);
 	}
 
+	/** Get a response framer for pipelined polling */
+	@Override
+	protected ResponseFramer getFramer() {
+		return SS125Property.FRAMER;
+	}
+
 	/** Perform a controller reset */
 	@Override
 	public void resetController(ControllerImpl c) {
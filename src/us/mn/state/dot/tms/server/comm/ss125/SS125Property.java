@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2009-2016  Minnesota Department of Transportation
+ * Copyright (C) 2009-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -27,6 +27,7 @@ import us.mn.state.dot.tms.server.comm.CRC;
 import us.mn.state.dot.tms.server.comm.InvalidAddressException;
 import us.mn.state.dot.tms.server.comm.ParsingException;
 import us.mn.state.dot.tms.server.comm.ProtocolException;
+import us.mn.state.dot.tms.server.comm.ResponseFramer;
 
 /**
  * SS125 property.
@@ -67,6 +68,24 @@ abstract public class SS125Property extends ControllerProperty {
 	/** CRC calculator */
 	static private final CRC crc = new CRC(8, 0x1C, 0x00, false);
 
+	/** Response framer for pipelined polling */
+	static public final ResponseFramer FRAMER = new ResponseFramer() {
+		public byte[] readFrame(InputStream is) throws IOException {
+			byte[] header = new byte[11];
+			readFully(is, header, 0);
+			if (header[OFF_SENTINEL] != 'Z')
+				throw new ParsingException("SENTINEL");
+			int n_body = parse8(header, OFF_BODY_SIZE);
+			byte[] frame = new byte[header.length + n_body + 1];
+			System.arraycopy(header, 0, frame, 0, header.length);
+			readFully(is, frame, header.length);
+			return frame;
+		}
+		public int getDrop(byte[] frame) {
+			return parse16(frame, OFF_SOURCE_ID);
+		}
+	};
+
 	/** Check if a drop address is valid */
 	static private boolean isAddressValid(int drop) {
 		return drop > 0 && drop < 65536;
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2008-2015  Minnesota Department of Transportation
+ * Copyright (C) 2008-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -61,4 +61,9 @@ abstract public class BaseEvent implements Storable {
 	public void doStore() throws TMSException {
 		store.create(this);
 	}
+
+	/** Store an object, written behind in a batch */
+	public void doStoreLater() throws TMSException {
+		store.createLater(this);
+	}
 }
@@ -0,0 +1,147 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sched;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Scheduler tests
+ *
+ * @author Douglas Lau
+ */
+public class SchedulerTest extends TestCase {
+
+	public SchedulerTest(String name) {
+		super(name);
+	}
+
+	/** Job which records when it was performed */
+	static private class TimedJob extends Job {
+		private final CountDownLatch latch;
+		private final ArrayList<TimedJob> done;
+		private long performed;
+		private TimedJob(int ms, CountDownLatch l,
+			ArrayList<TimedJob> d)
+		{
+			super(ms);
+			latch = l;
+			done = d;
+		}
+		public void perform() {
+			performed = System.currentTimeMillis();
+			synchronized (done) {
+				done.add(this);
+			}
+			latch.countDown();
+		}
+	}
+
+	public void testOrder() throws InterruptedException {
+		Scheduler s = new Scheduler("test");
+		CountDownLatch latch = new CountDownLatch(3);
+		ArrayList<TimedJob> done = new ArrayList<TimedJob>();
+		TimedJob j50 = new TimedJob(50, latch, done);
+		TimedJob j10 = new TimedJob(10, latch, done);
+		TimedJob j300 = new TimedJob(300, latch, done);
+		s.addJob(j300);
+		s.addJob(j50);
+		s.addJob(j10);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(done.get(0) == j10);
+		assertTrue(done.get(1) == j50);
+		assertTrue(done.get(2) == j300);
+		assertTrue(s.getQueueSize() == 0);
+		s.dispose();
+	}
+
+	public void testNotEarly() throws InterruptedException {
+		Scheduler s = new Scheduler("test");
+		int n = 2000;
+		CountDownLatch latch = new CountDownLatch(n);
+		ArrayList<TimedJob> done = new ArrayList<TimedJob>();
+		ArrayList<Long> due = new ArrayList<Long>();
+		ArrayList<TimedJob> jobs = new ArrayList<TimedJob>();
+		Random r = new Random(1);
+		for (int i = 0; i < n; i++) {
+			int ms = r.nextInt(1500);
+			due.add(System.currentTimeMillis() + ms);
+			TimedJob j = new TimedJob(ms, latch, done);
+			jobs.add(j);
+			s.addJob(j);
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < n; i++)
+			assertTrue(jobs.get(i).performed >= due.get(i));
+		s.dispose();
+	}
+
+	public void testRemove() throws InterruptedException {
+		Scheduler s = new Scheduler("test");
+		CountDownLatch latch = new CountDownLatch(2);
+		ArrayList<TimedJob> done = new ArrayList<TimedJob>();
+		TimedJob j1 = new TimedJob(20, latch, done);
+		TimedJob j2 = new TimedJob(40, latch, done);
+		TimedJob j3 = new TimedJob(60, latch, done);
+		s.addJob(j1);
+		s.addJob(j2);
+		s.addJob(j3);
+		s.removeJob(j2);
+		assertTrue(s.getQueueSize() == 2);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(done.size() == 2);
+		assertTrue(done.get(0) == j1);
+		assertTrue(done.get(1) == j3);
+		s.dispose();
+	}
+
+	public void testRemoveRunning() throws InterruptedException {
+		final Scheduler s = new Scheduler("test");
+		final AtomicInteger count = new AtomicInteger();
+		Job job = new Job(Calendar.SECOND, 1, true) {
+			public void perform() {
+				count.incrementAndGet();
+				s.removeJob(this);
+			}
+		};
+		s.addJob(job);
+		Thread.sleep(2500);
+		assertTrue(count.get() == 1);
+		assertTrue(s.getQueueSize() == 0);
+		s.dispose();
+	}
+
+	public void testThreads() throws InterruptedException {
+		final Scheduler s = new Scheduler("test", null, 4);
+		final CountDownLatch latch = new CountDownLatch(4);
+		for (int i = 0; i < 4; i++) {
+			s.addJob(new Job() {
+				public void perform() throws Exception {
+					assertTrue(s.isCurrentThread());
+					latch.countDown();
+					// Wait for all jobs to be running
+					latch.await(5, TimeUnit.SECONDS);
+				}
+			});
+		}
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		s.dispose();
+	}
+}
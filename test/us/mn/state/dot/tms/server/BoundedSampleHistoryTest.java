@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012-2019  Minnesota Department of Transportation
+ * Copyright (C) 2012-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,6 +14,7 @@
  */
 package us.mn.state.dot.tms.server;
 
+import java.util.Random;
 import junit.framework.TestCase;
 import us.mn.state.dot.tms.server.BoundedSampleHistory;
 
@@ -32,55 +33,55 @@ public class BoundedSampleHistoryTest extends TestCase {
 	public void test() {
 		BoundedSampleHistory hist = new BoundedSampleHistory(4);
 		assertTrue(hist.size() == 0);
-		assertTrue(null == hist.average(0, 1));
-		assertTrue(null == hist.average(0, 2));
+		assertTrue(Double.isNaN(hist.average(0, 1)));
+		assertTrue(Double.isNaN(hist.average(0, 2)));
 		hist.push(10.0);
 		assertTrue(hist.size() == 1);
-		assertTrue(new Double(10).equals(hist.get(0)));
-		assertTrue(new Double(10).equals(hist.average(0, 1)));
-		assertTrue(new Double(10).equals(hist.average(0, 2)));
+		assertTrue(hist.get(0) == 10);
+		assertTrue(hist.average(0, 1) == 10);
+		assertTrue(hist.average(0, 2) == 10);
 		hist.push(20.0);
 		assertTrue(hist.size() == 2);
-		assertTrue(new Double(20).equals(hist.get(0)));
-		assertTrue(new Double(20).equals(hist.average(0, 1)));
-		assertTrue(new Double(15).equals(hist.average(0, 2)));
+		assertTrue(hist.get(0) == 20);
+		assertTrue(hist.average(0, 1) == 20);
+		assertTrue(hist.average(0, 2) == 15);
 		hist.clear();
 		assertTrue(hist.size() == 0);
-		assertTrue(null == hist.average(0, 1));
+		assertTrue(Double.isNaN(hist.average(0, 1)));
 		hist.push(10.0);
 		assertTrue(hist.size() == 1);
-		assertTrue(new Double(10).equals(hist.get(0)));
-		assertTrue(new Double(10).equals(hist.average(0, 1)));
-		assertTrue(new Double(10).equals(hist.average(0, 2)));
+		assertTrue(hist.get(0) == 10);
+		assertTrue(hist.average(0, 1) == 10);
+		assertTrue(hist.average(0, 2) == 10);
 		hist.push(20.0);
 		assertTrue(hist.size() == 2);
-		assertTrue(new Double(20).equals(hist.get(0)));
-		assertTrue(new Double(20).equals(hist.average(0, 1)));
-		assertTrue(new Double(15).equals(hist.average(0, 2)));
+		assertTrue(hist.get(0) == 20);
+		assertTrue(hist.average(0, 1) == 20);
+		assertTrue(hist.average(0, 2) == 15);
 		hist.push(30.0);
 		assertTrue(hist.size() == 3);
-		assertTrue(new Double(30).equals(hist.get(0)));
-		assertTrue(new Double(30).equals(hist.average(0, 1)));
-		assertTrue(new Double(25).equals(hist.average(0, 2)));
-		assertTrue(new Double(20).equals(hist.average(0, 3)));
+		assertTrue(hist.get(0) == 30);
+		assertTrue(hist.average(0, 1) == 30);
+		assertTrue(hist.average(0, 2) == 25);
+		assertTrue(hist.average(0, 3) == 20);
 		hist.push(40.0);
 		assertTrue(hist.size() == 4);
-		assertTrue(new Double(40).equals(hist.get(0)));
-		assertTrue(new Double(40).equals(hist.average(0, 1)));
-		assertTrue(new Double(35).equals(hist.average(0, 2)));
-		assertTrue(new Double(30).equals(hist.average(0, 3)));
-		assertTrue(new Double(25).equals(hist.average(0, 4)));
-		assertTrue(new Double(20).equals(hist.average(2, 1)));
-		assertTrue(new Double(15).equals(hist.average(2, 2)));
+		assertTrue(hist.get(0) == 40);
+		assertTrue(hist.average(0, 1) == 40);
+		assertTrue(hist.average(0, 2) == 35);
+		assertTrue(hist.average(0, 3) == 30);
+		assertTrue(hist.average(0, 4) == 25);
+		assertTrue(hist.average(2, 1) == 20);
+		assertTrue(hist.average(2, 2) == 15);
 		hist.push(50.0);
 		assertTrue(hist.size() == 4);
-		assertTrue(new Double(50).equals(hist.get(0)));
-		assertTrue(new Double(50).equals(hist.average(0, 1)));
-		assertTrue(new Double(45).equals(hist.average(0, 2)));
-		assertTrue(new Double(40).equals(hist.average(0, 3)));
-		assertTrue(new Double(35).equals(hist.average(0, 4)));
-		assertTrue(new Double(30).equals(hist.average(2, 1)));
-		assertTrue(new Double(25).equals(hist.average(2, 2)));
+		assertTrue(hist.get(0) == 50);
+		assertTrue(hist.average(0, 1) == 50);
+		assertTrue(hist.average(0, 2) == 45);
+		assertTrue(hist.average(0, 3) == 40);
+		assertTrue(hist.average(0, 4) == 35);
+		assertTrue(hist.average(2, 1) == 30);
+		assertTrue(hist.average(2, 2) == 25);
 	}
 
 	public void testMissing() {
@@ -91,12 +92,50 @@ public class BoundedSampleHistoryTest extends TestCase {
 		hist.push(10.0);
 		hist.push(20.0);
 		assertTrue(hist.size() == 4);
-		assertTrue(new Double(15).equals(hist.average(0, 2)));
-		hist.push(null);
-		hist.push(null);
-		hist.push(null);
-		hist.push(null);
+		assertTrue(hist.average(0, 2) == 15);
+		hist.push(BoundedSampleHistory.MISSING);
+		hist.push(BoundedSampleHistory.MISSING);
+		hist.push(BoundedSampleHistory.MISSING);
+		hist.push(BoundedSampleHistory.MISSING);
 		assertTrue(hist.size() == 4);
-		assertTrue(hist.average() == null);
+		assertTrue(Double.isNaN(hist.average()));
+		hist.push(-1);
+		assertTrue(Double.isNaN(hist.get(0)));
+		assertTrue(Double.isNaN(hist.get(4)));
+	}
+
+	/** Compare averages with a direct scan, across rebasing */
+	public void testWindows() {
+		Random rnd = new Random(1);
+		int max = 10;
+		BoundedSampleHistory hist = new BoundedSampleHistory(max);
+		double[] all = new double[2000];
+		for (int n = 0; n < all.length; n++) {
+			double v = (rnd.nextInt(5) == 0)
+			         ? BoundedSampleHistory.MISSING
+			         : rnd.nextInt(1000) / 8.0;
+			all[n] = v;
+			hist.push(v);
+			assertTrue(hist.size() == Math.min(n + 1, max));
+			for (int t = 0; t < max; t++) {
+				for (int ns = 1; ns <= max; ns++) {
+					double sum = 0;
+					int c = 0;
+					for (int i = t; i < t + ns; i++) {
+						if (i < hist.size() &&
+						    !Double.isNaN(all[n - i]))
+						{
+							sum += all[n - i];
+							c++;
+						}
+					}
+					double a = hist.average(t, ns);
+					if (c > 0)
+						assertEquals(sum / c, a, 1e-9);
+					else
+						assertTrue(Double.isNaN(a));
+				}
+			}
+		}
 	}
 }
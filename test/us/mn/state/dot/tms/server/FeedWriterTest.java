@@ -0,0 +1,107 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.Locale;
+import java.util.Random;
+import junit.framework.TestCase;
+
+/**
+ * Feed writer tests
+ *
+ * @author Douglas Lau
+ */
+public class FeedWriterTest extends TestCase {
+
+	public FeedWriterTest(String name) {
+		super(name);
+	}
+
+	/** Format a float with a feed writer */
+	static private String formatFloat(float v, int fd) {
+		FeedWriter w = new FeedWriter();
+		w.writeFloat(v, fd);
+		return w.toString();
+	}
+
+	public void testInt() {
+		FeedWriter w = new FeedWriter();
+		w.writeInt(0);
+		w.write(',');
+		w.writeInt(-17);
+		w.write(',');
+		w.writeInt(Integer.MAX_VALUE);
+		w.write(',');
+		w.writeInt(Long.MIN_VALUE);
+		assertTrue(w.toString().equals("0,-17,2147483647," +
+			Long.MIN_VALUE));
+	}
+
+	public void testFloat() {
+		assertTrue(formatFloat(0f, 2).equals("0"));
+		assertTrue(formatFloat(12.5f, 2).equals("12.5"));
+		assertTrue(formatFloat(3.05f, 2).equals("3.05"));
+		assertTrue(formatFloat(0.125f, 2).equals("0.12"));
+		assertTrue(formatFloat(0.375f, 2).equals("0.38"));
+		assertTrue(formatFloat(99.999f, 2).equals("100"));
+		assertTrue(formatFloat(-0.001f, 2).equals("-0"));
+	}
+
+	public void testFloatMatchesNumberFormat() {
+		Locale locale = Locale.getDefault();
+		Locale.setDefault(Locale.US);
+		try {
+			Random rnd = new Random(1);
+			for (int i = 0; i < 100000; i++) {
+				float v = (i % 2 == 0)
+				        ? rnd.nextFloat() * 100
+				        : rnd.nextInt(100000) / 1000f;
+				String f = BaseObjectImpl.formatFloat(v, 2);
+				assertEquals(f, formatFloat(v, 2));
+			}
+		}
+		finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	public void testXml() {
+		FeedWriter w = new FeedWriter();
+		String v = "a&b<c>'d\"\u00e9\ud83d\ude97";
+		w.writeAttr("x", v);
+		assertTrue(w.toString().equals(XmlWriter.createAttribute("x",
+			v)));
+		w.reset();
+		w.writeAttr("flow", 12);
+		w.writeAttr("occ", 4.25f, 2);
+		assertTrue(w.toString().equals(" flow='12' occ='4.25'"));
+	}
+
+	public void testJson() {
+		FeedWriter w = new FeedWriter();
+		w.writeJson("S1\"\\\n");
+		assertTrue(w.toString().equals("\"S1\\\"\\\\\\u000a\""));
+	}
+
+	public void testGrow() {
+		FeedWriter w = new FeedWriter();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++)
+			sb.append("\u00e9x");
+		w.write(sb.toString());
+		assertTrue(w.size() == 300000);
+		assertTrue(w.toString().equals(sb.toString()));
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * IRIS -- Intelligent Roadway Information System
- * Copyright (C) 2012-2019  Minnesota Department of Transportation
+ * Copyright (C) 2012-2020  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -105,5 +105,10 @@ public class PeriodicSampleWriterTest extends TestCase {
 		public boolean hasKnownExtension(String name) {
 			return true;
 		}
+		public SampleColumnFile columnFile(long stamp) {
+			return null;
+		}
+		public void closeColumnFiles() { }
+		public void closeColumnFile(File base) { }
 	}
 }
@@ -0,0 +1,232 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import junit.framework.TestCase;
+
+/**
+ * Sample archive builder tests
+ *
+ * @author Douglas Lau
+ */
+public class SampleArchiveBuilderTest extends TestCase {
+
+	public SampleArchiveBuilderTest(String name) {
+		super(name);
+	}
+
+	/** Factory which only knows the .v30 extension */
+	static private final SampleArchiveFactory FACTORY =
+		new PeriodicSampleWriterTest.TestFactory()
+	{
+		public boolean hasKnownExtension(String name) {
+			return name.endsWith(".v30");
+		}
+	};
+
+	/** Create a year directory in a temporary directory */
+	static private File createYear() throws IOException {
+		File year = File.createTempFile("arc", "");
+		year.delete();
+		assertTrue(year.mkdir());
+		return year;
+	}
+
+	/** Write a sample file */
+	static private void writeFile(File dir, String name, int v)
+		throws IOException
+	{
+		dir.mkdir();
+		FileOutputStream fos = new FileOutputStream(new File(dir,
+			name));
+		try {
+			for (int i = 0; i < 2880; i++)
+				fos.write((i % 60 == 0) ? v : -1);
+		}
+		finally {
+			fos.close();
+		}
+	}
+
+	/** Read the first byte of an archive entry, or -2 if missing */
+	static private int readEntry(File traf, String name)
+		throws IOException
+	{
+		ZipFile zf = new ZipFile(traf);
+		try {
+			ZipEntry ze = zf.getEntry(name);
+			if (null == ze)
+				return -2;
+			assertTrue(ze.getSize() == 2880);
+			InputStream is = zf.getInputStream(ze);
+			try {
+				return is.read();
+			}
+			finally {
+				is.close();
+			}
+		}
+		finally {
+			zf.close();
+		}
+	}
+
+	/** Delete a year directory */
+	static private void deleteYear(File year) {
+		for (File f: year.listFiles()) {
+			if (f.isDirectory()) {
+				for (File g: f.listFiles())
+					g.delete();
+			}
+			f.delete();
+		}
+		year.delete();
+	}
+
+	public void testBuild() throws IOException {
+		File year = createYear();
+		File day = new File(year, "20120101");
+		writeFile(day, "100.v30", 1);
+		writeFile(day, "101.v30", 2);
+		writeFile(day, "notes.txt", 3);
+		// Left over from a crash while writing
+		FileOutputStream fos = new FileOutputStream(new File(year,
+			"20120101" + SampleArchiveBuilder.TEMP_EXT));
+		fos.write(new byte[] { 'P', 'K', 3 });
+		fos.close();
+		SampleArchiveBuilder b = new SampleArchiveBuilder(FACTORY, 1,
+			1);
+		try {
+			SampleArchiveBuilder.Stats s = b.build(year,
+				"20120101");
+			assertTrue(s.n_days == 1);
+			assertTrue(s.n_files == 2);
+			assertTrue(s.n_bytes == 2 * 2880);
+			File traf = new File(year, "20120101" +
+				SampleArchiveBuilder.ARCHIVE_EXT);
+			assertTrue(readEntry(traf, "100.v30") == 1);
+			assertTrue(readEntry(traf, "101.v30") == 2);
+			assertTrue(readEntry(traf, "notes.txt") == -2);
+			assertFalse(new File(year, "20120101" +
+				SampleArchiveBuilder.TEMP_EXT).exists());
+			assertFalse(new File(day, "100.v30").exists());
+			assertTrue(new File(day, "notes.txt").exists());
+			// Nothing left to archive
+			assertTrue(b.build(year, "20120102").n_days == 0);
+		}
+		finally {
+			deleteYear(year);
+		}
+	}
+
+	public void testMerge() throws IOException {
+		File year = createYear();
+		File day = new File(year, "20120101");
+		File traf = new File(year, "20120101" +
+			SampleArchiveBuilder.ARCHIVE_EXT);
+		SampleArchiveBuilder b = new SampleArchiveBuilder(FACTORY, 1,
+			-1);
+		try {
+			writeFile(day, "100.v30", 1);
+			writeFile(day, "101.v30", 2);
+			b.build(year, "20120101");
+			assertFalse(day.exists());
+			// Crash while deleting, plus late data
+			writeFile(day, "100.v30", 1);
+			writeFile(day, "101.v30", 5);
+			writeFile(day, "102.v30", 3);
+			assertTrue(SampleArchiveBuilder.isArchived(year,
+				"20120101"));
+			SampleArchiveBuilder.Stats s = b.build(year,
+				"20120101");
+			assertTrue(s.n_files == 3);
+			assertTrue(readEntry(traf, "100.v30") == 1);
+			assertTrue(readEntry(traf, "101.v30") == 2);
+			assertTrue(readEntry(traf, "102.v30") == 3);
+			assertFalse(new File(day, "100.v30").exists());
+			assertFalse(new File(day, "102.v30").exists());
+			// Conflicting file is kept
+			assertTrue(new File(day, "101.v30").exists());
+		}
+		finally {
+			deleteYear(year);
+		}
+	}
+
+	public void testSubmit() throws Exception {
+		File year = createYear();
+		for (int d = 1; d <= 4; d++)
+			writeFile(new File(year, "2012010" + d), "100.v30", d);
+		ArrayList<String> dates = new ArrayList<String>();
+		for (int d = 1; d <= 4; d++)
+			dates.add("2012010" + d);
+		SampleArchiveBuilder b = new SampleArchiveBuilder(FACTORY, 2,
+			-1);
+		try {
+			b.submit(year, dates);
+			SampleArchiveBuilder.Stats s = b.waitIdle(10000);
+			assertTrue(s != null);
+			assertTrue(s.n_days == 4);
+			assertTrue(s.n_files == 4);
+			for (int d = 1; d <= 4; d++) {
+				File traf = new File(year, "2012010" + d +
+					SampleArchiveBuilder.ARCHIVE_EXT);
+				assertTrue(readEntry(traf, "100.v30") == d);
+			}
+		}
+		finally {
+			deleteYear(year);
+		}
+	}
+
+	public void testWriteLock() throws Exception {
+		File year = createYear();
+		File day = new File(year, "20120105");
+		writeFile(day, "100.v30", 1);
+		SampleArchiveBuilder b = new SampleArchiveBuilder(FACTORY, 1,
+			-1);
+		try {
+			SampleArchiveBuilder.lockWrite("20120105");
+			try {
+				b.submit(year, Collections.singleton(
+					"20120105"));
+				// Build waits for the writer
+				assertTrue(b.waitIdle(200) == null);
+				writeFile(day, "101.v30", 2);
+			}
+			finally {
+				SampleArchiveBuilder.unlockWrite("20120105");
+			}
+			SampleArchiveBuilder.Stats s = b.waitIdle(10000);
+			assertTrue(s != null);
+			assertTrue(s.n_files == 2);
+			File traf = new File(year, "20120105" +
+				SampleArchiveBuilder.ARCHIVE_EXT);
+			assertTrue(readEntry(traf, "101.v30") == 2);
+			assertFalse(day.exists());
+		}
+		finally {
+			deleteYear(year);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import junit.framework.TestCase;
+
+/**
+ * Sample column file tests
+ *
+ * @author Douglas Lau
+ */
+public class SampleColumnFileTest extends TestCase {
+
+	public SampleColumnFileTest(String name) {
+		super(name);
+	}
+
+	/** Get a time stamp on 2012-01-01 */
+	static private long stamp(int hour, int minute, int second) {
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2012, Calendar.JANUARY, 1, hour, minute, second);
+		return cal.getTimeInMillis();
+	}
+
+	/** Create a base file in a temporary directory */
+	static private File createBase() throws IOException {
+		File base = File.createTempFile("col", "");
+		base.delete();
+		return base;
+	}
+
+	public void testStore() throws IOException {
+		File base = createBase();
+		SampleColumnFile cf = new SampleColumnFile(base, stamp(0, 0, 0),
+			true);
+		try {
+			PeriodicSampleType vc = PeriodicSampleType.VEH_COUNT;
+			PeriodicSampleType oc = PeriodicSampleType.OCCUPANCY;
+			cf.store("100", vc, new PeriodicSample(stamp(0, 0, 30),
+				30, 1));
+			cf.store("100", vc, new PeriodicSample(stamp(0, 1, 0),
+				30, 2));
+			cf.store("100", vc, new PeriodicSample(stamp(0, 2, 0),
+				30, 4));
+			cf.store("100", oc, new PeriodicSample(stamp(0, 0, 30),
+				30, 1234));
+			cf.store("101", vc, new PeriodicSample(stamp(23, 59, 0),
+				60, 200));
+			assertTrue(cf.contains(stamp(12, 0, 0)));
+			assertFalse(cf.contains(stamp(0, 0, 0) - 1));
+		}
+		finally {
+			cf.close();
+		}
+		cf = new SampleColumnFile(base);
+		try {
+			assertTrue(cf.getColumnNames().size() == 3);
+			byte[] buf = cf.read("100.v30");
+			assertTrue(buf.length == 2880);
+			assertTrue(buf[0] == 1);
+			assertTrue(buf[1] == 2);
+			assertTrue(buf[2] == -1);
+			assertTrue(buf[3] == 4);
+			assertTrue(buf[4] == -1);
+			int[] o = cf.readSamples("100",
+				PeriodicSampleType.OCCUPANCY, 30);
+			assertTrue(o.length == 2880);
+			assertTrue(o[0] == 1234);
+			assertTrue(o[1] == -1);
+			int[] v = cf.readSamples("101",
+				PeriodicSampleType.VEH_COUNT, 60);
+			assertTrue(v.length == 1440);
+			// Value is clamped to one byte
+			assertTrue(v[1438] == 127);
+			assertTrue(cf.read("102.v30") == null);
+		}
+		finally {
+			cf.close();
+			SampleColumnFile.delete(base);
+		}
+	}
+
+	public void testReopen() throws IOException {
+		File base = createBase();
+		PeriodicSampleType vc = PeriodicSampleType.VEH_COUNT;
+		SampleColumnFile cf = new SampleColumnFile(base, stamp(0, 0, 0),
+			true);
+		cf.store("100", vc, new PeriodicSample(stamp(0, 0, 30), 30, 5));
+		cf.close();
+		cf = new SampleColumnFile(base, stamp(0, 0, 0), true);
+		cf.store("100", vc, new PeriodicSample(stamp(0, 1, 0), 30, 6));
+		cf.store("200", vc, new PeriodicSample(stamp(0, 1, 0), 30, 7));
+		cf.close();
+		cf = new SampleColumnFile(base);
+		try {
+			assertTrue(cf.getColumnNames().size() == 2);
+			byte[] buf = cf.read("100.v30");
+			assertTrue(buf[0] == 5);
+			assertTrue(buf[1] == 6);
+			assertTrue(cf.read("200.v30")[1] == 7);
+		}
+		finally {
+			cf.close();
+			SampleColumnFile.delete(base);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.TMSException;
+
+/**
+ * Startup loader tests
+ *
+ * @author Douglas Lau
+ */
+public class StartupLoaderTest extends TestCase {
+
+	public StartupLoaderTest(String name) {
+		super(name);
+	}
+
+	/** Task which records when it was performed */
+	static private class OrderTask implements StartupLoader.Task {
+		private final String name;
+		private final ArrayList<String> done;
+		private OrderTask(String n, ArrayList<String> d) {
+			name = n;
+			done = d;
+		}
+		public void perform() {
+			synchronized (done) {
+				done.add(name);
+			}
+		}
+	}
+
+	public void testOrder() throws TMSException {
+		ArrayList<String> done = new ArrayList<String>();
+		StartupLoader ld = new StartupLoader();
+		ld.add("a", new OrderTask("a", done));
+		ld.add("b", new OrderTask("b", done), "a");
+		ld.add("c", new OrderTask("c", done), "a");
+		ld.add("d", new OrderTask("d", done), "b", "c");
+		ld.run(4);
+		assertTrue(done.size() == 4);
+		assertTrue(done.get(0).equals("a"));
+		assertTrue(done.get(3).equals("d"));
+	}
+
+	public void testParallel() throws TMSException {
+		final CountDownLatch latch = new CountDownLatch(2);
+		StartupLoader.Task t = new StartupLoader.Task() {
+			public void perform() throws Exception {
+				latch.countDown();
+				// Both tasks must be running at once
+				assertTrue(latch.await(5, TimeUnit.SECONDS));
+			}
+		};
+		StartupLoader ld = new StartupLoader();
+		ld.add("a", t);
+		ld.add("b", t);
+		ld.run(2);
+	}
+
+	public void testError() {
+		ArrayList<String> done = new ArrayList<String>();
+		StartupLoader ld = new StartupLoader();
+		ld.add("a", new StartupLoader.Task() {
+			public void perform() throws TMSException {
+				throw new TMSException("failed");
+			}
+		});
+		ld.add("b", new OrderTask("b", done), "a");
+		try {
+			ld.run(2);
+			fail();
+		}
+		catch (TMSException e) {
+			assertTrue(e.getMessage().equals("failed"));
+		}
+		assertTrue(done.isEmpty());
+	}
+
+	public void testErrorThrown() {
+		ArrayList<String> done = new ArrayList<String>();
+		StartupLoader ld = new StartupLoader();
+		ld.add("a", new StartupLoader.Task() {
+			public void perform() {
+				throw new AssertionError("broken");
+			}
+		});
+		ld.add("b", new OrderTask("b", done), "a");
+		try {
+			ld.run(2);
+			fail();
+		}
+		catch (TMSException e) {
+			assertTrue(e.getMessage().equals("broken"));
+		}
+		assertTrue(done.isEmpty());
+	}
+
+	public void testMissing() {
+		StartupLoader ld = new StartupLoader();
+		try {
+			ld.add("b", new OrderTask("b", null), "a");
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringWriter;
+import junit.framework.TestCase;
+import static us.mn.state.dot.tms.server.VehicleEventLog.FLAG_DURATION;
+import static us.mn.state.dot.tms.server.VehicleEventLog.FLAG_GAP;
+import static us.mn.state.dot.tms.server.VehicleEventLog.FLAG_HEADWAY;
+import static us.mn.state.dot.tms.server.VehicleEventLog.FLAG_SPEED;
+import static us.mn.state.dot.tms.server.VehicleEventLog.FLAG_STAMP;
+
+/**
+ * Vehicle log converter tests
+ *
+ * @author Douglas Lau
+ */
+public class VehicleLogConverterTest extends TestCase {
+
+	public VehicleLogConverterTest(String name) {
+		super(name);
+	}
+
+	/** Encode an event */
+	static private void encode(ByteArrayOutputStream bos, int flags,
+		int duration, int headway, int sec, int speed)
+	{
+		byte[] buf = new byte[32];
+		int n = VehicleEventLog.encodeEvent(buf, flags, duration,
+			headway, sec, speed);
+		bos.write(buf, 0, n);
+	}
+
+	/** Format an event */
+	static private String format(int flags, int duration, int headway,
+		int sec, int speed)
+	{
+		StringBuilder b = new StringBuilder();
+		VehicleEventLog.formatEvent(b, flags, duration, headway, sec,
+			speed);
+		return b.toString();
+	}
+
+	public void testFormat() {
+		assertTrue(format(FLAG_GAP, 0, 0, 0, 0).equals("*\n"));
+		assertTrue(format(0, 0, 0, 0, 0).equals("?,?\n"));
+		assertTrue(format(FLAG_DURATION | FLAG_HEADWAY, 250, 1800, 0,
+			0).equals("250,1800\n"));
+		assertTrue(format(FLAG_DURATION | FLAG_STAMP, 250, 0, 3723,
+			0).equals("250,?,01:02:03\n"));
+		assertTrue(format(FLAG_DURATION | FLAG_HEADWAY | FLAG_SPEED,
+			300, 2000, 0, 55).equals("300,2000,,55\n"));
+	}
+
+	public void testConvert() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		encode(bos, FLAG_DURATION | FLAG_STAMP, 250, 0, 86399, 0);
+		encode(bos, FLAG_DURATION | FLAG_HEADWAY | FLAG_SPEED, 300,
+			90000, 0, 55);
+		encode(bos, FLAG_GAP, 0, 0, 0, 0);
+		encode(bos, 0, 0, 0, 0, 0);
+		StringWriter sw = new StringWriter();
+		int n = VehicleLogConverter.convert(new ByteArrayInputStream(
+			bos.toByteArray()), sw);
+		assertTrue(n == 4);
+		assertTrue(sw.toString().equals("250,?,23:59:59\n" +
+			"300,90000,,55\n*\n?,?\n"));
+	}
+
+	public void testTruncated() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		encode(bos, FLAG_DURATION | FLAG_HEADWAY, 250, 1800, 0, 0);
+		byte[] b = bos.toByteArray();
+		ByteArrayInputStream in = new ByteArrayInputStream(b, 0,
+			b.length - 1);
+		try {
+			VehicleLogConverter.convert(in, new StringWriter());
+			fail();
+		}
+		catch (EOFException e) {
+			// expected
+		}
+	}
+}
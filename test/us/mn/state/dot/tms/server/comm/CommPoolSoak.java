@@ -0,0 +1,453 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.tms.CommConfig;
+import us.mn.state.dot.tms.CommLink;
+import us.mn.state.dot.tms.EventType;
+import us.mn.state.dot.tms.server.CabinetImpl;
+import us.mn.state.dot.tms.server.ControllerImpl;
+
+/**
+ * Soak test for comm threads, with or without the comm pool.  A simulated
+ * device server answers a line protocol on localhost, and one operation is
+ * queued on every link each period.  Thread count, resident memory and poll
+ * latency are reported at the end.  Dead links connect to a server which
+ * never answers, so every poll on them times out.  Unreachable links connect
+ * to a closed port, so they keep reconnecting.  Peak thread counts (total,
+ * connect and timeout lanes) are sampled throughout.
+ *
+ * Usage: CommPoolSoak [links] [pool_threads] [duration_sec] [period_ms]
+ *                     [dead_links] [unreachable_links] [lane_threads]
+ *
+ * @author Douglas Lau
+ */
+public class CommPoolSoak {
+
+	/** Debug log for soak pollers */
+	static private final DebugLog SOAK_LOG = new DebugLog("soak");
+
+	/** Simulated device server, which answers "OK" to every line (unless
+	 * it is silent) */
+	static private class DeviceServer extends Thread {
+		private final Selector selector;
+		private final ServerSocketChannel server;
+		private final boolean silent;
+		private DeviceServer(boolean s) throws IOException {
+			super("Device server");
+			setDaemon(true);
+			silent = s;
+			selector = Selector.open();
+			server = ServerSocketChannel.open();
+			server.bind(new InetSocketAddress("127.0.0.1", 0),
+				4096);
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		}
+		private int getPort() throws IOException {
+			return ((InetSocketAddress) server.getLocalAddress())
+				.getPort();
+		}
+		@Override public void run() {
+			ByteBuffer buf = ByteBuffer.allocate(1024);
+			try {
+				while (true) {
+					selector.select();
+					Iterator<SelectionKey> it = selector
+						.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey k = it.next();
+						it.remove();
+						handleKey(k, buf);
+					}
+				}
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		private void handleKey(SelectionKey k, ByteBuffer buf)
+			throws IOException
+		{
+			if (k.isAcceptable()) {
+				SocketChannel c = server.accept();
+				if (c != null) {
+					c.configureBlocking(false);
+					c.register(selector,
+						SelectionKey.OP_READ);
+				}
+			} else if (k.isReadable()) {
+				SocketChannel c = (SocketChannel) k.channel();
+				buf.clear();
+				int n;
+				try {
+					n = c.read(buf);
+				}
+				catch (IOException e) {
+					n = -1;
+				}
+				if (n < 0) {
+					k.cancel();
+					c.close();
+					return;
+				}
+				if (silent)
+					return;
+				int lines = 0;
+				for (int i = 0; i < n; i++) {
+					if (buf.get(i) == '\n')
+						lines++;
+				}
+				for (int i = 0; i < lines; i++) {
+					ByteBuffer r = ByteBuffer.wrap(
+						"OK\n".getBytes("US-ASCII"));
+					while (r.hasRemaining())
+						c.write(r);
+				}
+			}
+		}
+	}
+
+	/** Property for soak operations */
+	static private class SoakProperty extends ControllerProperty {
+		@Override public void encodeQuery(ControllerImpl c,
+			OutputStream os) throws IOException
+		{
+			os.write("QUERY\n".getBytes("US-ASCII"));
+			os.flush();
+		}
+		@Override public void decodeQuery(ControllerImpl c,
+			InputStream is) throws IOException
+		{
+			BufferedReader r = new BufferedReader(
+				new InputStreamReader(is, "US-ASCII"), 1);
+			String line = r.readLine();
+			if (!"OK".equals(line))
+				throw new ParsingException("BAD: " + line);
+		}
+	}
+
+	/** Line protocol message */
+	static private class SoakMessage implements CommMessage<SoakProperty> {
+		private final OutputStream os;
+		private final InputStream is;
+		private final ArrayList<SoakProperty> props =
+			new ArrayList<SoakProperty>();
+		private SoakMessage(Messenger m, ControllerImpl c)
+			throws IOException
+		{
+			os = m.getOutputStream(c);
+			is = m.getInputStream("", c);
+		}
+		public void add(SoakProperty p) {
+			props.add(p);
+		}
+		public void queryProps() throws IOException {
+			for (SoakProperty p: props) {
+				p.encodeQuery(null, os);
+				p.decodeQuery(null, is);
+			}
+		}
+		public void storeProps() throws IOException {
+			queryProps();
+		}
+		public void logQuery(SoakProperty p) { }
+		public void logStore(SoakProperty p) { }
+		public void logError(String m) { }
+	}
+
+	/** Soak comm thread */
+	static private class SoakThread extends CommThread<SoakProperty> {
+		private SoakThread(SoakPoller p, URI s, String u, int rt) {
+			super(p, p.getQueue(), s, u, rt, 0, SOAK_LOG);
+		}
+		@Override protected CommMessage<SoakProperty> createCommMessage(
+			Messenger m, OpController<SoakProperty> o)
+			throws IOException
+		{
+			return new SoakMessage(m, o.getController());
+		}
+	}
+
+	/** Soak poller */
+	static private class SoakPoller extends ThreadedPoller<SoakProperty> {
+		private SoakPoller(CommLink link) {
+			super(link, URI.create("tcp:/"), SOAK_LOG);
+		}
+		private OpQueue<SoakProperty> getQueue() {
+			return queue;
+		}
+		@Override protected CommThread<SoakProperty> createCommThread(
+			String u, int rt, int nrd)
+		{
+			return new SoakThread(this, scheme, u, rt);
+		}
+		private void poll(OpSoak op) {
+			addOp(op);
+		}
+	}
+
+	/** Poll latency samples (ms) */
+	static private final ConcurrentLinkedQueue<Long> LATENCY =
+		new ConcurrentLinkedQueue<Long>();
+
+	/** Number of failed operations */
+	static private volatile int n_failed = 0;
+
+	/** Soak operation */
+	static private class OpSoak extends OpController<SoakProperty> {
+		private final long queued = System.nanoTime();
+		private OpSoak(ControllerImpl c) {
+			super(PriorityLevel.DEVICE_DATA, c, c.getName());
+		}
+		@Override protected Phase<SoakProperty> phaseOne() {
+			return new Query();
+		}
+		private class Query extends Phase<SoakProperty> {
+			protected Phase<SoakProperty> poll(
+				CommMessage<SoakProperty> mess)
+				throws IOException
+			{
+				mess.add(new SoakProperty());
+				mess.queryProps();
+				return null;
+			}
+		}
+		@Override public void handleCommError(EventType et,
+			String msg)
+		{
+			setFailed();
+		}
+		@Override public void cleanup() {
+			if (isSuccess()) {
+				long ns = System.nanoTime() - queued;
+				LATENCY.add(ns / 1000000);
+			} else
+				n_failed++;
+		}
+	}
+
+	/** Create a proxy for an interface with fixed attribute values */
+	static private <T> T createProxy(Class<T> c, final Object... kv) {
+		InvocationHandler h = new InvocationHandler() {
+			public Object invoke(Object p, Method m, Object[] a) {
+				for (int i = 0; i < kv.length; i += 2) {
+					if (m.getName().equals(kv[i]))
+						return kv[i + 1];
+				}
+				Class<?> r = m.getReturnType();
+				if (r == int.class)
+					return 0;
+				if (r == boolean.class)
+					return false;
+				return null;
+			}
+		};
+		return c.cast(Proxy.newProxyInstance(c.getClassLoader(),
+			new Class<?>[] { c }, h));
+	}
+
+	/** Create a controller without a database */
+	static private ControllerImpl createController(String n)
+		throws Exception
+	{
+		Constructor<ControllerImpl> c = ControllerImpl.class
+			.getDeclaredConstructor(String.class, CabinetImpl.class,
+			CommLink.class, short.class, int.class, String.class,
+			String.class, Date.class, String.class);
+		c.setAccessible(true);
+		return c.newInstance(n, null, null, (short) 1, 0, "", "", null,
+			"");
+	}
+
+	/** Thread count sampler */
+	static private class ThreadSampler extends Thread {
+		private volatile int peak = 0;
+		private volatile int peak_connect = 0;
+		private volatile int peak_timeout = 0;
+		private ThreadSampler() {
+			super("Thread sampler");
+			setDaemon(true);
+		}
+		@Override public void run() {
+			ThreadMXBean tb = ManagementFactory.getThreadMXBean();
+			while (true) {
+				int n_connect = 0;
+				int n_timeout = 0;
+				for (ThreadInfo ti: tb.getThreadInfo(
+					tb.getAllThreadIds()))
+				{
+					String n = (ti != null)
+					         ? ti.getThreadName()
+					         : "";
+					if (n.startsWith("Comm connect"))
+						n_connect++;
+					if (n.startsWith("Comm timeout"))
+						n_timeout++;
+				}
+				peak = Math.max(peak, tb.getThreadCount());
+				peak_connect = Math.max(peak_connect,
+					n_connect);
+				peak_timeout = Math.max(peak_timeout,
+					n_timeout);
+				try {
+					Thread.sleep(50);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/** Get a closed port on localhost */
+	static private int getClosedPort() throws IOException {
+		try (ServerSocket ss = new ServerSocket(0)) {
+			return ss.getLocalPort();
+		}
+	}
+
+	/** Get resident set size (kB) */
+	static private String getRss() throws IOException {
+		for (String l: Files.readAllLines(Paths.get(
+			"/proc/self/status")))
+		{
+			if (l.startsWith("VmRSS:"))
+				return l.substring(6).trim();
+		}
+		return "?";
+	}
+
+	/** Get a latency percentile */
+	static private long percentile(long[] s, double p) {
+		if (s.length == 0)
+			return 0;
+		int i = (int) Math.min(s.length - 1, p * s.length);
+		return s[i];
+	}
+
+	/** Run the soak test */
+	static public void main(String[] args) throws Exception {
+		int n_links = (args.length > 0) ? Integer.parseInt(args[0])
+		                                : 2000;
+		int n_pool = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+		int dur_sec = (args.length > 2) ? Integer.parseInt(args[2])
+		                                : 60;
+		int period_ms = (args.length > 3) ? Integer.parseInt(args[3])
+		                                  : 1000;
+		int n_dead = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+		int n_unreach = (args.length > 5) ? Integer.parseInt(args[5])
+		                                  : 0;
+		Properties props = new Properties();
+		props.setProperty("comm.pool.threads", "" + n_pool);
+		if (args.length > 6)
+			props.setProperty("comm.pool.lane.threads", args[6]);
+		CommPool.initialize(props);
+		DeviceServer server = new DeviceServer(false);
+		server.start();
+		DeviceServer dead = new DeviceServer(true);
+		dead.start();
+		String uri = "127.0.0.1:" + server.getPort();
+		String dead_uri = "127.0.0.1:" + dead.getPort();
+		String unreach_uri = "127.0.0.1:" + getClosedPort();
+		CommConfig cc = createProxy(CommConfig.class,
+			"getTimeoutMs", 2000);
+		SoakPoller[] pollers = new SoakPoller[n_links];
+		ControllerImpl[] ctrls = new ControllerImpl[n_links];
+		for (int i = 0; i < n_links; i++) {
+			String n = "soak" + i;
+			String u = uri;
+			if (i < n_dead)
+				u = dead_uri;
+			else if (i < n_dead + n_unreach)
+				u = unreach_uri;
+			CommLink link = createProxy(CommLink.class,
+				"getName", n, "getUri", u, "getCommConfig", cc);
+			pollers[i] = new SoakPoller(link);
+			ctrls[i] = createController(n + "_1");
+		}
+		System.out.println("links: " + n_links + ", pool: " + n_pool +
+			", dead: " + n_dead + ", unreachable: " + n_unreach);
+		ThreadSampler sampler = new ThreadSampler();
+		sampler.start();
+		long end = System.currentTimeMillis() + dur_sec * 1000L;
+		int peak_cq = 0;
+		int peak_tq = 0;
+		while (System.currentTimeMillis() < end) {
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < n_links; i++)
+				pollers[i].poll(new OpSoak(ctrls[i]));
+			peak_cq = Math.max(peak_cq,
+				CommPool.getConnectQueueSize());
+			peak_tq = Math.max(peak_tq,
+				CommPool.getTimeoutQueueSize());
+			long e = System.currentTimeMillis() - start;
+			Thread.sleep(Math.max(0, period_ms - e));
+		}
+		// Let the last operations finish
+		Thread.sleep(period_ms);
+		long[] s = new long[LATENCY.size()];
+		int i = 0;
+		for (Long l: LATENCY) {
+			if (i < s.length)
+				s[i++] = l;
+		}
+		Arrays.sort(s);
+		System.out.println("threads: " + ManagementFactory
+			.getThreadMXBean().getThreadCount() + ", peak: " +
+			sampler.peak);
+		System.out.println("connect lane peak: " +
+			sampler.peak_connect + ", queue peak: " + peak_cq);
+		System.out.println("timeout lane peak: " +
+			sampler.peak_timeout + ", queue peak: " + peak_tq);
+		System.out.println("rss: " + getRss());
+		System.out.println("polls: " + s.length + ", failed: " +
+			n_failed);
+		System.out.println("latency ms: p50=" + percentile(s, 0.5) +
+			", p99=" + percentile(s, 0.99) + ", max=" +
+			percentile(s, 1));
+		for (SoakPoller p: pollers)
+			p.destroy();
+	}
+}
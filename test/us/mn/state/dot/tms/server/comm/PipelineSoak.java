@@ -0,0 +1,314 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import us.mn.state.dot.sched.DebugLog;
+import us.mn.state.dot.tms.CommConfig;
+import us.mn.state.dot.tms.CommLink;
+import us.mn.state.dot.tms.CommProtocol;
+import us.mn.state.dot.tms.EventType;
+import us.mn.state.dot.tms.server.CabinetImpl;
+import us.mn.state.dot.tms.server.ControllerImpl;
+import us.mn.state.dot.tms.server.comm.mndot.MndotProperty;
+
+/**
+ * Soak test for pipelined polling of a multi-drop link.  A simulated line of
+ * MnDOT 170 controllers answers each request after a fixed turnaround delay.
+ * One operation is queued for every drop each poll period, and the time to
+ * complete each poll cycle is reported.
+ *
+ * Usage: PipelineSoak [depth] [drops] [phases] [turnaround_ms] [cycles]
+ *                     [period_sec]
+ *
+ * @author Douglas Lau
+ */
+public class PipelineSoak {
+
+	/** Debug log for soak pollers */
+	static private final DebugLog SOAK_LOG = new DebugLog("soak");
+
+	/** Payload bytes in each response */
+	static private final int PAYLOAD = 72;
+
+	/** Simulated line of controllers, which answers every request after
+	 * a turnaround delay */
+	static private class DropServer extends Thread {
+		private final ServerSocket server;
+		private final int turnaround_ms;
+		private final ScheduledExecutorService timer =
+			Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory()
+		{
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Drop timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		private DropServer(int t) throws IOException {
+			super("Drop server");
+			setDaemon(true);
+			server = new ServerSocket(0);
+			turnaround_ms = t;
+		}
+		private int getPort() {
+			return server.getLocalPort();
+		}
+		@Override public void run() {
+			try {
+				while (true) {
+					Socket s = server.accept();
+					s.setTcpNoDelay(true);
+					serve(s);
+				}
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		private void serve(final Socket s) {
+			Thread t = new Thread("Drop line") {
+				@Override public void run() {
+					try {
+						answer(s);
+					}
+					catch (IOException e) {
+						// link closed
+					}
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+		private void answer(Socket s) throws IOException {
+			DataInputStream is = new DataInputStream(
+				s.getInputStream());
+			final OutputStream os = s.getOutputStream();
+			while (true) {
+				byte[] header = new byte[2];
+				is.readFully(header);
+				byte[] rest = new byte[header[1] + 1];
+				is.readFully(rest);
+				final byte[] resp = response(header[0] & 0xF0);
+				timer.schedule(new Runnable() {
+					public void run() {
+						try {
+							synchronized (os) {
+								os.write(resp);
+								os.flush();
+							}
+						}
+						catch (IOException e) {
+							// link closed
+						}
+					}
+				}, turnaround_ms, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/** Create a response packet with OK status */
+	static private byte[] response(int drop_stat) {
+		byte[] pkt = new byte[3 + PAYLOAD];
+		pkt[0] = (byte) drop_stat;
+		pkt[1] = (byte) PAYLOAD;
+		pkt[pkt.length - 1] = checksum(pkt);
+		return pkt;
+	}
+
+	/** Calculate the checksum of a packet */
+	static private byte checksum(byte[] pkt) {
+		byte xsum = 0;
+		for (int i = 0; i < pkt.length - 1; i++)
+			xsum ^= pkt[i];
+		return xsum;
+	}
+
+	/** Property with MnDOT 170 framing */
+	static private class SoakProperty extends ControllerProperty {
+		@Override public void encodeQuery(ControllerImpl c,
+			OutputStream os) throws IOException
+		{
+			byte[] pkt = new byte[3];
+			pkt[0] = (byte) (c.getDrop() << 4);
+			pkt[2] = checksum(pkt);
+			os.write(pkt);
+		}
+		@Override public void decodeQuery(ControllerImpl c,
+			InputStream is) throws IOException
+		{
+			byte[] header = recvResponse(is, 2);
+			if ((header[0] & 0xFF) >> 4 != c.getDrop())
+				throw new ParsingException("DROP MISMATCH");
+			recvResponse(is, header[1] + 1);
+		}
+	}
+
+	/** Soak poller */
+	static private class SoakPoller extends ThreadedPoller<SoakProperty> {
+		private SoakPoller(CommLink link) {
+			super(link, URI.create("tcp:/"), SOAK_LOG);
+		}
+		@Override protected ResponseFramer getFramer() {
+			return MndotProperty.createFramer(
+				CommProtocol.MNDOT_4);
+		}
+		private void poll(OpSoak op) {
+			addOp(op);
+		}
+	}
+
+	/** Number of failed operations */
+	static private volatile int n_failed = 0;
+
+	/** Soak operation, with one query per phase */
+	static private class OpSoak extends OpController<SoakProperty> {
+		private final int n_phases;
+		private final CountDownLatch done;
+		private OpSoak(ControllerImpl c, int n, CountDownLatch d) {
+			super(PriorityLevel.DEVICE_DATA, c, c.getName());
+			n_phases = n;
+			done = d;
+		}
+		@Override protected Phase<SoakProperty> phaseOne() {
+			return new Query(1);
+		}
+		private class Query extends Phase<SoakProperty> {
+			private final int phase;
+			private Query(int p) {
+				phase = p;
+			}
+			protected Phase<SoakProperty> poll(
+				CommMessage<SoakProperty> mess)
+				throws IOException
+			{
+				mess.add(new SoakProperty());
+				mess.queryProps();
+				return (phase < n_phases)
+				      ? new Query(phase + 1)
+				      : null;
+			}
+		}
+		@Override public void handleCommError(EventType et,
+			String msg)
+		{
+			setFailed();
+		}
+		@Override public void cleanup() {
+			if (!isSuccess())
+				n_failed++;
+			done.countDown();
+		}
+	}
+
+	/** Create a proxy for an interface with fixed attribute values */
+	static private <T> T createProxy(Class<T> c, final Object... kv) {
+		InvocationHandler h = new InvocationHandler() {
+			public Object invoke(Object p, Method m, Object[] a) {
+				for (int i = 0; i < kv.length; i += 2) {
+					if (m.getName().equals(kv[i]))
+						return kv[i + 1];
+				}
+				Class<?> r = m.getReturnType();
+				if (r == int.class)
+					return 0;
+				if (r == boolean.class)
+					return false;
+				return null;
+			}
+		};
+		return c.cast(Proxy.newProxyInstance(c.getClassLoader(),
+			new Class<?>[] { c }, h));
+	}
+
+	/** Create a controller without a database */
+	static private ControllerImpl createController(String n, int drop)
+		throws Exception
+	{
+		Constructor<ControllerImpl> c = ControllerImpl.class
+			.getDeclaredConstructor(String.class, CabinetImpl.class,
+			CommLink.class, short.class, int.class, String.class,
+			String.class, Date.class, String.class);
+		c.setAccessible(true);
+		return c.newInstance(n, null, null, (short) drop, 0, "", "",
+			null, "");
+	}
+
+	/** Run the soak test */
+	static public void main(String[] args) throws Exception {
+		int depth = (args.length > 0) ? Integer.parseInt(args[0]) : 1;
+		int n_drops = (args.length > 1) ? Integer.parseInt(args[1])
+		                                : 15;
+		int n_phases = (args.length > 2) ? Integer.parseInt(args[2])
+		                                 : 4;
+		int turn_ms = (args.length > 3) ? Integer.parseInt(args[3])
+		                                : 80;
+		int n_cycles = (args.length > 4) ? Integer.parseInt(args[4])
+		                                 : 3;
+		int period_sec = (args.length > 5) ? Integer.parseInt(args[5])
+		                                   : 30;
+		DropServer server = new DropServer(turn_ms);
+		server.start();
+		String uri = "127.0.0.1:" + server.getPort();
+		CommConfig cc = createProxy(CommConfig.class,
+			"getTimeoutMs", 2000, "getPipelineDepth", depth);
+		CommLink link = createProxy(CommLink.class, "getName", "soak",
+			"getUri", uri, "getCommConfig", cc);
+		SoakPoller poller = new SoakPoller(link);
+		ControllerImpl[] ctrls = new ControllerImpl[n_drops];
+		for (int i = 0; i < n_drops; i++)
+			ctrls[i] = createController("soak_" + (i + 1), i + 1);
+		System.out.println("depth: " + depth + ", drops: " + n_drops +
+			", phases: " + n_phases + ", turnaround: " + turn_ms +
+			" ms");
+		long total = 0;
+		long max = 0;
+		for (int c = 0; c < n_cycles; c++) {
+			long start = System.currentTimeMillis();
+			CountDownLatch done = new CountDownLatch(n_drops);
+			for (int i = 0; i < n_drops; i++) {
+				poller.poll(new OpSoak(ctrls[i], n_phases,
+					done));
+			}
+			done.await(period_sec, TimeUnit.SECONDS);
+			long ms = System.currentTimeMillis() - start;
+			System.out.println("cycle " + (c + 1) + ": " + ms +
+				" ms");
+			total += ms;
+			max = Math.max(max, ms);
+			Thread.sleep(Math.max(0, period_sec * 1000L - ms));
+		}
+		System.out.println("cycle ms: mean=" + (total / n_cycles) +
+			", max=" + max + ", failed: " + n_failed);
+		poller.destroy();
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.util.Date;
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.CommLink;
+import us.mn.state.dot.tms.server.CabinetImpl;
+import us.mn.state.dot.tms.server.ControllerImpl;
+
+/**
+ * Pipelined messenger tests
+ *
+ * @author Douglas Lau
+ */
+public class PipelinedMessengerTest extends TestCase {
+
+	/** Framer for two-byte frames: drop, value */
+	static private final ResponseFramer FRAMER = new ResponseFramer() {
+		public byte[] readFrame(InputStream is) throws IOException {
+			byte[] frame = new byte[2];
+			readFully(is, frame, 0);
+			return frame;
+		}
+		public int getDrop(byte[] frame) {
+			return frame[0];
+		}
+	};
+
+	/** Fake messenger with fixed input */
+	static private class FakeMessenger extends Messenger {
+		private final InputStream input;
+		private final ByteArrayOutputStream output =
+			new ByteArrayOutputStream();
+		private FakeMessenger(byte[] in) {
+			input = new ByteArrayInputStream(in);
+		}
+		public void close() { }
+		public InputStream getInputStream(String path) {
+			return input;
+		}
+		public OutputStream getOutputStream(ControllerImpl c) {
+			return output;
+		}
+		public void drain() { }
+	}
+
+	/** Create a controller without a database */
+	static private ControllerImpl createController(int drop)
+		throws Exception
+	{
+		Constructor<ControllerImpl> c = ControllerImpl.class
+			.getDeclaredConstructor(String.class, CabinetImpl.class,
+			CommLink.class, short.class, int.class, String.class,
+			String.class, Date.class, String.class);
+		c.setAccessible(true);
+		return c.newInstance("ctl_" + drop, null, null, (short) drop,
+			0, "", "", null, "");
+	}
+
+	public PipelinedMessengerTest(String name) {
+		super(name);
+	}
+
+	public void testOutOfOrder() throws Exception {
+		FakeMessenger fm = new FakeMessenger(new byte[] {
+			2, 20, 3, 30, 1, 10, 2, 21
+		});
+		PipelinedMessenger pm = new PipelinedMessenger(fm, FRAMER,
+			100);
+		ControllerImpl c1 = createController(1);
+		ControllerImpl c2 = createController(2);
+		ControllerImpl c3 = createController(3);
+		InputStream is1 = pm.getInputStream("", c1);
+		InputStream is2 = pm.getInputStream("", c2);
+		InputStream is3 = pm.getInputStream("", c3);
+		assertEquals(1, is1.read());
+		assertEquals(10, is1.read());
+		assertEquals(3, is3.read());
+		assertEquals(30, is3.read());
+		assertEquals(2, is2.read());
+		assertEquals(20, is2.read());
+		assertEquals(2, is2.read());
+		assertEquals(21, is2.read());
+	}
+
+	public void testFrameBoundary() throws Exception {
+		FakeMessenger fm = new FakeMessenger(new byte[] {
+			1, 10, 1, 11
+		});
+		PipelinedMessenger pm = new PipelinedMessenger(fm, FRAMER,
+			100);
+		InputStream is = pm.getInputStream("", createController(1));
+		byte[] buf = new byte[4];
+		assertEquals(2, is.read(buf, 0, 4));
+		assertEquals(2, is.read(buf, 2, 2));
+		assertEquals(11, buf[3]);
+	}
+
+	public void testWriteRequest() throws Exception {
+		FakeMessenger fm = new FakeMessenger(new byte[0]);
+		PipelinedMessenger pm = new PipelinedMessenger(fm, FRAMER,
+			100);
+		OutputStream os = pm.getOutputStream(createController(1));
+		os.write(new byte[] { 1, 2, 3 });
+		assertEquals(0, fm.output.size());
+		os.flush();
+		assertEquals(3, fm.output.size());
+	}
+
+	public void testStaleFrames() throws Exception {
+		FakeMessenger fm = new FakeMessenger(new byte[] {
+			2, 20, 1, 10
+		});
+		PipelinedMessenger pm = new PipelinedMessenger(fm, FRAMER,
+			100);
+		ControllerImpl c1 = createController(1);
+		ControllerImpl c2 = createController(2);
+		InputStream is1 = pm.getInputStream("", c1);
+		assertEquals(1, is1.read());
+		// New request to drop 2 discards its unread frame
+		OutputStream os = pm.getOutputStream(c2);
+		os.write(2);
+		os.flush();
+		InputStream is2 = pm.getInputStream("", c2);
+		try {
+			is2.read();
+			fail("timeout");
+		}
+		catch (IOException e) {
+			// end of stream or timeout
+		}
+	}
+}
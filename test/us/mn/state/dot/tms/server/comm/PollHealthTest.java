@@ -0,0 +1,96 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm;
+
+import junit.framework.TestCase;
+
+/**
+ * Poll health tests
+ *
+ * @author Douglas Lau
+ */
+public class PollHealthTest extends TestCase {
+
+	/** Poll period (seconds) */
+	static private final int PERIOD = 30;
+
+	/** Long poll period (seconds) */
+	static private final int LONG_PERIOD = 3600;
+
+	public PollHealthTest(String name) {
+		super(name);
+	}
+
+	/** Poll every period for a number of periods, and return a string
+	 * with 'P' for each poll and '.' for each skipped period */
+	private String pollPeriods(PollHealth ph, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 1; i <= n; i++) {
+			long now = i * PERIOD * 1000L;
+			boolean p = ph.checkPoll(PERIOD, false, now);
+			sb.append(p ? 'P' : '.');
+		}
+		return sb.toString();
+	}
+
+	public void testHealthy() {
+		PollHealth ph = new PollHealth();
+		ph.recordResult(true);
+		assertEquals("PPPPPPPP", pollPeriods(ph, 8));
+	}
+
+	public void testBackoff() {
+		PollHealth ph = new PollHealth();
+		ph.recordResult(false);
+		assertTrue(ph.isFailing());
+		// 1, 2, 4, 8 periods, then limited to 10 (5 minutes)
+		assertEquals("PP.P...P.......P.........P",
+			pollPeriods(ph, 26));
+	}
+
+	public void testRecover() {
+		PollHealth ph = new PollHealth();
+		ph.recordResult(false);
+		assertEquals("PP.P...", pollPeriods(ph, 7));
+		ph.recordResult(true);
+		assertFalse(ph.isFailing());
+		assertTrue(ph.checkPoll(PERIOD, false, 8 * PERIOD * 1000L));
+	}
+
+	public void testLongPoll() {
+		PollHealth ph = new PollHealth();
+		ph.recordResult(false);
+		// Long polls don't delay short polls
+		assertTrue(ph.checkPoll(LONG_PERIOD, true, 0));
+		assertEquals("PP.P...P.......P.........P",
+			pollPeriods(ph, 26));
+		// Short polls don't raise the long poll backoff
+		assertFalse(ph.checkPoll(LONG_PERIOD, true, 1000L *
+			LONG_PERIOD / 4));
+		assertTrue(ph.checkPoll(LONG_PERIOD, true, 1000L *
+			LONG_PERIOD));
+		assertTrue(ph.checkPoll(LONG_PERIOD, true, 2000L *
+			LONG_PERIOD));
+	}
+
+	public void testRtt() {
+		PollHealth ph = new PollHealth();
+		assertEquals(-1, ph.getRtt());
+		ph.recordRtt(100);
+		assertEquals(100, ph.getRtt());
+		ph.recordRtt(180);
+		assertEquals(110, ph.getRtt());
+	}
+}
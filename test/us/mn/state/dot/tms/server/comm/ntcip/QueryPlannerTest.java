@@ -0,0 +1,199 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.ntcip;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.server.comm.CommMessage;
+import us.mn.state.dot.tms.server.comm.QueryHints;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Integer;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Object;
+import us.mn.state.dot.tms.server.comm.snmp.MIBNode;
+import us.mn.state.dot.tms.server.comm.snmp.NoSuchName;
+import us.mn.state.dot.tms.server.comm.snmp.TooBig;
+
+/**
+ * Query planner tests
+ *
+ * @author Douglas Lau
+ */
+public class QueryPlannerTest extends TestCase {
+
+	/** Root node for test objects */
+	static private final MIBNode ROOT = MIBNode.root(
+		new int[] { 1, 3, 6, 1, 4, 1, 1206, 4, 2, 3 }, "test");
+
+	/** Node for supported objects */
+	static private final MIBNode NODE = ROOT.child(1, "node");
+
+	/** Node for unsupported objects */
+	static private final MIBNode MISSING = ROOT.child(2, "missing");
+
+	/** Fake message, with a limited number of objects */
+	static private class Message implements CommMessage<ASN1Object> {
+		private final int max_objs;
+		private final ArrayList<ASN1Object> objs =
+			new ArrayList<ASN1Object>();
+		private Message(int m) {
+			max_objs = m;
+		}
+		public void add(ASN1Object o) {
+			objs.add(o);
+		}
+		public void queryProps() throws IOException {
+			if (objs.size() > max_objs)
+				throw new TooBig();
+			for (ASN1Object o: objs) {
+				if (o.getName().equals(MISSING.getName()))
+					throw new NoSuchName(o.getName());
+			}
+		}
+		public void storeProps() { }
+		public void logQuery(ASN1Object o) { }
+		public void logStore(ASN1Object o) { }
+		public void logError(String m) { }
+	}
+
+	/** Test group, which counts responses */
+	private class Group extends QueryPlanner.Group {
+		private Group(ASN1Object... o) {
+			super(o);
+		}
+		protected void done() {
+			n_done++;
+		}
+		protected void noSuchName(NoSuchName e) {
+			n_missing++;
+		}
+	}
+
+	/** Query hints for the controller */
+	private QueryHints hints;
+
+	/** Number of groups done */
+	private int n_done;
+
+	/** Number of groups missing */
+	private int n_missing;
+
+	public QueryPlannerTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() {
+		hints = new QueryHints();
+		n_done = 0;
+		n_missing = 0;
+	}
+
+	/** Add groups of supported objects */
+	private void addGroups(QueryPlanner plan, int n_groups, int n_objs) {
+		for (int i = 0; i < n_groups; i++) {
+			ASN1Object[] objs = new ASN1Object[n_objs];
+			for (int j = 0; j < n_objs; j++)
+				objs[j] = new ASN1Integer(NODE, i * n_objs + j);
+			plan.add(new Group(objs));
+		}
+	}
+
+	/** Query all groups of a plan */
+	private void query(QueryPlanner plan, int max_objs)
+		throws IOException
+	{
+		for (int i = 0; i < 100 && !plan.isDone(); i++)
+			plan.poll(new Message(max_objs));
+		assertTrue(plan.isDone());
+	}
+
+	public void testPacking() throws IOException {
+		QueryPlanner plan = new QueryPlanner(hints);
+		addGroups(plan, 10, 3);
+		query(plan, 100);
+		assertEquals(10, n_done);
+		// 5 groups (15 objects) fit within the default limit
+		assertEquals(2, plan.getRequests());
+		assertEquals(8, plan.getSaved());
+	}
+
+	public void testTooBig() throws IOException {
+		QueryPlanner plan = new QueryPlanner(hints);
+		addGroups(plan, 10, 3);
+		query(plan, 7);
+		assertEquals(10, n_done);
+		assertEquals(7, hints.getLimit(QueryPlanner.DEFAULT_LIMIT));
+		// Learned limit is used for the next plan
+		plan = new QueryPlanner(hints);
+		addGroups(plan, 10, 3);
+		query(plan, 7);
+		assertEquals(5, plan.getRequests());
+	}
+
+	public void testTooBigGroup() throws IOException {
+		QueryPlanner plan = new QueryPlanner(hints);
+		addGroups(plan, 1, 8);
+		try {
+			query(plan, 4);
+			fail("TooBig");
+		}
+		catch (TooBig e) {
+			// expected
+		}
+	}
+
+	public void testNoSuchName() throws IOException {
+		QueryPlanner plan = new QueryPlanner(hints);
+		addGroups(plan, 2, 2);
+		plan.add(new Group(new ASN1Integer(MISSING, 1)));
+		addGroups(plan, 2, 2);
+		query(plan, 100);
+		assertEquals(4, n_done);
+		assertEquals(1, n_missing);
+		// Failed request, missing group alone, then the others
+		assertEquals(3, plan.getRequests());
+		// Missing group is queried alone from the start next time
+		plan = new QueryPlanner(hints);
+		addGroups(plan, 2, 2);
+		plan.add(new Group(new ASN1Integer(MISSING, 1)));
+		addGroups(plan, 2, 2);
+		query(plan, 100);
+		assertEquals(8, n_done);
+		assertEquals(2, n_missing);
+		assertEquals(2, plan.getRequests());
+		// Hints are cleared (comm config or firmware change)
+		hints.clear();
+		plan = new QueryPlanner(hints);
+		plan.add(new Group(new ASN1Integer(MISSING, 1)));
+		addGroups(plan, 2, 2);
+		query(plan, 100);
+		assertEquals(3, plan.getRequests());
+	}
+
+	public void testNoSuchNameDefault() throws IOException {
+		QueryPlanner plan = new QueryPlanner(hints);
+		addGroups(plan, 2, 2);
+		plan.add(new QueryPlanner.Group(new ASN1Integer(MISSING, 1)) {
+			protected void done() { }
+		});
+		try {
+			query(plan, 100);
+			fail("NoSuchName");
+		}
+		catch (NoSuchName e) {
+			assertEquals(MISSING.getName(), e.getName());
+		}
+	}
+}
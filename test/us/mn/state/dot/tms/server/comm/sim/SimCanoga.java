@@ -0,0 +1,117 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+/**
+ * Simulated line of Canoga vehicle detection cards.  Binary detection
+ * requests are answered with four detection events; other (ASCII) requests
+ * are echoed back, which is a valid acknowledgement.
+ *
+ * @author Douglas Lau
+ */
+public class SimCanoga extends SimProtocol {
+
+	/** Minimum request length */
+	static private final int MIN_LEN = 8;
+
+	/** Offset of drop address */
+	static private final int OFF_ADDRESS = 3;
+
+	/** Offset of message type */
+	static private final int OFF_MTYPE = 4;
+
+	/** Binary detection message type */
+	static private final byte BINARY_DETECTION = '*';
+
+	/** Number of detector inputs */
+	static private final int N_INPUTS = 4;
+
+	/** Bytes per detection event */
+	static private final int EVENT_LEN = 9;
+
+	/** Parse a hex digit */
+	static private int parseHex(byte b) {
+		if (b >= '0' && b <= '9')
+			return b - '0';
+		if (b >= 'A' && b <= 'F')
+			return 10 + b - 'A';
+		return -1;
+	}
+
+	/** Vehicle count of each input */
+	private final int[] count = new int[N_INPUTS];
+
+	/** Time of first detection event */
+	private final long start = System.currentTimeMillis();
+
+	/** Duration of each detection (ms) */
+	private int duration = 200;
+
+	/** Set the detection duration (response payload) */
+	public synchronized void setDuration(int d) {
+		duration = d;
+	}
+
+	/** Get the length of the first request in a stream buffer */
+	@Override
+	public int frameLength(byte[] buf, int len) {
+		if (buf[0] != '<')
+			return -1;
+		if (len < 3)
+			return 0;
+		int hi = parseHex(buf[1]);
+		int lo = parseHex(buf[2]);
+		if (hi < 0 || lo < 0 || (hi << 4 | lo) < MIN_LEN)
+			return -1;
+		int n = hi << 4 | lo;
+		return (len >= n) ? n : 0;
+	}
+
+	/** Get the drop address of a request */
+	@Override
+	public int getDrop(byte[] req) {
+		return req[OFF_ADDRESS] & 0xFF;
+	}
+
+	/** Create a response to a request */
+	@Override
+	public byte[] respond(byte[] req) {
+		if (req.length < MIN_LEN)
+			return null;
+		return (req[OFF_MTYPE] == BINARY_DETECTION)
+		      ? binaryDetection()
+		      : req;
+	}
+
+	/** Create a binary detection response, with one new vehicle on each
+	 * input */
+	private synchronized byte[] binaryDetection() {
+		int now = (int) (System.currentTimeMillis() - start);
+		byte[] res = new byte[N_INPUTS * EVENT_LEN + 1];
+		for (int i = 0; i < N_INPUTS; i++) {
+			int b = i * EVENT_LEN;
+			count[i]++;
+			format24(res, b, duration);
+			format32(res, b + 3, now - duration);
+			res[b + 7] = (byte) count[i];
+			res[b + 8] = 0;
+		}
+		byte xsum = 0;
+		for (byte r: res)
+			xsum ^= r;
+		res[res.length - 1] = xsum;
+		return res;
+	}
+}
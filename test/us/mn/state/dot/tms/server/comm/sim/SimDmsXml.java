@@ -0,0 +1,114 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * Simulated DMS-XML sensor server.  Each request element (XxxReqMsg) is
+ * answered with a response element (XxxRespMsg) which echoes the request
+ * values, marked valid, plus any values set for that message.
+ *
+ * @author Douglas Lau
+ */
+public class SimDmsXml extends SimProtocol {
+
+	/** Character set */
+	static private final Charset ASCII = Charset.forName("US-ASCII");
+
+	/** Message end tag */
+	static private final String END = "</DmsXml>";
+
+	/** Request message suffix */
+	static private final String REQ = "ReqMsg";
+
+	/** Response message suffix */
+	static private final String RESP = "RespMsg";
+
+	/** Get a string from bytes */
+	static private String string(byte[] buf, int len) {
+		return new String(buf, 0, len, ASCII);
+	}
+
+	/** Get the content of the first element with a tag */
+	static private String content(String msg, String tag) {
+		int s = msg.indexOf("<" + tag + ">");
+		int e = msg.indexOf("</" + tag + ">");
+		return (s >= 0 && e > s)
+		      ? msg.substring(s + tag.length() + 2, e)
+		      : null;
+	}
+
+	/** Extra response values for each message name */
+	private final HashMap<String, String> values =
+		new HashMap<String, String>();
+
+	/** Set a response value (payload) for one message.
+	 * @param msg Message name (without ReqMsg suffix).
+	 * @param name Element name.
+	 * @param value Element value. */
+	public synchronized void setValue(String msg, String name,
+		String value)
+	{
+		String v = values.get(msg);
+		values.put(msg, ((v != null) ? v : "") + "<" + name + ">" +
+			value + "</" + name + ">");
+	}
+
+	/** Get extra response values for a message */
+	private synchronized String getValues(String msg) {
+		String v = values.get(msg);
+		return (v != null) ? v : "";
+	}
+
+	/** Get the length of the first request in a stream buffer */
+	@Override
+	public int frameLength(byte[] buf, int len) {
+		int e = string(buf, len).indexOf(END);
+		return (e >= 0) ? e + END.length() : 0;
+	}
+
+	/** Get the drop address of a request */
+	@Override
+	public int getDrop(byte[] req) {
+		String a = content(string(req, req.length), "Address");
+		try {
+			return (a != null) ? Integer.parseInt(a.trim()) : -1;
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/** Create a response to a request */
+	@Override
+	public byte[] respond(byte[] req) {
+		String msg = content(string(req, req.length), "DmsXml");
+		if (msg == null || !msg.startsWith("<"))
+			return null;
+		int e = msg.indexOf('>');
+		String tag = msg.substring(1, e);
+		if (!tag.endsWith(REQ))
+			return null;
+		String name = tag.substring(0, tag.length() - REQ.length());
+		String body = content(msg, tag);
+		String res = "<DmsXml><" + name + RESP + ">" +
+			((body != null) ? body : "") +
+			"<IsValid>true</IsValid><ErrMsg></ErrMsg>" +
+			getValues(name) + "</" + name + RESP + "></DmsXml>";
+		return res.getBytes(ASCII);
+	}
+}
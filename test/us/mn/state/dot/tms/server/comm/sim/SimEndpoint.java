@@ -0,0 +1,135 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.util.HashSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simulated device endpoint listens on a loopback port.  Each request is
+ * answered after a latency delay, unless it is lost or addressed to a dead
+ * drop.
+ *
+ * @author Douglas Lau
+ */
+public class SimEndpoint {
+
+	/** Device protocol */
+	private final SimProtocol protocol;
+
+	/** Flag for UDP (datagram) endpoint */
+	private final boolean udp;
+
+	/** Local port */
+	private final int port;
+
+	/** Response latency (ms) */
+	private volatile int latency_ms = 0;
+
+	/** Random response jitter (ms) */
+	private volatile int jitter_ms = 0;
+
+	/** Probability of losing a request (0 - 1) */
+	private volatile double loss = 0;
+
+	/** Drops which never respond */
+	private final HashSet<Integer> dead = new HashSet<Integer>();
+
+	/** Count of requests received */
+	private final AtomicLong n_requests = new AtomicLong();
+
+	/** Count of responses sent */
+	private final AtomicLong n_responses = new AtomicLong();
+
+	/** Create a simulated endpoint */
+	SimEndpoint(SimProtocol p, boolean u, int pt) {
+		protocol = p;
+		udp = u;
+		port = pt;
+	}
+
+	/** Get the device protocol */
+	public SimProtocol getProtocol() {
+		return protocol;
+	}
+
+	/** Get the URI of the endpoint */
+	public String getUri() {
+		return (udp ? "udp" : "tcp") + "://127.0.0.1:" + port;
+	}
+
+	/** Set the response latency.
+	 * @param ms Fixed latency (ms).
+	 * @param j Random jitter added to latency (ms). */
+	public void setLatency(int ms, int j) {
+		latency_ms = ms;
+		jitter_ms = j;
+	}
+
+	/** Set the probability of losing a request */
+	public void setLoss(double l) {
+		loss = l;
+	}
+
+	/** Set whether a drop is dead (never responds) */
+	public void setDead(int drop, boolean d) {
+		synchronized (dead) {
+			if (d)
+				dead.add(drop);
+			else
+				dead.remove(drop);
+		}
+	}
+
+	/** Check if a drop is dead */
+	private boolean isDead(int drop) {
+		synchronized (dead) {
+			return dead.contains(drop);
+		}
+	}
+
+	/** Get the count of requests received */
+	public long getRequests() {
+		return n_requests.get();
+	}
+
+	/** Get the count of responses sent */
+	public long getResponses() {
+		return n_responses.get();
+	}
+
+	/** Handle one request.
+	 * @return Response, or null if the request is lost. */
+	byte[] handle(byte[] req) {
+		n_requests.incrementAndGet();
+		if (loss > 0 && ThreadLocalRandom.current().nextDouble() < loss)
+			return null;
+		if (isDead(protocol.getDrop(req)))
+			return null;
+		byte[] res = protocol.respond(req);
+		if (res != null)
+			n_responses.incrementAndGet();
+		return res;
+	}
+
+	/** Get the delay before sending a response (ms) */
+	long getDelay() {
+		int j = jitter_ms;
+		return (j > 0)
+		      ? latency_ms + ThreadLocalRandom.current().nextInt(j)
+		      : latency_ms;
+	}
+}
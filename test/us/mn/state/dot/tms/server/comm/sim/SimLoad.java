@@ -0,0 +1,324 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import us.mn.state.dot.sonar.server.ServerNamespace;
+import us.mn.state.dot.tms.BaseHelper;
+import us.mn.state.dot.tms.CommLink;
+import us.mn.state.dot.tms.CommProtocol;
+import us.mn.state.dot.tms.CtrlCondition;
+import us.mn.state.dot.tms.SystemAttrEnum;
+import us.mn.state.dot.tms.SystemAttribute;
+import us.mn.state.dot.tms.server.BaseObjectImpl;
+import us.mn.state.dot.tms.server.CabinetImpl;
+import us.mn.state.dot.tms.server.CommConfigImpl;
+import us.mn.state.dot.tms.server.CommLinkImpl;
+import us.mn.state.dot.tms.server.ControllerImpl;
+import us.mn.state.dot.tms.server.SystemAttributeImpl;
+import us.mn.state.dot.tms.server.comm.DevicePoller;
+import us.mn.state.dot.tms.server.comm.PollMetrics;
+import us.mn.state.dot.tms.server.comm.SamplePoller;
+
+/**
+ * Load driver for simulated devices.  Comm links and controllers are created
+ * without a database, each link pointing at one simulated endpoint.  Every
+ * poll period, sample data is queried from all controllers, and poll cycle
+ * throughput, operation latency percentiles and server CPU time (excluding
+ * simulator threads) are reported.
+ *
+ * Usage: SimLoad [protocol] [links] [drops] [latency_ms] [loss] [cycles]
+ *                [period_sec] [pipeline_depth]
+ *
+ * Protocols: mndot, ntcip_udp, ntcip_tcp, ss125, canoga.  MnDOT 170 samples
+ * are only queried with a period of 30 or 300 seconds.  The DMS-XML
+ * simulator is not driven here, since its operations require sign objects.
+ * Pipelining is enabled with a pipeline depth greater than 1.
+ *
+ * @author Douglas Lau
+ */
+public class SimLoad {
+
+	/** Comm config timeout (ms) */
+	static private final int TIMEOUT_MS = 2000;
+
+	/** Long poll period (seconds) */
+	static private final int LONG_PERIOD_SEC = 300;
+
+	/** Time between checks for cycle completion (ms) */
+	static private final int CHECK_MS = 10;
+
+	/** Simulated protocol setup */
+	static private class Setup {
+		private final CommProtocol protocol;
+		private final SimProtocol sim;
+		private final boolean udp;
+		private final int max_drop;
+		private Setup(CommProtocol cp, SimProtocol s, boolean u,
+			int md)
+		{
+			protocol = cp;
+			sim = s;
+			udp = u;
+			max_drop = md;
+		}
+	}
+
+	/** Create a simulated protocol setup */
+	static private Setup createSetup(String p, int period) {
+		if ("mndot".equals(p)) {
+			return new Setup(CommProtocol.MNDOT_4,
+				new SimMndot(CommProtocol.MNDOT_4), false, 15);
+		}
+		if ("ntcip_udp".equals(p)) {
+			return new Setup(CommProtocol.NTCIP_A,
+				new SimNtcip(0), true, 65535);
+		}
+		if ("ntcip_tcp".equals(p)) {
+			return new Setup(CommProtocol.NTCIP_C,
+				new SimNtcip(0), false, 65535);
+		}
+		if ("ss125".equals(p)) {
+			return new Setup(CommProtocol.SS_125,
+				new SimSS125(period), false, 65535);
+		}
+		if ("canoga".equals(p)) {
+			return new Setup(CommProtocol.CANOGA,
+				new SimCanoga(), false, 15);
+		}
+		throw new IllegalArgumentException("Unknown protocol: " + p);
+	}
+
+	/** Initialize a namespace with default system attributes, and comm
+	 * events disabled (they cannot be stored without a database) */
+	static private void initNamespace() throws Exception {
+		ServerNamespace ns = new ServerNamespace();
+		ns.registerType(SystemAttribute.SONAR_TYPE,
+			SystemAttributeImpl.class);
+		BaseHelper.namespace = ns;
+		BaseObjectImpl.namespace = ns;
+		for (SystemAttrEnum sa: SystemAttrEnum.values()) {
+			SystemAttributeImpl a = new SystemAttributeImpl(
+				sa.aname());
+			ns.addObject(a);
+			a.setValue(sa == SystemAttrEnum.COMM_EVENT_ENABLE
+				? "false"
+				: sa.getDefault());
+		}
+	}
+
+	/** Create a comm config without a database */
+	static private CommConfigImpl createConfig(CommProtocol cp,
+		int period, int depth) throws Exception
+	{
+		Constructor<CommConfigImpl> c = CommConfigImpl.class
+			.getDeclaredConstructor(String.class, String.class,
+			short.class, boolean.class, int.class, int.class,
+			int.class, int.class, int.class, int.class);
+		c.setAccessible(true);
+		return c.newInstance("sim_config", "Simulated devices",
+			(short) cp.ordinal(), false, TIMEOUT_MS, period,
+			LONG_PERIOD_SEC, 0, 0, depth);
+	}
+
+	/** Create a comm link without a database */
+	static private CommLinkImpl createLink(String n, CommConfigImpl cc,
+		String uri) throws Exception
+	{
+		CommLinkImpl link = new CommLinkImpl(n);
+		// setCommConfig needs an existing comm config
+		Field f = CommLinkImpl.class.getDeclaredField("comm_config");
+		f.setAccessible(true);
+		f.set(link, cc);
+		link.setUri(uri);
+		link.setPollEnabled(true);
+		Method m = CommLinkImpl.class.getDeclaredMethod(
+			"recreatePoller");
+		m.setAccessible(true);
+		m.invoke(link);
+		return link;
+	}
+
+	/** Create a controller without a database */
+	static private ControllerImpl createController(String n,
+		CommLinkImpl link, int drop) throws Exception
+	{
+		Constructor<ControllerImpl> c = ControllerImpl.class
+			.getDeclaredConstructor(String.class, CabinetImpl.class,
+			CommLink.class, short.class, int.class, String.class,
+			String.class, Date.class, String.class);
+		c.setAccessible(true);
+		return c.newInstance(n, null, link, (short) drop,
+			CtrlCondition.ACTIVE.ordinal(), "", "", null, "");
+	}
+
+	/** Get total CPU time of server threads (ns) */
+	static private long serverCpu() {
+		ThreadMXBean tb = ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for (ThreadInfo ti: tb.getThreadInfo(tb.getAllThreadIds())) {
+			if (ti != null && !ti.getThreadName().startsWith(
+				SimServer.THREAD_PREFIX))
+			{
+				long t = tb.getThreadCpuTime(ti.getThreadId());
+				if (t > 0)
+					total += t;
+			}
+		}
+		return total;
+	}
+
+	/** Get an integer argument */
+	static private int intArg(String[] args, int i, int d) {
+		return (args.length > i) ? Integer.parseInt(args[i]) : d;
+	}
+
+	/** Run the load driver */
+	static public void main(String[] args) throws Exception {
+		String proto = (args.length > 0) ? args[0] : "mndot";
+		int n_links = intArg(args, 1, 100);
+		int n_drops = intArg(args, 2, 4);
+		int latency = intArg(args, 3, 20);
+		double loss = (args.length > 4)
+		            ? Double.parseDouble(args[4])
+		            : 0;
+		int n_cycles = intArg(args, 5, 5);
+		int period = intArg(args, 6, 30);
+		int depth = intArg(args, 7, 0);
+		initNamespace();
+		Setup setup = createSetup(proto, period);
+		n_drops = Math.min(n_drops, setup.max_drop);
+		SimServer server = new SimServer();
+		CommConfigImpl cc = createConfig(setup.protocol, period,
+			depth);
+		ArrayList<CommLinkImpl> links = new ArrayList<CommLinkImpl>();
+		ArrayList<ControllerImpl> ctrls =
+			new ArrayList<ControllerImpl>();
+		for (int i = 0; i < n_links; i++) {
+			SimEndpoint ep = setup.udp
+			               ? server.createUdp(setup.sim)
+			               : server.createTcp(setup.sim);
+			ep.setLatency(latency, latency / 4 + 1);
+			ep.setLoss(loss);
+			CommLinkImpl link = createLink("sim_" + i, cc,
+				ep.getUri());
+			links.add(link);
+			for (int d = 1; d <= n_drops; d++) {
+				ctrls.add(createController("sim_" + i + "_" + d,
+					link, d));
+			}
+		}
+		System.out.println(proto + ": " + n_links + " links, " +
+			ctrls.size() + " controllers, latency " + latency +
+			" ms, loss " + loss + ", period " + period + " s");
+		long total_ops = 0;
+		long total_ms = 0;
+		long total_cpu = 0;
+		for (int c = 1; c <= n_cycles; c++) {
+			long cpu = serverCpu();
+			long start = System.currentTimeMillis();
+			for (ControllerImpl ctrl: ctrls) {
+				DevicePoller dp = ctrl.getPoller();
+				if (dp instanceof SamplePoller) {
+					((SamplePoller) dp).querySamples(ctrl,
+						period);
+				}
+			}
+			long end = start + period * 1000L;
+			while (countOps(links) < ctrls.size() &&
+			       System.currentTimeMillis() < end)
+				Thread.sleep(CHECK_MS);
+			long ms = System.currentTimeMillis() - start;
+			cpu = (serverCpu() - cpu) / 1000000;
+			int ops = countOps(links);
+			System.out.println("cycle " + c + ": " +
+				reportCycle(links, ms, cpu));
+			total_ops += ops;
+			total_ms += ms;
+			total_cpu += cpu;
+			Thread.sleep(Math.max(0, end -
+				System.currentTimeMillis()));
+		}
+		System.out.println("total: " + total_ops + " ops, " +
+			(total_ops * 1000 / Math.max(1, total_ms)) +
+			" ops/s, cpu " + total_cpu + " ms (" +
+			(total_cpu * 100 / Math.max(1, total_ms)) + "%)");
+		for (CommLinkImpl link: links) {
+			DevicePoller dp = link.getPoller();
+			if (dp != null)
+				dp.destroy();
+		}
+		server.close();
+	}
+
+	/** Count completed operations on all links */
+	static private int countOps(ArrayList<CommLinkImpl> links) {
+		int ops = 0;
+		for (CommLinkImpl link: links) {
+			PollMetrics pm = getMetrics(link);
+			if (pm != null)
+				ops += pm.getOps();
+		}
+		return ops;
+	}
+
+	/** Get the poll metrics for a link */
+	static private PollMetrics getMetrics(CommLinkImpl link) {
+		DevicePoller dp = link.getPoller();
+		return (dp != null) ? dp.getMetrics() : null;
+	}
+
+	/** Report one poll cycle, and reset poll metrics.
+	 * @param links All comm links.
+	 * @param ms Time to complete the cycle (ms).
+	 * @param cpu Server CPU time during the cycle (ms). */
+	static private String reportCycle(ArrayList<CommLinkImpl> links,
+		long ms, long cpu)
+	{
+		int ops = 0;
+		int failed = 0;
+		long[] lat = new long[0];
+		for (CommLinkImpl link: links) {
+			PollMetrics pm = getMetrics(link);
+			if (pm != null) {
+				ops += pm.getOps();
+				failed += pm.getFailed();
+				long[] l = pm.getLatencies();
+				int n = lat.length;
+				lat = Arrays.copyOf(lat, n + l.length);
+				System.arraycopy(l, 0, lat, n, l.length);
+				pm.nextCycle();
+			}
+		}
+		Arrays.sort(lat);
+		return ops + " ops (" + failed + " failed) in " + ms +
+			" ms, " + (ops * 1000L / Math.max(1, ms)) +
+			" ops/s, latency p50 " +
+			PollMetrics.percentile(lat, 50) + " p95 " +
+			PollMetrics.percentile(lat, 95) + " p99 " +
+			PollMetrics.percentile(lat, 99) + " max " +
+			PollMetrics.percentile(lat, 100) +
+			" ms, cpu " + cpu + " ms (" + (cpu * 100 /
+			Math.max(1, ms)) + "%)";
+	}
+}
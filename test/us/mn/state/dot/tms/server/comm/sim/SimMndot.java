@@ -0,0 +1,112 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import us.mn.state.dot.tms.CommProtocol;
+
+/**
+ * Simulated line of MnDOT 170 controllers.  Memory reads are answered from
+ * a memory image shared by all drops; all other requests are acknowledged
+ * with an empty OK response.
+ *
+ * @author Douglas Lau
+ */
+public class SimMndot extends SimProtocol {
+
+	/** Maximum payload bytes in a message */
+	static private final int MAX_DATA_BYTES = 125;
+
+	/** Read memory category code */
+	static private final int READ_MEMORY = 7;
+
+	/** Size of memory image */
+	static private final int MEMORY_SIZE = 65536;
+
+	/** Calculate the checksum of a packet */
+	static private byte checksum(byte[] pkt) {
+		byte xsum = 0;
+		for (int i = 0; i < pkt.length - 1; i++)
+			xsum ^= pkt[i];
+		return xsum;
+	}
+
+	/** Flag for 5-bit drop addressing (MnDOT 170 5-bit protocol) */
+	private final boolean drop5;
+
+	/** Controller memory image */
+	private final byte[] memory = new byte[MEMORY_SIZE];
+
+	/** Create a simulated MnDOT 170 line.
+	 * @param cp MNDOT_4 or MNDOT_5 protocol. */
+	public SimMndot(CommProtocol cp) {
+		drop5 = (cp == CommProtocol.MNDOT_5);
+	}
+
+	/** Set the contents of memory (response payload).
+	 * @param address Memory address.
+	 * @param data Data to store at address. */
+	public synchronized void setMemory(int address, byte[] data) {
+		System.arraycopy(data, 0, memory, address, data.length);
+	}
+
+	/** Read from memory */
+	private synchronized void readMemory(int address, byte[] pkt) {
+		int n = pkt.length - 3;
+		for (int i = 0; i < n; i++)
+			pkt[2 + i] = memory[(address + i) % MEMORY_SIZE];
+	}
+
+	/** Get the length of the first request in a stream buffer */
+	@Override
+	public int frameLength(byte[] buf, int len) {
+		if (len < 2)
+			return 0;
+		int n = buf[1] & 0xFF;
+		if (n > MAX_DATA_BYTES)
+			return -1;
+		return (len >= n + 3) ? n + 3 : 0;
+	}
+
+	/** Get the drop address of a request */
+	@Override
+	public int getDrop(byte[] req) {
+		int b = req[0] & 0xFF;
+		return drop5 ? (b >> 3) : (b >> 4);
+	}
+
+	/** Get the category code of a request */
+	private int getCat(byte[] req) {
+		int b = req[0] & 0xFF;
+		return drop5 ? (b & 0x07) : (b & 0x0F);
+	}
+
+	/** Create a response to a request */
+	@Override
+	public byte[] respond(byte[] req) {
+		if (req.length < 3 || req[req.length - 1] != checksum(req))
+			return null;
+		int drop = getDrop(req);
+		int n = 0;
+		if (getCat(req) == READ_MEMORY && req.length == 6)
+			n = Math.min(req[4] & 0xFF, MAX_DATA_BYTES);
+		byte[] pkt = new byte[3 + n];
+		pkt[0] = (byte) (drop5 ? drop << 3 : drop << 4);
+		pkt[1] = (byte) n;
+		if (n > 0)
+			readMemory(parse16(req, 2), pkt);
+		pkt[pkt.length - 1] = checksum(pkt);
+		return pkt;
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Simulated NTCIP device (SNMP v1 agent).  GetRequest values are looked up
+ * by OID, then by column OID (without the row index), falling back to a
+ * default INTEGER.  SetRequest values are echoed back.  Over TCP, each
+ * message is framed by its outer SEQUENCE length.
+ *
+ * @author Douglas Lau
+ */
+public class SimNtcip extends SimProtocol {
+
+	/** BER tags */
+	static private final int INTEGER = 0x02;
+	static private final int OCTET_STRING = 0x04;
+	static private final int SEQUENCE = 0x30;
+	static private final int GET_REQUEST = 0xA0;
+	static private final int GET_RESPONSE = 0xA2;
+	static private final int SET_REQUEST = 0xA3;
+
+	/** Maximum number of length octets */
+	static private final int MAX_LENGTH_OCTETS = 3;
+
+	/** Encode a BER length */
+	static private void encodeLength(ByteArrayOutputStream bo, int len) {
+		if (len < 0x80)
+			bo.write(len);
+		else if (len < 0x100) {
+			bo.write(0x81);
+			bo.write(len);
+		} else {
+			bo.write(0x82);
+			bo.write(len >> 8);
+			bo.write(len);
+		}
+	}
+
+	/** Encode a BER tag-length-value */
+	static private byte[] tlv(int tag, byte[]... values) {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		for (byte[] v: values)
+			content.write(v, 0, v.length);
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		bo.write(tag);
+		encodeLength(bo, content.size());
+		bo.write(content.toByteArray(), 0, content.size());
+		return bo.toByteArray();
+	}
+
+	/** Encode a BER INTEGER */
+	static private byte[] encodeInteger(int v) {
+		int n = 4;
+		while (n > 1 && (v >> (8 * n - 9)) == (v >> 31))
+			n--;
+		byte[] b = new byte[n];
+		for (int i = 0; i < n; i++)
+			b[i] = (byte) (v >> (8 * (n - 1 - i)));
+		return tlv(INTEGER, b);
+	}
+
+	/** BER element within a message */
+	static private final class Element {
+		private final int tag;
+		private final int start;
+		private final int content;
+		private final int end;
+		private Element(int t, int s, int c, int e) {
+			tag = t;
+			start = s;
+			content = c;
+			end = e;
+		}
+	}
+
+	/** Decode a BER element header.
+	 * @return Element, or null if it is not complete.
+	 * @throws IOException if the length is invalid. */
+	static private Element decodeElement(byte[] buf, int pos, int len)
+		throws IOException
+	{
+		if (pos + 2 > len)
+			return null;
+		int first = buf[pos + 1] & 0xFF;
+		int c = pos + 2;
+		int n = first;
+		if (first >= 0x80) {
+			int octets = first & 0x7F;
+			if (octets == 0 || octets > MAX_LENGTH_OCTETS)
+				throw new IOException("INVALID LENGTH");
+			if (c + octets > len)
+				return null;
+			n = 0;
+			for (int i = 0; i < octets; i++)
+				n = (n << 8) | (buf[c++] & 0xFF);
+		}
+		if (c + n > len)
+			return null;
+		return new Element(buf[pos] & 0xFF, pos, c, c + n);
+	}
+
+	/** Decode a complete BER element */
+	static private Element element(byte[] buf, int pos, int len)
+		throws IOException
+	{
+		Element e = decodeElement(buf, pos, len);
+		if (e == null)
+			throw new IOException("TRUNCATED");
+		return e;
+	}
+
+	/** Decode a complete BER element with an expected tag */
+	static private Element element(byte[] buf, int pos, int len, int tag)
+		throws IOException
+	{
+		Element e = element(buf, pos, len);
+		if (e.tag != tag)
+			throw new IOException("UNEXPECTED TAG: " + e.tag);
+		return e;
+	}
+
+	/** Copy an entire element */
+	static private byte[] copy(byte[] buf, Element e) {
+		return Arrays.copyOfRange(buf, e.start, e.end);
+	}
+
+	/** Decode an OBJECT IDENTIFIER as a dotted string */
+	static private String decodeOid(byte[] buf, Element e) {
+		StringBuilder sb = new StringBuilder();
+		long sub = 0;
+		for (int i = e.content; i < e.end; i++) {
+			sub = (sub << 7) | (buf[i] & 0x7F);
+			if ((buf[i] & 0x80) == 0) {
+				if (sb.length() == 0) {
+					long a = Math.min(sub / 40, 2);
+					sb.append(a).append('.');
+					sb.append(sub - 40 * a);
+				} else
+					sb.append('.').append(sub);
+				sub = 0;
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Value of OIDs which have not been set */
+	private final byte[] default_value;
+
+	/** Mapping of OIDs (or column OIDs) to encoded values */
+	private final HashMap<String, byte[]> values =
+		new HashMap<String, byte[]>();
+
+	/** Create a simulated NTCIP device.
+	 * @param dv Default INTEGER value. */
+	public SimNtcip(int dv) {
+		default_value = encodeInteger(dv);
+	}
+
+	/** Set an INTEGER value (response payload).
+	 * @param oid Dotted OID, or column OID for all rows. */
+	public synchronized void setInteger(String oid, int v) {
+		values.put(oid, encodeInteger(v));
+	}
+
+	/** Set an OCTET STRING value (response payload).
+	 * @param oid Dotted OID, or column OID for all rows. */
+	public synchronized void setString(String oid, String v) {
+		values.put(oid, tlv(OCTET_STRING, v.getBytes()));
+	}
+
+	/** Lookup the encoded value of an OID */
+	private synchronized byte[] lookup(String oid) {
+		byte[] v = values.get(oid);
+		if (v == null) {
+			int i = oid.lastIndexOf('.');
+			if (i > 0)
+				v = values.get(oid.substring(0, i));
+		}
+		return (v != null) ? v : default_value;
+	}
+
+	/** Get the length of the first request in a stream buffer */
+	@Override
+	public int frameLength(byte[] buf, int len) {
+		if ((buf[0] & 0xFF) != SEQUENCE)
+			return -1;
+		try {
+			Element e = decodeElement(buf, 0, len);
+			return (e != null) ? e.end : 0;
+		}
+		catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/** Get the drop address of a request (SNMP is not addressed) */
+	@Override
+	public int getDrop(byte[] req) {
+		return -1;
+	}
+
+	/** Create a response to a request */
+	@Override
+	public byte[] respond(byte[] req) {
+		try {
+			return createResponse(req);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/** Create a response to a request */
+	private byte[] createResponse(byte[] req) throws IOException {
+		int len = req.length;
+		Element msg = element(req, 0, len, SEQUENCE);
+		Element ver = element(req, msg.content, len, INTEGER);
+		Element com = element(req, ver.end, len, OCTET_STRING);
+		Element pdu = element(req, com.end, len);
+		if (pdu.tag != GET_REQUEST && pdu.tag != SET_REQUEST)
+			return null;
+		Element rid = element(req, pdu.content, len, INTEGER);
+		Element err = element(req, rid.end, len, INTEGER);
+		Element idx = element(req, err.end, len, INTEGER);
+		Element vbl = element(req, idx.end, len, SEQUENCE);
+		ByteArrayOutputStream vbs = new ByteArrayOutputStream();
+		for (int p = vbl.content; p < vbl.end;) {
+			Element vb = element(req, p, len, SEQUENCE);
+			Element oid = element(req, vb.content, len);
+			Element val = element(req, oid.end, len);
+			byte[] v = (pdu.tag == SET_REQUEST)
+			         ? copy(req, val)
+			         : lookup(decodeOid(req, oid));
+			byte[] b = tlv(SEQUENCE, copy(req, oid), v);
+			vbs.write(b, 0, b.length);
+			p = vb.end;
+		}
+		byte[] zero = encodeInteger(0);
+		return tlv(SEQUENCE, copy(req, ver), copy(req, com),
+			tlv(GET_RESPONSE, copy(req, rid), zero, zero,
+			tlv(SEQUENCE, vbs.toByteArray())));
+	}
+}
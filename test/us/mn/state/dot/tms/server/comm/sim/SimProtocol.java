@@ -0,0 +1,64 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+/**
+ * A simulated device protocol frames requests received by an endpoint and
+ * creates responses to them.  Implementations must be thread-safe, since one
+ * protocol may be shared by many endpoints.
+ *
+ * @author Douglas Lau
+ */
+abstract public class SimProtocol {
+
+	/** Parse a 16-bit big-endian value */
+	static protected int parse16(byte[] buf, int pos) {
+		return ((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF);
+	}
+
+	/** Format a 16-bit big-endian value */
+	static protected void format16(byte[] buf, int pos, int v) {
+		buf[pos] = (byte) (v >> 8);
+		buf[pos + 1] = (byte) v;
+	}
+
+	/** Format a 24-bit big-endian value */
+	static protected void format24(byte[] buf, int pos, int v) {
+		buf[pos] = (byte) (v >> 16);
+		format16(buf, pos + 1, v);
+	}
+
+	/** Format a 32-bit big-endian value */
+	static protected void format32(byte[] buf, int pos, int v) {
+		format16(buf, pos, v >> 16);
+		format16(buf, pos + 2, v);
+	}
+
+	/** Get the length of the first request in a stream buffer.
+	 * @param buf Buffer of received data.
+	 * @param len Number of bytes in buffer.
+	 * @return Length of first request, 0 if it is not complete, or -1 if
+	 *         the data is invalid and should be discarded. */
+	abstract public int frameLength(byte[] buf, int len);
+
+	/** Get the drop address of a request.
+	 * @return Drop address, or -1 if the request is not addressed. */
+	abstract public int getDrop(byte[] req);
+
+	/** Create a response to a request.
+	 * @param req One complete request.
+	 * @return Response, or null if there is no response. */
+	abstract public byte[] respond(byte[] req);
+}
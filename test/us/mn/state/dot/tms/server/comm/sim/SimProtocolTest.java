@@ -0,0 +1,144 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Date;
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.CommLink;
+import us.mn.state.dot.tms.CommProtocol;
+import us.mn.state.dot.tms.server.CabinetImpl;
+import us.mn.state.dot.tms.server.ControllerImpl;
+import us.mn.state.dot.tms.server.comm.ControllerProperty;
+import us.mn.state.dot.tms.server.comm.canoga.BinaryDetectionProperty;
+import us.mn.state.dot.tms.server.comm.mndot.MemoryProperty;
+import us.mn.state.dot.tms.server.comm.snmp.ASN1Integer;
+import us.mn.state.dot.tms.server.comm.snmp.MIBNode;
+import us.mn.state.dot.tms.server.comm.snmp.SNMP;
+import us.mn.state.dot.tms.server.comm.ss125.IntervalDataProperty;
+
+/**
+ * Simulated protocol tests.  Requests encoded by the real protocol drivers
+ * are answered by the simulators, and the responses must decode cleanly.
+ *
+ * @author Douglas Lau
+ */
+public class SimProtocolTest extends TestCase {
+
+	/** Create a controller without a database */
+	static private ControllerImpl createController(int drop)
+		throws Exception
+	{
+		Constructor<ControllerImpl> c = ControllerImpl.class
+			.getDeclaredConstructor(String.class, CabinetImpl.class,
+			CommLink.class, short.class, int.class, String.class,
+			String.class, Date.class, String.class);
+		c.setAccessible(true);
+		return c.newInstance("ctl_" + drop, null, null, (short) drop,
+			0, "", "", null, "");
+	}
+
+	/** Query a property through a simulator */
+	static private void query(SimProtocol sim, ControllerProperty prop,
+		ControllerImpl c) throws IOException
+	{
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		prop.encodeQuery(c, os);
+		byte[] req = os.toByteArray();
+		assertEquals(req.length, sim.frameLength(req, req.length));
+		byte[] res = sim.respond(req);
+		assertNotNull(res);
+		prop.decodeQuery(c, new ByteArrayInputStream(res));
+	}
+
+	/** Input stream with the simulator response to all output so far */
+	static private class Loopback extends InputStream {
+		private final SimProtocol sim;
+		private final ByteArrayOutputStream os;
+		private InputStream is;
+		private Loopback(SimProtocol s, ByteArrayOutputStream o) {
+			sim = s;
+			os = o;
+		}
+		private InputStream response() {
+			if (is == null && os.size() > 0)
+				is = new ByteArrayInputStream(sim.respond(
+					os.toByteArray()));
+			return is;
+		}
+		@Override public int read() throws IOException {
+			InputStream r = response();
+			return (r != null) ? r.read() : -1;
+		}
+		@Override public int available() throws IOException {
+			InputStream r = response();
+			return (r != null) ? r.available() : 0;
+		}
+	}
+
+	public SimProtocolTest(String name) {
+		super(name);
+	}
+
+	public void testMndot() throws Exception {
+		SimMndot sim = new SimMndot(CommProtocol.MNDOT_4);
+		byte[] data = new byte[72];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) i;
+		sim.setMemory(0x034B, data);
+		byte[] buf = new byte[72];
+		query(sim, new MemoryProperty(0x034B, buf),
+			createController(3));
+		assertTrue(Arrays.equals(data, buf));
+	}
+
+	public void testNtcip() throws Exception {
+		SimNtcip sim = new SimNtcip(7);
+		sim.setInteger("1.3.6.1.4.1.1206.4.2.1.2", 42);
+		MIBNode node = MIBNode.root(new int[] {
+			1, 3, 6, 1, 4, 1, 1206, 4, 2, 1 }, "test");
+		ASN1Integer col = new ASN1Integer(node.child(2), 5);
+		ASN1Integer other = new ASN1Integer(node.child(3));
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		SNMP.Message mess = new SNMP().new Message(os,
+			new Loopback(sim, os), SNMP.PUBLIC);
+		mess.add(col);
+		mess.add(other);
+		mess.queryProps();
+		assertEquals(42, col.getInteger());
+		assertEquals(7, other.getInteger());
+	}
+
+	public void testSS125() throws Exception {
+		SimSS125 sim = new SimSS125(30);
+		sim.setLaneData(3, 12, 150, 60);
+		IntervalDataProperty prop = new IntervalDataProperty(30);
+		query(sim, prop, createController(1000));
+		assertTrue(Arrays.equals(new int[] { 12, 12, 12 },
+			prop.getVehCount()));
+		assertTrue(Arrays.equals(new int[] { 60, 60, 60 },
+			prop.getSpeed()));
+	}
+
+	public void testCanoga() throws Exception {
+		query(new SimCanoga(), new BinaryDetectionProperty(),
+			createController(2));
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import java.util.TimeZone;
+import us.mn.state.dot.tms.server.comm.CRC;
+
+/**
+ * Simulated line of Wavetronix SmartSensor 125 sensors.  Interval data reads
+ * are answered with one packet per lane, stamped at the end of the previous
+ * interval.  Writes are answered with a "no errors" result; other reads are
+ * not simulated, and get an error result.
+ *
+ * @author Douglas Lau
+ */
+public class SimSS125 extends SimProtocol {
+
+	/** Header offsets */
+	static private final int OFF_DEST_SUB_ID = 2;
+	static private final int OFF_DEST_ID = 3;
+	static private final int OFF_SOURCE_SUB_ID = 5;
+	static private final int OFF_SOURCE_ID = 6;
+	static private final int OFF_SEQUENCE = 8;
+	static private final int OFF_BODY_SIZE = 9;
+	static private final int OFF_CRC = 10;
+
+	/** Header length */
+	static private final int HEADER_LEN = 11;
+
+	/** Body offsets */
+	static private final int OFF_MSG_ID = 0;
+	static private final int OFF_MSG_SUB_ID = 1;
+	static private final int OFF_MSG_TYPE = 2;
+
+	/** Interval data message ID */
+	static private final int MSG_INTERVAL = 0x71;
+
+	/** Message types */
+	static private final int TYPE_READ = 0;
+	static private final int TYPE_WRITE = 1;
+	static private final int TYPE_RESULT = 2;
+
+	/** Result codes */
+	static private final int NO_ERRORS = 0;
+	static private final int PAYLOAD_SIZE = 1;
+
+	/** Interval data body length */
+	static private final int INTERVAL_LEN = 46;
+
+	/** Result body length */
+	static private final int RESULT_LEN = 6;
+
+	/** CRC-8 for header and body */
+	static private final CRC crc = new CRC(8, 0x1C, 0x00, false);
+
+	/** Set the CRC of a header or body */
+	static private void setCrc(byte[] buf) {
+		buf[buf.length - 1] = (byte) crc.calculate(buf,
+			buf.length - 1);
+	}
+
+	/** Format a date and time stamp (UTC) */
+	static private void formatDate(byte[] body, int pos, long stamp) {
+		Calendar cal = Calendar.getInstance(
+			TimeZone.getTimeZone("GMT"));
+		cal.setTimeInMillis(stamp);
+		int date = (cal.get(Calendar.YEAR) << 9) |
+			((cal.get(Calendar.MONTH) + 1) << 5) |
+			cal.get(Calendar.DAY_OF_MONTH);
+		int time = (cal.get(Calendar.HOUR_OF_DAY) << 22) |
+			(cal.get(Calendar.MINUTE) << 16) |
+			(cal.get(Calendar.SECOND) << 10) |
+			cal.get(Calendar.MILLISECOND);
+		format32(body, pos, date);
+		format32(body, pos + 4, time);
+	}
+
+	/** Format a 24-bit fixed-point value with the valid flag set */
+	static private void formatFixed(byte[] body, int pos, int v) {
+		body[pos] = (byte) (0x80 | ((v >> 8) & 0x7F));
+		body[pos + 1] = (byte) v;
+		body[pos + 2] = 0;
+	}
+
+	/** Interval length (seconds) */
+	private final int interval_sec;
+
+	/** Number of lanes */
+	private int n_lanes = 2;
+
+	/** Vehicle count per lane */
+	private int veh_count = 10;
+
+	/** Scan count (occupancy) per lane */
+	private int scan = 100;
+
+	/** Speed per lane (mph) */
+	private int speed = 55;
+
+	/** Create a simulated SS125 line.
+	 * @param i Interval length (seconds). */
+	public SimSS125(int i) {
+		interval_sec = i;
+	}
+
+	/** Set the lane data (response payload).
+	 * @param n Number of lanes.
+	 * @param v Vehicle count per lane.
+	 * @param sc Scan count (occupancy) per lane.
+	 * @param sp Speed per lane (mph). */
+	public synchronized void setLaneData(int n, int v, int sc, int sp) {
+		n_lanes = n;
+		veh_count = v;
+		scan = sc;
+		speed = sp;
+	}
+
+	/** Get the length of the first request in a stream buffer */
+	@Override
+	public int frameLength(byte[] buf, int len) {
+		if (buf[0] != 'Z')
+			return -1;
+		if (len < HEADER_LEN)
+			return 0;
+		int n = HEADER_LEN + (buf[OFF_BODY_SIZE] & 0xFF) + 1;
+		return (len >= n) ? n : 0;
+	}
+
+	/** Get the drop address of a request */
+	@Override
+	public int getDrop(byte[] req) {
+		return parse16(req, OFF_DEST_ID);
+	}
+
+	/** Create a response to a request */
+	@Override
+	public byte[] respond(byte[] req) {
+		if (req.length < HEADER_LEN + 4 ||
+		   (req[OFF_CRC] & 0xFF) != crc.calculate(req, OFF_CRC))
+			return null;
+		int msg_id = req[HEADER_LEN + OFF_MSG_ID] & 0xFF;
+		int sub_id = req[HEADER_LEN + OFF_MSG_SUB_ID] & 0xFF;
+		int mtype = req[HEADER_LEN + OFF_MSG_TYPE] & 0xFF;
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		if (mtype == TYPE_READ && msg_id == MSG_INTERVAL)
+			writeIntervals(bo, req);
+		else {
+			int rc = (mtype == TYPE_WRITE) ? NO_ERRORS
+			                                : PAYLOAD_SIZE;
+			writePacket(bo, req, 1, result(msg_id, sub_id, rc));
+		}
+		return bo.toByteArray();
+	}
+
+	/** Create a result body */
+	private byte[] result(int msg_id, int sub_id, int rc) {
+		byte[] body = new byte[RESULT_LEN];
+		body[OFF_MSG_ID] = (byte) msg_id;
+		body[OFF_MSG_SUB_ID] = (byte) sub_id;
+		body[OFF_MSG_TYPE] = TYPE_RESULT;
+		format16(body, 3, rc);
+		setCrc(body);
+		return body;
+	}
+
+	/** Write interval data packets, one per lane */
+	private synchronized void writeIntervals(ByteArrayOutputStream bo,
+		byte[] req)
+	{
+		long pms = interval_sec * 1000L;
+		long stamp = System.currentTimeMillis() / pms * pms;
+		for (int lane = 0; lane < n_lanes; lane++) {
+			byte[] body = new byte[INTERVAL_LEN];
+			body[OFF_MSG_ID] = (byte) MSG_INTERVAL;
+			body[OFF_MSG_SUB_ID] = (byte) lane;
+			body[OFF_MSG_TYPE] = TYPE_READ;
+			System.arraycopy(req, HEADER_LEN + 3, body, 3, 3);
+			formatDate(body, 6, stamp);
+			formatFixed(body, 14, speed);
+			format24(body, 17, veh_count);
+			format16(body, 20, scan);
+			format24(body, 22, veh_count);
+			formatFixed(body, 34, speed);
+			body[43] = (byte) n_lanes;
+			setCrc(body);
+			writePacket(bo, req, lane + 1, body);
+		}
+	}
+
+	/** Write one response packet.
+	 * @param bo Output stream.
+	 * @param req Request packet.
+	 * @param n Packet number (for sequence).
+	 * @param body Response body. */
+	private void writePacket(ByteArrayOutputStream bo, byte[] req, int n,
+		byte[] body)
+	{
+		byte[] header = new byte[HEADER_LEN];
+		header[0] = 'Z';
+		header[1] = '1';
+		header[OFF_DEST_SUB_ID] = req[OFF_SOURCE_SUB_ID];
+		header[OFF_DEST_ID] = req[OFF_SOURCE_ID];
+		header[OFF_DEST_ID + 1] = req[OFF_SOURCE_ID + 1];
+		header[OFF_SOURCE_SUB_ID] = req[OFF_DEST_SUB_ID];
+		header[OFF_SOURCE_ID] = req[OFF_DEST_ID];
+		header[OFF_SOURCE_ID + 1] = req[OFF_DEST_ID + 1];
+		header[OFF_SEQUENCE] = (byte) (req[OFF_SEQUENCE] + n);
+		header[OFF_BODY_SIZE] = (byte) (body.length - 1);
+		setCrc(header);
+		bo.write(header, 0, header.length);
+		bo.write(body, 0, body.length);
+	}
+}
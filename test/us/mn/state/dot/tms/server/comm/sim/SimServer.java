@@ -0,0 +1,333 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.sim;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulated device server.  All endpoints are served by one selector thread,
+ * and responses are sent by one timer thread after each endpoint's latency
+ * delay, so that thousands of endpoints can run in one process.  Threads are
+ * named with a "sim" prefix, so that their CPU time can be told apart from
+ * the server's.
+ *
+ * @author Douglas Lau
+ */
+public class SimServer {
+
+	/** Prefix for simulator thread names */
+	static public final String THREAD_PREFIX = "sim";
+
+	/** Backlog for TCP listeners */
+	static private final int BACKLOG = 16;
+
+	/** Maximum size of one datagram or read */
+	static private final int MAX_READ = 65536;
+
+	/** Handler for a selected channel */
+	static private abstract class Handler {
+		abstract void ready(SelectionKey key) throws IOException;
+	}
+
+	/** Channel selector */
+	private final Selector selector;
+
+	/** Registrations waiting for the selector thread */
+	private final ConcurrentLinkedQueue<Runnable> pending =
+		new ConcurrentLinkedQueue<Runnable>();
+
+	/** Response timer */
+	private final ScheduledExecutorService timer =
+		Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+	{
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, THREAD_PREFIX + " timer");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	/** Read buffer (selector thread only) */
+	private final ByteBuffer rbuf = ByteBuffer.allocateDirect(MAX_READ);
+
+	/** Selector thread */
+	private final Thread thread;
+
+	/** Flag to stop the selector thread */
+	private volatile boolean running = true;
+
+	/** Create and start a simulated device server */
+	public SimServer() throws IOException {
+		selector = Selector.open();
+		thread = new Thread(THREAD_PREFIX + " server") {
+			@Override public void run() {
+				doSelect();
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Create a TCP endpoint */
+	public SimEndpoint createTcp(SimProtocol p) throws IOException {
+		ServerSocketChannel ch = ServerSocketChannel.open();
+		ch.socket().bind(new InetSocketAddress(
+			InetAddress.getLoopbackAddress(), 0), BACKLOG);
+		ch.configureBlocking(false);
+		SimEndpoint ep = new SimEndpoint(p, false,
+			ch.socket().getLocalPort());
+		register(ch, SelectionKey.OP_ACCEPT, new Listener(ch, ep));
+		return ep;
+	}
+
+	/** Create a UDP endpoint */
+	public SimEndpoint createUdp(SimProtocol p) throws IOException {
+		DatagramChannel ch = DatagramChannel.open();
+		ch.socket().bind(new InetSocketAddress(
+			InetAddress.getLoopbackAddress(), 0));
+		ch.configureBlocking(false);
+		SimEndpoint ep = new SimEndpoint(p, true,
+			ch.socket().getLocalPort());
+		register(ch, SelectionKey.OP_READ, new Datagram(ch, ep));
+		return ep;
+	}
+
+	/** Register a channel with the selector thread */
+	private void register(final SelectableChannel ch, final int ops,
+		final Handler h)
+	{
+		pending.add(new Runnable() {
+			public void run() {
+				try {
+					ch.register(selector, ops, h);
+				}
+				catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		selector.wakeup();
+	}
+
+	/** Close the server and all endpoints */
+	public void close() {
+		running = false;
+		selector.wakeup();
+		timer.shutdownNow();
+	}
+
+	/** Select ready channels until closed */
+	private void doSelect() {
+		try {
+			while (running) {
+				selector.select();
+				runPending();
+				Iterator<SelectionKey> it =
+					selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					handleKey(key);
+				}
+			}
+			for (SelectionKey key: selector.keys())
+				key.channel().close();
+			selector.close();
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** Run pending registrations */
+	private void runPending() {
+		Runnable r = pending.poll();
+		while (r != null) {
+			r.run();
+			r = pending.poll();
+		}
+	}
+
+	/** Handle a selected key */
+	private void handleKey(SelectionKey key) {
+		try {
+			if (key.isValid())
+				((Handler) key.attachment()).ready(key);
+		}
+		catch (IOException e) {
+			closeKey(key);
+		}
+	}
+
+	/** Cancel a key and close its channel */
+	private void closeKey(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		}
+		catch (IOException e) {
+			// nothing else to do
+		}
+	}
+
+	/** Read from a channel into the read buffer.
+	 * @return Bytes read, or null at end of stream. */
+	private byte[] readBuffer(SocketChannel ch) throws IOException {
+		rbuf.clear();
+		if (ch.read(rbuf) < 0)
+			return null;
+		return drainBuffer();
+	}
+
+	/** Copy the contents of the read buffer */
+	private byte[] drainBuffer() {
+		rbuf.flip();
+		byte[] b = new byte[rbuf.remaining()];
+		rbuf.get(b);
+		return b;
+	}
+
+	/** Schedule a response after the endpoint delay */
+	private void schedule(SimEndpoint ep, Runnable r) {
+		timer.schedule(r, ep.getDelay(), TimeUnit.MILLISECONDS);
+	}
+
+	/** Listener for TCP connections */
+	private class Listener extends Handler {
+		private final ServerSocketChannel channel;
+		private final SimEndpoint endpoint;
+		private Listener(ServerSocketChannel ch, SimEndpoint ep) {
+			channel = ch;
+			endpoint = ep;
+		}
+		void ready(SelectionKey key) throws IOException {
+			SocketChannel sc = channel.accept();
+			if (sc != null) {
+				sc.configureBlocking(false);
+				sc.socket().setTcpNoDelay(true);
+				sc.register(selector, SelectionKey.OP_READ,
+					new Connection(sc, endpoint));
+			}
+		}
+	}
+
+	/** TCP connection, which frames a stream of requests */
+	private class Connection extends Handler {
+		private final SocketChannel channel;
+		private final SimEndpoint endpoint;
+		private byte[] buf = new byte[256];
+		private int len = 0;
+		private Connection(SocketChannel ch, SimEndpoint ep) {
+			channel = ch;
+			endpoint = ep;
+		}
+		void ready(SelectionKey key) throws IOException {
+			byte[] b = readBuffer(channel);
+			if (b == null) {
+				closeKey(key);
+				return;
+			}
+			if (len + b.length > buf.length)
+				buf = Arrays.copyOf(buf, 2 * (len + b.length));
+			System.arraycopy(b, 0, buf, len, b.length);
+			len += b.length;
+			frameRequests();
+		}
+		private void frameRequests() {
+			SimProtocol p = endpoint.getProtocol();
+			while (len > 0) {
+				int n = p.frameLength(buf, len);
+				if (n < 0)
+					len = 0;
+				if (n <= 0)
+					return;
+				byte[] req = Arrays.copyOf(buf, n);
+				len -= n;
+				System.arraycopy(buf, n, buf, 0, len);
+				final byte[] res = endpoint.handle(req);
+				if (res != null) {
+					schedule(endpoint, new Runnable() {
+						public void run() {
+							send(res);
+						}
+					});
+				}
+			}
+		}
+		private void send(byte[] res) {
+			ByteBuffer b = ByteBuffer.wrap(res);
+			try {
+				synchronized (this) {
+					while (b.hasRemaining()) {
+						if (channel.write(b) == 0)
+							Thread.yield();
+					}
+				}
+			}
+			catch (IOException e) {
+				// connection closed
+			}
+		}
+	}
+
+	/** UDP channel, with one request per datagram */
+	private class Datagram extends Handler {
+		private final DatagramChannel channel;
+		private final SimEndpoint endpoint;
+		private Datagram(DatagramChannel ch, SimEndpoint ep) {
+			channel = ch;
+			endpoint = ep;
+		}
+		void ready(SelectionKey key) throws IOException {
+			rbuf.clear();
+			final SocketAddress a = channel.receive(rbuf);
+			if (a == null)
+				return;
+			final byte[] res = endpoint.handle(drainBuffer());
+			if (res != null) {
+				schedule(endpoint, new Runnable() {
+					public void run() {
+						send(res, a);
+					}
+				});
+			}
+		}
+		private void send(byte[] res, SocketAddress a) {
+			try {
+				channel.send(ByteBuffer.wrap(res), a);
+			}
+			catch (IOException e) {
+				// channel closed
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * IRIS -- Intelligent Roadway Information System
+ * Copyright (C) 2020  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.tms.server.comm.snmp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import junit.framework.TestCase;
+import us.mn.state.dot.tms.utils.HexString;
+
+/**
+ * BER encoding tests
+ *
+ * @author Douglas Lau
+ */
+public class BERTest extends TestCase {
+
+	/** Root node for test objects */
+	static private final MIBNode ROOT = MIBNode.root(
+		new int[] { 1, 3, 6, 1, 4, 1, 1206, 4, 2, 3 }, "test");
+
+	/** Node for integer objects */
+	static private final MIBNode INT_NODE = ROOT.child(new int[] { 5, 8,
+		1, 3 }, "intNode");
+
+	/** Node for string objects */
+	static private final MIBNode STR_NODE = ROOT.child(new int[] { 5, 8,
+		1, 9 }, "strNode");
+
+	private final SNMP snmp = new SNMP();
+
+	public BERTest(String name) {
+		super(name);
+	}
+
+	/** Get encoded data as a hex string (and reset encoder) */
+	private String encoded() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		snmp.encoder.writeTo(os);
+		snmp.encoder.reset();
+		return HexString.format(os.toByteArray()).toLowerCase();
+	}
+
+	private void checkInteger(int v, String hex) throws IOException {
+		snmp.encodeInteger(v);
+		assertEquals(hex, encoded());
+		ByteArrayInputStream is = new ByteArrayInputStream(
+			HexString.parse(hex));
+		assertEquals(v, snmp.decodeInteger(is));
+	}
+
+	public void testInteger() throws IOException {
+		checkInteger(0, "020100");
+		checkInteger(1, "020101");
+		checkInteger(127, "02017f");
+		checkInteger(128, "02020080");
+		checkInteger(255, "020200ff");
+		checkInteger(256, "02020100");
+		checkInteger(-1, "0201ff");
+		checkInteger(-128, "020180");
+		checkInteger(-129, "0202ff7f");
+		checkInteger(32767, "02027fff");
+		checkInteger(32768, "0203008000");
+		checkInteger(65535, "020300ffff");
+		checkInteger(8388607, "02037fffff");
+		checkInteger(8388608, "020400800000");
+		checkInteger(-8388608, "0203800000");
+		checkInteger(-8388609, "0204ff7fffff");
+		checkInteger(Integer.MAX_VALUE, "02047fffffff");
+		checkInteger(Integer.MIN_VALUE, "020480000000");
+	}
+
+	private void checkStringHeader(int len, String hex)
+		throws IOException
+	{
+		snmp.encodeOctetString(new byte[len]);
+		String e = encoded();
+		assertEquals(hex.length() + len * 2, e.length());
+		assertEquals(hex, e.substring(0, hex.length()));
+	}
+
+	public void testOctetString() throws IOException {
+		checkStringHeader(0, "0400");
+		checkStringHeader(5, "0405");
+		checkStringHeader(127, "047f");
+		checkStringHeader(128, "048180");
+		checkStringHeader(255, "0481ff");
+		checkStringHeader(256, "04820100");
+		checkStringHeader(300, "0482012c");
+		checkStringHeader(2000, "048207d0");
+	}
+
+	public void testNullBoolean() throws IOException {
+		snmp.encodeNull();
+		assertEquals("0500", encoded());
+		snmp.encodeBoolean(true);
+		assertEquals("0101ff", encoded());
+	}
+
+	public void testObjectIdentifier() throws IOException {
+		snmp.encodeObjectIdentifier(new int[] { 1, 3, 6, 1, 4, 1, 1206,
+			4, 2, 3, 5, 8, 1, 3, 200, 16383 });
+		assertEquals("06122b060104018936040203050801038148ff7f",
+			encoded());
+		snmp.encodeObjectIdentifier(INT_NODE, new int[] { 200, 16383 });
+		assertEquals("06122b060104018936040203050801038148ff7f",
+			encoded());
+	}
+
+	/** Send a request, ignoring the missing response */
+	private String request(boolean set) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		SNMP.Message m = snmp.new Message(os,
+			new ByteArrayInputStream(new byte[0]), null);
+		ASN1Integer i = new ASN1Integer(INT_NODE, 1);
+		i.setInteger(1000);
+		ASN1String s = new ASN1String(STR_NODE, 2);
+		s.setString("HELLO[nl]WORLD");
+		m.add(i);
+		m.add(s);
+		try {
+			if (set)
+				m.storeProps();
+			else
+				m.queryProps();
+			fail("response");
+		}
+		catch (IOException e) {
+			// no response
+		}
+		return HexString.format(os.toByteArray()).toLowerCase();
+	}
+
+	public void testMessage() throws IOException {
+		assertEquals("304202010004065075626c6963a0350201000201000201" +
+			"00302a3013060f2b06010401893604020305080103010500" +
+			"3013060f2b06010401893604020305080109020500",
+			request(false));
+		assertEquals("305202010004065075626c6963a3450201010201000201" +
+			"00303a3015060f2b0601040189360402030508010301020203" +
+			"e83021060f2b0601040189360402030508010902040e48454c" +
+			"4c4f5b6e6c5d574f524c44", request(true));
+	}
+}